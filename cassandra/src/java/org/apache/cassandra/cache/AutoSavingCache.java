@@ -20,14 +20,19 @@ package org.apache.cassandra.cache;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyType;
@@ -44,6 +49,7 @@ import org.apache.cassandra.io.util.SequentialWriter;
 import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
 
 public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K, V>
@@ -59,6 +65,13 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
     private CacheSerializer<K, V> cacheLoader;
     private static final String CURRENT_VERSION = "b";
 
+    // saved caches are loaded in the background, a table per task, so that startup does not wait on them
+    private static final ListeningExecutorService loadExecutor =
+        MoreExecutors.listeningDecorator(DebuggableThreadPoolExecutor.createWithFixedPoolSize("CacheLoader", FBUtilities.getAvailableProcessors()));
+
+    // bounds the loaded entries waiting to be put in the cache, since row cache entries can be large
+    private static final int MAX_PENDING_LOADS = 1024;
+
     public AutoSavingCache(ICache<K, V> cache, CacheService.CacheType cacheType, CacheSerializer<K, V> cacheloader)
     {
         super(cacheType.toString(), cache);
@@ -99,6 +112,22 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
         }
     }
 
+    /**
+     * Loads the saved cache of @param cfs on the CacheLoader executor, while the node goes on starting up.
+     *
+     * @return the number of entries read from the saved cache
+     */
+    public ListenableFuture<Integer> loadSavedAsync(final ColumnFamilyStore cfs)
+    {
+        return loadExecutor.submit(new Callable<Integer>()
+        {
+            public Integer call()
+            {
+                return loadSaved(cfs);
+            }
+        });
+    }
+
     public int loadSaved(ColumnFamilyStore cfs)
     {
         int count = 0;
@@ -113,7 +142,7 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
             {
                 logger.info(String.format("reading saved cache %s", path));
                 in = new DataInputStream(new LengthAvailableInputStream(new BufferedInputStream(new FileInputStream(path)), path.length()));
-                List<Future<Pair<K, V>>> futures = new ArrayList<Future<Pair<K, V>>>();
+                Deque<Future<Pair<K, V>>> futures = new ArrayDeque<Future<Pair<K, V>>>();
                 while (in.available() > 0)
                 {
                     Future<Pair<K, V>> entry = cacheLoader.deserialize(in, cfs);
@@ -122,13 +151,14 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
                         continue;
                     futures.add(entry);
                     count++;
+
+                    // make entries available as soon as they are loaded, rather than once the whole file is read
+                    while (!futures.isEmpty() && (futures.peek().isDone() || futures.size() > MAX_PENDING_LOADS))
+                        putLoaded(futures.poll().get());
                 }
 
                 for (Future<Pair<K, V>> future : futures)
-                {
-                    Pair<K, V> entry = future.get();
-                    put(entry.left, entry.right);
-                }
+                    putLoaded(future.get());
             }
             catch (Exception e)
             {
@@ -145,6 +175,13 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
         return count;
     }
 
+    private void putLoaded(Pair<K, V> entry)
+    {
+        // requests served meanwhile may have cached a fresher value already
+        if (entry != null)
+            putIfAbsent(entry.left, entry.right);
+    }
+
     public Future<?> submitWrite(int keysToSave)
     {
         return CompactionManager.instance.submitCacheWrite(getWriter(keysToSave));
@@ -285,6 +322,9 @@ public class AutoSavingCache<K extends CacheKey, V> extends InstrumentingCache<K
     {
         void serialize(K key, DataOutput out) throws IOException;
 
+        /**
+         * @return the entry to put in the cache, or a future of null if the serializer cached it itself
+         */
         Future<Pair<K, V>> deserialize(DataInputStream in, ColumnFamilyStore cfs) throws IOException;
     }
 }
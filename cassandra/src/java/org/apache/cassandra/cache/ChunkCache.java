@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.metrics.ChunkCacheMetrics;
+
+/**
+ * Node-wide cache of uncompressed chunks of compressed sstables, keyed by data file and chunk offset.
+ * Chunks are copied off-heap and evicted least-recently-used once the total size goes over capacity.
+ */
+public class ChunkCache
+{
+    private static final Logger logger = LoggerFactory.getLogger(ChunkCache.class);
+
+    private static final int DEFAULT_CONCURENCY_LEVEL = 64;
+
+    /** null in client mode or if chunk_cache_size_in_mb is 0 */
+    public static final ChunkCache instance = !Config.isClientMode() && DatabaseDescriptor.getChunkCacheSizeInMB() > 0
+                                            ? new ChunkCache(DatabaseDescriptor.getChunkCacheSizeInMB() * 1024L * 1024L)
+                                            : null;
+
+    private final ConcurrentLinkedHashMap<Key, RefCountedMemory> map;
+    // the cached chunk positions of each file, so that invalidating a file doesn't scan the whole cache
+    private final ConcurrentMap<String, Set<Long>> positionsByPath = new ConcurrentHashMap<String, Set<Long>>();
+    public final ChunkCacheMetrics metrics;
+
+    public ChunkCache(long capacity)
+    {
+        EvictionListener<Key, RefCountedMemory> listener = new EvictionListener<Key, RefCountedMemory>()
+        {
+            public void onEviction(Key key, RefCountedMemory mem)
+            {
+                Set<Long> positions = positionsByPath.get(key.path);
+                if (positions != null)
+                    positions.remove(key.position);
+                mem.unreference();
+            }
+        };
+
+        map = new ConcurrentLinkedHashMap.Builder<Key, RefCountedMemory>()
+              .weigher(new Weigher<RefCountedMemory>()
+              {
+                  public int weightOf(RefCountedMemory value)
+                  {
+                      return (int) value.size();
+                  }
+              })
+              .maximumWeightedCapacity(capacity)
+              .concurrencyLevel(DEFAULT_CONCURENCY_LEVEL)
+              .listener(listener)
+              .build();
+        metrics = new ChunkCacheMetrics(this);
+    }
+
+    /**
+     * Copies the cached chunk starting at @param position of @param path into @param buffer.
+     *
+     * @return the number of uncompressed bytes copied, or -1 if the chunk is not cached
+     */
+    public int get(String path, long position, byte[] buffer)
+    {
+        metrics.requests.mark();
+        RefCountedMemory mem = map.get(new Key(path, position));
+        if (mem == null || !mem.reference())
+            return -1;
+        try
+        {
+            int length = (int) mem.size();
+            if (length > buffer.length)
+                return -1;
+            mem.getBytes(0, buffer, 0, length);
+            metrics.hits.mark();
+            return length;
+        }
+        finally
+        {
+            mem.unreference();
+        }
+    }
+
+    public void put(String path, long position, byte[] buffer, int length)
+    {
+        if (length <= 0)
+            return;
+
+        RefCountedMemory mem;
+        try
+        {
+            mem = new RefCountedMemory(length);
+        }
+        catch (OutOfMemoryError e)
+        {
+            return; // never mind, the next read will decompress again
+        }
+        mem.setBytes(0, buffer, 0, length);
+
+        Set<Long> positions = positionsByPath.get(path);
+        if (positions == null)
+        {
+            Set<Long> newPositions = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+            positions = positionsByPath.putIfAbsent(path, newPositions);
+            if (positions == null)
+                positions = newPositions;
+        }
+        positions.add(position);
+
+        RefCountedMemory old = map.putIfAbsent(new Key(path, position), mem);
+        if (old != null)
+            // another reader beat us to it
+            mem.unreference();
+    }
+
+    /**
+     * Drops all the chunks of @param path; called once the sstable is released.
+     */
+    public void invalidate(String path)
+    {
+        logger.debug("Invalidating chunk cache for {}", path);
+        Set<Long> positions = positionsByPath.remove(path);
+        if (positions == null)
+            return;
+        for (Long position : positions)
+        {
+            RefCountedMemory mem = map.remove(new Key(path, position));
+            if (mem != null)
+                mem.unreference();
+        }
+    }
+
+    public void clear()
+    {
+        for (Key key : map.keySet())
+        {
+            RefCountedMemory mem = map.remove(key);
+            if (mem != null)
+                mem.unreference();
+        }
+        positionsByPath.clear();
+    }
+
+    public long capacity()
+    {
+        return map.capacity();
+    }
+
+    public int size()
+    {
+        return map.size();
+    }
+
+    public long weightedSize()
+    {
+        return map.weightedSize();
+    }
+
+    private static final class Key
+    {
+        final String path;
+        final long position;
+
+        Key(String path, long position)
+        {
+            this.path = path;
+            this.position = position;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key that = (Key) o;
+            return position == that.position && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(path, position);
+        }
+    }
+}
@@ -0,0 +1,636 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.Memory;
+
+/**
+ * Key cache that keeps the partition key and the serialized RowIndexEntry of each entry in native memory.
+ *
+ * The sstable Descriptor of a KeyCacheKey is replaced by a compact int id, so the heap cost of an entry is
+ * reduced to a slot in the open-addressed table of one of the lock-striped segments. Each segment evicts
+ * with CLOCK (second chance) once its share of the capacity is used.
+ */
+public class OffHeapKeyCache implements ICache<KeyCacheKey, RowIndexEntry>
+{
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapKeyCache.class);
+
+    private static final int DEFAULT_CONCURENCY_LEVEL = 64;
+
+    // entry layout: [sstable id][key length][key bytes][serialized RowIndexEntry]
+    private static final int HEADER_SIZE = 8;
+    // heap cost of an entry: the Memory object, its table slot, hash and clock bit
+    private static final int ENTRY_OVERHEAD = 48;
+
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final SSTableIds sstables = new SSTableIds();
+    private volatile long capacity;
+
+    private OffHeapKeyCache(long capacity, int concurrencyLevel)
+    {
+        int segmentCount = Integer.highestOneBit(Math.max(1, (concurrencyLevel - 1) << 1));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+            segments[i] = new Segment();
+        segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+        setCapacity(capacity);
+    }
+
+    public static OffHeapKeyCache create(long capacity)
+    {
+        return create(capacity, DEFAULT_CONCURENCY_LEVEL);
+    }
+
+    @VisibleForTesting
+    static OffHeapKeyCache create(long capacity, int concurrencyLevel)
+    {
+        return new OffHeapKeyCache(capacity, concurrencyLevel);
+    }
+
+    public long capacity()
+    {
+        return capacity;
+    }
+
+    public void setCapacity(long capacity)
+    {
+        this.capacity = capacity;
+        long perSegment = capacity / segments.length;
+        for (Segment segment : segments)
+            segment.setCapacity(perSegment);
+    }
+
+    public void put(KeyCacheKey key, RowIndexEntry value)
+    {
+        put(key, value, false);
+    }
+
+    public boolean putIfAbsent(KeyCacheKey key, RowIndexEntry value)
+    {
+        return put(key, value, true);
+    }
+
+    private boolean put(KeyCacheKey key, RowIndexEntry value, boolean onlyIfAbsent)
+    {
+        SSTableId sstable = sstables.acquire(key.desc);
+        Memory mem = serialize(sstable.id, key.key, value);
+        if (mem == null)
+        {
+            // out of memory.  never mind.
+            sstables.release(sstable.id);
+            return false;
+        }
+        int hash = hash(sstable.id, key.key);
+        return segmentFor(hash).put(hash, sstable.id, key.key, mem, onlyIfAbsent);
+    }
+
+    public boolean replace(KeyCacheKey key, RowIndexEntry old, RowIndexEntry value)
+    {
+        SSTableId sstable = sstables.get(key.desc);
+        if (sstable == null)
+            return false;
+
+        byte[] expected = serialize(old);
+        SSTableId acquired = sstables.acquire(key.desc);
+        Memory mem = serialize(acquired.id, key.key, value);
+        if (mem == null || acquired != sstable)
+        {
+            // out of memory, or the sstable id was recycled meanwhile; either way the old entry is gone
+            if (mem != null)
+                mem.free();
+            sstables.release(acquired.id);
+            return false;
+        }
+        int hash = hash(sstable.id, key.key);
+        return segmentFor(hash).replace(hash, sstable.id, key.key, expected, mem);
+    }
+
+    public RowIndexEntry get(KeyCacheKey key)
+    {
+        SSTableId sstable = sstables.get(key.desc);
+        if (sstable == null)
+            return null;
+
+        int hash = hash(sstable.id, key.key);
+        byte[] value = segmentFor(hash).get(hash, sstable.id, key.key);
+        if (value == null)
+            return null;
+
+        try
+        {
+            return RowIndexEntry.serializer.deserialize(new DataInputStream(new ByteArrayInputStream(value)), key.desc.version);
+        }
+        catch (IOException e)
+        {
+            logger.debug("Cannot fetch in memory data, we will failback to read from disk ", e);
+            return null;
+        }
+    }
+
+    public void remove(KeyCacheKey key)
+    {
+        SSTableId sstable = sstables.get(key.desc);
+        if (sstable == null)
+            return;
+
+        int hash = hash(sstable.id, key.key);
+        segmentFor(hash).remove(hash, sstable.id, key.key);
+    }
+
+    public boolean containsKey(KeyCacheKey key)
+    {
+        SSTableId sstable = sstables.get(key.desc);
+        if (sstable == null)
+            return false;
+
+        int hash = hash(sstable.id, key.key);
+        return segmentFor(hash).contains(hash, sstable.id, key.key);
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    public long weightedSize()
+    {
+        long size = 0;
+        for (Segment segment : segments)
+            size += segment.weightedSize();
+        return size;
+    }
+
+    public void clear()
+    {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    public Set<KeyCacheKey> keySet()
+    {
+        Set<KeyCacheKey> keys = new HashSet<KeyCacheKey>();
+        for (Segment segment : segments)
+            segment.collectKeys(keys, Integer.MAX_VALUE, true, true);
+        return keys;
+    }
+
+    /**
+     * CLOCK keeps no exact recency order, so the keys referenced since the hand last passed them come first.
+     */
+    public Set<KeyCacheKey> hotKeySet(int n)
+    {
+        Set<KeyCacheKey> keys = new LinkedHashSet<KeyCacheKey>();
+        for (Segment segment : segments)
+            segment.collectKeys(keys, n, true, false);
+        for (Segment segment : segments)
+            segment.collectKeys(keys, n, false, true);
+        return keys;
+    }
+
+    private Segment segmentFor(int hash)
+    {
+        return segments[segmentShift == 32 ? 0 : hash >>> segmentShift];
+    }
+
+    private static int hash(int sstableId, byte[] key)
+    {
+        // murmur3 finalizer, so that both the segment (high bits) and the slot (low bits) are well spread
+        int h = 31 * sstableId + Arrays.hashCode(key);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static byte[] serialize(RowIndexEntry value)
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        try
+        {
+            RowIndexEntry.serializer.serialize(value, out);
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e);
+        }
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+    private static Memory serialize(int sstableId, byte[] key, RowIndexEntry value)
+    {
+        byte[] serialized = serialize(value);
+        Memory mem;
+        try
+        {
+            mem = Memory.allocate(HEADER_SIZE + key.length + serialized.length);
+        }
+        catch (OutOfMemoryError e)
+        {
+            return null;
+        }
+        mem.setInt(0, sstableId);
+        mem.setInt(4, key.length);
+        mem.setBytes(HEADER_SIZE, key, 0, key.length);
+        mem.setBytes(HEADER_SIZE + key.length, serialized, 0, serialized.length);
+        return mem;
+    }
+
+    private static long weight(Memory mem)
+    {
+        return mem.size() + ENTRY_OVERHEAD;
+    }
+
+    private static byte[] keyOf(Memory mem)
+    {
+        byte[] key = new byte[mem.getInt(4)];
+        mem.getBytes(HEADER_SIZE, key, 0, key.length);
+        return key;
+    }
+
+    private static byte[] valueOf(Memory mem)
+    {
+        int offset = HEADER_SIZE + mem.getInt(4);
+        byte[] value = new byte[(int) mem.size() - offset];
+        mem.getBytes(offset, value, 0, value.length);
+        return value;
+    }
+
+    private static boolean matches(Memory mem, int sstableId, byte[] key)
+    {
+        return mem.getInt(0) == sstableId && mem.getInt(4) == key.length && Arrays.equals(keyOf(mem), key);
+    }
+
+    /**
+     * One lock stripe: a linear-probing table of entries, evicted with a CLOCK hand.
+     * All accesses to the native memory of its entries happen under the segment lock, so an entry
+     * can be freed as soon as it is removed from the table.
+     */
+    private final class Segment
+    {
+        private Memory[] entries = new Memory[INITIAL_SEGMENT_CAPACITY];
+        private int[] hashes = new int[INITIAL_SEGMENT_CAPACITY];
+        private boolean[] referenced = new boolean[INITIAL_SEGMENT_CAPACITY];
+        private int size;
+        private long weightedSize;
+        private long capacity;
+        private int hand;
+
+        synchronized void setCapacity(long capacity)
+        {
+            this.capacity = capacity;
+            evict();
+        }
+
+        synchronized int size()
+        {
+            return size;
+        }
+
+        synchronized long weightedSize()
+        {
+            return weightedSize;
+        }
+
+        synchronized byte[] get(int hash, int sstableId, byte[] key)
+        {
+            int i = find(hash, sstableId, key);
+            if (i < 0)
+                return null;
+            referenced[i] = true;
+            return valueOf(entries[i]);
+        }
+
+        synchronized boolean contains(int hash, int sstableId, byte[] key)
+        {
+            return find(hash, sstableId, key) >= 0;
+        }
+
+        synchronized boolean put(int hash, int sstableId, byte[] key, Memory mem, boolean onlyIfAbsent)
+        {
+            int i = find(hash, sstableId, key);
+            if (i >= 0)
+            {
+                if (onlyIfAbsent)
+                {
+                    discard(mem);
+                    return false;
+                }
+                weightedSize += weight(mem) - weight(entries[i]);
+                discard(entries[i]);
+                entries[i] = mem;
+                referenced[i] = true;
+            }
+            else
+            {
+                if (size + 1 > entries.length * 3 / 4)
+                {
+                    resize();
+                    i = find(hash, sstableId, key);
+                }
+                insert(-1 - i, hash, mem);
+            }
+            evict();
+            return true;
+        }
+
+        synchronized boolean replace(int hash, int sstableId, byte[] key, byte[] expected, Memory mem)
+        {
+            int i = find(hash, sstableId, key);
+            if (i < 0 || !Arrays.equals(valueOf(entries[i]), expected))
+            {
+                discard(mem);
+                return false;
+            }
+            weightedSize += weight(mem) - weight(entries[i]);
+            discard(entries[i]);
+            entries[i] = mem;
+            referenced[i] = true;
+            evict();
+            return true;
+        }
+
+        synchronized void remove(int hash, int sstableId, byte[] key)
+        {
+            int i = find(hash, sstableId, key);
+            if (i >= 0)
+                removeAt(i);
+        }
+
+        synchronized void clear()
+        {
+            for (int i = 0; i < entries.length; i++)
+            {
+                if (entries[i] != null)
+                    discard(entries[i]);
+            }
+            entries = new Memory[INITIAL_SEGMENT_CAPACITY];
+            hashes = new int[INITIAL_SEGMENT_CAPACITY];
+            referenced = new boolean[INITIAL_SEGMENT_CAPACITY];
+            size = 0;
+            weightedSize = 0;
+            hand = 0;
+        }
+
+        synchronized void collectKeys(Set<KeyCacheKey> keys, int limit, boolean includeReferenced, boolean includeUnreferenced)
+        {
+            for (int i = 0; i < entries.length && keys.size() < limit; i++)
+            {
+                if (entries[i] == null || (referenced[i] ? !includeReferenced : !includeUnreferenced))
+                    continue;
+                // the entry holds a reference on its sstable id, so the descriptor is still registered
+                Descriptor desc = sstables.descriptor(entries[i].getInt(0));
+                keys.add(new KeyCacheKey(desc, ByteBuffer.wrap(keyOf(entries[i]))));
+            }
+        }
+
+        /**
+         * @return the slot holding the entry, or -1 - (the empty slot where it would be inserted)
+         */
+        private int find(int hash, int sstableId, byte[] key)
+        {
+            int mask = entries.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask)
+            {
+                Memory mem = entries[i];
+                if (mem == null)
+                    return -1 - i;
+                if (hashes[i] == hash && matches(mem, sstableId, key))
+                    return i;
+            }
+        }
+
+        private void insert(int i, int hash, Memory mem)
+        {
+            entries[i] = mem;
+            hashes[i] = hash;
+            // a new entry gets its second chance too, or the sweep its insertion triggers could evict it first
+            referenced[i] = true;
+            size++;
+            weightedSize += weight(mem);
+        }
+
+        private void resize()
+        {
+            Memory[] oldEntries = entries;
+            int[] oldHashes = hashes;
+            boolean[] oldReferenced = referenced;
+            entries = new Memory[oldEntries.length * 2];
+            hashes = new int[oldEntries.length * 2];
+            referenced = new boolean[oldEntries.length * 2];
+            hand = 0;
+
+            int mask = entries.length - 1;
+            for (int j = 0; j < oldEntries.length; j++)
+            {
+                if (oldEntries[j] == null)
+                    continue;
+                int i = oldHashes[j] & mask;
+                while (entries[i] != null)
+                    i = (i + 1) & mask;
+                entries[i] = oldEntries[j];
+                hashes[i] = oldHashes[j];
+                referenced[i] = oldReferenced[j];
+            }
+        }
+
+        private void evict()
+        {
+            while (weightedSize > capacity && size > 0)
+            {
+                if (entries[hand] == null)
+                {
+                    hand = (hand + 1) & (entries.length - 1);
+                }
+                else if (referenced[hand])
+                {
+                    referenced[hand] = false;
+                    hand = (hand + 1) & (entries.length - 1);
+                }
+                else
+                {
+                    // the hand stays put: the backward shift may have moved another entry into this slot
+                    removeAt(hand);
+                }
+            }
+        }
+
+        /**
+         * Removes the entry at slot i, shifting back the entries of its probe sequence so that no
+         * tombstone is needed.
+         */
+        private void removeAt(int i)
+        {
+            Memory removed = entries[i];
+            size--;
+            weightedSize -= weight(removed);
+
+            int mask = entries.length - 1;
+            int hole = i;
+            for (int j = (i + 1) & mask; entries[j] != null; j = (j + 1) & mask)
+            {
+                int home = hashes[j] & mask;
+                // j can fill the hole unless its home slot lies cyclically in (hole, j]
+                boolean movable = j > hole ? home <= hole || home > j : home <= hole && home > j;
+                if (movable)
+                {
+                    entries[hole] = entries[j];
+                    hashes[hole] = hashes[j];
+                    referenced[hole] = referenced[j];
+                    hole = j;
+                }
+            }
+            entries[hole] = null;
+            referenced[hole] = false;
+            discard(removed);
+        }
+
+        private void discard(Memory mem)
+        {
+            int sstableId = mem.getInt(0);
+            mem.free();
+            sstables.release(sstableId);
+        }
+    }
+
+    /**
+     * Compact ids of the sstables that have entries in the cache.  Each entry holds a reference on its id,
+     * and an id is unregistered when its last entry goes away, so ids of compacted sstables do not pile up.
+     */
+    private static final class SSTableIds
+    {
+        private final ConcurrentMap<Descriptor, SSTableId> byDescriptor = new ConcurrentHashMap<Descriptor, SSTableId>();
+        private final ConcurrentMap<Integer, SSTableId> byId = new ConcurrentHashMap<Integer, SSTableId>();
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        SSTableId get(Descriptor desc)
+        {
+            return byDescriptor.get(desc);
+        }
+
+        Descriptor descriptor(int id)
+        {
+            return byId.get(id).desc;
+        }
+
+        /**
+         * @return the id of @param desc, referenced once more
+         */
+        SSTableId acquire(Descriptor desc)
+        {
+            while (true)
+            {
+                SSTableId current = byDescriptor.get(desc);
+                if (current == null)
+                {
+                    SSTableId created = register(desc);
+                    if (byDescriptor.putIfAbsent(desc, created) == null)
+                        return created;
+                    byId.remove(created.id);
+                }
+                else if (current.reference())
+                {
+                    return current;
+                }
+                else
+                {
+                    // its last entry was just removed; don't wait for release() to unregister it
+                    byDescriptor.remove(desc, current);
+                }
+            }
+        }
+
+        void release(int id)
+        {
+            SSTableId sstable = byId.get(id);
+            if (sstable.unreference())
+            {
+                byDescriptor.remove(sstable.desc, sstable);
+                byId.remove(id);
+            }
+        }
+
+        private SSTableId register(Descriptor desc)
+        {
+            while (true)
+            {
+                // ids can wrap around on a long-running node; skip those still in use
+                SSTableId created = new SSTableId(nextId.getAndIncrement(), desc);
+                if (byId.putIfAbsent(created.id, created) == null)
+                    return created;
+            }
+        }
+    }
+
+    private static final class SSTableId
+    {
+        final int id;
+        final Descriptor desc;
+        // number of cache entries using this id (plus the pending put when created)
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        SSTableId(int id, Descriptor desc)
+        {
+            this.id = id;
+            this.desc = desc;
+        }
+
+        boolean reference()
+        {
+            while (true)
+            {
+                int n = references.get();
+                if (n <= 0)
+                    return false;
+                if (references.compareAndSet(n, n + 1))
+                    return true;
+            }
+        }
+
+        boolean unreference()
+        {
+            return references.decrementAndGet() == 0;
+        }
+    }
+}
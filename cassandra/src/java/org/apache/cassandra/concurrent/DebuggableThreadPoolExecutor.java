@@ -138,6 +138,11 @@ public class DebuggableThreadPoolExecutor extends ThreadPoolExecutor implements
                       : new TraceSessionWrapper<Object>(command, state));
     }
 
+    public void maybeExecuteImmediately(Runnable command)
+    {
+        execute(command);
+    }
+
     // execute does not call newTaskFor
     @Override
     public void execute(Runnable command)
@@ -259,7 +264,7 @@ public class DebuggableThreadPoolExecutor extends ThreadPoolExecutor implements
      *
      * @param <T>
      */
-    private static class TraceSessionWrapper<T> extends FutureTask<T>
+    static class TraceSessionWrapper<T> extends FutureTask<T>
     {
         private final TraceState state;
 
@@ -275,12 +280,12 @@ public class DebuggableThreadPoolExecutor extends ThreadPoolExecutor implements
             this.state = state;
         }
 
-        private void setupContext()
+        void setupContext()
         {
             Tracing.instance.set(state);
         }
 
-        private void reset()
+        void reset()
         {
             Tracing.instance.set(null);
         }
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.concurrent;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * A pool of worker threads shared by the SharedPoolExecutors of several stages, so that handing a request
+ * from one stage to the next does not go through the queue lock of a ThreadPoolExecutor, nor always wake
+ * up a thread dedicated to the next stage.
+ *
+ * Each executor keeps its own queue and its own limit on concurrently running tasks (its work permits);
+ * workers take a permit and a task from any executor that has both.  Idle workers spin for a short while
+ * looking for work before parking, and submitters only unpark a worker if none is spinning.  Workers are
+ * started on demand and terminate after staying parked for KEEPALIVE seconds.
+ */
+public class SharedExecutorPool
+{
+    public static final SharedExecutorPool SHARED = new SharedExecutorPool("SharedPool-Worker");
+
+    // how long an idle worker keeps looking for work before parking
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    // how long a parked worker waits for work before terminating
+    private static final long KEEPALIVE_NANOS = TimeUnit.SECONDS.toNanos(StageManager.KEEPALIVE);
+
+    private final NamedThreadFactory threadFactory;
+    final List<SharedPoolExecutor> executors = new CopyOnWriteArrayList<SharedPoolExecutor>();
+
+    // most recently parked first, as their caches are the warmest
+    private final Deque<Worker> parked = new ConcurrentLinkedDeque<Worker>();
+    private final AtomicInteger spinning = new AtomicInteger();
+    private final AtomicInteger workers = new AtomicInteger();
+    private final int maxSpinning = Math.max(1, FBUtilities.getAvailableProcessors() / 4);
+
+    public SharedExecutorPool(String threadPoolName)
+    {
+        threadFactory = new NamedThreadFactory(threadPoolName);
+    }
+
+    /**
+     * @param maxConcurrency the maximum number of tasks of the new executor running at once
+     * @param maxQueuedTasks the number of tasks queued before submitters block
+     */
+    public SharedPoolExecutor newExecutor(int maxConcurrency, int maxQueuedTasks, String jmxPath, String name)
+    {
+        SharedPoolExecutor executor = new SharedPoolExecutor(this, maxConcurrency, maxQueuedTasks, jmxPath, name);
+        executors.add(executor);
+        return executor;
+    }
+
+    /**
+     * Makes sure a worker will look for the task that was just queued or made runnable: a spinning worker
+     * will find it by itself, otherwise a parked worker is woken up, or a new one started.
+     */
+    void schedule()
+    {
+        if (spinning.get() > 0)
+            return;
+
+        Worker worker;
+        while ((worker = parked.pollFirst()) != null)
+        {
+            if (worker.unpark())
+                return;
+        }
+
+        // if every worker we may need is running a task, one of them will pick the task up when it is done
+        int max = maxWorkers();
+        while (true)
+        {
+            int current = workers.get();
+            if (current >= max)
+                return;
+            if (workers.compareAndSet(current, current + 1))
+                break;
+        }
+        threadFactory.newThread(new Worker()).start();
+    }
+
+    public int getWorkerCount()
+    {
+        return workers.get();
+    }
+
+    private int maxWorkers()
+    {
+        long max = 0;
+        for (SharedPoolExecutor executor : executors)
+            max += executor.getMaximumThreads();
+        return (int) Math.min(Integer.MAX_VALUE, max);
+    }
+
+    private boolean hasWork()
+    {
+        for (SharedPoolExecutor executor : executors)
+        {
+            if (executor.hasWork())
+                return true;
+        }
+        return false;
+    }
+
+    private final class Worker implements Runnable
+    {
+        private final AtomicBoolean isParked = new AtomicBoolean();
+        private volatile Thread thread;
+        // index of the executor to look at first; the last one we found work in
+        private int next;
+
+        public void run()
+        {
+            thread = Thread.currentThread();
+            while (true)
+            {
+                if (runTask() || spin())
+                    continue;
+
+                if (!park())
+                    break;
+            }
+            workers.decrementAndGet();
+            // a task may have been queued while we decided to terminate
+            if (hasWork())
+                schedule();
+        }
+
+        /**
+         * @return true if a task was found, and run
+         */
+        private boolean runTask()
+        {
+            List<SharedPoolExecutor> snapshot = executors;
+            int size = snapshot.size();
+            for (int i = 0; i < size; i++)
+            {
+                int index = (next + i) % size;
+                SharedPoolExecutor executor;
+                try
+                {
+                    executor = snapshot.get(index);
+                }
+                catch (IndexOutOfBoundsException e)
+                {
+                    return false; // an executor was removed meanwhile; look again
+                }
+
+                Runnable task = executor.takeTask();
+                if (task == null)
+                    continue;
+
+                next = index;
+                // wake up another worker for the rest of the queue, so that a burst of tasks is not run one at a time
+                if (executor.hasWork())
+                    schedule();
+                executor.run(task);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return true if work showed up while spinning
+         */
+        private boolean spin()
+        {
+            if (spinning.incrementAndGet() > maxSpinning)
+            {
+                spinning.decrementAndGet();
+                return false;
+            }
+
+            try
+            {
+                long deadline = System.nanoTime() + SPIN_NANOS;
+                while (System.nanoTime() < deadline)
+                {
+                    if (hasWork())
+                        return true;
+                    Thread.yield();
+                }
+                return false;
+            }
+            finally
+            {
+                spinning.decrementAndGet();
+            }
+        }
+
+        /**
+         * @return false if the worker stayed parked for KEEPALIVE, and should terminate
+         */
+        private boolean park()
+        {
+            isParked.set(true);
+            parked.addFirst(this);
+            // submitters don't wake anybody up while a worker spins, so look again once we are visible as parked
+            if (hasWork() && cancelPark())
+                return true;
+
+            long deadline = System.nanoTime() + KEEPALIVE_NANOS;
+            while (isParked.get())
+            {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 && cancelPark())
+                    return false;
+                LockSupport.parkNanos(this, Math.max(remaining, 0));
+            }
+            return true;
+        }
+
+        private boolean cancelPark()
+        {
+            if (!isParked.compareAndSet(true, false))
+                return false; // a submitter is waking us up
+            parked.remove(this);
+            return true;
+        }
+
+        private boolean unpark()
+        {
+            if (!isParked.compareAndSet(true, false))
+                return false; // the worker is not parked anymore
+            LockSupport.unpark(thread);
+            return true;
+        }
+    }
+}
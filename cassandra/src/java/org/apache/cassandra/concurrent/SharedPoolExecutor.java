@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor.TraceSessionWrapper;
+import org.apache.cassandra.metrics.ThreadPoolMetrics;
+import org.apache.cassandra.tracing.TraceState;
+import org.apache.cassandra.utils.SimpleCondition;
+
+import static org.apache.cassandra.tracing.Tracing.isTracing;
+
+/**
+ * A stage executor whose tasks are run by the workers of a SharedExecutorPool.  It keeps its own queue,
+ * its own limit of concurrently running tasks, and the same MBean and ThreadPoolMetrics as a
+ * JMXEnabledThreadPoolExecutor.  Like DebuggableThreadPoolExecutor, it carries the trace state of
+ * submitters over to the task, and submitters block once maxQueuedTasks are waiting.
+ */
+public class SharedPoolExecutor extends AbstractExecutorService implements TracingAwareExecutorService, SharedPoolExecutorMBean
+{
+    private final SharedExecutorPool pool;
+    private final String mbeanName;
+    public final ThreadPoolMetrics metrics;
+
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    // null if the queue is unbounded
+    private final Semaphore queueSpace;
+    private volatile int maxConcurrency;
+    // work permits taken, i.e. tasks currently running
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    private volatile boolean shutdown;
+    private final SimpleCondition terminated = new SimpleCondition();
+
+    SharedPoolExecutor(SharedExecutorPool pool, int maxConcurrency, int maxQueuedTasks, String jmxPath, String name)
+    {
+        this.pool = pool;
+        this.maxConcurrency = maxConcurrency;
+        this.queueSpace = maxQueuedTasks == Integer.MAX_VALUE ? null : new Semaphore(maxQueuedTasks);
+
+        metrics = new ThreadPoolMetrics(this, jmxPath, name);
+
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        mbeanName = "org.apache.cassandra." + jmxPath + ":type=" + name;
+
+        try
+        {
+            mbs.registerMBean(this, new ObjectName(mbeanName));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void execute(Runnable command)
+    {
+        addTask(isTracing() && !(command instanceof TraceSessionWrapper)
+                ? new TraceSessionWrapper<Object>(Executors.callable(command, null))
+                : command);
+    }
+
+    public void execute(Runnable command, TraceState state)
+    {
+        addTask(state == null || command instanceof TraceSessionWrapper
+                ? command
+                : new TraceSessionWrapper<Object>(command, state));
+    }
+
+    public void maybeExecuteImmediately(Runnable command)
+    {
+        if (shutdown || !takePermit())
+        {
+            execute(command);
+            return;
+        }
+
+        try
+        {
+            command.run();
+        }
+        catch (Throwable t)
+        {
+            DebuggableThreadPoolExecutor.handleOrLog(t);
+        }
+        finally
+        {
+            completed.incrementAndGet();
+            returnPermit();
+            // a task queued while we held the permit may have found no worker able to run it
+            if (hasWork())
+                pool.schedule();
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T result)
+    {
+        if (isTracing() && !(runnable instanceof TraceSessionWrapper))
+            return new TraceSessionWrapper<T>(Executors.callable(runnable, result));
+        return super.newTaskFor(runnable, result);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable)
+    {
+        if (isTracing() && !(callable instanceof TraceSessionWrapper))
+            return new TraceSessionWrapper<T>(callable);
+        return super.newTaskFor(callable);
+    }
+
+    private void addTask(Runnable task)
+    {
+        if (shutdown)
+            throw new RejectedExecutionException("SharedPoolExecutor has shut down");
+
+        if (queueSpace != null && !queueSpace.tryAcquire())
+        {
+            metrics.totalBlocked.inc();
+            metrics.currentBlocked.inc();
+            queueSpace.acquireUninterruptibly();
+            metrics.currentBlocked.dec();
+        }
+
+        pending.incrementAndGet();
+        tasks.add(task);
+        pool.schedule();
+    }
+
+    /**
+     * @return true if a task is queued and a work permit is available to run it
+     */
+    boolean hasWork()
+    {
+        return !tasks.isEmpty() && running.get() < maxConcurrency;
+    }
+
+    /**
+     * Takes a work permit and a task to run with it, to be given back through run().
+     *
+     * @return null if there is no task, or no permit available
+     */
+    Runnable takeTask()
+    {
+        while (!tasks.isEmpty() && takePermit())
+        {
+            Runnable task = tasks.poll();
+            if (task != null)
+            {
+                pending.decrementAndGet();
+                if (queueSpace != null)
+                    queueSpace.release();
+                return task;
+            }
+            // another worker took the last task; look again, as a task queued meanwhile may have found no permit
+            returnPermit();
+        }
+        return null;
+    }
+
+    void run(Runnable task)
+    {
+        Throwable failure = null;
+        try
+        {
+            if (task instanceof TraceSessionWrapper)
+                ((TraceSessionWrapper) task).setupContext();
+            task.run();
+        }
+        catch (Throwable t)
+        {
+            failure = t;
+        }
+        finally
+        {
+            // we have to reset trace state as its presence is what denotes the current thread is tracing
+            // and if left this thread might start tracing unrelated tasks
+            if (task instanceof TraceSessionWrapper)
+                ((TraceSessionWrapper) task).reset();
+            completed.incrementAndGet();
+            returnPermit();
+        }
+
+        // unlike a ThreadPoolExecutor thread, a worker does not die with the task
+        DebuggableThreadPoolExecutor.logExceptionsAfterExecute(task, null);
+        if (failure != null)
+            DebuggableThreadPoolExecutor.handleOrLog(failure);
+    }
+
+    private boolean takePermit()
+    {
+        while (true)
+        {
+            int current = running.get();
+            if (current >= maxConcurrency)
+                return false;
+            if (running.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    private void returnPermit()
+    {
+        running.decrementAndGet();
+        if (shutdown)
+            maybeTerminate();
+    }
+
+    private void maybeTerminate()
+    {
+        if (tasks.isEmpty() && running.get() == 0 && !terminated.isSignaled())
+        {
+            terminated.signalAll();
+            pool.executors.remove(this);
+        }
+    }
+
+    public synchronized void shutdown()
+    {
+        if (!shutdown)
+        {
+            shutdown = true;
+            unregisterMBean();
+        }
+        maybeTerminate();
+    }
+
+    public synchronized List<Runnable> shutdownNow()
+    {
+        shutdown();
+
+        List<Runnable> aborted = new ArrayList<Runnable>();
+        Runnable task;
+        while ((task = tasks.poll()) != null)
+        {
+            pending.decrementAndGet();
+            if (queueSpace != null)
+                queueSpace.release();
+            aborted.add(task);
+        }
+        maybeTerminate();
+        return aborted;
+    }
+
+    public boolean isShutdown()
+    {
+        return shutdown;
+    }
+
+    public boolean isTerminated()
+    {
+        return terminated.isSignaled();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return terminated.await(timeout, unit);
+    }
+
+    private void unregisterMBean()
+    {
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(mbeanName));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        // release metrics
+        metrics.release();
+    }
+
+    public int getActiveCount()
+    {
+        return running.get();
+    }
+
+    public long getCompletedTasks()
+    {
+        return completed.get();
+    }
+
+    public long getPendingTasks()
+    {
+        return pending.get();
+    }
+
+    public int getTotalBlockedTasks()
+    {
+        return (int) metrics.totalBlocked.count();
+    }
+
+    public int getCurrentlyBlockedTasks()
+    {
+        return (int) metrics.currentBlocked.count();
+    }
+
+    public int getCoreThreads()
+    {
+        return maxConcurrency;
+    }
+
+    public void setCoreThreads(int number)
+    {
+        setMaximumThreads(number);
+    }
+
+    public int getMaximumThreads()
+    {
+        return maxConcurrency;
+    }
+
+    public void setMaximumThreads(int number)
+    {
+        maxConcurrency = number;
+        // queued tasks may be able to run now
+        if (hasWork())
+            pool.schedule();
+    }
+}
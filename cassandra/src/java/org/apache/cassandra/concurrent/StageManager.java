@@ -47,11 +47,12 @@ public class StageManager
 
     static
     {
-        stages.put(Stage.MUTATION, multiThreadedConfigurableStage(Stage.MUTATION, getConcurrentWriters()));
-        stages.put(Stage.READ, multiThreadedConfigurableStage(Stage.READ, getConcurrentReaders()));
-        stages.put(Stage.REQUEST_RESPONSE, multiThreadedStage(Stage.REQUEST_RESPONSE, FBUtilities.getAvailableProcessors()));
+        // the request path stages share their threads, see SharedExecutorPool
+        stages.put(Stage.MUTATION, sharedStage(Stage.MUTATION, getConcurrentWriters(), Integer.MAX_VALUE));
+        stages.put(Stage.READ, sharedStage(Stage.READ, getConcurrentReaders(), Integer.MAX_VALUE));
+        stages.put(Stage.REQUEST_RESPONSE, sharedStage(Stage.REQUEST_RESPONSE, FBUtilities.getAvailableProcessors(), Integer.MAX_VALUE));
         stages.put(Stage.INTERNAL_RESPONSE, multiThreadedStage(Stage.INTERNAL_RESPONSE, FBUtilities.getAvailableProcessors()));
-        stages.put(Stage.REPLICATE_ON_WRITE, multiThreadedConfigurableStage(Stage.REPLICATE_ON_WRITE, getConcurrentReplicators(), MAX_REPLICATE_ON_WRITE_TASKS));
+        stages.put(Stage.REPLICATE_ON_WRITE, sharedStage(Stage.REPLICATE_ON_WRITE, getConcurrentReplicators(), MAX_REPLICATE_ON_WRITE_TASKS));
         // the rest are all single-threaded
         stages.put(Stage.GOSSIP, new JMXEnabledThreadPoolExecutor(Stage.GOSSIP));
         stages.put(Stage.ANTI_ENTROPY, new JMXEnabledThreadPoolExecutor(Stage.ANTI_ENTROPY));
@@ -79,6 +80,11 @@ public class StageManager
                                        reh);
     }
 
+    private static SharedPoolExecutor sharedStage(Stage stage, int numThreads, int maxTasksBeforeBlock)
+    {
+        return SharedExecutorPool.SHARED.newExecutor(numThreads, maxTasksBeforeBlock, stage.getJmxType(), stage.getJmxName());
+    }
+
     private static JMXEnabledThreadPoolExecutor multiThreadedStage(Stage stage, int numThreads)
     {
         return new JMXEnabledThreadPoolExecutor(numThreads,
@@ -89,26 +95,6 @@ public class StageManager
                                                 stage.getJmxType());
     }
 
-    private static JMXConfigurableThreadPoolExecutor multiThreadedConfigurableStage(Stage stage, int numThreads)
-    {
-        return new JMXConfigurableThreadPoolExecutor(numThreads,
-                                                     KEEPALIVE,
-                                                     TimeUnit.SECONDS,
-                                                     new LinkedBlockingQueue<Runnable>(),
-                                                     new NamedThreadFactory(stage.getJmxName()),
-                                                     stage.getJmxType());
-    }
-
-    private static JMXConfigurableThreadPoolExecutor multiThreadedConfigurableStage(Stage stage, int numThreads, int maxTasksBeforeBlock)
-    {
-        return new JMXConfigurableThreadPoolExecutor(numThreads,
-                                                     KEEPALIVE,
-                                                     TimeUnit.SECONDS,
-                                                     new LinkedBlockingQueue<Runnable>(maxTasksBeforeBlock),
-                                                     new NamedThreadFactory(stage.getJmxName()),
-                                                     stage.getJmxType());
-    }
-
     /**
      * Retrieve a stage from the StageManager
      * @param stage name of the stage to be retrieved.
@@ -146,6 +132,11 @@ public class StageManager
             super.execute(command);
         }
 
+        public void maybeExecuteImmediately(Runnable command)
+        {
+            execute(command);
+        }
+
         @Override
         public Future<?> submit(Runnable task)
         {
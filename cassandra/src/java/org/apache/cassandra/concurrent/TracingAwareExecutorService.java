@@ -30,4 +30,10 @@ public interface TracingAwareExecutorService extends ExecutorService
     // we need a way to inject a TraceState directly into the Executor context without going through
     // the global Tracing sessions; see CASSANDRA-5668
     public void execute(Runnable command, TraceState state);
+
+    /**
+     * Runs @param command on the calling thread if the executor can run one more task right now, saving
+     * the handoff to another thread; executes it as usual otherwise.
+     */
+    public void maybeExecuteImmediately(Runnable command);
 }
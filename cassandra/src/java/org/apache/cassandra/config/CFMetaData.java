@@ -79,6 +79,7 @@ public final class CFMetaData
     public final static int DEFAULT_MAX_COMPACTION_THRESHOLD = 32;
     public final static Class<? extends AbstractCompactionStrategy> DEFAULT_COMPACTION_STRATEGY_CLASS = SizeTieredCompactionStrategy.class;
     public final static Caching DEFAULT_CACHING_STRATEGY = Caching.KEYS_ONLY;
+    public final static int DEFAULT_ROWS_PER_PARTITION_TO_CACHE = Integer.MAX_VALUE;
     public final static int DEFAULT_DEFAULT_TIME_TO_LIVE = 0;
     public final static SpeculativeRetry DEFAULT_SPECULATIVE_RETRY = new SpeculativeRetry(SpeculativeRetry.RetryType.PERCENTILE, 0.99);
     public final static int DEFAULT_INDEX_INTERVAL = 128;
@@ -134,6 +135,7 @@ public final class CFMetaData
                                                                     + "key_aliases text,"
                                                                     + "bloom_filter_fp_chance double,"
                                                                     + "caching text,"
+                                                                    + "rows_per_partition_to_cache int,"
                                                                     + "default_time_to_live int,"
                                                                     + "compaction_strategy_class text,"
                                                                     + "compression_parameters text,"
@@ -398,6 +400,7 @@ public final class CFMetaData
     private volatile int maxCompactionThreshold = DEFAULT_MAX_COMPACTION_THRESHOLD;
     private volatile Double bloomFilterFpChance = null;
     private volatile Caching caching = DEFAULT_CACHING_STRATEGY;
+    private volatile int rowsPerPartitionToCache = DEFAULT_ROWS_PER_PARTITION_TO_CACHE;
     private volatile int indexInterval = DEFAULT_INDEX_INTERVAL;
     private int memtableFlushPeriod = 0;
     private volatile int defaultTimeToLive = DEFAULT_DEFAULT_TIME_TO_LIVE;
@@ -443,6 +446,7 @@ public final class CFMetaData
     public CFMetaData compressionParameters(CompressionParameters prop) {compressionParameters = prop; return this;}
     public CFMetaData bloomFilterFpChance(Double prop) {bloomFilterFpChance = prop; return this;}
     public CFMetaData caching(Caching prop) {caching = prop; return this;}
+    public CFMetaData rowsPerPartitionToCache(int prop) {rowsPerPartitionToCache = prop; return this;}
     public CFMetaData indexInterval(int prop) {indexInterval = prop; return this;}
     public CFMetaData memtableFlushPeriod(int prop) {memtableFlushPeriod = prop; return this;}
     public CFMetaData defaultTimeToLive(int prop) {defaultTimeToLive = prop; return this;}
@@ -595,6 +599,7 @@ public final class CFMetaData
                       .compressionParameters(oldCFMD.compressionParameters.copy())
                       .bloomFilterFpChance(oldCFMD.bloomFilterFpChance)
                       .caching(oldCFMD.caching)
+                      .rowsPerPartitionToCache(oldCFMD.rowsPerPartitionToCache)
                       .defaultTimeToLive(oldCFMD.defaultTimeToLive)
                       .indexInterval(oldCFMD.indexInterval)
                       .speculativeRetry(oldCFMD.speculativeRetry)
@@ -789,6 +794,20 @@ public final class CFMetaData
         return caching;
     }
 
+    /**
+     * @return the number of CQL rows at the head of a partition that the row cache keeps; the whole
+     * partition is cached if it has no more rows than that
+     */
+    public int getRowsPerPartitionToCache()
+    {
+        return rowsPerPartitionToCache;
+    }
+
+    public boolean cachesWholePartitions()
+    {
+        return rowsPerPartitionToCache == DEFAULT_ROWS_PER_PARTITION_TO_CACHE;
+    }
+
     public int getIndexInterval()
     {
         return indexInterval;
@@ -848,6 +867,7 @@ public final class CFMetaData
             .append(bloomFilterFpChance, rhs.bloomFilterFpChance)
             .append(memtableFlushPeriod, rhs.memtableFlushPeriod)
             .append(caching, rhs.caching)
+            .append(rowsPerPartitionToCache, rhs.rowsPerPartitionToCache)
             .append(defaultTimeToLive, rhs.defaultTimeToLive)
             .append(indexInterval, rhs.indexInterval)
             .append(speculativeRetry, rhs.speculativeRetry)
@@ -881,6 +901,7 @@ public final class CFMetaData
             .append(bloomFilterFpChance)
             .append(memtableFlushPeriod)
             .append(caching)
+            .append(rowsPerPartitionToCache)
             .append(defaultTimeToLive)
             .append(indexInterval)
             .append(speculativeRetry)
@@ -1081,6 +1102,7 @@ public final class CFMetaData
         bloomFilterFpChance = cfm.bloomFilterFpChance;
         memtableFlushPeriod = cfm.memtableFlushPeriod;
         caching = cfm.caching;
+        rowsPerPartitionToCache = cfm.rowsPerPartitionToCache;
         defaultTimeToLive = cfm.defaultTimeToLive;
         speculativeRetry = cfm.speculativeRetry;
         populateIoCacheOnFlush = cfm.populateIoCacheOnFlush;
@@ -1593,6 +1615,7 @@ public final class CFMetaData
                                                  : Column.create(bloomFilterFpChance, timestamp, cfName, "bloom_filter_fp_chance"));
         cf.addColumn(Column.create(memtableFlushPeriod, timestamp, cfName, "memtable_flush_period_in_ms"));
         cf.addColumn(Column.create(caching.toString(), timestamp, cfName, "caching"));
+        cf.addColumn(Column.create(rowsPerPartitionToCache, timestamp, cfName, "rows_per_partition_to_cache"));
         cf.addColumn(Column.create(defaultTimeToLive, timestamp, cfName, "default_time_to_live"));
         cf.addColumn(Column.create(compactionStrategyClass.getName(), timestamp, cfName, "compaction_strategy_class"));
         cf.addColumn(Column.create(json(compressionParameters.asThriftOptions()), timestamp, cfName, "compression_parameters"));
@@ -1636,6 +1659,8 @@ public final class CFMetaData
             if (result.has("memtable_flush_period_in_ms"))
                 cfm.memtableFlushPeriod(result.getInt("memtable_flush_period_in_ms"));
             cfm.caching(Caching.valueOf(result.getString("caching")));
+            if (result.has("rows_per_partition_to_cache"))
+                cfm.rowsPerPartitionToCache(result.getInt("rows_per_partition_to_cache"));
             if (result.has("default_time_to_live"))
                 cfm.defaultTimeToLive(result.getInt("default_time_to_live"));
             if (result.has("speculative_retry"))
@@ -2136,6 +2161,7 @@ public final class CFMetaData
             .append("bloomFilterFpChance", bloomFilterFpChance)
             .append("memtable_flush_period_in_ms", memtableFlushPeriod)
             .append("caching", caching)
+            .append("rowsPerPartitionToCache", rowsPerPartitionToCache)
             .append("defaultTimeToLive", defaultTimeToLive)
             .append("speculative_retry", speculativeRetry)
             .append("indexInterval", indexInterval)
@@ -110,11 +110,16 @@ public class Config
     public Integer column_index_size_in_kb = 64;
     public Integer in_memory_compaction_limit_in_mb = 64;
     public Integer concurrent_compactors = FBUtilities.getAvailableProcessors();
+    public Integer compaction_subranges = 1;
+    public Integer compaction_subrange_min_size_in_mb = 1024;
+    public Integer validation_subranges = 1;
+    public RepairRowHash repair_row_hash = RepairRowHash.sha256;
     public volatile Integer compaction_throughput_mb_per_sec = 16;
 
     public Integer max_streaming_retries = 3;
 
     public volatile Integer stream_throughput_outbound_megabits_per_sec = 200;
+    public boolean stream_entire_sstables = false;
 
     public String[] data_file_directories;
 
@@ -125,8 +130,10 @@ public class Config
     public Integer commitlog_total_space_in_mb;
     public CommitLogSync commitlog_sync;
     public Double commitlog_sync_batch_window_in_ms;
+    public Double commitlog_sync_group_window_in_ms;
     public Integer commitlog_sync_period_in_ms;
     public int commitlog_segment_size_in_mb = 32;
+    public String commitlog_compression;
     public int commitlog_periodic_queue_size = 1024 * FBUtilities.getAvailableProcessors();
 
     public String endpoint_snitch;
@@ -151,6 +158,8 @@ public class Config
 
     public int hinted_handoff_throttle_in_kb = 1024;
     public int max_hints_delivery_threads = 1;
+    public String hints_directory;
+    public int max_hints_file_size_in_mb = 128;
     public boolean compaction_preheat_key_cache = true;
 
     public volatile boolean incremental_backups = false;
@@ -161,6 +170,7 @@ public class Config
     public Long key_cache_size_in_mb = null;
     public volatile int key_cache_save_period = 14400;
     public int key_cache_keys_to_save = Integer.MAX_VALUE;
+    public boolean key_cache_off_heap = false;
 
     public long row_cache_size_in_mb = 0;
     public volatile int row_cache_save_period = 0;
@@ -174,8 +184,18 @@ public class Config
 
     public Integer file_cache_size_in_mb;
 
+    public Integer chunk_cache_size_in_mb;
+
+    public boolean blocked_bloom_filters = false;
+
     public boolean inter_dc_tcp_nodelay = true;
 
+    public InternodeTransport internode_transport = InternodeTransport.blocking;
+    public Integer internode_transport_event_loops;
+
+    public CoalescingStrategy internode_coalescing_strategy = CoalescingStrategy.disabled;
+    public int internode_coalescing_window_in_us = 200;
+
     public String memtable_allocator = "SlabAllocator";
 
     private static boolean outboundBindAny = false;
@@ -209,7 +229,8 @@ public class Config
     public static enum CommitLogSync
     {
         periodic,
-        batch
+        batch,
+        group
     }
 
     public static enum InternodeCompression
@@ -217,6 +238,21 @@ public class Config
         all, none, dc
     }
 
+    public static enum InternodeTransport
+    {
+        blocking, netty
+    }
+
+    public static enum RepairRowHash
+    {
+        sha256, murmur3
+    }
+
+    public static enum CoalescingStrategy
+    {
+        disabled, fixed, movingaverage
+    }
+
     public static enum DiskAccessMode
     {
         auto,
@@ -39,6 +39,8 @@ import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.sstable.IndexSummaryManager;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.IAllocator;
@@ -94,6 +96,8 @@ public class DatabaseDescriptor
 
     private static Class<? extends Allocator> memtableAllocator;
 
+    private static ICompressor commitLogCompressor;
+
     static
     {
         // In client mode, we use a default configuration. Note that the fields of this class will be
@@ -160,6 +164,18 @@ public class DatabaseDescriptor
             }
             logger.debug("Syncing log with a batch window of {}", conf.commitlog_sync_batch_window_in_ms);
         }
+        else if (conf.commitlog_sync == Config.CommitLogSync.group)
+        {
+            if (conf.commitlog_sync_group_window_in_ms == null)
+            {
+                throw new ConfigurationException("Missing value for commitlog_sync_group_window_in_ms: Double expected.");
+            }
+            else if (conf.commitlog_sync_period_in_ms != null || conf.commitlog_sync_batch_window_in_ms != null)
+            {
+                throw new ConfigurationException("Group sync specified, but commitlog_sync_period_in_ms or commitlog_sync_batch_window_in_ms found. Only specify commitlog_sync_group_window_in_ms when using group sync");
+            }
+            logger.debug("Syncing log with a group window of {}", conf.commitlog_sync_group_window_in_ms);
+        }
         else
         {
             if (conf.commitlog_sync_period_in_ms == null)
@@ -176,6 +192,12 @@ public class DatabaseDescriptor
         if (conf.commitlog_total_space_in_mb == null)
             conf.commitlog_total_space_in_mb = System.getProperty("os.arch").contains("64") ? 1024 : 32;
 
+        commitLogCompressor = new CompressionParameters(conf.commitlog_compression, null, Collections.<String, String>emptyMap()).sstableCompressor;
+        if (commitLogCompressor != null)
+        {
+            logger.info("Compressing commit log segments with {}", commitLogCompressor.getClass().getSimpleName());
+        }
+
         /* evaluate the DiskAccessMode Config directive, which also affects indexAccessMode selection */
         if (conf.disk_access_mode == Config.DiskAccessMode.auto)
         {
@@ -256,6 +278,11 @@ public class DatabaseDescriptor
         if (conf.file_cache_size_in_mb == null)
             conf.file_cache_size_in_mb = Math.min(512, (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576)));
 
+        if (conf.chunk_cache_size_in_mb == null)
+            conf.chunk_cache_size_in_mb = 0;
+        else if (conf.chunk_cache_size_in_mb < 0)
+            throw new ConfigurationException("chunk_cache_size_in_mb must not be negative");
+
         if (conf.memtable_total_space_in_mb == null)
             conf.memtable_total_space_in_mb = (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576));
         if (conf.memtable_total_space_in_mb <= 0)
@@ -404,6 +431,21 @@ public class DatabaseDescriptor
         if (conf.concurrent_compactors <= 0)
             throw new ConfigurationException("concurrent_compactors should be strictly greater than 0");
 
+        if (conf.internode_transport_event_loops == null)
+            conf.internode_transport_event_loops = Math.min(4, FBUtilities.getAvailableProcessors());
+
+        if (conf.internode_transport_event_loops <= 0)
+            throw new ConfigurationException("internode_transport_event_loops should be strictly greater than 0");
+
+        if (conf.compaction_subranges <= 0)
+            throw new ConfigurationException("compaction_subranges should be strictly greater than 0");
+
+        if (conf.compaction_subrange_min_size_in_mb < 0)
+            throw new ConfigurationException("compaction_subrange_min_size_in_mb must not be negative");
+
+        if (conf.validation_subranges <= 0)
+            throw new ConfigurationException("validation_subranges should be strictly greater than 0");
+
         /* data file and commit log directories. they get created later, when they're needed. */
         if (conf.commitlog_directory != null && conf.data_file_directories != null && conf.saved_caches_directory != null)
         {
@@ -428,6 +470,22 @@ public class DatabaseDescriptor
                 throw new ConfigurationException("saved_caches_directory missing");
         }
 
+        // hints are kept next to the commit log unless configured otherwise
+        if (conf.hints_directory == null)
+            conf.hints_directory = new File(new File(conf.commitlog_directory).getAbsoluteFile().getParentFile(), "hints").getPath();
+        if (conf.hints_directory.equals(conf.commitlog_directory))
+            throw new ConfigurationException("hints_directory must not be the same as the commitlog_directory");
+        if (conf.hints_directory.equals(conf.saved_caches_directory))
+            throw new ConfigurationException("hints_directory must not be the same as the saved_caches_directory");
+        for (String datadir : conf.data_file_directories)
+        {
+            if (datadir.equals(conf.hints_directory))
+                throw new ConfigurationException("hints_directory must not be the same as any data_file_directories");
+        }
+
+        if (conf.max_hints_file_size_in_mb <= 0)
+            throw new ConfigurationException("max_hints_file_size_in_mb should be strictly greater than 0");
+
         if (conf.initial_token != null)
             for (String token : tokensFromString(conf.initial_token))
                 partitioner.getTokenFactory().validate(token);
@@ -602,6 +660,8 @@ public class DatabaseDescriptor
                 throw new ConfigurationException("saved_caches_directory must be specified");
 
             FileUtils.createDirectory(conf.saved_caches_directory);
+
+            FileUtils.createDirectory(conf.hints_directory);
         }
         catch (ConfigurationException e)
         {
@@ -825,6 +885,7 @@ public class DatabaseDescriptor
                 return getTruncateRpcTimeout();
             case READ_REPAIR:
             case MUTATION:
+            case MUTATION_BATCH:
                 return getWriteRpcTimeout();
             default:
                 return getRpcTimeout();
@@ -884,6 +945,41 @@ public class DatabaseDescriptor
         return conf.concurrent_compactors;
     }
 
+    public static int getCompactionSubranges()
+    {
+        return conf.compaction_subranges;
+    }
+
+    public static void setCompactionSubranges(int subranges)
+    {
+        conf.compaction_subranges = subranges;
+    }
+
+    public static long getCompactionSubrangeMinSize()
+    {
+        return conf.compaction_subrange_min_size_in_mb * 1024L * 1024L;
+    }
+
+    public static void setCompactionSubrangeMinSizeInMB(int sizeInMB)
+    {
+        conf.compaction_subrange_min_size_in_mb = sizeInMB;
+    }
+
+    public static int getValidationSubranges()
+    {
+        return conf.validation_subranges;
+    }
+
+    public static void setValidationSubranges(int subranges)
+    {
+        conf.validation_subranges = subranges;
+    }
+
+    public static Config.RepairRowHash getRepairRowHash()
+    {
+        return conf.repair_row_hash;
+    }
+
     public static int getCompactionThroughputMbPerSec()
     {
         return conf.compaction_throughput_mb_per_sec;
@@ -894,6 +990,16 @@ public class DatabaseDescriptor
         conf.compaction_throughput_mb_per_sec = value;
     }
 
+    public static boolean streamEntireSSTables()
+    {
+        return conf.stream_entire_sstables;
+    }
+
+    public static void setStreamEntireSSTables(boolean value)
+    {
+        conf.stream_entire_sstables = value;
+    }
+
     public static int getStreamThroughputOutboundMegabitsPerSec()
     {
         return conf.stream_throughput_outbound_megabits_per_sec;
@@ -942,11 +1048,38 @@ public class DatabaseDescriptor
         return conf.commitlog_segment_size_in_mb * 1024 * 1024;
     }
 
+    /**
+     * @return the compressor for commit log sync blocks, or null if the commit log is not compressed
+     */
+    public static ICompressor getCommitLogCompressor()
+    {
+        return commitLogCompressor;
+    }
+
+    @VisibleForTesting
+    public static void setCommitLogCompressor(ICompressor compressor)
+    {
+        commitLogCompressor = compressor;
+    }
+
     public static String getSavedCachesLocation()
     {
         return conf.saved_caches_directory;
     }
 
+    public static String getHintsLocation()
+    {
+        return conf.hints_directory;
+    }
+
+    /**
+     * size at which the hints file of a host is rolled over
+     */
+    public static long getMaxHintsFileSize()
+    {
+        return conf.max_hints_file_size_in_mb * 1024L * 1024L;
+    }
+
     public static Set<InetAddress> getSeeds()
     {
         return ImmutableSet.<InetAddress>builder().addAll(seedProvider.getSeeds()).build();
@@ -1052,6 +1185,11 @@ public class DatabaseDescriptor
         return conf.commitlog_sync_batch_window_in_ms;
     }
 
+    public static double getCommitLogSyncGroupWindow()
+    {
+        return conf.commitlog_sync_group_window_in_ms;
+    }
+
     public static int getCommitLogSyncPeriod()
     {
         return conf.commitlog_sync_period_in_ms;
@@ -1205,6 +1343,11 @@ public class DatabaseDescriptor
         return conf.file_cache_size_in_mb;
     }
 
+    public static int getChunkCacheSizeInMB()
+    {
+        return conf.chunk_cache_size_in_mb;
+    }
+
     public static int getTotalMemtableSpaceInMB()
     {
         // should only be called if estimatesRealMemtableSize() is true
@@ -1232,6 +1375,11 @@ public class DatabaseDescriptor
         return keyCacheSizeInMB;
     }
 
+    public static boolean getKeyCacheOffHeap()
+    {
+        return conf.key_cache_off_heap;
+    }
+
     public static long getIndexSummaryCapacityInMB()
     {
         return indexSummaryCapacityInMB;
@@ -1312,6 +1460,31 @@ public class DatabaseDescriptor
         return conf.inter_dc_tcp_nodelay;
     }
 
+    public static Config.InternodeTransport getInternodeTransport()
+    {
+        return conf.internode_transport;
+    }
+
+    public static int getInternodeTransportEventLoops()
+    {
+        return conf.internode_transport_event_loops;
+    }
+
+    public static Config.CoalescingStrategy getInternodeCoalescingStrategy()
+    {
+        return conf.internode_coalescing_strategy;
+    }
+
+    public static int getInternodeCoalescingWindow()
+    {
+        return conf.internode_coalescing_window_in_us;
+    }
+
+    public static boolean useBlockedBloomFilters()
+    {
+        return conf.blocked_bloom_filters;
+    }
+
     public static boolean shouldPreheatPageCache()
     {
         return conf.preheat_kernel_page_cache;
@@ -363,6 +363,28 @@ public class QueryProcessor
         return processStatement(statement, queryState, options, null);
     }
 
+    /**
+     * Like processPrepared, but only executes statement if it is a SELECT that can be answered out of this
+     * node's row cache, without blocking.
+     * @return the result, or null if statement must go through processPrepared instead
+     */
+    public static ResultMessage processPreparedFromRowCache(CQLStatement statement, QueryState queryState, QueryOptions options)
+    throws RequestValidationException
+    {
+        if (!(statement instanceof SelectStatement) || !preExecutionHooks.isEmpty() || !postExecutionHooks.isEmpty())
+            return null;
+
+        // leave reporting a wrong number of bound variables to processPrepared
+        if (options.getValues().size() != statement.getBoundsTerms())
+            return null;
+
+        ClientState clientState = queryState.getClientState();
+        statement.checkAccess(clientState);
+        statement.validate(clientState);
+
+        return ((SelectStatement)statement).executeFromRowCache(options);
+    }
+
     public static ResultMessage processBatch(BatchStatement batch,
                                              ConsistencyLevel cl,
                                              QueryState queryState,
@@ -192,6 +192,32 @@ public class SelectStatement implements CQLStatement, MeasurableForPreparedCache
         return processResults(rows, variables, limit, now);
     }
 
+    /**
+     * Executes this query out of this node's row cache, which doesn't block, if it reads a single, unpaged,
+     * partition that StorageProxy.readFromRowCache can answer.
+     *
+     * @return the result, or null if the query has to go through execute()
+     */
+    public ResultMessage.Rows executeFromRowCache(QueryOptions options) throws RequestValidationException
+    {
+        if (isKeyRange || usesSecondaryIndexing || parameters.isCount)
+            return null;
+
+        List<ByteBuffer> variables = options.getValues();
+        int limit = getLimit(variables);
+        long now = System.currentTimeMillis();
+        List<ReadCommand> commands = getSliceCommands(variables, limit, now);
+        if (commands == null || commands.size() != 1)
+            return null;
+
+        int pageSize = options.getPageSize();
+        if (pageSize > 0 && QueryPagers.mayNeedPaging(new Pageable.ReadCommands(commands), pageSize))
+            return null;
+
+        Row row = StorageProxy.readFromRowCache(commands.get(0), options.getConsistency());
+        return row == null ? null : processResults(Collections.singletonList(row), variables, limit, now);
+    }
+
     private ResultMessage.Rows pageCountQuery(QueryPager pager, List<ByteBuffer> variables, int pageSize, long now) throws RequestValidationException, RequestExecutionException
     {
         int count = 0;
@@ -21,6 +21,7 @@ import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 
@@ -41,7 +42,8 @@ import org.apache.cassandra.utils.Allocator;
  *
  * The implementation uses snaptree (https://github.com/nbronson/snaptree),
  * and in particular it's copy-on-write clone operation to achieve its
- * atomicity guarantee.
+ * atomicity guarantee. Updates are lock-free as long as they don't race
+ * each other; writers that lose a race retry one at a time.
  *
  * WARNING: removing element through getSortedColumns().iterator() is *not*
  * isolated of other operations and could actually be fully ignored in the
@@ -49,6 +51,13 @@ import org.apache.cassandra.utils.Allocator;
  */
 public class AtomicSortedColumns extends ColumnFamily
 {
+    // returned by tryAddAll when the update lost a race against another one
+    private static final long CONTENDED = Long.MIN_VALUE;
+
+    // whether updates that lost a race retry under the partition lock (only disabled to compare both behaviours)
+    @VisibleForTesting
+    static volatile boolean lockContendedUpdates = true;
+
     private final AtomicReference<Holder> ref;
 
     public static final ColumnFamily.Factory<AtomicSortedColumns> factory = new Factory<AtomicSortedColumns>()
@@ -158,6 +167,54 @@ public class AtomicSortedColumns extends ColumnFamily
      *  @return the difference in size seen after merging the given columns
      */
     public long addAllWithSizeDelta(ColumnFamily cm, Allocator allocator, Function<Column, Column> transformation, SecondaryIndexManager.Updater indexer)
+    {
+        /*
+         * Uncontended updates are lock-free: see tryAddAll. But every failed attempt
+         * throws away a clone of the map along with all the work done on it, and on a
+         * hot partition many writers can keep beating each other for a long time. So
+         * once an update has lost a race, it retries holding the partition monitor:
+         * contended writers then queue up behind each other and only one of them at a
+         * time can waste work, instead of all of them spinning and allocating.
+         */
+        long sizeDelta = tryAddAll(cm, allocator, transformation, indexer);
+        if (sizeDelta == CONTENDED)
+        {
+            if (lockContendedUpdates)
+            {
+                synchronized (this)
+                {
+                    sizeDelta = addAllUntilSuccessful(cm, allocator, transformation, indexer);
+                }
+            }
+            else
+            {
+                sizeDelta = addAllUntilSuccessful(cm, allocator, transformation, indexer);
+            }
+        }
+
+        indexer.updateRowLevelIndexes();
+
+        return sizeDelta;
+    }
+
+    private long addAllUntilSuccessful(ColumnFamily cm, Allocator allocator, Function<Column, Column> transformation, SecondaryIndexManager.Updater indexer)
+    {
+        long sizeDelta;
+        do
+        {
+            sizeDelta = tryAddAll(cm, allocator, transformation, indexer);
+        }
+        while (sizeDelta == CONTENDED);
+        return sizeDelta;
+    }
+
+    /**
+     * Makes one attempt at atomically merging the given columns.
+     *
+     * @return the difference in size seen after merging the given columns, or CONTENDED if
+     * another update got in first, in which case nothing has been changed
+     */
+    private long tryAddAll(ColumnFamily cm, Allocator allocator, Function<Column, Column> transformation, SecondaryIndexManager.Updater indexer)
     {
         /*
          * This operation needs to atomicity and isolation. To that end, we
@@ -170,39 +227,29 @@ public class AtomicSortedColumns extends ColumnFamily
          * beaten by another thread after every column addition. If we have,
          * we bail early, avoiding unnecessary work if possible.
          */
-        Holder current, modified;
-        long sizeDelta;
+        long sizeDelta = 0;
+        Holder current = ref.get();
+        DeletionInfo newDelInfo = current.deletionInfo.copy().add(cm.deletionInfo());
+        Holder modified = new Holder(current.map.clone(), newDelInfo);
 
-        main_loop:
-        do
+        if (cm.deletionInfo().hasRanges())
         {
-            sizeDelta = 0;
-            current = ref.get();
-            DeletionInfo newDelInfo = current.deletionInfo.copy().add(cm.deletionInfo());
-            modified = new Holder(current.map.clone(), newDelInfo);
-
-            if (cm.deletionInfo().hasRanges())
-            {
-                for (Column currentColumn : Iterables.concat(current.map.values(), cm))
-                {
-                    if (cm.deletionInfo().isDeleted(currentColumn))
-                        indexer.remove(currentColumn);
-                }
-            }
-
-            for (Column column : cm)
+            for (Column currentColumn : Iterables.concat(current.map.values(), cm))
             {
-                sizeDelta += modified.addColumn(transformation.apply(column), allocator, indexer);
-                // bail early if we know we've been beaten
-                if (ref.get() != current)
-                    continue main_loop;
+                if (cm.deletionInfo().isDeleted(currentColumn))
+                    indexer.remove(currentColumn);
             }
         }
-        while (!ref.compareAndSet(current, modified));
 
-        indexer.updateRowLevelIndexes();
+        for (Column column : cm)
+        {
+            sizeDelta += modified.addColumn(transformation.apply(column), allocator, indexer);
+            // bail early if we know we've been beaten
+            if (ref.get() != current)
+                return CONTENDED;
+        }
 
-        return sizeDelta;
+        return ref.compareAndSet(current, modified) ? sizeDelta : CONTENDED;
     }
 
     public boolean replace(Column oldColumn, Column newColumn)
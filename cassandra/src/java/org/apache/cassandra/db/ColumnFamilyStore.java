@@ -31,6 +31,7 @@ import javax.management.*;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.collect.*;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.cliffc.high_scale_lib.NonBlockingHashMap;
@@ -260,7 +261,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
 
         if (caching == Caching.ALL || caching == Caching.KEYS_ONLY)
-            CacheService.instance.keyCache.loadSaved(this);
+            CacheService.instance.keyCache.loadSavedAsync(this);
 
         // compaction strategy should be created after the CFS has been prepared
         this.compactionStrategy = metadata.createCompactionStrategyInstance(this);
@@ -381,6 +382,11 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return data.getMeanColumns();
     }
 
+    public EstimatedHistogram getColumnCountHistogram()
+    {
+        return data.getColumnCountHistogram();
+    }
+
     public static ColumnFamilyStore createColumnFamilyStore(Keyspace keyspace, String columnFamily, boolean loadSSTables)
     {
         return createColumnFamilyStore(keyspace, columnFamily, StorageService.getPartitioner(), Schema.instance.getCFMetaData(keyspace.getName(), columnFamily), loadSSTables);
@@ -540,15 +546,52 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         if (!isRowCacheEnabled())
             return;
 
-        long start = System.nanoTime();
+        final long start = System.nanoTime();
+
+        // the rows are read in the background; requests in the meantime are simply served from disk
+        Futures.addCallback(CacheService.instance.rowCache.loadSavedAsync(this), new FutureCallback<Integer>()
+        {
+            public void onSuccess(Integer cachedRowsRead)
+            {
+                if (cachedRowsRead > 0)
+                    logger.info("completed loading ({} ms; {} keys) row cache for {}.{}",
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                                cachedRowsRead,
+                                keyspace.getName(),
+                                name);
+            }
 
-        int cachedRowsRead = CacheService.instance.rowCache.loadSaved(this);
-        if (cachedRowsRead > 0)
-            logger.info("completed loading ({} ms; {} keys) row cache for {}.{}",
-                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
-                        cachedRowsRead,
-                        keyspace.getName(),
-                        name);
+            public void onFailure(Throwable t)
+            {
+                logger.warn("Failed to load the saved row cache of {}.{}", keyspace.getName(), name, t);
+            }
+        });
+    }
+
+    /**
+     * Reads the part of the partition for key that the row cache keeps, and caches it unless the partition is
+     * cached already.  This warms the row cache while requests are served, so it follows the same
+     * sentinel-read-cache sequence as getThroughCache to never cache a row a concurrent write made obsolete.
+     */
+    public void cacheRow(DecoratedKey key)
+    {
+        RowCacheKey cacheKey = new RowCacheKey(metadata.cfId, key);
+        RowCacheSentinel sentinel = new RowCacheSentinel();
+        if (!CacheService.instance.rowCache.putIfAbsent(cacheKey, sentinel))
+            return;
+
+        ColumnFamily data = null;
+        try
+        {
+            data = getTopLevelColumns(getRowCacheFilter(key, System.currentTimeMillis()), Integer.MIN_VALUE);
+            if (data != null)
+                CacheService.instance.rowCache.replace(cacheKey, sentinel, data);
+        }
+        finally
+        {
+            if (data == null)
+                invalidateCachedRow(cacheKey);
+        }
     }
 
     /**
@@ -591,13 +634,15 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                                                          Descriptor.Version.CURRENT,
                                                          descriptor));
 
-            // force foreign sstables to level 0
+            // force foreign sstables to level 0, and to unrepaired since we don't know what they were repaired against
             try
             {
                 if (new File(descriptor.filenameFor(Component.STATS)).exists())
                 {
                     Pair<SSTableMetadata, Set<Integer>> oldMetadata = SSTableMetadata.serializer.deserialize(descriptor);
                     LeveledManifest.mutateLevel(oldMetadata, descriptor, descriptor.filenameFor(Component.STATS), 0);
+                    if (oldMetadata.left.repairedAt != SSTableMetadata.UNREPAIRED_SSTABLE)
+                        SSTableMetadata.mutateRepairedAt(descriptor, SSTableMetadata.UNREPAIRED_SSTABLE);
                 }
             }
             catch (IOException e)
@@ -821,13 +866,91 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         FBUtilities.waitOnFuture(forceFlush());
     }
 
-    public void maybeUpdateRowCache(DecoratedKey key)
+    public void maybeUpdateRowCache(DecoratedKey key, ColumnFamily columnFamily)
     {
         if (!isRowCacheEnabled())
             return;
 
         RowCacheKey cacheKey = new RowCacheKey(metadata.cfId, key);
-        invalidateCachedRow(cacheKey);
+        if (metadata.cachesWholePartitions() || !updateCachedHead(cacheKey, key, columnFamily))
+            invalidateCachedRow(cacheKey);
+    }
+
+    /**
+     * Merges an update into the cached head of its partition, if the partition is cached.
+     *
+     * @return false if the cached head could not be updated, in which case it must be invalidated
+     */
+    private boolean updateCachedHead(RowCacheKey cacheKey, DecoratedKey key, ColumnFamily update)
+    {
+        IRowCacheEntry cached = CacheService.instance.rowCache.getInternal(cacheKey);
+        if (cached == null)
+            return true;
+
+        // a read is caching this partition and may have missed the update; make it fail to cache
+        if (cached instanceof RowCacheSentinel)
+            return false;
+
+        // the read that cached the head may have seen this update already, which is only harmless if
+        // applying it twice is
+        if (metadata.getDefaultValidator().isCommutative())
+            return false;
+
+        ColumnFamily head = (ColumnFamily) cached;
+        ColumnFamily merged = TreeMapBackedSortedColumns.factory.create(metadata);
+        merged.addAll(head, HeapAllocator.instance);
+        if (isWholePartitionCached(head))
+        {
+            merged.addAll(update, HeapAllocator.instance);
+        }
+        else
+        {
+            // the head is only known to hold everything up to its last column; deletions could leave it with
+            // fewer live rows than we cache, making it look like the whole partition
+            if (!update.deletionInfo().isLive())
+                return false;
+
+            // the head counts its last CQL row as present, so it must get all of that row's cells, including
+            // those sorting after the last cell it has
+            ByteBuffer last = head.reverseIterator().next().name();
+            for (Column column : update)
+            {
+                if (!column.isLive(0))
+                    return false;
+                if (metadata.comparator.compare(column.name(), last) <= 0 || isSameCQLRow(column.name(), last))
+                    merged.addColumn(column);
+            }
+        }
+
+        // the update may have pushed rows out of the head
+        QueryFilter headFilter = getRowCacheFilter(key, System.currentTimeMillis());
+        ColumnFamily newHead = merged.cloneMeShallow(ArrayBackedSortedColumns.factory, false);
+        headFilter.collateOnDiskAtom(newHead, headFilter.getColumnFamilyIterator(merged), Integer.MIN_VALUE);
+        return CacheService.instance.rowCache.replace(cacheKey, head, newHead);
+    }
+
+    /**
+     * @return true if the cells named a and b belong to the same CQL row, as the cached head groups them
+     */
+    private boolean isSameCQLRow(ByteBuffer a, ByteBuffer b)
+    {
+        // each cell of a dense table is a row of its own
+        if (metadata.isDense())
+            return false;
+
+        int toGroup = metadata.clusteringColumns().size();
+        if (toGroup == 0)
+            return true;
+
+        CompositeType type = (CompositeType) metadata.comparator;
+        ByteBuffer[] aComponents = type.split(a);
+        ByteBuffer[] bComponents = type.split(b);
+        for (int i = 0; i < toGroup; i++)
+        {
+            if (ByteBufferUtil.compareUnsigned(aComponents[i], bComponents[i]) != 0)
+                return false;
+        }
+        return true;
     }
 
     /**
@@ -843,7 +966,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         Memtable mt = getMemtableThreadSafe();
         mt.put(key, columnFamily, indexer);
-        maybeUpdateRowCache(key);
+        maybeUpdateRowCache(key, columnFamily);
         metric.writeLatency.addNano(System.nanoTime() - start);
 
         // recompute liveRatio, if we have doubled the number of ops since last calculated
@@ -1220,10 +1343,11 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     /**
      * fetch the row given by filter.key if it is in the cache; if not, read it from disk and cache it
      * @param cfId the column family to read the row from
-     * @param filter the columns being queried.  Note that we still cache entire rows, but if a row is uncached
-     *               and we race to cache it, only the winner will read the entire row
-     * @return the entire row for filter.key, if present in the cache (or we can cache it), or just the column
-     *         specified by filter otherwise
+     * @param filter the columns being queried.  Note that we still cache entire rows (or their head, see
+     *               getRowCacheFilter), but if a row is uncached and we race to cache it, only the winner will
+     *               read the entire row
+     * @return the cached part of the row for filter.key, if present in the cache (or we can cache it) and it
+     *         covers filter, or just the columns specified by filter otherwise
      */
     private ColumnFamily getThroughCache(UUID cfId, QueryFilter filter)
     {
@@ -1243,30 +1367,81 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 Tracing.trace("Row cache miss (race)");
                 return getTopLevelColumns(filter, Integer.MIN_VALUE);
             }
-            Tracing.trace("Row cache hit");
-            return (ColumnFamily) cached;
+            ColumnFamily cachedCf = (ColumnFamily) cached;
+            if (isFilterFullyCoveredBy(filter.filter, cachedCf, filter.timestamp))
+            {
+                Tracing.trace("Row cache hit");
+                return cachedCf;
+            }
+
+            Tracing.trace("Row cache hit, but the query is not covered by the cached head of the partition");
+            return getTopLevelColumns(filter, Integer.MIN_VALUE);
         }
 
         Tracing.trace("Row cache miss");
         RowCacheSentinel sentinel = new RowCacheSentinel();
         boolean sentinelSuccess = CacheService.instance.rowCache.putIfAbsent(key, sentinel);
+        ColumnFamily toCache = null;
 
         try
         {
-            ColumnFamily data = getTopLevelColumns(QueryFilter.getIdentityFilter(filter.key, name, filter.timestamp),
-                                                   Integer.MIN_VALUE);
-            if (sentinelSuccess && data != null)
-                CacheService.instance.rowCache.replace(key, sentinel, data);
+            toCache = getTopLevelColumns(getRowCacheFilter(filter.key, filter.timestamp), Integer.MIN_VALUE);
+            if (sentinelSuccess && toCache != null)
+                CacheService.instance.rowCache.replace(key, sentinel, toCache);
 
-            return data;
+            if (toCache == null || isFilterFullyCoveredBy(filter.filter, toCache, filter.timestamp))
+                return toCache;
+
+            Tracing.trace("Query not covered by the cached head of the partition");
+            return getTopLevelColumns(filter, Integer.MIN_VALUE);
         }
         finally
         {
-            if (sentinelSuccess && data == null)
+            if (sentinelSuccess && toCache == null)
                 invalidateCachedRow(key);
         }
     }
 
+    /**
+     * @return the filter selecting what the row cache keeps of the partition for key: either all of it, or
+     * the first rows_per_partition_to_cache CQL rows
+     */
+    public QueryFilter getRowCacheFilter(DecoratedKey key, long timestamp)
+    {
+        if (metadata.cachesWholePartitions())
+            return QueryFilter.getIdentityFilter(key, name, timestamp);
+
+        return new QueryFilter(key, name, getCachedHeadFilter(), timestamp);
+    }
+
+    private SliceQueryFilter getCachedHeadFilter()
+    {
+        int toGroup = metadata.isDense() ? -1 : metadata.clusteringColumns().size();
+        return new SliceQueryFilter(ByteBufferUtil.EMPTY_BYTE_BUFFER,
+                                    ByteBufferUtil.EMPTY_BYTE_BUFFER,
+                                    false,
+                                    metadata.getRowsPerPartitionToCache(),
+                                    toGroup);
+    }
+
+    /**
+     * @return true if cached, the part of a partition kept by the row cache, has everything filter selects
+     */
+    public boolean isFilterFullyCoveredBy(IDiskAtomFilter filter, ColumnFamily cached, long now)
+    {
+        return isWholePartitionCached(cached) || filter.isFullyCoveredBy(cached, now);
+    }
+
+    private boolean isWholePartitionCached(ColumnFamily cached)
+    {
+        if (metadata.cachesWholePartitions())
+            return true;
+
+        // count expiring columns as live, as they were when the head was cached: the head is the whole partition
+        // only if it was not cut at rows_per_partition_to_cache rows
+        return getCachedHeadFilter().getLiveCount(cached, 0) < metadata.getRowsPerPartitionToCache();
+    }
+
     public int gcBefore(long now)
     {
         return (int) (now / 1000) - metadata.getGcGraceSeconds();
@@ -1834,6 +2009,30 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return cached == null || cached instanceof RowCacheSentinel ? null : (ColumnFamily) cached;
     }
 
+    /**
+     * Reads the row selected by filter out of the row cache alone, never touching the sstables.
+     * @return the row, or null if the partition is not cached (or is being cached), or if its cached
+     *         head doesn't cover filter
+     */
+    public Row getRowFromCache(QueryFilter filter)
+    {
+        ColumnFamily cached = getRawCachedRow(filter.key);
+        if (cached == null || !isFilterFullyCoveredBy(filter.filter, cached, filter.timestamp))
+            return null;
+
+        long start = System.nanoTime();
+        try
+        {
+            ColumnFamily result = filterColumnFamily(cached, filter);
+            removeDroppedColumns(result);
+            return new Row(filter.key, result);
+        }
+        finally
+        {
+            metric.readLatency.addNano(System.nanoTime() - start);
+        }
+    }
+
     /**
      * @return true if @param key is contained in the row cache
      */
@@ -1847,6 +2046,19 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         CacheService.instance.rowCache.remove(key);
     }
 
+    /**
+     * Invalidates the cached rows of this table whose keys fall within the given bounds.
+     */
+    public void invalidateCachedRows(Bounds<RowPosition> bounds)
+    {
+        for (RowCacheKey key : CacheService.instance.rowCache.getKeySet())
+        {
+            DecoratedKey dk = partitioner.decorateKey(ByteBuffer.wrap(key.key));
+            if (metadata.cfId.equals(key.cfId) && bounds.contains(dk))
+                invalidateCachedRow(dk);
+        }
+    }
+
     public void invalidateCachedRow(DecoratedKey key)
     {
         UUID cfId = Schema.instance.getId(keyspace.getName(), this.name);
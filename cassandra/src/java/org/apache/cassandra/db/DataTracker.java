@@ -34,6 +34,7 @@ import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.metrics.StorageMetrics;
 import org.apache.cassandra.notifications.*;
+import org.apache.cassandra.utils.EstimatedHistogram;
 import org.apache.cassandra.utils.Interval;
 import org.apache.cassandra.utils.IntervalTree;
 
@@ -449,6 +450,30 @@ public class DataTracker
         return count > 0 ? (int) (sum / count) : 0;
     }
 
+    /**
+     * @return the distribution of the number of columns per row, merged over all sstables. Rows that span
+     * several sstables are counted once per sstable.
+     */
+    public EstimatedHistogram getColumnCountHistogram()
+    {
+        long[] offsets = null;
+        long[] buckets = null;
+        for (SSTableReader sstable : getSSTables())
+        {
+            EstimatedHistogram histogram = sstable.getEstimatedColumnCount();
+            if (offsets == null)
+            {
+                offsets = histogram.getBucketOffsets();
+                buckets = new long[offsets.length + 1];
+            }
+            // bucket offsets always follow the same series, so histograms of different sizes share their first buckets
+            long[] sstableBuckets = histogram.getBuckets(false);
+            for (int i = 0; i < Math.min(buckets.length, sstableBuckets.length); i++)
+                buckets[i] += sstableBuckets[i];
+        }
+        return offsets == null ? new EstimatedHistogram() : new EstimatedHistogram(offsets, buckets);
+    }
+
     public double getDroppableTombstoneRatio()
     {
         double allDroppable = 0;
@@ -481,6 +506,13 @@ public class DataTracker
             subscriber.handleNotification(notification, this);
     }
 
+    public void notifySSTableRepairStatusChanged(Collection<SSTableReader> repairStatusChanged)
+    {
+        INotification notification = new SSTableRepairStatusChanged(repairStatusChanged);
+        for (INotificationConsumer subscriber : subscribers)
+            subscriber.handleNotification(notification, this);
+    }
+
     public void notifyDeleting(SSTableReader deleting)
     {
         INotification notification = new SSTableDeletingNotification(deleting);
@@ -18,6 +18,7 @@
 package org.apache.cassandra.db;
 
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
@@ -32,7 +33,6 @@ import javax.management.ObjectName;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.RateLimiter;
 import com.google.common.util.concurrent.Uninterruptibles;
 
@@ -42,22 +42,18 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutor;
 import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.config.DatabaseDescriptor;
-import org.apache.cassandra.config.Schema;
-import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.filter.*;
+import org.apache.cassandra.db.hints.*;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.CompositeType;
 import org.apache.cassandra.db.marshal.Int32Type;
 import org.apache.cassandra.db.marshal.UUIDType;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
-import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.WriteTimeoutException;
 import org.apache.cassandra.gms.ApplicationState;
 import org.apache.cassandra.gms.FailureDetector;
 import org.apache.cassandra.gms.Gossiper;
-import org.apache.cassandra.io.sstable.Descriptor;
-import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.metrics.HintedHandoffMetrics;
 import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
@@ -68,22 +64,15 @@ import org.apache.cassandra.utils.UUIDGen;
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 
 /**
- * The hint schema looks like this:
+ * Hints are appended to per-host files in hints_directory, in the same checksummed entry format as the
+ * commit log (see HintsWriter). A host's current file is rolled over once it reaches max_hints_file_size_in_mb.
  *
- * CREATE TABLE hints (
- *   target_id uuid,
- *   hint_id timeuuid,
- *   message_version int,
- *   mutation blob,
- *   PRIMARY KEY (target_id, hint_id, message_version)
- * ) WITH COMPACT STORAGE;
+ * When FailureDetector signals that a node that was down is back up, we read its files sequentially,
+ * oldest first, and send the hinted mutations over at the rate allowed by hinted_handoff_throttle_in_kb.
+ * A file is simply deleted once all its hints have been acknowledged, so delivery never has to
+ * go through tombstones.
  *
- * Thus, for each node in the cluster we treat its uuid as the partition key; each hint is a logical row
- * (physical composite column) containing the mutation to replay and associated metadata.
- *
- * When FailureDetector signals that a node that was down is back up, we page through
- * the hinted mutations and send them over one at a time, waiting for
- * hinted_handoff_throttle_delay in between each.
+ * Hints used to be stored in the system.hints table; any left there are moved to files on startup.
  *
  * deliverHints is also exposed to JMX so it can be run manually if FD ever misses
  * its cue somehow.
@@ -95,13 +84,14 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
     public static final HintedHandOffManager instance = new HintedHandOffManager();
 
     private static final Logger logger = LoggerFactory.getLogger(HintedHandOffManager.class);
+    // number of hints sent before waiting for their acknowledgements
     private static final int PAGE_SIZE = 128;
-    private static final int LARGE_NUMBER = 65536; // 64k nodes ought to be enough for anybody.
 
     public final HintedHandoffMetrics metrics = new HintedHandoffMetrics();
 
     private volatile boolean hintedHandOffPaused = false;
 
+    // layout of the legacy system.hints column names: (hint_id timeuuid, message_version int)
     static final CompositeType comparator = CompositeType.getInstance(Arrays.<AbstractType<?>>asList(UUIDType.instance, Int32Type.instance));
     static final int maxHintTTL = Integer.parseInt(System.getProperty("cassandra.maxHintTTL", String.valueOf(Integer.MAX_VALUE)));
 
@@ -114,13 +104,13 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                                                                                  new NamedThreadFactory("HintedHandoff", Thread.MIN_PRIORITY),
                                                                                  "internal");
 
-    private final ColumnFamilyStore hintStore = Keyspace.open(Keyspace.SYSTEM_KS).getColumnFamilyStore(SystemKeyspace.HINTS_CF);
+    private final HintsCatalog catalog = HintsCatalog.load(new File(DatabaseDescriptor.getHintsLocation()));
 
     /**
-     * Returns a mutation representing a Hint to be sent to <code>targetId</code>
+     * Stores a hint of <code>mutation</code>, to be sent to <code>targetId</code>
      * as soon as it becomes available again.
      */
-    public RowMutation hintFor(RowMutation mutation, int ttl, UUID targetId)
+    public void storeHint(RowMutation mutation, int ttl, UUID targetId)
     {
         assert ttl > 0;
 
@@ -131,13 +121,12 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         else
             logger.warn("Unable to find matching endpoint for target {} when storing a hint", targetId);
 
-        UUID hintId = UUIDGen.getTimeUUID();
-        // serialize the hint with id and version as a composite column name
-        ByteBuffer name = comparator.decompose(hintId, MessagingService.current_version);
-        ByteBuffer value = ByteBuffer.wrap(FBUtilities.serialize(mutation, RowMutation.serializer, MessagingService.current_version));
-        ColumnFamily cf = ArrayBackedSortedColumns.factory.create(Schema.instance.getCFMetaData(Keyspace.SYSTEM_KS, SystemKeyspace.HINTS_CF));
-        cf.addColumn(name, value, System.currentTimeMillis(), ttl);
-        return new RowMutation(Keyspace.SYSTEM_KS, UUIDType.instance.decompose(targetId), cf);
+        write(targetId, Hint.create(mutation, ttl));
+    }
+
+    public void write(UUID targetId, Hint hint)
+    {
+        catalog.get(targetId).write(hint);
     }
 
     /*
@@ -167,6 +156,8 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         }
         logger.debug("Created HHOM instance, registered MBean.");
 
+        migrateLegacyHints();
+
         Runnable runnable = new Runnable()
         {
             public void run()
@@ -176,13 +167,115 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
             }
         };
         StorageService.optionalTasks.scheduleWithFixedDelay(runnable, 10, 10, TimeUnit.MINUTES);
+
+        Runnable sync = new Runnable()
+        {
+            public void run()
+            {
+                catalog.syncAll();
+            }
+        };
+        long syncInterval = Math.max(getHintsSyncIntervalMicros(), 1000);
+        StorageService.optionalTasks.scheduleWithFixedDelay(sync, syncInterval, syncInterval, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @return how often the hints being written are synced to disk: as often as the commit log is
+     */
+    private static long getHintsSyncIntervalMicros()
+    {
+        switch (DatabaseDescriptor.getCommitLogSync())
+        {
+            case batch:
+                return (long) (DatabaseDescriptor.getCommitLogSyncBatchWindow() * 1000);
+            case group:
+                return (long) (DatabaseDescriptor.getCommitLogSyncGroupWindow() * 1000);
+            default:
+                return DatabaseDescriptor.getCommitLogSyncPeriod() * 1000L;
+        }
+    }
+
+    /**
+     * Moves the hints left in the system.hints table by a previous version to hints files, then truncates the table.
+     */
+    @VisibleForTesting
+    void migrateLegacyHints()
+    {
+        ColumnFamilyStore legacyHintStore = Keyspace.open(Keyspace.SYSTEM_KS).getColumnFamilyStore(SystemKeyspace.HINTS_CF);
+        if (legacyHintStore.isEmpty())
+            return;
+
+        logger.info("Migrating hints from {} to {}", SystemKeyspace.HINTS_CF, DatabaseDescriptor.getHintsLocation());
+        int migrated = 0;
+
+        IPartitioner p = StorageService.getPartitioner();
+        RowPosition minPos = p.getMinimumToken().minKeyBound();
+        Range<RowPosition> range = new Range<RowPosition>(minPos, minPos, p);
+        IDiskAtomFilter namesFilter = new NamesQueryFilter(ImmutableSortedSet.<ByteBuffer>of());
+        for (Row row : legacyHintStore.getRangeSlice(range, null, namesFilter, Integer.MAX_VALUE, System.currentTimeMillis()))
+        {
+            UUID hostId = UUIDGen.getUUID(row.key.key);
+            ByteBuffer startColumn = ByteBufferUtil.EMPTY_BYTE_BUFFER;
+            while (true)
+            {
+                long now = System.currentTimeMillis();
+                QueryFilter filter = QueryFilter.getSliceFilter(row.key,
+                                                                SystemKeyspace.HINTS_CF,
+                                                                startColumn,
+                                                                ByteBufferUtil.EMPTY_BYTE_BUFFER,
+                                                                false,
+                                                                PAGE_SIZE,
+                                                                now);
+
+                ColumnFamily hintsPage = ColumnFamilyStore.removeDeleted(legacyHintStore.getColumnFamily(filter), (int) (now / 1000));
+                if (pagingFinished(hintsPage, startColumn))
+                    break;
+
+                for (Column hint : hintsPage)
+                {
+                    // the start column was already migrated as the last column of the previous page
+                    if (hint.name().equals(startColumn))
+                        continue;
+                    startColumn = hint.name();
+                    if (!hint.isLive(now))
+                        continue;
+
+                    int version = Int32Type.instance.compose(comparator.split(hint.name())[1]);
+                    DataInputStream in = new DataInputStream(ByteBufferUtil.inputStream(hint.value()));
+                    RowMutation rm;
+                    try
+                    {
+                        rm = RowMutation.serializer.deserialize(in, version);
+                    }
+                    catch (UnknownColumnFamilyException e)
+                    {
+                        logger.debug("Skipping migration of hint for deleted columnfamily", e);
+                        continue;
+                    }
+                    catch (IOException e)
+                    {
+                        throw new AssertionError(e);
+                    }
+
+                    // hints were written with the time of creation in milliseconds as their timestamp
+                    int ttl = hint instanceof ExpiringColumn ? ((ExpiringColumn) hint).getTimeToLive() : maxHintTTL;
+                    write(hostId, new Hint(rm, hint.timestamp(), ttl));
+                    migrated++;
+                }
+            }
+        }
+
+        for (HintsStore store : catalog.stores())
+            store.seal();
+        legacyHintStore.truncateBlocking();
+        logger.info("Migrated {} hints from {}", migrated, SystemKeyspace.HINTS_CF);
     }
 
-    private static void deleteHint(ByteBuffer tokenBytes, ByteBuffer columnName, long timestamp)
+    private static boolean pagingFinished(ColumnFamily hintColumnFamily, ByteBuffer startColumn)
     {
-        RowMutation rm = new RowMutation(Keyspace.SYSTEM_KS, tokenBytes);
-        rm.delete(SystemKeyspace.HINTS_CF, columnName, timestamp);
-        rm.applyUnsafe(); // don't bother with commitlog since we're going to flush as soon as we're done with delivery
+        // done if no hints found or the start column (same as last column processed in previous iteration) is the only one
+        return hintColumnFamily == null
+               || (hintColumnFamily.getSortedColumns().size() == 1 && hintColumnFamily.getColumn(startColumn) != null);
     }
 
     public void deleteHintsForEndpoint(final String ipOrHostname)
@@ -204,9 +297,9 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         if (!StorageService.instance.getTokenMetadata().isMember(endpoint))
             return;
         UUID hostId = StorageService.instance.getTokenMetadata().getHostId(endpoint);
-        ByteBuffer hostIdBytes = ByteBuffer.wrap(UUIDGen.decompose(hostId));
-        final RowMutation rm = new RowMutation(Keyspace.SYSTEM_KS, hostIdBytes);
-        rm.delete(SystemKeyspace.HINTS_CF, System.currentTimeMillis());
+        final HintsStore store = catalog.getIfExists(hostId);
+        if (store == null)
+            return;
 
         // execute asynchronously to avoid blocking caller (which may be processing gossip)
         Runnable runnable = new Runnable()
@@ -216,8 +309,7 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                 try
                 {
                     logger.info("Deleting any stored hints for {}", endpoint);
-                    rm.apply();
-                    compact();
+                    store.deleteAll();
                 }
                 catch (Exception e)
                 {
@@ -228,23 +320,6 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         StorageService.optionalTasks.execute(runnable);
     }
 
-    @VisibleForTesting
-    protected Future<?> compact()
-    {
-        hintStore.forceBlockingFlush();
-        ArrayList<Descriptor> descriptors = new ArrayList<Descriptor>();
-        for (SSTable sstable : hintStore.getSSTables())
-            descriptors.add(sstable.descriptor);
-        return CompactionManager.instance.submitUserDefined(hintStore, descriptors, (int) (System.currentTimeMillis() / 1000));
-    }
-
-    private static boolean pagingFinished(ColumnFamily hintColumnFamily, ByteBuffer startColumn)
-    {
-        // done if no hints found or the start column (same as last column processed in previous iteration) is the only one
-        return hintColumnFamily == null
-               || (hintColumnFamily.getSortedColumns().size() == 1 && hintColumnFamily.getColumn(startColumn) != null);
-    }
-
     private int waitForSchemaAgreement(InetAddress endpoint) throws TimeoutException
     {
         Gossiper gossiper = Gossiper.instance;
@@ -280,7 +355,9 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     private void deliverHintsToEndpoint(InetAddress endpoint)
     {
-        if (hintStore.isEmpty())
+        UUID hostId = Gossiper.instance.getHostId(endpoint);
+        HintsStore store = hostId == null ? null : catalog.getIfExists(hostId);
+        if (store == null || !store.hasHints())
             return; // nothing to do, don't confuse users by logging a no-op handoff
 
         // check if hints delivery has been paused
@@ -306,29 +383,20 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
             return;
         }
 
-        doDeliverHintsToEndpoint(endpoint);
+        doDeliverHintsToEndpoint(endpoint, store);
     }
 
     /*
-     * 1. Get the key of the endpoint we need to handoff
-     * 2. For each column, deserialize the mutation and send it to the endpoint
-     * 3. Delete the subcolumn if the write was successful
-     * 4. Force a flush
-     * 5. Do major compaction to clean up all deletes etc.
+     * 1. Seal the file being written to, so that new hints go to a new file
+     * 2. For each sealed file, oldest first, send its hints to the endpoint, PAGE_SIZE at a time
+     * 3. Delete the file once all its hints have been acknowledged
+     *
+     * If delivery is aborted, the file goes back to the front of the queue and is delivered again from
+     * its start next time, which is harmless since replaying a mutation is idempotent.
      */
-    private void doDeliverHintsToEndpoint(InetAddress endpoint)
+    private void doDeliverHintsToEndpoint(InetAddress endpoint, HintsStore store)
     {
-        // find the hints for the node using its token.
-        UUID hostId = Gossiper.instance.getHostId(endpoint);
-        logger.info("Started hinted handoff for host: {} with IP: {}", hostId, endpoint);
-        final ByteBuffer hostIdBytes = ByteBuffer.wrap(UUIDGen.decompose(hostId));
-        DecoratedKey epkey =  StorageService.getPartitioner().decorateKey(hostIdBytes);
-
-        final AtomicInteger rowsReplayed = new AtomicInteger(0);
-        ByteBuffer startColumn = ByteBufferUtil.EMPTY_BYTE_BUFFER;
-
-        int pageSize = calculatePageSize();
-        logger.debug("Using pageSize of {}", pageSize);
+        logger.info("Started hinted handoff for host: {} with IP: {}", store.hostId, endpoint);
 
         // rate limit is in bytes per second. Uses Double.MAX_VALUE if disabled (set to 0 in cassandra.yaml).
         // max rate is scaled by the number of nodes in the cluster (CASSANDRA-5272).
@@ -336,71 +404,57 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                            / (StorageService.instance.getTokenMetadata().getAllEndpoints().size() - 1);
         RateLimiter rateLimiter = RateLimiter.create(throttleInKB == 0 ? Double.MAX_VALUE : throttleInKB * 1024);
 
-        delivery:
-        while (true)
+        AtomicInteger rowsReplayed = new AtomicInteger(0);
+        store.seal();
+        HintsDescriptor descriptor;
+        while ((descriptor = store.poll()) != null)
         {
-            long now = System.currentTimeMillis();
-            QueryFilter filter = QueryFilter.getSliceFilter(epkey,
-                                                            SystemKeyspace.HINTS_CF,
-                                                            startColumn,
-                                                            ByteBufferUtil.EMPTY_BYTE_BUFFER,
-                                                            false,
-                                                            pageSize,
-                                                            now);
-
-            ColumnFamily hintsPage = ColumnFamilyStore.removeDeleted(hintStore.getColumnFamily(filter), (int) (now / 1000));
-
-            if (pagingFinished(hintsPage, startColumn))
-                break;
-
-            // check if node is still alive and we should continue delivery process
-            if (!FailureDetector.instance.isAlive(endpoint))
+            boolean delivered;
+            try
+            {
+                delivered = deliverHintsFile(endpoint, store, descriptor, rateLimiter, rowsReplayed);
+            }
+            catch (RuntimeException e)
             {
-                logger.info("Endpoint {} died during hint delivery; aborting ({} delivered)", endpoint, rowsReplayed);
+                store.offerFirst(descriptor);
+                throw e;
+            }
+
+            if (!delivered)
+            {
+                store.offerFirst(descriptor);
                 return;
             }
+            store.delete(descriptor);
+        }
 
-            List<WriteResponseHandler> responseHandlers = Lists.newArrayList();
+        logger.info("Finished hinted handoff of {} rows to endpoint {}", rowsReplayed, endpoint);
+    }
+
+    /**
+     * @return true if all the hints of the file have been delivered, false if delivery was aborted
+     */
+    private boolean deliverHintsFile(InetAddress endpoint, HintsStore store, HintsDescriptor descriptor, RateLimiter rateLimiter, final AtomicInteger rowsReplayed)
+    {
+        HintsReader reader = store.read(descriptor);
+        try
+        {
+            List<WriteResponseHandler> responseHandlers = new ArrayList<WriteResponseHandler>(PAGE_SIZE);
             Map<UUID, Long> truncationTimesCache = new HashMap<UUID, Long>();
-            for (final Column hint : hintsPage)
+            while (reader.hasNext())
             {
                 // check if hints delivery has been paused during the process
                 if (hintedHandOffPaused)
                 {
                     logger.debug("Hints delivery process is paused, aborting");
-                    break delivery;
+                    return false;
                 }
 
-                // Skip tombstones:
-                // if we iterate quickly enough, it's possible that we could request a new page in the same millisecond
-                // in which the local deletion timestamp was generated on the last column in the old page, in which
-                // case the hint will have no columns (since it's deleted) but will still be included in the resultset
-                // since (even with gcgs=0) it's still a "relevant" tombstone.
+                Hint hint = reader.next();
                 if (!hint.isLive(System.currentTimeMillis()))
                     continue;
 
-                startColumn = hint.name();
-
-                ByteBuffer[] components = comparator.split(hint.name());
-                int version = Int32Type.instance.compose(components[1]);
-                DataInputStream in = new DataInputStream(ByteBufferUtil.inputStream(hint.value()));
-                RowMutation rm;
-                try
-                {
-                    rm = RowMutation.serializer.deserialize(in, version);
-                }
-                catch (UnknownColumnFamilyException e)
-                {
-                    logger.debug("Skipping delivery of hint for deleted columnfamily", e);
-                    deleteHint(hostIdBytes, hint.name(), hint.maxTimestamp());
-                    continue;
-                }
-                catch (IOException e)
-                {
-                    throw new AssertionError(e);
-                }
-
-                truncationTimesCache.clear();
+                RowMutation rm = hint.mutation;
                 for (UUID cfId : ImmutableSet.copyOf((rm.getColumnFamilyIds())))
                 {
                     Long truncatedAt = truncationTimesCache.get(cfId);
@@ -411,7 +465,7 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                         truncationTimesCache.put(cfId, truncatedAt);
                     }
 
-                    if (hint.maxTimestamp() < truncatedAt)
+                    if (hint.createdAt < truncatedAt)
                     {
                         logger.debug("Skipping delivery of hint for truncated columnfamily {}", cfId);
                         rm = rm.without(cfId);
@@ -419,10 +473,7 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                 }
 
                 if (rm.isEmpty())
-                {
-                    deleteHint(hostIdBytes, hint.name(), hint.maxTimestamp());
                     continue;
-                }
 
                 MessageOut<RowMutation> message = rm.createMessage();
                 rateLimiter.acquire(message.serializedSize(MessagingService.current_version));
@@ -431,53 +482,109 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                     public void run()
                     {
                         rowsReplayed.incrementAndGet();
-                        deleteHint(hostIdBytes, hint.name(), hint.maxTimestamp());
                     }
                 };
                 WriteResponseHandler responseHandler = new WriteResponseHandler(endpoint, WriteType.UNLOGGED_BATCH, callback);
                 MessagingService.instance().sendRR(message, endpoint, responseHandler);
                 responseHandlers.add(responseHandler);
-            }
 
-            for (WriteResponseHandler handler : responseHandlers)
-            {
-                try
-                {
-                    handler.get();
-                }
-                catch (WriteTimeoutException e)
+                if (responseHandlers.size() == PAGE_SIZE)
                 {
-                    logger.info("Timed out replaying hints to {}; aborting ({} delivered)", endpoint, rowsReplayed);
-                    return;
+                    if (!waitForResponses(endpoint, responseHandlers, rowsReplayed))
+                        return false;
+                    responseHandlers.clear();
+                    // pick up truncations that happened meanwhile
+                    truncationTimesCache.clear();
+
+                    // check if node is still alive and we should continue delivery process
+                    if (!FailureDetector.instance.isAlive(endpoint))
+                    {
+                        logger.info("Endpoint {} died during hint delivery; aborting ({} delivered)", endpoint, rowsReplayed);
+                        return false;
+                    }
                 }
             }
+            return waitForResponses(endpoint, responseHandlers, rowsReplayed);
         }
-
-        logger.info("Finished hinted handoff of {} rows to endpoint {}", rowsReplayed, endpoint);
-
-        try
+        finally
         {
-            compact().get();
+            reader.close();
         }
-        catch (Exception e)
+    }
+
+    private static boolean waitForResponses(InetAddress endpoint, List<WriteResponseHandler> responseHandlers, AtomicInteger rowsReplayed)
+    {
+        for (WriteResponseHandler handler : responseHandlers)
         {
-            throw new RuntimeException(e);
+            try
+            {
+                handler.get();
+            }
+            catch (WriteTimeoutException e)
+            {
+                logger.info("Timed out replaying hints to {}; aborting ({} delivered)", endpoint, rowsReplayed);
+                return false;
+            }
         }
+        return true;
     }
 
-    private int calculatePageSize()
+    /**
+     * Hands all our hints over to <code>destination</code>, which will deliver them in our stead.
+     * Used when decommissioning, as the files of a host are deleted once they have been handed over.
+     */
+    public Future<?> transferHints(final InetAddress destination)
     {
-        // read less columns (mutations) per page if they are very large
-        int meanColumnCount = hintStore.getMeanColumns();
-        if (meanColumnCount > 0)
+        return executor.submit(new Runnable()
         {
-            int averageColumnSize = (int) (hintStore.getMeanRowSize() / meanColumnCount);
-            // page size of 1 does not allow actual paging b/c of >= behavior on startColumn
-            return Math.max(2, Math.min(PAGE_SIZE, DatabaseDescriptor.getInMemoryCompactionLimit() / averageColumnSize));
-        }
-        else
+            public void run()
+            {
+                for (HintsStore store : catalog.stores())
+                    transferHints(destination, store);
+            }
+        });
+    }
+
+    private void transferHints(InetAddress destination, HintsStore store)
+    {
+        logger.info("Transferring hints for host {} to {}", store.hostId, destination);
+        store.seal();
+        HintsDescriptor descriptor;
+        while ((descriptor = store.poll()) != null)
         {
-            return PAGE_SIZE;
+            HintsReader reader = store.read(descriptor);
+            try
+            {
+                List<WriteResponseHandler> responseHandlers = new ArrayList<WriteResponseHandler>(PAGE_SIZE);
+                while (reader.hasNext())
+                {
+                    Hint hint = reader.next();
+                    if (!hint.isLive(System.currentTimeMillis()))
+                        continue;
+
+                    WriteResponseHandler responseHandler = new WriteResponseHandler(destination, WriteType.UNLOGGED_BATCH);
+                    MessagingService.instance().sendRR(new HintMessage(store.hostId, hint).createMessage(), destination, responseHandler);
+                    responseHandlers.add(responseHandler);
+                    if (responseHandlers.size() == PAGE_SIZE)
+                    {
+                        for (WriteResponseHandler handler : responseHandlers)
+                            handler.get();
+                        responseHandlers.clear();
+                    }
+                }
+                for (WriteResponseHandler handler : responseHandlers)
+                    handler.get();
+            }
+            catch (WriteTimeoutException e)
+            {
+                store.offerFirst(descriptor);
+                throw new RuntimeException("Timed out transferring hints to " + destination, e);
+            }
+            finally
+            {
+                reader.close();
+            }
+            store.delete(descriptor);
         }
     }
 
@@ -490,16 +597,13 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         if (logger.isDebugEnabled())
           logger.debug("Started scheduleAllDeliveries");
 
-        IPartitioner p = StorageService.getPartitioner();
-        RowPosition minPos = p.getMinimumToken().minKeyBound();
-        Range<RowPosition> range = new Range<RowPosition>(minPos, minPos, p);
-        IDiskAtomFilter filter = new NamesQueryFilter(ImmutableSortedSet.<ByteBuffer>of());
-        List<Row> rows = hintStore.getRangeSlice(range, null, filter, Integer.MAX_VALUE, System.currentTimeMillis());
-        for (Row row : rows)
+        for (HintsStore store : catalog.stores())
         {
-            UUID hostId = UUIDGen.getUUID(row.key.key);
-            InetAddress target = StorageService.instance.getTokenMetadata().getEndpointForHostId(hostId);
-            // token may have since been removed (in which case we have just read back a tombstone)
+            if (!store.hasHints())
+                continue;
+
+            InetAddress target = StorageService.instance.getTokenMetadata().getEndpointForHostId(store.hostId);
+            // host may have since been removed
             if (target != null)
                 scheduleHintDelivery(target);
         }
@@ -549,47 +653,19 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     public List<String> listEndpointsPendingHints()
     {
-        Token.TokenFactory tokenFactory = StorageService.getPartitioner().getTokenFactory();
-
-        // Extract the keys as strings to be reported.
-        LinkedList<String> result = new LinkedList<String>();
-        for (Row row : getHintsSlice(1))
+        // the host ids of the nodes we have hints for
+        List<String> result = new ArrayList<String>();
+        for (HintsStore store : catalog.stores())
         {
-            if (row.cf != null) //ignore removed rows
-                result.addFirst(tokenFactory.toString(row.key.token));
+            if (store.hasHints())
+                result.add(store.hostId.toString());
         }
         return result;
     }
 
-    private List<Row> getHintsSlice(int columnCount)
+    @VisibleForTesting
+    HintsStore getHintsStore(UUID hostId)
     {
-        // Get count # of columns...
-        SliceQueryFilter predicate = new SliceQueryFilter(ByteBufferUtil.EMPTY_BYTE_BUFFER,
-                                                          ByteBufferUtil.EMPTY_BYTE_BUFFER,
-                                                          false,
-                                                          columnCount);
-
-        // From keys "" to ""...
-        IPartitioner<?> partitioner = StorageService.getPartitioner();
-        RowPosition minPos = partitioner.getMinimumToken().minKeyBound();
-        Range<RowPosition> range = new Range<RowPosition>(minPos, minPos);
-
-        try
-        {
-            RangeSliceCommand cmd = new RangeSliceCommand(Keyspace.SYSTEM_KS,
-                                                          SystemKeyspace.HINTS_CF,
-                                                          System.currentTimeMillis(),
-                                                          predicate,
-                                                          range,
-                                                          null,
-                                                          LARGE_NUMBER);
-            return StorageProxy.getRangeSlice(cmd, ConsistencyLevel.ONE);
-        }
-        catch (Exception e)
-        {
-            logger.info("HintsCF getEPPendingHints timed out.");
-            throw new RuntimeException(e);
-        }
+        return catalog.getIfExists(hostId);
     }
-
 }
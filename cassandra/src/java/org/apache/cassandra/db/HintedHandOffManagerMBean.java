@@ -30,7 +30,7 @@ public interface HintedHandOffManagerMBean
 
     /**
      * List all the endpoints that this node has hints for.
-     * @return set of endpoints; as Strings
+     * @return set of host ids of the endpoints; as Strings
      */
     public List<String> listEndpointsPendingHints();
 
@@ -132,15 +132,27 @@ public class Memtable
         meter = new MemoryMeter().omitSharedBufferOverhead().withTrackerProvider(provider);
     }
 
+    /**
+     * @return the memory used by this memtable, on and off the java heap, as counted against memtable_total_space_in_mb
+     */
     public long getLiveSize()
     {
         long estimatedSize = (long) (currentSize.get() * cfs.liveRatio);
 
         // liveRatio is just an estimate; we can get a lower bound directly from the allocator
         if (estimatedSize < allocator.getMinimumSize())
-            return allocator.getMinimumSize();
+            estimatedSize = allocator.getMinimumSize();
+
+        // jamm doesn't see the native memory behind off-heap slabs, so liveRatio leaves it out
+        return estimatedSize + allocator.getOffHeapSize();
+    }
 
-        return estimatedSize;
+    /**
+     * @return the part of getLiveSize() that lives outside the java heap
+     */
+    public long getOffHeapSize()
+    {
+        return allocator.getOffHeapSize();
     }
 
     public long getOperations()
@@ -218,8 +230,8 @@ public class Memtable
 
     public String toString()
     {
-        return String.format("Memtable-%s@%s(%s/%s serialized/live bytes, %s ops)",
-                             cfs.name, hashCode(), currentSize, getLiveSize(), currentOperations);
+        return String.format("Memtable-%s@%s(%s/%s/%s serialized/live/off-heap bytes, %s ops)",
+                             cfs.name, hashCode(), currentSize, getLiveSize(), getOffHeapSize(), currentOperations);
     }
 
     /**
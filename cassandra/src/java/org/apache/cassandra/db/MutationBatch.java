@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+
+/**
+ * The mutations of an unlogged batch that a replica owns, sent to it in a single message and acknowledged
+ * with a single WriteResponse once they all have been applied.
+ */
+public class MutationBatch
+{
+    public static final MutationBatchSerializer serializer = new MutationBatchSerializer();
+
+    public final List<RowMutation> mutations;
+
+    public MutationBatch(List<RowMutation> mutations)
+    {
+        this.mutations = mutations;
+    }
+
+    public MessageOut<MutationBatch> createMessage()
+    {
+        return new MessageOut<MutationBatch>(MessagingService.Verb.MUTATION_BATCH, this, serializer);
+    }
+
+    public String toString()
+    {
+        return "MutationBatch(" + mutations.size() + " mutations)";
+    }
+
+    public static class MutationBatchSerializer implements IVersionedSerializer<MutationBatch>
+    {
+        public void serialize(MutationBatch batch, DataOutput out, int version) throws IOException
+        {
+            out.writeInt(batch.mutations.size());
+            for (RowMutation rm : batch.mutations)
+                RowMutation.serializer.serialize(rm, out, version);
+        }
+
+        public MutationBatch deserialize(DataInput in, int version) throws IOException
+        {
+            int size = in.readInt();
+            List<RowMutation> mutations = new ArrayList<RowMutation>(size);
+            for (int i = 0; i < size; i++)
+                mutations.add(RowMutation.serializer.deserialize(in, version));
+            return new MutationBatch(mutations);
+        }
+
+        public long serializedSize(MutationBatch batch, int version)
+        {
+            long size = TypeSizes.NATIVE.sizeof(batch.mutations.size());
+            for (RowMutation rm : batch.mutations)
+                size += RowMutation.serializer.serializedSize(rm, version);
+            return size;
+        }
+    }
+}
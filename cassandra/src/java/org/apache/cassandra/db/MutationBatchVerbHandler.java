@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import org.apache.cassandra.net.IVerbHandler;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.tracing.Tracing;
+
+/**
+ * Applies the mutations of a MutationBatch, then acknowledges them all at once.  Unlike single mutations,
+ * batches are only sent to replicas of the coordinator's datacenter, so there is nothing to forward.
+ */
+public class MutationBatchVerbHandler implements IVerbHandler<MutationBatch>
+{
+    public void doVerb(MessageIn<MutationBatch> message, int id)
+    {
+        for (RowMutation rm : message.payload.mutations)
+            rm.apply();
+
+        WriteResponse response = new WriteResponse();
+        Tracing.trace("Enqueuing response to {}", message.from);
+        MessagingService.instance().sendReply(response.createMessage(), id, message.from);
+    }
+}
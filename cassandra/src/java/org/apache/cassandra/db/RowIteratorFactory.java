@@ -95,9 +95,9 @@ public class RowIteratorFactory
             {
                 // First check if this row is in the rowCache. If it is we can skip the rest
                 ColumnFamily cached = cfs.getRawCachedRow(key);
-                if (cached == null)
+                if (cached == null || !cfs.isFilterFullyCoveredBy(range.columnFilter(key.key), cached, now))
                 {
-                    // not cached: collate
+                    // not cached (or not enough of it): collate
                     QueryFilter.collateOnDiskAtom(returnCF, colIters, range.columnFilter(key.key), gcBefore, now);
                 }
                 else
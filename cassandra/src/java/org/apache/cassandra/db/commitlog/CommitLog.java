@@ -56,7 +56,7 @@ public class CommitLog implements CommitLogMBean
     public static final int END_OF_SEGMENT_MARKER = 0;          // this is written out at the end of a segment
     public static final int END_OF_SEGMENT_MARKER_SIZE = 4;     // number of bytes of ^^^
 
-    public CommitLogSegment activeSegment;
+    public volatile CommitLogSegment activeSegment;
 
     private final CommitLogMetrics metrics;
 
@@ -67,9 +67,17 @@ public class CommitLog implements CommitLogMBean
         allocator = new CommitLogAllocator();
         activateNextSegment();
 
-        executor = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch
-                 ? new BatchCommitLogExecutorService()
-                 : new PeriodicCommitLogExecutorService(this);
+        switch (DatabaseDescriptor.getCommitLogSync())
+        {
+            case batch:
+                executor = new BatchCommitLogExecutorService();
+                break;
+            case group:
+                executor = new GroupCommitLogExecutorService(this);
+                break;
+            default:
+                executor = new PeriodicCommitLogExecutorService(this);
+        }
 
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
         try
@@ -142,7 +150,7 @@ public class CommitLog implements CommitLogMBean
      */
     public int recover(File... clogs) throws IOException
     {
-        CommitLogReplayer recovery = new CommitLogReplayer();
+        CommitLogReplayer recovery = new CommitLogReplayer(metrics);
         recovery.recover(clogs);
         return recovery.blockForWrites();
     }
@@ -295,6 +303,24 @@ public class CommitLog implements CommitLogMBean
         logger.debug("Active segment is now {}", activeSegment);
     }
 
+    /**
+     * Switches to the next segment, unless another append already did it since oldSegment was found to be full.
+     */
+    private synchronized void advanceSegment(CommitLogSegment oldSegment)
+    {
+        if (activeSegment != oldSegment)
+            return;
+
+        oldSegment.discardUnusedTail();
+        activateNextSegment();
+        // Now we can run the user defined command just before switching to the new commit log.
+        // (Do this here instead of in the recycle call so we can get a head start on the archive.)
+        // Compressed segments only reach the file when synced, so sync the tail before archiving.
+        oldSegment.waitForPendingAppends();
+        oldSegment.sync();
+        archiver.maybeArchive(oldSegment.getPath(), oldSegment.getName());
+    }
+
     public List<String> getActiveSegmentNames()
     {
         List<String> segmentNames = new ArrayList<String>();
@@ -333,27 +359,25 @@ public class CommitLog implements CommitLogMBean
         public void run()
         {
             long totalSize = RowMutation.serializer.serializedSize(rowMutation, MessagingService.current_version) + CommitLogSegment.ENTRY_OVERHEAD_SIZE;
-            if (totalSize > DatabaseDescriptor.getCommitLogSegmentSize())
+            if (totalSize > CommitLogSegment.MAX_APPEND_SIZE)
             {
                 logger.warn("Skipping commitlog append of extremely large mutation ({} bytes)", totalSize);
                 return;
             }
 
-            if (!activeSegment.hasCapacityFor(totalSize))
+            while (true)
             {
-                CommitLogSegment oldSegment = activeSegment;
-                activateNextSegment();
-                // Now we can run the user defined command just before switching to the new commit log.
-                // (Do this here instead of in the recycle call so we can get a head start on the archive.)
-                archiver.maybeArchive(oldSegment.getPath(), oldSegment.getName());
-            }
-            try
-            {
-                activeSegment.write(rowMutation);
-            }
-            catch (IOException e)
-            {
-                throw new FSWriteError(e, activeSegment.getPath());
+                CommitLogSegment segment = activeSegment;
+                try
+                {
+                    if (segment.write(rowMutation, (int) totalSize) != null)
+                        return;
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, segment.getPath());
+                }
+                advanceSegment(segment);
             }
         }
 
@@ -152,7 +152,7 @@ public class CommitLogAllocator
             discardSegment(segment, false);
             return;
         }
-        if (isCapExceeded())
+        if (isCapExceeded() || !CommitLogSegment.RECYCLING_ENABLED)
         {
             discardSegment(segment, true);
             return;
@@ -178,7 +178,7 @@ public class CommitLogAllocator
     public void recycleSegment(final File file)
     {
         // check against SEGMENT_SIZE avoids recycling odd-sized or empty segments from old C* versions and unit tests
-        if (isCapExceeded() || file.length() != DatabaseDescriptor.getCommitLogSegmentSize()
+        if (isCapExceeded() || !CommitLogSegment.RECYCLING_ENABLED || file.length() != DatabaseDescriptor.getCommitLogSegmentSize()
                 || CommitLogDescriptor.fromFileName(file.getName()).getMessagingVersion() != MessagingService.current_version)
         {
             // (don't decrease managed size, since this was never a "live" segment)
@@ -160,7 +160,27 @@ public class CommitLogArchiver
             }
             for (File fromFile : files)
             {
-                File toFile = new File(DatabaseDescriptor.getCommitLogLocation(), new CommitLogDescriptor(CommitLogSegment.getNextId()).fileName());
+                // the restored segment gets a new id, but must keep the version it was written with
+                CommitLogDescriptor fromHeader = CommitLogDescriptor.fromHeader(fromFile);
+                CommitLogDescriptor fromName = CommitLogDescriptor.isValid(fromFile.getName()) ? CommitLogDescriptor.fromFileName(fromFile.getName()) : null;
+                int version;
+                if (fromHeader != null)
+                {
+                    if (fromName != null && fromName.getVersion() != fromHeader.getVersion())
+                        throw new IllegalStateException(String.format("Version of archived commit log segment %s differs between its name (%d) and its header (%d)",
+                                                                      fromFile.getPath(), fromName.getVersion(), fromHeader.getVersion()));
+                    version = fromHeader.getVersion();
+                }
+                else if (fromName != null && fromName.getVersion() < CommitLogDescriptor.VERSION_22)
+                {
+                    version = fromName.getVersion();
+                }
+                else
+                {
+                    throw new IllegalStateException("Cannot determine the version of archived commit log segment " + fromFile.getPath());
+                }
+
+                File toFile = new File(DatabaseDescriptor.getCommitLogLocation(), new CommitLogDescriptor(version, CommitLogSegment.getNextId()).fileName());
                 String command = restoreCommand.replace("%from", fromFile.getPath());
                 command = command.replace("%to", toFile.getPath());
                 try
@@ -20,10 +20,25 @@
  */
 package org.apache.cassandra.db.commitlog;
 
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Checksum;
 
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
+import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.PureJavaCrc32;
 
 public class CommitLogDescriptor
 {
@@ -36,24 +51,39 @@ public class CommitLogDescriptor
     public static final int VERSION_12 = 2;
     public static final int VERSION_20 = 3;
     public static final int VERSION_21 = 4;
+    // segments start with a checksummed header recording the compressor of their sync blocks, if any
+    public static final int VERSION_22 = 5;
     /**
      * Increment this number if there is a changes in the commit log disc layout or MessagingVersion changes.
      * Note: make sure to handle {@link #getMessagingVersion()}
      */
-    public static final int current_version = VERSION_21;
+    public static final int current_version = VERSION_22;
 
     private final int version;
     public final long id;
+    // the class name of the compressor used for the segment, or null if it is not compressed
+    public final String compressorClass;
 
-    public CommitLogDescriptor(int version, long id)
+    public CommitLogDescriptor(int version, long id, String compressorClass)
     {
         this.version = version;
         this.id = id;
+        this.compressorClass = compressorClass;
+    }
+
+    public CommitLogDescriptor(int version, long id)
+    {
+        this(version, id, null);
+    }
+
+    public CommitLogDescriptor(long id, String compressorClass)
+    {
+        this(current_version, id, compressorClass);
     }
 
     public CommitLogDescriptor(long id)
     {
-        this(current_version, id);
+        this(current_version, id, null);
     }
 
     public static CommitLogDescriptor fromFileName(String name)
@@ -69,6 +99,107 @@ public class CommitLogDescriptor
         return new CommitLogDescriptor(Integer.parseInt(matcher.group(2)), id);
     }
 
+    /**
+     * Writes the segment header: version, id and compressor class name, followed by their checksum.
+     */
+    public void writeHeader(ByteBuffer out)
+    {
+        assert version >= VERSION_22;
+        byte[] compressor = compressorBytes();
+        out.putInt(version);
+        out.putLong(id);
+        out.putShort((short) compressor.length);
+        out.put(compressor);
+        out.putLong(headerChecksum(version, id, compressor));
+    }
+
+    /**
+     * @return the size of the header written by {@link #writeHeader(ByteBuffer)}
+     */
+    public int headerSize()
+    {
+        return 4 + 8 + 2 + compressorBytes().length + 8;
+    }
+
+    /**
+     * Reads a segment header written by {@link #writeHeader(ByteBuffer)}.
+     *
+     * @return the descriptor of the header, or null if there is no complete header with a valid checksum
+     */
+    public static CommitLogDescriptor readHeader(DataInput in) throws IOException
+    {
+        try
+        {
+            int version = in.readInt();
+            long id = in.readLong();
+            short compressorLength = in.readShort();
+            if (compressorLength < 0)
+                return null;
+            byte[] compressor = new byte[compressorLength];
+            in.readFully(compressor);
+
+            if (in.readLong() != headerChecksum(version, id, compressor) || version < VERSION_22)
+                return null;
+            return new CommitLogDescriptor(version, id, compressorLength == 0 ? null : new String(compressor, StandardCharsets.UTF_8));
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+    }
+
+    private static long headerChecksum(int version, long id, byte[] compressor)
+    {
+        Checksum checksum = new PureJavaCrc32();
+        FBUtilities.updateChecksumInt(checksum, version);
+        FBUtilities.updateChecksumInt(checksum, (int) (id >>> 32));
+        FBUtilities.updateChecksumInt(checksum, (int) id);
+        FBUtilities.updateChecksumInt(checksum, compressor.length);
+        checksum.update(compressor, 0, compressor.length);
+        return checksum.getValue();
+    }
+
+    private byte[] compressorBytes()
+    {
+        return compressorClass == null ? new byte[0] : compressorClass.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the descriptor recorded in the header of the given file, or null if it doesn't start with a valid one
+     */
+    public static CommitLogDescriptor fromHeader(File file)
+    {
+        RandomAccessFile raf = null;
+        try
+        {
+            raf = new RandomAccessFile(file, "r");
+            return readHeader(raf);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * @return a compressor for the sync blocks of the segment, or null if it is not compressed
+     */
+    public ICompressor createCompressor() throws ConfigurationException
+    {
+        if (compressorClass == null)
+            return null;
+        return new CompressionParameters(compressorClass, null, Collections.<String, String>emptyMap()).sstableCompressor;
+    }
+
+    public int getVersion()
+    {
+        return version;
+    }
+
     public int getMessagingVersion()
     {
         assert MessagingService.current_version == MessagingService.VERSION_21;
@@ -79,6 +210,7 @@ public class CommitLogDescriptor
             case VERSION_20:
                 return MessagingService.VERSION_20;
             case VERSION_21:
+            case VERSION_22:
                 return MessagingService.VERSION_21;
             default:
                 throw new IllegalStateException("Unknown commitlog version " + version);
@@ -20,53 +20,68 @@ package org.apache.cassandra.db.commitlog;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.Checksum;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.util.FastByteArrayInputStream;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.metrics.CommitLogMetrics;
 import org.apache.cassandra.utils.*;
 
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 
+/**
+ * Replays commit log segments. Several segments are read and deserialized in parallel, each streaming its
+ * mutations through a bounded queue. The mutations are then handed, in segment order, to replay lanes picked
+ * by keyspace and partition key. Each lane applies its mutations in order on a single thread, so mutations of
+ * a partition are replayed in the order they were logged.
+ */
 public class CommitLogReplayer
 {
     private static final Logger logger = LoggerFactory.getLogger(CommitLogReplayer.class);
     private static final int MAX_OUTSTANDING_REPLAY_COUNT = 1024;
 
+    // queued by a segment reader once it has queued all the mutations of its segment
+    private static final Pair<RowMutation, Runnable> END_OF_SEGMENT = Pair.create(null, null);
+
     private final Set<Keyspace> keyspacesRecovered;
-    private final List<Future<?>> futures;
-    private final Map<UUID, AtomicInteger> invalidMutations;
+    private final ConcurrentMap<UUID, AtomicInteger> invalidMutations;
     private final AtomicInteger replayedCount;
     private final Map<UUID, ReplayPosition> cfPositions;
     private final ReplayPosition globalPosition;
-    private final Checksum checksum;
-    private byte[] buffer;
+    private final CommitLogMetrics metrics;
+
+    // bounds the number of mutations handed to the lanes but not yet applied
+    private final Semaphore outstanding = new Semaphore(MAX_OUTSTANDING_REPLAY_COUNT);
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
 
-    public CommitLogReplayer()
+    public CommitLogReplayer(CommitLogMetrics metrics)
     {
+        this.metrics = metrics;
         this.keyspacesRecovered = new NonBlockingHashSet<Keyspace>();
-        this.futures = new ArrayList<Future<?>>();
-        this.buffer = new byte[4096];
-        this.invalidMutations = new HashMap<UUID, AtomicInteger>();
+        this.invalidMutations = new ConcurrentHashMap<UUID, AtomicInteger>();
         // count the number of replayed mutation. We don't really care about atomicity, but we need it to be a reference.
         this.replayedCount = new AtomicInteger();
-        this.checksum = new PureJavaCrc32();
 
         // compute per-CF and global replay positions
         cfPositions = new HashMap<UUID, ReplayPosition>();
@@ -93,8 +108,88 @@ public class CommitLogReplayer
 
     public void recover(File[] clogs) throws IOException
     {
-        for (final File file : clogs)
-            recover(file);
+        if (clogs.length == 0)
+            return;
+
+        ReplayFilter replayFilter = ReplayFilter.create();
+        ExecutorService readers = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayReader",
+                                                                                     Math.min(clogs.length, FBUtilities.getAvailableProcessors()));
+        ExecutorService[] lanes = new ExecutorService[DatabaseDescriptor.getConcurrentWriters()];
+        for (int i = 0; i < lanes.length; i++)
+            lanes[i] = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplay-" + i, 1);
+        try
+        {
+            // the readers start on the segments in order, so the one to dispatch next is always being read
+            List<SegmentReader> segmentReaders = new ArrayList<SegmentReader>(clogs.length);
+            for (File file : clogs)
+            {
+                SegmentReader reader = new SegmentReader(file, replayFilter);
+                reader.future = readers.submit(reader);
+                segmentReaders.add(reader);
+            }
+
+            for (SegmentReader reader : segmentReaders)
+            {
+                Pair<RowMutation, Runnable> next;
+                while ((next = Uninterruptibles.takeUninterruptibly(reader.queue)) != END_OF_SEGMENT)
+                    dispatch(lanes, next.left, next.right);
+
+                try
+                {
+                    Uninterruptibles.getUninterruptibly(reader.future);
+                }
+                catch (ExecutionException e)
+                {
+                    Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+
+            // wait for all the writes to finish on the replay lanes
+            outstanding.acquireUninterruptibly(MAX_OUTSTANDING_REPLAY_COUNT);
+            outstanding.release(MAX_OUTSTANDING_REPLAY_COUNT);
+        }
+        finally
+        {
+            readers.shutdownNow();
+            for (ExecutorService lane : lanes)
+                lane.shutdown();
+        }
+    }
+
+    public void recover(File file) throws IOException
+    {
+        recover(new File[]{ file });
+    }
+
+    /**
+     * Hands a mutation to the lane of its partition, blocking while too many mutations are waiting to be applied.
+     */
+    private void dispatch(ExecutorService[] lanes, RowMutation rm, final Runnable replay)
+    {
+        if (failure.get() != null)
+            throw new RuntimeException(failure.get());
+
+        outstanding.acquireUninterruptibly();
+        int lane = Math.abs((31 * rm.getKeyspaceName().hashCode() + rm.key().hashCode()) % lanes.length);
+        lanes[lane].execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    replay.run();
+                }
+                catch (Throwable t)
+                {
+                    failure.compareAndSet(null, t);
+                }
+                finally
+                {
+                    outstanding.release();
+                }
+            }
+        });
     }
 
     public int blockForWrites()
@@ -102,12 +197,13 @@ public class CommitLogReplayer
         for (Map.Entry<UUID, AtomicInteger> entry : invalidMutations.entrySet())
             logger.info(String.format("Skipped %d mutations from unknown (probably removed) CF with id %s", entry.getValue().intValue(), entry.getKey()));
 
-        // wait for all the writes to finish on the mutation stage
-        FBUtilities.waitOnFutures(futures);
+        // recover() waited for the writes to finish on the replay lanes
+        if (failure.get() != null)
+            throw new RuntimeException(failure.get());
         logger.debug("Finished waiting on mutations from recovery");
 
         // flush replayed keyspaces
-        futures.clear();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
         for (Keyspace keyspace : keyspacesRecovered)
             futures.addAll(keyspace.flush());
         FBUtilities.waitOnFutures(futures);
@@ -176,52 +272,182 @@ public class CommitLogReplayer
         }
     }
 
-    public void recover(File file) throws IOException
+    /**
+     * Reads a segment, queueing its mutations for dispatch.
+     */
+    private class SegmentReader implements Callable<Object>
     {
-        final ReplayFilter replayFilter = ReplayFilter.create();
-        logger.info("Replaying {}", file.getPath());
-        CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
-        final long segment = desc.id;
-        int version = desc.getMessagingVersion();
-        RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
-        try
+        private final File file;
+        private final ReplayFilter replayFilter;
+        private final BlockingQueue<Pair<RowMutation, Runnable>> queue = new LinkedBlockingQueue<Pair<RowMutation, Runnable>>(MAX_OUTSTANDING_REPLAY_COUNT);
+        private final Checksum checksum = new PureJavaCrc32();
+        private byte[] buffer = new byte[4096];
+        private Future<?> future;
+
+        SegmentReader(File file, ReplayFilter replayFilter)
         {
-            assert reader.length() <= Integer.MAX_VALUE;
-            int replayPosition;
-            if (globalPosition.segment < segment)
+            this.file = file;
+            this.replayFilter = replayFilter;
+        }
+
+        public Object call() throws IOException, InterruptedException
+        {
+            boolean aborted = false;
+            try
             {
-                replayPosition = 0;
+                read();
             }
-            else if (globalPosition.segment == segment)
+            catch (InterruptedException e)
             {
-                replayPosition = globalPosition.position;
+                // the replay was aborted, so nothing will wait for the rest of this segment
+                aborted = true;
             }
-            else
+            finally
             {
-                logger.debug("skipping replay of fully-flushed {}", file);
-                return;
+                if (!aborted)
+                    queue.put(END_OF_SEGMENT);
             }
+            return null;
+        }
 
-            if (logger.isDebugEnabled())
-                logger.debug("Replaying {} starting at {}", file, replayPosition);
-            reader.seek(replayPosition);
+        private void read() throws IOException, InterruptedException
+        {
+            logger.info("Replaying {}", file.getPath());
+            CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
+            final long segment = desc.id;
+            int version = desc.getMessagingVersion();
+            RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
+            try
+            {
+                assert reader.length() <= Integer.MAX_VALUE;
+                int replayPosition;
+                if (globalPosition.segment < segment)
+                {
+                    replayPosition = 0;
+                }
+                else if (globalPosition.segment == segment)
+                {
+                    replayPosition = globalPosition.position;
+                }
+                else
+                {
+                    logger.debug("skipping replay of fully-flushed {}", file);
+                    return;
+                }
+
+                ICompressor compressor = null;
+                int start = 0;
+                if (desc.getVersion() >= CommitLogDescriptor.VERSION_22)
+                {
+                    CommitLogDescriptor header = CommitLogDescriptor.readHeader(reader);
+                    if (header == null)
+                    {
+                        // the header is synced along with the first appends, so nothing was acknowledged from this file
+                        logger.debug("skipping replay of {}, which has no valid header", file);
+                        return;
+                    }
+                    try
+                    {
+                        compressor = header.createCompressor();
+                    }
+                    catch (ConfigurationException e)
+                    {
+                        throw new IOException("Unable to create the compressor of " + file, e);
+                    }
+                    start = (int) reader.getFilePointer();
+                }
+
+                if (logger.isDebugEnabled())
+                    logger.debug("Replaying {} starting at {}", file, Math.max(start, replayPosition));
+
+                if (compressor == null)
+                {
+                    reader.seek(Math.max(start, replayPosition));
+                    replayMutations(reader, (int) reader.getFilePointer(), (int) reader.length(), segment, version);
+                    return;
+                }
 
+                // each sync block holds the appends between two syncs, starting where the previous one ended
+                int blockStart = start;
+                byte[] compressed = new byte[0];
+                byte[] uncompressed = new byte[0];
+                while (!reader.isEOF())
+                {
+                    int uncompressedLength;
+                    int compressedLength;
+                    long claimedCRC32;
+                    try
+                    {
+                        uncompressedLength = reader.readInt();
+                        compressedLength = reader.readInt();
+                        if (uncompressedLength <= 0 || compressedLength <= 0 || compressedLength > reader.bytesRemaining())
+                            break; // block wasn't synced fully. that's ok.
+
+                        if (compressedLength > compressed.length)
+                            compressed = new byte[compressedLength];
+                        reader.readFully(compressed, 0, compressedLength);
+                        claimedCRC32 = reader.readLong();
+                    }
+                    catch (EOFException eof)
+                    {
+                        break; // last sync block didn't get completely written. that's ok.
+                    }
+
+                    checksum.reset();
+                    FBUtilities.updateChecksumInt(checksum, uncompressedLength);
+                    FBUtilities.updateChecksumInt(checksum, compressedLength);
+                    checksum.update(compressed, 0, compressedLength);
+                    if (claimedCRC32 != checksum.getValue())
+                        break; // block wasn't synced fully. that's ok.
+
+                    int blockEnd = blockStart + uncompressedLength;
+                    if (blockEnd > replayPosition)
+                    {
+                        if (uncompressedLength > uncompressed.length)
+                            uncompressed = new byte[uncompressedLength];
+                        if (compressor.uncompress(compressed, 0, compressedLength, uncompressed, 0) != uncompressedLength)
+                            throw new IOException(String.format("Sync block at %d of %s does not uncompress to its recorded length", blockStart, file));
+
+                        // sync blocks and replay positions are both on entry boundaries
+                        int position = Math.max(blockStart, replayPosition);
+                        DataInput input = new DataInputStream(new FastByteArrayInputStream(uncompressed, position - blockStart, blockEnd - position));
+                        if (!replayMutations(input, position, blockEnd, segment, version))
+                            break;
+                    }
+                    blockStart = blockEnd;
+                }
+            }
+            finally
+            {
+                FileUtils.closeQuietly(reader);
+                logger.info("Finished reading {}", file);
+            }
+        }
+
+        /**
+         * Reads the entries between the given positions of a segment and submits their mutations for replay.
+         *
+         * @param input    the entries, starting at position
+         * @return false if the end of the segment was reached before the end position
+         */
+        private boolean replayMutations(DataInput input, int position, int end, final long segment, int version) throws IOException, InterruptedException
+        {
             /* read the logs populate RowMutation and apply */
-            while (!reader.isEOF())
+            while (position < end)
             {
                 if (logger.isDebugEnabled())
-                    logger.debug("Reading mutation at {}", reader.getFilePointer());
+                    logger.debug("Reading mutation at {}", position);
 
                 long claimedCRC32;
                 int serializedSize;
                 try
                 {
                     // any of the reads may hit EOF
-                    serializedSize = reader.readInt();
+                    serializedSize = input.readInt();
                     if (serializedSize == CommitLog.END_OF_SEGMENT_MARKER)
                     {
-                        logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
-                        break;
+                        logger.debug("Encountered end of segment marker at {}", position);
+                        return false;
                     }
 
                     // RowMutation must be at LEAST 10 bytes:
@@ -229,9 +455,9 @@ public class CommitLogReplayer
                     // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
                     // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
                     if (serializedSize < 10)
-                        break;
+                        return false;
 
-                    long claimedSizeChecksum = reader.readLong();
+                    long claimedSizeChecksum = input.readLong();
                     checksum.reset();
                     if (version < CommitLogDescriptor.VERSION_20)
                         checksum.update(serializedSize);
@@ -239,18 +465,20 @@ public class CommitLogReplayer
                         FBUtilities.updateChecksumInt(checksum, serializedSize);
 
                     if (checksum.getValue() != claimedSizeChecksum)
-                        break; // entry wasn't synced correctly/fully. that's
-                               // ok.
+                        return false; // entry wasn't synced correctly/fully. that's
+                                      // ok.
 
                     if (serializedSize > buffer.length)
                         buffer = new byte[(int) (1.2 * serializedSize)];
-                    reader.readFully(buffer, 0, serializedSize);
-                    claimedCRC32 = reader.readLong();
+                    input.readFully(buffer, 0, serializedSize);
+                    claimedCRC32 = input.readLong();
                 }
                 catch (EOFException eof)
                 {
-                    break; // last CL entry didn't get completely written. that's ok.
+                    return false; // last CL entry didn't get completely written. that's ok.
                 }
+                position += serializedSize + CommitLogSegment.ENTRY_OVERHEAD_SIZE;
+                metrics.replayedBytes.mark(serializedSize + CommitLogSegment.ENTRY_OVERHEAD_SIZE);
 
                 checksum.update(buffer, 0, serializedSize);
                 if (claimedCRC32 != checksum.getValue())
@@ -280,11 +508,11 @@ public class CommitLogReplayer
                     AtomicInteger i = invalidMutations.get(ex.cfId);
                     if (i == null)
                     {
-                        i = new AtomicInteger(1);
-                        invalidMutations.put(ex.cfId, i);
+                        AtomicInteger previous = invalidMutations.putIfAbsent(ex.cfId, i = new AtomicInteger());
+                        if (previous != null)
+                            i = previous;
                     }
-                    else
-                        i.incrementAndGet();
+                    i.incrementAndGet();
                     continue;
                 }
                 catch (Throwable t)
@@ -308,7 +536,7 @@ public class CommitLogReplayer
                 if (logger.isDebugEnabled())
                     logger.debug("replaying mutation for {}.{}: {}", rm.getKeyspaceName(), ByteBufferUtil.bytesToHex(rm.key()), "{" + StringUtils.join(rm.getColumnFamilies().iterator(), ", ") + "}");
 
-                final long entryLocation = reader.getFilePointer();
+                final long entryLocation = position;
                 Runnable runnable = new WrappedRunnable()
                 {
                     public void runMayThrow() throws IOException
@@ -348,21 +576,13 @@ public class CommitLogReplayer
                             assert !newRm.isEmpty();
                             Keyspace.open(newRm.getKeyspaceName()).apply(newRm, false);
                             keyspacesRecovered.add(keyspace);
+                            metrics.replayedMutations.mark();
                         }
                     }
                 };
-                futures.add(StageManager.getStage(Stage.MUTATION).submit(runnable));
-                if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
-                {
-                    FBUtilities.waitOnFutures(futures);
-                    futures.clear();
-                }
+                queue.put(Pair.create(rm, runnable));
             }
-        }
-        finally
-        {
-            FileUtils.closeQuietly(reader);
-            logger.info("Finished reading {}", file);
+            return true;
         }
     }
 
@@ -21,24 +21,34 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.Checksum;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.RowMutation;
 import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.ICompressor;
 import org.apache.cassandra.io.util.ByteBufferOutputStream;
 import org.apache.cassandra.io.util.ChecksummedOutputStream;
 import org.apache.cassandra.io.util.FileUtils;
@@ -49,6 +59,16 @@ import org.apache.cassandra.utils.PureJavaCrc32;
  * A single commit log file on disk. Manages creation of the file and writing row mutations to disk,
  * as well as tracking the last mutation position of any "dirty" CFs covered by the segment file. Segment
  * files are initially allocated to a fixed size and can grow to accomidate a larger value if necessary.
+ *
+ * Appends reserve their space by bumping the allocation position, so they may be serialized concurrently
+ * by several threads (see GroupCommitLogExecutorService). In that case an append cannot write the
+ * end-of-segment marker after itself, since it could overwrite a concurrent append that reserved the
+ * following space; instead segments are only ever used fresh (zero-filled), never recycled.
+ *
+ * Segments start with a header recording the compressor used for them, if any. Compressed segments buffer
+ * their appends in memory, and each sync compresses what was appended since the previous one into a
+ * checksummed block (uncompressed length, compressed length, compressed data, checksum) appended to the file.
+ * Replay positions are offsets in the uncompressed data, as for uncompressed segments.
  */
 public class CommitLogSegment
 {
@@ -60,20 +80,50 @@ public class CommitLogSegment
     // The commit log entry overhead in bytes (int: length + long: head checksum + long: tail checksum)
     static final int ENTRY_OVERHEAD_SIZE = 4 + 8 + 8;
 
+    // whether appends may run concurrently, in which case they don't write end-of-segment markers and segments are not recycled
+    static final boolean CONCURRENT_APPENDS = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.group;
+
+    // the size of the lengths preceding the compressed data of a sync block (int: uncompressed + int: compressed)
+    static final int SYNC_BLOCK_HEADER_SIZE = 4 + 4;
+
+    // compressed segments are written sequentially and concurrent appends can't mark the end of a segment,
+    // so only uncompressed segments written by a single thread can be reused
+    static final boolean RECYCLING_ENABLED = !CONCURRENT_APPENDS && DatabaseDescriptor.getCommitLogCompressor() == null;
+
+    // the in-memory buffers of fully synced compressed segments, reused by new segments rather than allocating
+    // a segment worth of heap each time; more than a few are never needed at once (active, next and syncing)
+    private static final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<ByteBuffer>();
+    private static final int MAX_POOLED_BUFFERS = 3;
+
+    // the size of the largest append that fits in a segment after its header
+    static final int MAX_APPEND_SIZE = DatabaseDescriptor.getCommitLogSegmentSize() - newDescriptor(0).headerSize();
+
     // cache which cf is dirty in this segment to avoid having to lookup all ReplayPositions to decide if we can delete this segment
-    private final HashMap<UUID, Integer> cfLastWrite = new HashMap<UUID, Integer>();
+    private final ConcurrentMap<UUID, Integer> cfLastWrite = new ConcurrentHashMap<UUID, Integer>();
 
     public final long id;
 
     private final File logFile;
     private final RandomAccessFile logFileAccessor;
 
-    private boolean needsSync = false;
+    // the mapped segment file, or the in-memory buffer of a compressed segment (pooled once fully synced)
+    private ByteBuffer buffer;
+    private final int capacity;
+
+    // null if the segment is not compressed
+    private final ICompressor compressor;
+    private ICompressor.WrappedArray compressedBuffer;
+
+    // the offset the next append will be written at
+    private final AtomicInteger allocatePosition = new AtomicInteger();
+    // the end of the appended data, once the segment no longer accepts appends
+    private int endOfData = -1;
+    // everything before this offset has been written and forced to disk (-1 until the segment header is synced)
+    private volatile int lastSyncedOffset = -1;
 
-    private final MappedByteBuffer buffer;
-    private final Checksum checksum;
-    private final DataOutputStream bufferStream;
-    private boolean closed;
+    // appends hold the read lock while they write; taking the write lock waits for any append in progress
+    private final ReadWriteLock appendLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
 
     public final CommitLogDescriptor descriptor;
 
@@ -85,6 +135,21 @@ public class CommitLogSegment
         return new CommitLogSegment(null);
     }
 
+    private static CommitLogDescriptor newDescriptor(long id)
+    {
+        ICompressor compressor = DatabaseDescriptor.getCommitLogCompressor();
+        return new CommitLogDescriptor(id, compressor == null ? null : compressor.getClass().getName());
+    }
+
+    /**
+     * @return the buffers currently pooled for reuse by new compressed segments
+     */
+    @VisibleForTesting
+    public static Collection<ByteBuffer> getPooledBuffers()
+    {
+        return Collections.unmodifiableCollection(bufferPool);
+    }
+
     public static long getNextId()
     {
         return idBase + nextId.getAndIncrement();
@@ -97,7 +162,9 @@ public class CommitLogSegment
     CommitLogSegment(String filePath)
     {
         id = getNextId();
-        descriptor = new CommitLogDescriptor(id);
+        compressor = DatabaseDescriptor.getCommitLogCompressor();
+        descriptor = newDescriptor(id);
+        capacity = DatabaseDescriptor.getCommitLogSegmentSize();
         logFile = new File(DatabaseDescriptor.getCommitLogLocation(), descriptor.fileName());
         boolean isCreating = true;
 
@@ -122,16 +189,33 @@ public class CommitLogSegment
             if (isCreating)
                 logger.debug("Creating new commit log segment {}", logFile.getPath());
 
-            // Map the segment, extending or truncating it to the standard segment size
-            logFileAccessor.setLength(DatabaseDescriptor.getCommitLogSegmentSize());
-
-            buffer = logFileAccessor.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DatabaseDescriptor.getCommitLogSegmentSize());
-            checksum = new PureJavaCrc32();
-            bufferStream = new DataOutputStream(new ChecksummedOutputStream(new ByteBufferOutputStream(buffer), checksum));
-            buffer.putInt(CommitLog.END_OF_SEGMENT_MARKER);
-            buffer.position(0);
+            if (compressor == null)
+            {
+                // Map the segment, extending or truncating it to the standard segment size
+                logFileAccessor.setLength(capacity);
 
-            needsSync = true;
+                buffer = logFileAccessor.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                descriptor.writeHeader(buffer);
+                buffer.putInt(buffer.position(), CommitLog.END_OF_SEGMENT_MARKER);
+            }
+            else
+            {
+                // the file only holds the header until the first sync appends a block
+                logFileAccessor.setLength(0);
+
+                buffer = bufferPool.poll();
+                if (buffer == null || buffer.capacity() != capacity)
+                    buffer = ByteBuffer.allocate(capacity);
+                buffer.clear();
+                descriptor.writeHeader(buffer);
+                ByteBuffer header = buffer.duplicate();
+                header.flip();
+                while (header.hasRemaining())
+                    logFileAccessor.getChannel().write(header);
+                lastSyncedOffset = buffer.position();
+                compressedBuffer = new ICompressor.WrappedArray(new byte[0]);
+            }
+            allocatePosition.set(buffer.position());
         }
         catch (IOException e)
         {
@@ -157,14 +241,13 @@ public class CommitLogSegment
      */
     public CommitLogSegment recycle()
     {
-        // writes an end-of-segment marker at the very beginning of the file and closes it
-        buffer.position(0);
-        buffer.putInt(CommitLog.END_OF_SEGMENT_MARKER);
-        buffer.position(0);
+        // overwrites the start of the header, so replay ignores the file until it is reused, and closes it
+        assert compressor == null;
+        buffer.putInt(0, CommitLog.END_OF_SEGMENT_MARKER);
 
         try
         {
-            sync();
+            force();
         }
         catch (FSWriteError e)
         {
@@ -178,11 +261,39 @@ public class CommitLogSegment
     }
 
     /**
-     * @return true if there is room to write() @param size to this segment
+     * Reserves room for an append of the given size.
+     *
+     * @return the offset to write the append at, or -1 if the segment doesn't have room for it
+     */
+    private int allocate(int size)
+    {
+        while (true)
+        {
+            int prev = allocatePosition.get();
+            int next = prev + size;
+            if (next > capacity)
+                return -1;
+            if (allocatePosition.compareAndSet(prev, next))
+                return prev;
+        }
+    }
+
+    /**
+     * Prevents any further append to this segment, once the commit log has moved on to the next one.
      */
-    public boolean hasCapacityFor(long size)
+    synchronized void discardUnusedTail()
     {
-        return size <= buffer.remaining();
+        if (endOfData < 0)
+            endOfData = allocatePosition.getAndSet(capacity);
+    }
+
+    /**
+     * Blocks until the appends that have already reserved space in this segment are written.
+     */
+    void waitForPendingAppends()
+    {
+        appendLock.writeLock().lock();
+        appendLock.writeLock().unlock();
     }
 
     /**
@@ -207,55 +318,131 @@ public class CommitLogSegment
     }
 
    /**
-     * Appends a row mutation onto the commit log.  Requres that hasCapacityFor has already been checked.
+     * Appends a row mutation onto the commit log, if the segment has room for it.
+     * Several threads may append to the same segment concurrently.
      *
      * @param   mutation   the mutation to append to the commit log.
-     * @return  the position of the appended mutation
+     * @param   size       the size of the mutation once serialized, including ENTRY_OVERHEAD_SIZE
+     * @return  the position of the appended mutation, or null if it doesn't fit in this segment
      */
-    public ReplayPosition write(RowMutation mutation) throws IOException
+    public ReplayPosition write(RowMutation mutation, int size) throws IOException
     {
-        assert !closed;
-        ReplayPosition repPos = getContext();
-        markDirty(mutation, repPos);
+        appendLock.readLock().lock();
+        try
+        {
+            int position = allocate(size);
+            if (position < 0)
+                return null;
+            assert !closed;
+
+            ReplayPosition repPos = new ReplayPosition(id, position);
+            markDirty(mutation, repPos);
+
+            ByteBuffer out = buffer.duplicate();
+            out.position(position);
+            Checksum checksum = new PureJavaCrc32();
+            DataOutputStream stream = new DataOutputStream(new ChecksummedOutputStream(new ByteBufferOutputStream(out), checksum));
+
+            // checksummed length
+            stream.writeInt(size - ENTRY_OVERHEAD_SIZE);
+            out.putLong(checksum.getValue());
 
-        checksum.reset();
+            // checksummed mutation
+            RowMutation.serializer.serialize(mutation, stream, MessagingService.current_version);
+            out.putLong(checksum.getValue());
+            assert out.position() == position + size;
 
-        // checksummed length
-        int length = (int) RowMutation.serializer.serializedSize(mutation, MessagingService.current_version);
-        bufferStream.writeInt(length);
-        buffer.putLong(checksum.getValue());
+            if (compressor == null && !CONCURRENT_APPENDS && out.remaining() >= 4)
+            {
+                // writes end of segment marker where the next append will start
+                out.putInt(CommitLog.END_OF_SEGMENT_MARKER);
+            }
 
-        // checksummed mutation
-        RowMutation.serializer.serialize(mutation, bufferStream, MessagingService.current_version);
-        buffer.putLong(checksum.getValue());
+            return repPos;
+        }
+        finally
+        {
+            appendLock.readLock().unlock();
+        }
+    }
 
-        if (buffer.remaining() >= 4)
+    /**
+     * Forces a disk flush for this segment file, covering every append that had
+     * reserved its space when the sync started.
+     */
+    public synchronized void sync()
+    {
+        // any append still writing below the current allocation position must complete first,
+        // or a later append could be acknowledged while replay would stop at the hole it leaves
+        int syncOffset;
+        appendLock.writeLock().lock();
+        try
         {
-            // writes end of segment marker and rewinds back to position where it starts
-            buffer.putInt(CommitLog.END_OF_SEGMENT_MARKER);
-            buffer.position(buffer.position() - CommitLog.END_OF_SEGMENT_MARKER_SIZE);
+            syncOffset = endOfData >= 0 ? endOfData : allocatePosition.get();
+        }
+        finally
+        {
+            appendLock.writeLock().unlock();
         }
 
-        needsSync = true;
-        return repPos;
+        if (syncOffset != lastSyncedOffset)
+        {
+            if (compressor != null)
+                writeCompressedBlock(lastSyncedOffset, syncOffset);
+            force();
+            lastSyncedOffset = syncOffset;
+        }
+
+        // nothing will be appended to a full compressed segment anymore, so release its buffer
+        if (compressor != null && syncOffset == endOfData)
+            close();
     }
 
     /**
-     * Forces a disk flush for this segment file.
+     * Compresses the appends between the given offsets of the buffer and appends them to the file as a sync block.
      */
-    public void sync()
+    private void writeCompressedBlock(int start, int end)
     {
-        if (needsSync)
+        int length = end - start;
+        int maxLength = SYNC_BLOCK_HEADER_SIZE + compressor.initialCompressedBufferLength(length);
+        if (compressedBuffer.buffer.length < maxLength)
+            compressedBuffer.buffer = new byte[maxLength];
+
+        try
         {
-            try
-            {
-                buffer.force();
-            }
-            catch (Exception e) // MappedByteBuffer.force() does not declare IOException but can actually throw it
-            {
-                throw new FSWriteError(e, getPath());
-            }
-            needsSync = false;
+            int compressedLength = compressor.compress(buffer.array(), start, length, compressedBuffer, SYNC_BLOCK_HEADER_SIZE);
+            ByteBuffer block = ByteBuffer.wrap(compressedBuffer.buffer, 0, SYNC_BLOCK_HEADER_SIZE + compressedLength);
+            block.putInt(0, length);
+            block.putInt(4, compressedLength);
+
+            Checksum checksum = new PureJavaCrc32();
+            checksum.update(compressedBuffer.buffer, 0, block.limit());
+            ByteBuffer crc = ByteBuffer.allocate(8);
+            crc.putLong(0, checksum.getValue());
+
+            ByteBuffer[] buffers = new ByteBuffer[]{ block, crc };
+            FileChannel channel = logFileAccessor.getChannel();
+            while (crc.hasRemaining())
+                channel.write(buffers);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, getPath());
+        }
+    }
+
+    private void force()
+    {
+        try
+        {
+            if (compressor == null)
+                ((MappedByteBuffer) buffer).force();
+            else
+                logFileAccessor.getChannel().force(false);
+        }
+        catch (Exception e) // MappedByteBuffer.force() does not declare IOException but can actually throw it
+        {
+            throw new FSWriteError(e, getPath());
         }
     }
 
@@ -264,7 +451,7 @@ public class CommitLogSegment
      */
     public ReplayPosition getContext()
     {
-        return new ReplayPosition(id, buffer.position());
+        return new ReplayPosition(id, position());
     }
 
     /**
@@ -284,18 +471,23 @@ public class CommitLogSegment
     }
 
     /**
-     * Close the segment file.
+     * Close the segment file. Both sync() and discard() close a compressed segment, so this must only
+     * ever hand its buffer back to the pool once.
      */
-    public void close()
+    public synchronized void close()
     {
         if (closed)
             return;
 
+        closed = true;
         try
         {
-            FileUtils.clean(buffer);
+            if (compressor == null)
+                FileUtils.clean((MappedByteBuffer) buffer);
+            else if (bufferPool.size() < MAX_POOLED_BUFFERS)
+                bufferPool.offer(buffer);
+            buffer = null;
             logFileAccessor.close();
-            closed = true;
         }
         catch (IOException e)
         {
@@ -311,7 +503,20 @@ public class CommitLogSegment
      */
     private void markCFDirty(UUID cfId, Integer position)
     {
-        cfLastWrite.put(cfId, position);
+        // appends may mark the same CF concurrently, so only ever move the last write position forward
+        while (true)
+        {
+            Integer previous = cfLastWrite.get(cfId);
+            if (previous == null)
+            {
+                if (cfLastWrite.putIfAbsent(cfId, position) == null)
+                    return;
+            }
+            else if (previous >= position || cfLastWrite.replace(cfId, previous, position))
+            {
+                return;
+            }
+        }
     }
 
     /**
@@ -328,7 +533,8 @@ public class CommitLogSegment
 
         if (lastWritten != null && (!contains(context) || lastWritten < context.position))
         {
-            cfLastWrite.remove(cfId);
+            // don't lose a write that marked the CF dirty again in the meantime
+            cfLastWrite.remove(cfId, lastWritten);
         }
     }
 
@@ -379,7 +585,7 @@ public class CommitLogSegment
 
     public int position()
     {
-        return buffer.position();
+        return allocatePosition.get();
     }
 
 
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.utils.WrappedRunnable;
+
+/**
+ * Group commit: writers append their mutations to the active segment concurrently, each serializing
+ * on its own thread, then wait until a sync covers what they wrote. A single syncer thread forces the
+ * segments to disk at most once per commitlog_sync_group_window_in_ms, so one fsync acknowledges every
+ * write that completed during the window. This gives the durability of batch mode without funnelling
+ * every write through a single appending thread.
+ *
+ * If the syncer thread dies, on an FSWriteError for instance, the writers waiting for a sync and the tasks
+ * not run yet fail rather than waiting forever. So do the writes and tasks submitted after shutdown().
+ */
+class GroupCommitLogExecutorService implements ICommitLogExecutorService
+{
+    // tasks other than appends (getContext, discarding segments...) are run by the syncer thread between syncs
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>();
+    private final AtomicLong completedTaskCount = new AtomicLong();
+    private final AtomicInteger waitingWriters = new AtomicInteger();
+    private final Thread syncerThread;
+    private volatile boolean run = true;
+    // guarded by syncMonitor; set once the syncer thread is done, normally or not, after which nothing is queued
+    private boolean terminated;
+
+    // a sync is guaranteed to cover every append that completed before it started
+    private final Object syncMonitor = new Object();
+    private volatile long syncsStarted = 0;
+    private volatile long syncsCompleted = 0;
+
+    public GroupCommitLogExecutorService(final CommitLog commitLog)
+    {
+        this(new Runnable()
+        {
+            public void run()
+            {
+                commitLog.sync();
+            }
+        }, DatabaseDescriptor.getCommitLogSyncGroupWindow());
+    }
+
+    @VisibleForTesting
+    GroupCommitLogExecutorService(final Runnable syncTask, double windowMillis)
+    {
+        final long windowNanos = (long) (windowMillis * 1000000);
+        Runnable runnable = new WrappedRunnable()
+        {
+            public void runMayThrow() throws Exception
+            {
+                try
+                {
+                    while (run)
+                    {
+                        long syncStart = System.nanoTime();
+                        sync(syncTask);
+
+                        long deadline = syncStart + windowNanos;
+                        long now;
+                        while ((now = System.nanoTime()) < deadline)
+                        {
+                            Runnable r = queue.poll(deadline - now, TimeUnit.NANOSECONDS);
+                            if (r == null)
+                                continue;
+                            r.run();
+                            completedTaskCount.incrementAndGet();
+                        }
+                    }
+                    // drain what was submitted before shutdown, and acknowledge the last writers
+                    Runnable r;
+                    while ((r = queue.poll()) != null)
+                        r.run();
+                    sync(syncTask);
+                }
+                finally
+                {
+                    terminate();
+                }
+            }
+        };
+        syncerThread = new Thread(runnable, "COMMIT-LOG-SYNCER");
+        syncerThread.start();
+    }
+
+    private void sync(Runnable syncTask)
+    {
+        long sync = syncsStarted + 1;
+        syncsStarted = sync;
+        syncTask.run();
+        synchronized (syncMonitor)
+        {
+            syncsCompleted = sync;
+            syncMonitor.notifyAll();
+        }
+    }
+
+    // fails the writers still waiting for a sync, and the tasks that won't be run
+    private void terminate()
+    {
+        synchronized (syncMonitor)
+        {
+            terminated = true;
+            syncMonitor.notifyAll();
+        }
+
+        Runnable r;
+        while ((r = queue.poll()) != null)
+            ((Future<?>) r).cancel(false);
+    }
+
+    public void add(CommitLog.LogRecordAdder adder)
+    {
+        add((Runnable) adder);
+    }
+
+    @VisibleForTesting
+    void add(Runnable adder)
+    {
+        if (!run)
+            throw new RejectedExecutionException("The commit log is shut down");
+
+        adder.run();
+
+        // the next sync to start is bound to cover our append
+        long sync = syncsStarted + 1;
+        waitingWriters.incrementAndGet();
+        boolean synced;
+        try
+        {
+            boolean interrupted = false;
+            synchronized (syncMonitor)
+            {
+                while (syncsCompleted < sync && !terminated)
+                {
+                    try
+                    {
+                        syncMonitor.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        interrupted = true;
+                    }
+                }
+                synced = syncsCompleted >= sync;
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            waitingWriters.decrementAndGet();
+        }
+
+        if (!synced)
+            throw new RuntimeException("The commit log syncer stopped before syncing this write");
+        completedTaskCount.incrementAndGet();
+    }
+
+    public <T> Future<T> submit(Callable<T> task)
+    {
+        if (!run)
+            throw new RejectedExecutionException("The commit log is shut down");
+
+        FutureTask<T> ft = new FutureTask<T>(task);
+        synchronized (syncMonitor)
+        {
+            // nothing would run it anymore
+            if (terminated)
+                ft.cancel(false);
+            else
+                queue.add(ft);
+        }
+        return ft;
+    }
+
+    public void shutdown()
+    {
+        run = false;
+    }
+
+    public void awaitTermination() throws InterruptedException
+    {
+        syncerThread.join();
+    }
+
+    public long getPendingTasks()
+    {
+        return queue.size() + waitingWriters.get();
+    }
+
+    public long getCompletedTasks()
+    {
+        return completedTaskCount.get();
+    }
+}
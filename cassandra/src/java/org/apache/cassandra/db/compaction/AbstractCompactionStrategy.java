@@ -230,6 +230,27 @@ public abstract class AbstractCompactionStrategy
         });
     }
 
+    /**
+     * Splits the given sstables into the unrepaired and the repaired ones.  The two must never be compacted
+     * together, so that incremental repairs only have to validate the data written since the last one.
+     *
+     * @return the non-empty ones among the two groups
+     */
+    public static List<List<SSTableReader>> splitByRepairStatus(Iterable<SSTableReader> sstables)
+    {
+        List<SSTableReader> unrepaired = new ArrayList<SSTableReader>();
+        List<SSTableReader> repaired = new ArrayList<SSTableReader>();
+        for (SSTableReader sstable : sstables)
+            (sstable.isRepaired() ? repaired : unrepaired).add(sstable);
+
+        List<List<SSTableReader>> groups = new ArrayList<List<SSTableReader>>(2);
+        if (!unrepaired.isEmpty())
+            groups.add(unrepaired);
+        if (!repaired.isEmpty())
+            groups.add(repaired);
+        return groups;
+    }
+
     /**
      * Returns a list of KeyScanners given sstables and a range on which to scan.
      * The default implementation simply grab one SSTableScanner per-sstable, but overriding this method
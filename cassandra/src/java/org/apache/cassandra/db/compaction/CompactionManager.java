@@ -30,6 +30,7 @@ import javax.management.openmbean.TabularData;
 import com.google.common.base.Throwables;
 import com.google.common.collect.*;
 import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +50,7 @@ import org.apache.cassandra.io.sstable.*;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.metrics.CompactionMetrics;
 import org.apache.cassandra.repair.Validator;
+import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.*;
 
@@ -96,6 +98,7 @@ public class CompactionManager implements CompactionManagerMBean
     private final CompactionExecutor executor = new CompactionExecutor();
     private final CompactionExecutor validationExecutor = new ValidationExecutor();
     private final static CompactionExecutor cacheCleanupExecutor = new CacheCleanupExecutor();
+    private final CompactionExecutor subrangeExecutor = new SubrangeExecutor();
 
     private final CompactionMetrics metrics = new CompactionMetrics(executor, validationExecutor);
     private final Multiset<ColumnFamilyStore> compactingCF = ConcurrentHashMultiset.create();
@@ -408,6 +411,15 @@ public class CompactionManager implements CompactionManagerMBean
         return validationExecutor.submit(callable);
     }
 
+    /**
+     * Submits the compaction of one token sub-range of a larger compaction.  These run on their own executor,
+     * since the compaction they belong to is waiting for them on the compaction executor.
+     */
+    public <T> Future<T> submitSubrange(Callable<T> callable)
+    {
+        return subrangeExecutor.submit(callable);
+    }
+
     /* Used in tests. */
     public void disableAutoCompaction()
     {
@@ -620,6 +632,144 @@ public class CompactionManager implements CompactionManagerMBean
         }
     }
 
+    /**
+     * Marks the sstables of cfs validated by an incremental repair as repaired at repairedAt.  Only the rows in the
+     * ranges each sstable was repaired for are marked, so sstables partly covered by their ranges are split in two.
+     *
+     * @param rangesByGeneration the repaired ranges of each validated sstable, by generation
+     */
+    public Future<?> submitAnticompaction(final ColumnFamilyStore cfs, final Map<Integer, Collection<Range<Token>>> rangesByGeneration, final long repairedAt)
+    {
+        Runnable runnable = new WrappedRunnable()
+        {
+            protected void runMayThrow() throws IOException
+            {
+                doAntiCompaction(cfs, rangesByGeneration, repairedAt);
+            }
+        };
+        return executor.submit(runnable);
+    }
+
+    private void doAntiCompaction(ColumnFamilyStore cfs, Map<Integer, Collection<Range<Token>>> rangesByGeneration, long repairedAt) throws IOException
+    {
+        for (SSTableReader sstable : cfs.getSSTables())
+        {
+            // the validated sstables that were compacted since are simply left unrepaired
+            Collection<Range<Token>> ranges = rangesByGeneration.get(sstable.descriptor.generation);
+            if (ranges == null || sstable.isRepaired())
+                continue;
+
+            Set<SSTableReader> marked = Collections.singleton(sstable);
+            if (!cfs.getDataTracker().markCompacting(marked))
+            {
+                logger.debug("Leaving {} unrepaired since it is being compacted", sstable);
+                continue;
+            }
+            try
+            {
+                if (cfs.getSSTables().contains(sstable))
+                    anticompactOne(cfs, sstable, ranges, repairedAt);
+            }
+            finally
+            {
+                cfs.getDataTracker().unmarkCompacting(marked);
+            }
+        }
+    }
+
+    private void anticompactOne(ColumnFamilyStore cfs, SSTableReader sstable, Collection<Range<Token>> ranges, long repairedAt) throws IOException
+    {
+        ranges = Range.normalize(ranges);
+        for (Range<Token> range : ranges)
+        {
+            if (range.contains(sstable.first.token) && range.contains(sstable.last.token))
+            {
+                logger.debug("Marking {} repaired at {}", sstable, repairedAt);
+                SSTableMetadata.mutateRepairedAt(sstable.descriptor, repairedAt);
+                sstable.reloadSSTableMetadata();
+                cfs.getDataTracker().notifySSTableRepairStatusChanged(Collections.singleton(sstable));
+                return;
+            }
+        }
+        if (!new Bounds<Token>(sstable.first.token, sstable.last.token).intersects(ranges))
+            return;
+
+        logger.info("Anticompacting {}", sstable);
+        CompactionController controller = new CompactionController(cfs, Collections.singleton(sstable), getDefaultGcBefore(cfs));
+        int expectedBloomFilterSize = Math.max(cfs.metadata.getIndexInterval(),
+                                               (int) (SSTableReader.getApproximateKeyCount(Arrays.asList(sstable), cfs.metadata)));
+        File compactionFileLocation = cfs.directories.getDirectoryForNewSSTables();
+        if (compactionFileLocation == null)
+            throw new IOException("disk full");
+
+        SSTableScanner scanner = sstable.getScanner(getRateLimiter());
+        CleanupInfo ci = new CleanupInfo(sstable, scanner, OperationType.ANTICOMPACTION);
+        metrics.beginCompaction(ci);
+        // the repaired part goes back to L0, since it may overlap the repaired sstables of the original level
+        SSTableWriter repairedWriter = new SSTableWriter(cfs.getTempSSTablePath(compactionFileLocation),
+                                                         expectedBloomFilterSize,
+                                                         cfs.metadata,
+                                                         cfs.partitioner,
+                                                         SSTableMetadata.createCollector(Collections.singleton(sstable), cfs.metadata.comparator, 0).repairedAt(repairedAt));
+        SSTableWriter unrepairedWriter = createWriter(cfs, compactionFileLocation, expectedBloomFilterSize, sstable);
+        List<SSTableWriter> unfinishedWriters = Lists.newArrayList(repairedWriter, unrepairedWriter);
+        List<SSTableReader> results = new ArrayList<SSTableReader>(2);
+        try
+        {
+            long repairedKeys = 0;
+            long unrepairedKeys = 0;
+            while (scanner.hasNext())
+            {
+                if (ci.isStopRequested())
+                    throw new CompactionInterruptedException(ci.getCompactionInfo());
+                SSTableIdentityIterator row = (SSTableIdentityIterator) scanner.next();
+                AbstractCompactedRow compactedRow = new LazilyCompactedRow(controller, Collections.singletonList(row));
+                if (Range.isInRanges(row.getKey().token, ranges))
+                {
+                    if (repairedWriter.append(compactedRow) != null)
+                        repairedKeys++;
+                }
+                else
+                {
+                    if (unrepairedWriter.append(compactedRow) != null)
+                        unrepairedKeys++;
+                }
+            }
+            finishAnticompactionWriter(repairedWriter, repairedKeys, sstable, unfinishedWriters, results);
+            finishAnticompactionWriter(unrepairedWriter, unrepairedKeys, sstable, unfinishedWriters, results);
+        }
+        catch (Throwable e)
+        {
+            for (SSTableWriter writer : unfinishedWriters)
+                writer.abort();
+            // also remove already completed SSTables
+            for (SSTableReader result : results)
+            {
+                result.markObsolete();
+                result.releaseReference();
+            }
+            throw Throwables.propagate(e);
+        }
+        finally
+        {
+            controller.close();
+            scanner.close();
+            metrics.finishCompaction(ci);
+        }
+
+        logger.info("Anticompacted {} into {}", sstable, results);
+        cfs.replaceCompactedSSTables(Arrays.asList(sstable), results, OperationType.ANTICOMPACTION);
+    }
+
+    private static void finishAnticompactionWriter(SSTableWriter writer, long keysWritten, SSTableReader sstable, List<SSTableWriter> unfinishedWriters, List<SSTableReader> results)
+    {
+        unfinishedWriters.remove(writer);
+        if (keysWritten > 0)
+            results.add(writer.closeAndOpenReader(sstable.maxDataAge));
+        else
+            writer.abort();
+    }
+
     private static abstract class CleanupStrategy
     {
         public static CleanupStrategy get(ColumnFamilyStore cfs, Collection<Range<Token>> ranges, CounterId.OneShotRenewer renewer)
@@ -784,7 +934,57 @@ public class CompactionManager implements CompactionManagerMBean
                 gcBefore = getDefaultGcBefore(cfs);
         }
 
-        CompactionIterable ci = new ValidationCompactionIterable(cfs, sstables, validator.desc.range, gcBefore);
+        if (validator.isIncremental)
+        {
+            // the repaired sstables were already validated by a previous incremental repair
+            List<SSTableReader> unrepaired = new ArrayList<SSTableReader>(sstables.size());
+            List<SSTableReader> repaired = new ArrayList<SSTableReader>();
+            for (SSTableReader sstable : sstables)
+                (sstable.isRepaired() ? repaired : unrepaired).add(sstable);
+            if (isSnapshotValidation)
+            {
+                for (SSTableReader sstable : repaired)
+                    FileUtils.closeQuietly(sstable);
+            }
+            else
+            {
+                SSTableReader.releaseReferences(repaired);
+            }
+            sstables = unrepaired;
+        }
+
+        try
+        {
+            int subranges = DatabaseDescriptor.getValidationSubranges();
+            if (subranges > 1)
+                validateInParallel(cfs, sstables, validator, gcBefore, subranges);
+            else
+                validate(cfs, sstables, validator, gcBefore);
+            if (validator.isIncremental)
+                ActiveRepairService.instance.recordValidatedSSTables(validator.desc, validator.initiator, sstables);
+            validator.complete();
+        }
+        finally
+        {
+            if (isSnapshotValidation)
+            {
+                for (SSTableReader sstable : sstables)
+                    FileUtils.closeQuietly(sstable);
+                cfs.clearSnapshot(snapshotName);
+            }
+            else
+            {
+                SSTableReader.releaseReferences(sstables);
+            }
+        }
+    }
+
+    /**
+     * Builds the tree of the given validator, reading the range it covers from the given sstables.
+     */
+    private void validate(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, Validator validator, int gcBefore) throws IOException
+    {
+        CompactionIterable ci = new ValidationCompactionIterable(cfs, sstables, validator.tree.fullRange, gcBefore);
         CloseableIterator<AbstractCompactedRow> iter = ci.iterator();
         metrics.beginCompaction(ci);
         try
@@ -798,24 +998,56 @@ public class CompactionManager implements CompactionManagerMBean
                 AbstractCompactedRow row = iter.next();
                 validator.add(row);
             }
-            validator.complete();
         }
         finally
         {
             iter.close();
-            if (isSnapshotValidation)
+            metrics.finishCompaction(ci);
+        }
+    }
+
+    /**
+     * Splits the tree of the given validator into sub-trees, builds each of them on the sub-range executor,
+     * and grafts them back once they are all complete.  Waits for all of them to terminate even if one fails,
+     * since the sstables must stay referenced until then, and rethrows the first failure.
+     */
+    private void validateInParallel(final ColumnFamilyStore cfs,
+                                    final Collection<SSTableReader> sstables,
+                                    Validator validator,
+                                    final int gcBefore,
+                                    int subranges) throws IOException
+    {
+        List<Validator> parts = validator.split(subranges);
+        List<Future<Object>> futures = new ArrayList<>(parts.size());
+        for (final Validator part : parts)
+        {
+            futures.add(submitSubrange(new Callable<Object>()
             {
-                for (SSTableReader sstable : sstables)
-                    FileUtils.closeQuietly(sstable);
-                cfs.clearSnapshot(snapshotName);
+                public Object call() throws IOException
+                {
+                    validate(cfs, sstables, part, gcBefore);
+                    return null;
+                }
+            }));
+        }
+
+        Throwable failure = null;
+        for (Future<Object> future : futures)
+        {
+            try
+            {
+                Uninterruptibles.getUninterruptibly(future);
             }
-            else
+            catch (ExecutionException e)
             {
-                SSTableReader.releaseReferences(sstables);
+                if (failure == null)
+                    failure = e.getCause();
             }
-
-            metrics.finishCompaction(ci);
         }
+        if (failure != null)
+            throw Throwables.propagate(failure);
+
+        validator.merge(parts);
     }
 
     /**
@@ -992,6 +1224,14 @@ public class CompactionManager implements CompactionManagerMBean
         }
     }
 
+    private static class SubrangeExecutor extends CompactionExecutor
+    {
+        public SubrangeExecutor()
+        {
+            super(FBUtilities.getAvailableProcessors(), "CompactionSubrangeExecutor");
+        }
+    }
+
     public interface CompactionExecutorStatsCollector
     {
         void beginCompaction(CompactionInfo.Holder ci);
@@ -1053,11 +1293,18 @@ public class CompactionManager implements CompactionManagerMBean
     {
         private final SSTableReader sstable;
         private final SSTableScanner scanner;
+        private final OperationType type;
 
         public CleanupInfo(SSTableReader sstable, SSTableScanner scanner)
+        {
+            this(sstable, scanner, OperationType.CLEANUP);
+        }
+
+        public CleanupInfo(SSTableReader sstable, SSTableScanner scanner, OperationType type)
         {
             this.sstable = sstable;
             this.scanner = scanner;
+            this.type = type;
         }
 
         public CompactionInfo getCompactionInfo()
@@ -1065,7 +1312,7 @@ public class CompactionManager implements CompactionManagerMBean
             try
             {
                 return new CompactionInfo(sstable.metadata,
-                                          OperationType.CLEANUP,
+                                          type,
                                           scanner.getCurrentPosition(),
                                           scanner.getLengthInBytes());
             }
@@ -20,10 +20,14 @@ package org.apache.cassandra.db.compaction;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +35,9 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.compaction.CompactionManager.CompactionExecutorStatsCollector;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.*;
 import org.apache.cassandra.utils.CloseableIterator;
 
@@ -115,7 +122,6 @@ public class CompactionTask extends AbstractCompactionTask
         logger.info("Compacting {}", toCompact);
 
         long start = System.nanoTime();
-        long totalkeysWritten = 0;
 
         long estimatedTotalKeys = Math.max(cfs.metadata.getIndexInterval(), SSTableReader.getApproximateKeyCount(actuallyCompact, cfs.metadata));
         long estimatedSSTables = Math.max(1, SSTableReader.getTotalBytes(actuallyCompact) / strategy.getMaxSSTableSize());
@@ -123,22 +129,39 @@ public class CompactionTask extends AbstractCompactionTask
         if (logger.isDebugEnabled())
             logger.debug("Expected bloom filter size : {}", keysPerSSTable);
 
-        AbstractCompactionIterable ci = new CompactionIterable(compactionType, strategy.getScanners(actuallyCompact), controller);
-        CloseableIterator<AbstractCompactedRow> iter = ci.iterator();
-        Map<DecoratedKey, RowIndexEntry> cachedKeys = new HashMap<DecoratedKey, RowIndexEntry>();
+        List<Range<Token>> ranges = getSubranges(actuallyCompact);
+        List<SubrangeCompaction> subranges = new ArrayList<SubrangeCompaction>(ranges.size());
+        for (Range<Token> range : ranges)
+        {
+            // controllers are not meant to be shared between threads, so each sub-range beyond the first gets its own
+            CompactionController subrangeController = subranges.isEmpty() ? controller : getCompactionController(toCompact);
+            subranges.add(new SubrangeCompaction(strategy.getScanners(actuallyCompact, range), subrangeController, actuallyCompact, sstableDirectory, keysPerSSTable));
+        }
+        if (ranges.size() > 1)
+            logger.info("Compacting {} sub-ranges in parallel: {}", ranges.size(), ranges);
 
         // we can't preheat until the tracker has been set. This doesn't happen until we tell the cfs to
         // replace the old entries.  Track entries to preheat here until then.
         Map<Descriptor, Map<DecoratedKey, RowIndexEntry>> cachedKeyMap =  new HashMap<Descriptor, Map<DecoratedKey, RowIndexEntry>>();
 
         Collection<SSTableReader> sstables = new ArrayList<SSTableReader>();
-        Collection<SSTableWriter> writers = new ArrayList<SSTableWriter>();
 
         if (collector != null)
-            collector.beginCompaction(ci);
+        {
+            for (SubrangeCompaction subrange : subranges)
+                collector.beginCompaction(subrange.ci);
+        }
         try
         {
-            if (!iter.hasNext())
+            if (subranges.size() == 1)
+                subranges.get(0).call();
+            else
+                runInParallel(subranges);
+
+            boolean empty = true;
+            for (SubrangeCompaction subrange : subranges)
+                empty &= subrange.empty;
+            if (empty)
             {
                 // don't mark compacted in the finally block, since if there _is_ nondeleted data,
                 // we need to sync it (via closeAndOpen) first, so there is no period during which
@@ -147,64 +170,21 @@ public class CompactionTask extends AbstractCompactionTask
                 return;
             }
 
-            SSTableWriter writer = createCompactionWriter(sstableDirectory, keysPerSSTable);
-            writers.add(writer);
-            while (iter.hasNext())
-            {
-                if (ci.isStopRequested())
-                    throw new CompactionInterruptedException(ci.getCompactionInfo());
-
-                AbstractCompactedRow row = iter.next();
-                RowIndexEntry indexEntry = writer.append(row);
-                if (indexEntry == null)
-                {
-                    controller.invalidateCachedRow(row.key);
-                    row.close();
-                    continue;
-                }
-
-                totalkeysWritten++;
-
-                if (DatabaseDescriptor.getPreheatKeyCache())
-                {
-                    for (SSTableReader sstable : actuallyCompact)
-                    {
-                        if (sstable.getCachedPosition(row.key, false) != null)
-                        {
-                            cachedKeys.put(row.key, indexEntry);
-                            break;
-                        }
-                    }
-                }
-
-                if (newSSTableSegmentThresholdReached(writer))
-                {
-                    // tmp = false because later we want to query it with descriptor from SSTableReader
-                    cachedKeyMap.put(writer.descriptor.asTemporary(false), cachedKeys);
-                    writer = createCompactionWriter(sstableDirectory, keysPerSSTable);
-                    writers.add(writer);
-                    cachedKeys = new HashMap<DecoratedKey, RowIndexEntry>();
-                }
-            }
-
-            if (writer.getFilePointer() > 0)
-            {
-                cachedKeyMap.put(writer.descriptor.asTemporary(false), cachedKeys);
-            }
-            else
+            long maxAge = getMaxDataAge(toCompact);
+            for (SubrangeCompaction subrange : subranges)
             {
-                writer.abort();
-                writers.remove(writer);
+                for (SSTableWriter completedWriter : subrange.writers)
+                    sstables.add(completedWriter.closeAndOpenReader(maxAge));
+                cachedKeyMap.putAll(subrange.cachedKeyMap);
             }
-
-            long maxAge = getMaxDataAge(toCompact);
-            for (SSTableWriter completedWriter : writers)
-                sstables.add(completedWriter.closeAndOpenReader(maxAge));
         }
         catch (Throwable t)
         {
-            for (SSTableWriter writer : writers)
-                writer.abort();
+            for (SubrangeCompaction subrange : subranges)
+            {
+                for (SSTableWriter writer : subrange.writers)
+                    writer.abort();
+            }
             // also remove already completed SSTables
             for (SSTableReader sstable : sstables)
             {
@@ -216,6 +196,11 @@ public class CompactionTask extends AbstractCompactionTask
         finally
         {
             controller.close();
+            for (SubrangeCompaction subrange : subranges)
+            {
+                if (subrange.controller != controller)
+                    subrange.controller.close();
+            }
 
             // point of no return -- the new sstables are live on disk; next we'll start deleting the old ones
             // (in replaceCompactedSSTables)
@@ -223,13 +208,17 @@ public class CompactionTask extends AbstractCompactionTask
                 SystemKeyspace.finishCompaction(taskId);
 
             if (collector != null)
-                collector.finishCompaction(ci);
+            {
+                for (SubrangeCompaction subrange : subranges)
+                    collector.finishCompaction(subrange.ci);
+            }
 
             try
             {
                 // We don't expect this to throw, but just in case, we do it after the cleanup above, to make sure
                 // we don't end up with compaction information hanging around indefinitely in limbo.
-                iter.close();
+                for (SubrangeCompaction subrange : subranges)
+                    subrange.iter.close();
             }
             catch (IOException e)
             {
@@ -237,6 +226,7 @@ public class CompactionTask extends AbstractCompactionTask
             }
         }
 
+        // all sub-ranges replace the compacted sstables at once
         replaceCompactedSSTables(toCompact, sstables);
         // TODO: this doesn't belong here, it should be part of the reader to load when the tracker is wired up
         for (SSTableReader sstable : sstables)
@@ -254,7 +244,17 @@ public class CompactionTask extends AbstractCompactionTask
 
         double mbps = dTime > 0 ? (double) endsize / (1024 * 1024) / ((double) dTime / 1000) : 0;
         long totalSourceRows = 0;
-        long[] counts = ci.getMergedRowCounts();
+        long totalkeysWritten = 0;
+        long[] counts = new long[0];
+        for (SubrangeCompaction subrange : subranges)
+        {
+            totalkeysWritten += subrange.keysWritten;
+            long[] subrangeCounts = subrange.ci.getMergedRowCounts();
+            if (subrangeCounts.length > counts.length)
+                counts = Arrays.copyOf(counts, subrangeCounts.length);
+            for (int i = 0; i < subrangeCounts.length; i++)
+                counts[i] += subrangeCounts[i];
+        }
         StringBuilder mergeSummary = new StringBuilder(counts.length * 10);
         Map<Integer, Long> mergedRows = new HashMap<Integer, Long>();
         for (int i = 0; i < counts.length; i++)
@@ -275,6 +275,81 @@ public class CompactionTask extends AbstractCompactionTask
         logger.debug(String.format("CF Total Bytes Compacted: %,d", CompactionTask.addToTotalBytesCompacted(endsize)));
     }
 
+    /**
+     * Runs the sub-range compactions on the sub-range executor, and waits for all of them to terminate.  If one
+     * fails, the others are stopped, and the first failure is rethrown once they are all done.
+     */
+    private static void runInParallel(List<SubrangeCompaction> subranges) throws Throwable
+    {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(subranges.size());
+        for (SubrangeCompaction subrange : subranges)
+            futures.add(CompactionManager.instance.submitSubrange(subrange));
+
+        Throwable failure = null;
+        for (Future<Void> future : futures)
+        {
+            try
+            {
+                Uninterruptibles.getUninterruptibly(future);
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                {
+                    failure = e.getCause();
+                    for (SubrangeCompaction subrange : subranges)
+                        subrange.ci.stop();
+                }
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * @return the token ranges to compact in parallel, one per sub-range, or a single null range covering
+     * everything when the compaction is not worth splitting.
+     */
+    protected List<Range<Token>> getSubranges(Set<SSTableReader> sstables)
+    {
+        long minSize = Math.max(1, DatabaseDescriptor.getCompactionSubrangeMinSize());
+        long count = Math.min(DatabaseDescriptor.getCompactionSubranges(), SSTableReader.getTotalBytes(sstables) / minSize);
+        if (count <= 1)
+            return Collections.singletonList(null);
+        return splitRanges(sstables, (int) count, cfs.partitioner);
+    }
+
+    /**
+     * Splits the ring into at most {@code count} ranges holding about the same number of the given sstables'
+     * partitions, using the keys sampled in their index summaries.
+     */
+    static List<Range<Token>> splitRanges(Collection<SSTableReader> sstables, int count, IPartitioner partitioner)
+    {
+        Token minimum = partitioner.getMinimumToken();
+        Range<Token> ring = new Range<Token>(minimum, minimum);
+        List<DecoratedKey> samples = new ArrayList<DecoratedKey>();
+        for (SSTableReader sstable : sstables)
+        {
+            for (DecoratedKey key : sstable.getKeySamples(ring))
+                samples.add(key);
+        }
+        Collections.sort(samples);
+
+        List<Range<Token>> ranges = new ArrayList<Range<Token>>(count);
+        Token left = minimum;
+        for (int i = 1; i < count && !samples.isEmpty(); i++)
+        {
+            // samples are sorted, so the only way not to move forward is to hit the same token again
+            Token right = samples.get(i * samples.size() / count).token;
+            if (right.equals(left))
+                continue;
+            ranges.add(new Range<Token>(left, right));
+            left = right;
+        }
+        ranges.add(new Range<Token>(left, minimum));
+        return ranges;
+    }
+
     private SSTableWriter createCompactionWriter(File sstableDirectory, long keysPerSSTable)
     {
         return new SSTableWriter(cfs.getTempSSTablePath(sstableDirectory),
@@ -284,6 +359,95 @@ public class CompactionTask extends AbstractCompactionTask
                                  SSTableMetadata.createCollector(toCompact, cfs.metadata.comparator, getLevel()));
     }
 
+    /**
+     * Merges the rows of one token sub-range of the compaction into its own sstables, using its own controller.
+     * The writers are left open: once every sub-range is done, runWith closes them all and replaces the compacted
+     * sstables with the result in one go, or aborts them all if any sub-range failed.
+     */
+    private class SubrangeCompaction implements Callable<Void>
+    {
+        private final AbstractCompactionIterable ci;
+        private final CloseableIterator<AbstractCompactedRow> iter;
+        private final CompactionController controller;
+        private final Set<SSTableReader> actuallyCompact;
+        private final File sstableDirectory;
+        private final long keysPerSSTable;
+
+        private final List<SSTableWriter> writers = new ArrayList<SSTableWriter>();
+        private final Map<Descriptor, Map<DecoratedKey, RowIndexEntry>> cachedKeyMap = new HashMap<Descriptor, Map<DecoratedKey, RowIndexEntry>>();
+        private boolean empty = true;
+        private long keysWritten;
+
+        SubrangeCompaction(List<ICompactionScanner> scanners, CompactionController controller, Set<SSTableReader> actuallyCompact, File sstableDirectory, long keysPerSSTable)
+        {
+            this.ci = new CompactionIterable(compactionType, scanners, controller);
+            this.iter = ci.iterator();
+            this.controller = controller;
+            this.actuallyCompact = actuallyCompact;
+            this.sstableDirectory = sstableDirectory;
+            this.keysPerSSTable = keysPerSSTable;
+        }
+
+        public Void call() throws IOException
+        {
+            if (!iter.hasNext())
+                return null;
+
+            empty = false;
+            Map<DecoratedKey, RowIndexEntry> cachedKeys = new HashMap<DecoratedKey, RowIndexEntry>();
+            SSTableWriter writer = createCompactionWriter(sstableDirectory, keysPerSSTable);
+            writers.add(writer);
+            while (iter.hasNext())
+            {
+                if (ci.isStopRequested())
+                    throw new CompactionInterruptedException(ci.getCompactionInfo());
+
+                AbstractCompactedRow row = iter.next();
+                RowIndexEntry indexEntry = writer.append(row);
+                if (indexEntry == null)
+                {
+                    controller.invalidateCachedRow(row.key);
+                    row.close();
+                    continue;
+                }
+
+                keysWritten++;
+
+                if (DatabaseDescriptor.getPreheatKeyCache())
+                {
+                    for (SSTableReader sstable : actuallyCompact)
+                    {
+                        if (sstable.getCachedPosition(row.key, false) != null)
+                        {
+                            cachedKeys.put(row.key, indexEntry);
+                            break;
+                        }
+                    }
+                }
+
+                if (newSSTableSegmentThresholdReached(writer))
+                {
+                    // tmp = false because later we want to query it with descriptor from SSTableReader
+                    cachedKeyMap.put(writer.descriptor.asTemporary(false), cachedKeys);
+                    writer = createCompactionWriter(sstableDirectory, keysPerSSTable);
+                    writers.add(writer);
+                    cachedKeys = new HashMap<DecoratedKey, RowIndexEntry>();
+                }
+            }
+
+            if (writer.getFilePointer() > 0)
+            {
+                cachedKeyMap.put(writer.descriptor.asTemporary(false), cachedKeys);
+            }
+            else
+            {
+                writer.abort();
+                writers.remove(writer);
+            }
+            return null;
+        }
+    }
+
     protected int getLevel()
     {
         return 0;
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.util.*;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.cql3.CFPropDefs;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * Compaction strategy for time series data, where cells are written in (roughly) timestamp order and usually
+ * expire through a TTL.
+ *
+ * SSTables are grouped into time windows by the min timestamp of their cells and only sstables of the same
+ * window are compacted together, so old data is not rewritten over and over again along with new data.  The
+ * newest window is base_time_seconds wide, and windows grow by a factor of min_threshold as they get older.
+ * SSTables older than max_sstable_age_days are not compacted anymore, except for dropping them entirely once
+ * all of their cells have expired.
+ */
+public class DateTieredCompactionStrategy extends AbstractCompactionStrategy
+{
+    private static final Logger logger = LoggerFactory.getLogger(DateTieredCompactionStrategy.class);
+
+    protected DateTieredCompactionStrategyOptions options;
+    protected volatile int estimatedRemainingTasks;
+
+    public DateTieredCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
+    {
+        super(cfs, options);
+        this.estimatedRemainingTasks = 0;
+        this.options = new DateTieredCompactionStrategyOptions(options);
+    }
+
+    public synchronized AbstractCompactionTask getNextBackgroundTask(int gcBefore)
+    {
+        if (!isEnabled())
+            return null;
+
+        while (true)
+        {
+            List<SSTableReader> latestBucket = getNextBackgroundSSTables(gcBefore);
+
+            if (latestBucket.isEmpty())
+                return null;
+
+            if (cfs.getDataTracker().markCompacting(latestBucket))
+                return new CompactionTask(cfs, latestBucket, gcBefore);
+        }
+    }
+
+    private List<SSTableReader> getNextBackgroundSSTables(final int gcBefore)
+    {
+        if (!isEnabled() || cfs.getSSTables().isEmpty())
+            return Collections.emptyList();
+
+        Set<SSTableReader> uncompacting = Sets.newHashSet(filterSuspectSSTables(cfs.getUncompactingSSTables()));
+
+        // sstables whose cells have all expired are dropped without being read (CompactionTask skips the
+        // fully expired sstables it is given), so they do not have to wait for their window to fill up
+        Set<SSTableReader> expired = CompactionController.getFullyExpiredSSTables(cfs, uncompacting, cfs.getOverlappingSSTables(uncompacting), gcBefore);
+        if (!expired.isEmpty())
+        {
+            logger.debug("Dropping fully expired sstables {}", expired);
+            return new ArrayList<SSTableReader>(expired);
+        }
+
+        List<SSTableReader> mostInteresting = getCompactionCandidates(uncompacting);
+        if (!mostInteresting.isEmpty())
+            return mostInteresting;
+
+        // if there is no sstable to compact in standard way, try compacting single sstable whose droppable tombstone
+        // ratio is greater than threshold.
+        List<SSTableReader> sstablesWithTombstones = new ArrayList<SSTableReader>();
+        for (SSTableReader sstable : uncompacting)
+        {
+            if (worthDroppingTombstones(sstable, gcBefore))
+                sstablesWithTombstones.add(sstable);
+        }
+        if (sstablesWithTombstones.isEmpty())
+            return Collections.emptyList();
+
+        Collections.sort(sstablesWithTombstones, new SSTableReader.SizeComparator());
+        return Collections.singletonList(sstablesWithTombstones.get(0));
+    }
+
+    private List<SSTableReader> getCompactionCandidates(Iterable<SSTableReader> candidates)
+    {
+        // make local copies so they can't be changed out from under us mid-method
+        int minThreshold = cfs.getMinimumCompactionThreshold();
+        int maxThreshold = cfs.getMaximumCompactionThreshold();
+
+        // "now" is the newest timestamp we have seen, so that the windows follow the timestamps the clients
+        // write with, whatever their resolution
+        long now = getNow(candidates);
+        List<SSTableReader> notTooOld = filterOldSSTables(Lists.newArrayList(candidates), options.maxSSTableAge, now);
+
+        // repaired and unrepaired sstables are bucketed separately, so that they are never compacted together
+        List<List<SSTableReader>> buckets = new ArrayList<List<SSTableReader>>();
+        List<SSTableReader> mostInteresting = Collections.emptyList();
+        for (List<SSTableReader> group : splitByRepairStatus(notTooOld))
+        {
+            List<List<SSTableReader>> groupBuckets = getBuckets(createSSTableAndMinTimestampPairs(group), options.baseTime, minThreshold, now);
+            if (mostInteresting.isEmpty())
+                mostInteresting = newestBucket(groupBuckets, minThreshold, maxThreshold);
+            buckets.addAll(groupBuckets);
+        }
+        logger.debug("Compaction buckets are {}", buckets);
+        updateEstimatedCompactionsByTasks(buckets);
+
+        return mostInteresting;
+    }
+
+    private static long getNow(Iterable<SSTableReader> sstables)
+    {
+        long max = 0;
+        for (SSTableReader sstable : sstables)
+            max = Math.max(max, sstable.getMaxTimestamp());
+        return max;
+    }
+
+    /**
+     * Removes all sstables whose data is older than maxSSTableAge.
+     *
+     * @param sstables all sstables to consider
+     * @param maxSSTableAge the age in timestamp units after which sstables are not compacted anymore
+     * @param now the current time in timestamp units
+     * @return a list of sstables whose newest data is at most maxSSTableAge old
+     */
+    @VisibleForTesting
+    static List<SSTableReader> filterOldSSTables(List<SSTableReader> sstables, long maxSSTableAge, long now)
+    {
+        if (maxSSTableAge == 0)
+            return sstables;
+
+        long cutoff = now - maxSSTableAge;
+        List<SSTableReader> filtered = new ArrayList<SSTableReader>(sstables.size());
+        for (SSTableReader sstable : sstables)
+        {
+            if (sstable.getMaxTimestamp() >= cutoff)
+                filtered.add(sstable);
+        }
+        return filtered;
+    }
+
+    public static List<Pair<SSTableReader, Long>> createSSTableAndMinTimestampPairs(Iterable<SSTableReader> sstables)
+    {
+        List<Pair<SSTableReader, Long>> sstableMinTimestampPairs = new ArrayList<Pair<SSTableReader, Long>>();
+        for (SSTableReader sstable : sstables)
+            sstableMinTimestampPairs.add(Pair.create(sstable, sstable.getMinTimestamp()));
+        return sstableMinTimestampPairs;
+    }
+
+    /**
+     * A time window: all timestamps t such that t / size == divPosition.
+     */
+    private static class Target
+    {
+        public final long size;
+        public final long divPosition;
+
+        public Target(long size, long divPosition)
+        {
+            this.size = size;
+            this.divPosition = divPosition;
+        }
+
+        /**
+         * @return a negative number if the window is older than the timestamp, 0 if it contains it, and a positive
+         * number if the window is newer
+         */
+        public int compareToTimestamp(long timestamp)
+        {
+            return Long.compare(divPosition, timestamp / size);
+        }
+
+        public boolean onTarget(long timestamp)
+        {
+            return compareToTimestamp(timestamp) == 0;
+        }
+
+        /**
+         * The window just before this one. Once base windows of a given size have been walked through, the next
+         * window is base times larger.
+         */
+        public Target nextTarget(int base)
+        {
+            if (divPosition % base > 0)
+                return new Target(size, divPosition - 1);
+            else
+                return new Target(size * base, divPosition / base - 1);
+        }
+    }
+
+    /**
+     * Group files with similar min timestamp into buckets. Files with recent min timestamps are grouped together
+     * into buckets of timeUnit, and older files into exponentially larger buckets (timeUnit * base, timeUnit * base^2...).
+     *
+     * @return a list of buckets of files, newest first
+     */
+    @VisibleForTesting
+    static <T> List<List<T>> getBuckets(Collection<Pair<T, Long>> files, long timeUnit, int base, long now)
+    {
+        // sort files by min timestamp, newest first
+        List<Pair<T, Long>> sortedFiles = new ArrayList<Pair<T, Long>>(files);
+        Collections.sort(sortedFiles, new Comparator<Pair<T, Long>>()
+        {
+            public int compare(Pair<T, Long> p1, Pair<T, Long> p2)
+            {
+                return p2.right.compareTo(p1.right);
+            }
+        });
+
+        List<List<T>> buckets = new ArrayList<List<T>>();
+        Target target = new Target(timeUnit, now / timeUnit);
+        PeekingIterator<Pair<T, Long>> it = Iterators.peekingIterator(sortedFiles.iterator());
+
+        while (it.hasNext())
+        {
+            long timestamp = it.peek().right;
+            int comparison = target.compareToTimestamp(timestamp);
+            if (comparison < 0 || timestamp < 0)
+            {
+                // the file is newer than "now" (for instance written with a client clock ahead of ours), or has a
+                // timestamp before the epoch; it cannot be placed in a window, leave it alone
+                it.next();
+            }
+            else if (comparison > 0)
+            {
+                // the file is older than the window, move on to the previous one
+                target = target.nextTarget(base);
+            }
+            else
+            {
+                List<T> bucket = new ArrayList<T>();
+                while (it.hasNext() && target.onTarget(it.peek().right))
+                    bucket.add(it.next().left);
+                buckets.add(bucket);
+            }
+        }
+
+        return buckets;
+    }
+
+    /**
+     * @param buckets list of buckets, newest first
+     * @param minThreshold minimum number of sstables in a bucket to qualify
+     * @param maxThreshold maximum number of sstables to compact at once (the returned bucket will be trimmed down to this)
+     * @return the newest bucket with at least minThreshold sstables, or an empty list
+     */
+    @VisibleForTesting
+    static List<SSTableReader> newestBucket(List<List<SSTableReader>> buckets, int minThreshold, int maxThreshold)
+    {
+        for (List<SSTableReader> bucket : buckets)
+        {
+            if (bucket.size() >= minThreshold)
+                return SizeTieredCompactionStrategy.trimToThresholdWithHotness(bucket, maxThreshold).left;
+        }
+        return Collections.emptyList();
+    }
+
+    private void updateEstimatedCompactionsByTasks(List<List<SSTableReader>> tasks)
+    {
+        int n = 0;
+        for (List<SSTableReader> bucket : tasks)
+        {
+            if (bucket.size() >= cfs.getMinimumCompactionThreshold())
+                n += Math.ceil((double)bucket.size() / cfs.getMaximumCompactionThreshold());
+        }
+        estimatedRemainingTasks = n;
+    }
+
+    public AbstractCompactionTask getMaximalTask(final int gcBefore)
+    {
+        Iterable<SSTableReader> sstables = cfs.markAllCompacting();
+        if (sstables == null)
+            return null;
+
+        return new CompactionTask(cfs, sstables, gcBefore);
+    }
+
+    public AbstractCompactionTask getUserDefinedTask(Collection<SSTableReader> sstables, final int gcBefore)
+    {
+        assert !sstables.isEmpty(); // checked for by CM.submitUserDefined
+
+        if (!cfs.getDataTracker().markCompacting(sstables))
+        {
+            logger.debug("Unable to mark {} for compaction; probably a background compaction got to it first.  You can disable background compactions temporarily if this is a problem", sstables);
+            return null;
+        }
+
+        return new CompactionTask(cfs, sstables, gcBefore).setUserDefined(true);
+    }
+
+    public int getEstimatedRemainingTasks()
+    {
+        return estimatedRemainingTasks;
+    }
+
+    public long getMaxSSTableSize()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    public static Map<String, String> validateOptions(Map<String, String> options) throws ConfigurationException
+    {
+        Map<String, String> uncheckedOptions = AbstractCompactionStrategy.validateOptions(options);
+        uncheckedOptions = DateTieredCompactionStrategyOptions.validateOptions(options, uncheckedOptions);
+
+        uncheckedOptions.remove(CFPropDefs.KW_MINCOMPACTIONTHRESHOLD);
+        uncheckedOptions.remove(CFPropDefs.KW_MAXCOMPACTIONTHRESHOLD);
+
+        return uncheckedOptions;
+    }
+
+    public String toString()
+    {
+        return String.format("DateTieredCompactionStrategy[%s/%s]",
+                             cfs.getMinimumCompactionThreshold(),
+                             cfs.getMaximumCompactionThreshold());
+    }
+}
@@ -157,11 +157,14 @@ public class LeveledManifest
 
     public synchronized void repairOverlappingSSTables(int level)
     {
-        SSTableReader previous = null;
+        // repaired and unrepaired sstables are compacted separately, so they may overlap each other
+        SSTableReader previousRepaired = null;
+        SSTableReader previousUnrepaired = null;
         Collections.sort(generations[level], SSTableReader.sstableComparator);
         List<SSTableReader> outOfOrderSSTables = new ArrayList<SSTableReader>();
         for (SSTableReader current : generations[level])
         {
+            SSTableReader previous = current.isRepaired() ? previousRepaired : previousUnrepaired;
             if (previous != null && current.first.compareTo(previous.last) <= 0)
             {
                 logger.warn(String.format("At level %d, %s [%s, %s] overlaps %s [%s, %s].  This could be caused by a bug in Cassandra 1.1.0 .. 1.1.3 or due to the fact that you have dropped sstables from another node into the data directory. " +
@@ -169,9 +172,13 @@ public class LeveledManifest
                                           level, previous, previous.first, previous.last, current, current.first, current.last));
                 outOfOrderSSTables.add(current);
             }
+            else if (current.isRepaired())
+            {
+                previousRepaired = current;
+            }
             else
             {
-                previous = current;
+                previousUnrepaired = current;
             }
         }
 
@@ -274,11 +281,15 @@ public class LeveledManifest
                 if (generations[0].size() > MAX_COMPACTING_L0)
                 {
                     Iterable<SSTableReader> candidates = cfs.getDataTracker().getUncompactingSSTables(generations[0]);
-                    List<Pair<SSTableReader,Long>> pairs = SizeTieredCompactionStrategy.createSSTableAndLengthPairs(AbstractCompactionStrategy.filterSuspectSSTables(candidates));
-                    List<List<SSTableReader>> buckets = SizeTieredCompactionStrategy.getBuckets(pairs,
-                                                                                                options.bucketHigh,
-                                                                                                options.bucketLow,
-                                                                                                options.minSSTableSize);
+                    List<List<SSTableReader>> buckets = new ArrayList<List<SSTableReader>>();
+                    for (List<SSTableReader> group : AbstractCompactionStrategy.splitByRepairStatus(AbstractCompactionStrategy.filterSuspectSSTables(candidates)))
+                    {
+                        List<Pair<SSTableReader,Long>> pairs = SizeTieredCompactionStrategy.createSSTableAndLengthPairs(group);
+                        buckets.addAll(SizeTieredCompactionStrategy.getBuckets(pairs,
+                                                                               options.bucketHigh,
+                                                                               options.bucketLow,
+                                                                               options.minSSTableSize));
+                    }
                     List<SSTableReader> mostInteresting = SizeTieredCompactionStrategy.mostInterestingBucket(buckets, 4, 32);
                     if (!mostInteresting.isEmpty())
                         return Pair.create(mostInteresting, 0);
@@ -391,6 +402,21 @@ public class LeveledManifest
         return overlapped;
     }
 
+    /**
+     * @return the sstables from @param sstables with the given repair status, since repaired and unrepaired sstables
+     * are never compacted together.
+     */
+    private static Iterable<SSTableReader> withRepairStatus(Iterable<SSTableReader> sstables, final boolean repaired)
+    {
+        return Iterables.filter(sstables, new Predicate<SSTableReader>()
+        {
+            public boolean apply(SSTableReader sstable)
+            {
+                return sstable.isRepaired() == repaired;
+            }
+        });
+    }
+
     private static final Predicate<SSTableReader> suspectP = new Predicate<SSTableReader>()
     {
         public boolean apply(SSTableReader candidate)
@@ -424,6 +450,7 @@ public class LeveledManifest
             // 2. At most MAX_COMPACTING_L0 sstables from L0 will be compacted at once
             // 3. If total candidate size is less than maxSSTableSizeInMB, we won't bother compacting with L1,
             //    and the result of the compaction will stay in L0 instead of being promoted (see promote())
+            // 4. All the candidates are either repaired or unrepaired, like the oldest one
             //
             // Note that we ignore suspect-ness of L1 sstables here, since if an L1 sstable is suspect we're
             // basically screwed, since we expect all or most L0 sstables to overlap with each L1 sstable.
@@ -431,12 +458,15 @@ public class LeveledManifest
             Set<SSTableReader> candidates = new HashSet<SSTableReader>();
             Set<SSTableReader> remaining = new HashSet<SSTableReader>();
             Iterables.addAll(remaining, Iterables.filter(generations[0], Predicates.not(suspectP)));
+            Boolean repaired = null;
             for (SSTableReader sstable : ageSortedSSTables(remaining))
             {
                 if (candidates.contains(sstable))
                     continue;
+                if (repaired != null && sstable.isRepaired() != repaired)
+                    continue;
 
-                Sets.SetView<SSTableReader> overlappedL0 = Sets.union(Collections.singleton(sstable), overlapping(sstable, remaining));
+                Sets.SetView<SSTableReader> overlappedL0 = Sets.union(Collections.singleton(sstable), overlapping(sstable, withRepairStatus(remaining, sstable.isRepaired())));
                 if (!Sets.intersection(overlappedL0, compactingL0).isEmpty())
                     continue;
 
@@ -445,6 +475,7 @@ public class LeveledManifest
                     candidates.add(newCandidate);
                     remaining.remove(newCandidate);
                 }
+                repaired = sstable.isRepaired();
 
                 if (candidates.size() > MAX_COMPACTING_L0)
                 {
@@ -460,7 +491,7 @@ public class LeveledManifest
                 // add sstables from L1 that overlap candidates
                 // if the overlapping ones are already busy in a compaction, leave it out.
                 // TODO try to find a set of L0 sstables that only overlaps with non-busy L1 sstables
-                candidates = Sets.union(candidates, overlapping(candidates, generations[1]));
+                candidates = Sets.union(candidates, overlapping(candidates, withRepairStatus(generations[1], repaired)));
             }
             if (candidates.size() < 2)
                 return Collections.emptyList();
@@ -486,7 +517,7 @@ public class LeveledManifest
         for (int i = 0; i < generations[level].size(); i++)
         {
             SSTableReader sstable = generations[level].get((start + i) % generations[level].size());
-            Set<SSTableReader> candidates = Sets.union(Collections.singleton(sstable), overlapping(sstable, generations[level + 1]));
+            Set<SSTableReader> candidates = Sets.union(Collections.singleton(sstable), overlapping(sstable, withRepairStatus(generations[level + 1], sstable.isRepaired())));
             if (Iterables.any(candidates, suspectP))
                 continue;
             if (Sets.intersection(candidates, compacting).isEmpty())
@@ -29,6 +29,8 @@ public enum OperationType
     INDEX_BUILD("Secondary index build"),
     /** Compaction for tombstone removal */
     TOMBSTONE_COMPACTION("Tombstone Compaction"),
+    /** Splitting of sstables into their repaired and unrepaired parts */
+    ANTICOMPACTION("Anticompaction after repair"),
     UNKNOWN("Unknown compaction type");
 
     private final String type;
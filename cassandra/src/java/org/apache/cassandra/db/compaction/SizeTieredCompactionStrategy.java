@@ -80,7 +80,9 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
         Iterable<SSTableReader> candidates = filterSuspectSSTables(cfs.getUncompactingSSTables());
         candidates = filterColdSSTables(Lists.newArrayList(candidates), options.coldReadsToOmit);
 
-        List<List<SSTableReader>> buckets = getBuckets(createSSTableAndLengthPairs(candidates), options.bucketHigh, options.bucketLow, options.minSSTableSize);
+        List<List<SSTableReader>> buckets = new ArrayList<List<SSTableReader>>();
+        for (List<SSTableReader> group : splitByRepairStatus(candidates))
+            buckets.addAll(getBuckets(createSSTableAndLengthPairs(group), options.bucketHigh, options.bucketLow, options.minSSTableSize));
         logger.debug("Compaction buckets are {}", buckets);
         updateEstimatedCompactionsByTasks(buckets);
         List<SSTableReader> mostInteresting = mostInterestingBucket(buckets, minThreshold, maxThreshold);
@@ -76,6 +76,12 @@ public interface IDiskAtomFilter
     public int getLiveCount(ColumnFamily cf, long now);
     public ColumnCounter columnCounter(AbstractType<?> comparator, long now);
 
+    /**
+     * @param cf the head of a partition, that is, all of its data up to the last column of cf
+     * @return true if everything this filter selects in the partition is in cf
+     */
+    public boolean isFullyCoveredBy(ColumnFamily cf, long now);
+
     public IDiskAtomFilter cloneShallow();
     public boolean maySelectPrefix(Comparator<ByteBuffer> cmp, ByteBuffer prefix);
 
@@ -137,6 +137,16 @@ public class NamesQueryFilter implements IDiskAtomFilter
         return count;
     }
 
+    public boolean isFullyCoveredBy(ColumnFamily cf, long now)
+    {
+        // cf covers all the requested columns if they all sort before its last column
+        if (cf.getColumnCount() == 0)
+            return false;
+
+        ByteBuffer last = cf.reverseIterator().next().name();
+        return cf.getComparator().compare(columns.last(), last) <= 0;
+    }
+
     public boolean maySelectPrefix(Comparator<ByteBuffer> cmp, ByteBuffer prefix)
     {
         for (ByteBuffer column : columns)
@@ -219,6 +219,27 @@ public class SliceQueryFilter implements IDiskAtomFilter
         return columnCounter(cf.getComparator(), now).countAll(cf).live();
     }
 
+    public boolean isFullyCoveredBy(ColumnFamily cf, long now)
+    {
+        // cf covers this filter if either this filter starts at the head of the partition and
+        // asks for no more than what cf has to offer, or if the filter ends before the last
+        // column of cf
+        if (isHeadFilter() && count <= getLiveCount(cf, now))
+            return true;
+
+        ByteBuffer high = reversed ? start() : finish();
+        if (high.remaining() == 0 || cf.getColumnCount() == 0)
+            return false;
+
+        ByteBuffer last = cf.reverseIterator().next().name();
+        return cf.getComparator().compare(high, last) <= 0;
+    }
+
+    public boolean isHeadFilter()
+    {
+        return slices.length == 1 && slices[0].start.remaining() == 0 && !reversed;
+    }
+
     public ColumnCounter columnCounter(AbstractType<?> comparator, long now)
     {
         if (compositesToGroup < 0)
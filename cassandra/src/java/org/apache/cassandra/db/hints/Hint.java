@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.IVersionedSerializer;
+
+/**
+ * A mutation that could not be delivered to one of its replicas, along with the time it was created at
+ * and the number of seconds it may be kept for (see HintedHandOffManager.calculateHintTTL).
+ */
+public class Hint
+{
+    public static final HintSerializer serializer = new HintSerializer();
+
+    public final RowMutation mutation;
+    public final long createdAt;
+    public final int ttl;
+
+    public Hint(RowMutation mutation, long createdAt, int ttl)
+    {
+        assert ttl > 0;
+        this.mutation = mutation;
+        this.createdAt = createdAt;
+        this.ttl = ttl;
+    }
+
+    public static Hint create(RowMutation mutation, int ttl)
+    {
+        return new Hint(mutation, System.currentTimeMillis(), ttl);
+    }
+
+    /**
+     * @return false if the hint has outlived its ttl, and delivering it could undo deletes that were since purged.
+     */
+    public boolean isLive(long now)
+    {
+        return createdAt + ttl * 1000L > now;
+    }
+
+    public static class HintSerializer implements IVersionedSerializer<Hint>
+    {
+        public void serialize(Hint hint, DataOutput out, int version) throws IOException
+        {
+            out.writeLong(hint.createdAt);
+            out.writeInt(hint.ttl);
+            RowMutation.serializer.serialize(hint.mutation, out, version);
+        }
+
+        public Hint deserialize(DataInput in, int version) throws IOException
+        {
+            long createdAt = in.readLong();
+            int ttl = in.readInt();
+            return new Hint(RowMutation.serializer.deserialize(in, version), createdAt, ttl);
+        }
+
+        public long serializedSize(Hint hint, int version)
+        {
+            TypeSizes sizes = TypeSizes.NATIVE;
+            return sizes.sizeof(hint.createdAt) + sizes.sizeof(hint.ttl) + RowMutation.serializer.serializedSize(hint.mutation, version);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.UUIDSerializer;
+
+/**
+ * Hands a hint over to another node, which stores it for the same target host.
+ * Used by a decommissioned node to pass on the hints it could not deliver yet.
+ */
+public class HintMessage
+{
+    public static final IVersionedSerializer<HintMessage> serializer = new HintMessageSerializer();
+
+    public final UUID hostId;
+    public final Hint hint;
+
+    public HintMessage(UUID hostId, Hint hint)
+    {
+        this.hostId = hostId;
+        this.hint = hint;
+    }
+
+    public MessageOut<HintMessage> createMessage()
+    {
+        return new MessageOut<HintMessage>(MessagingService.Verb.HINT, this, serializer);
+    }
+
+    private static class HintMessageSerializer implements IVersionedSerializer<HintMessage>
+    {
+        public void serialize(HintMessage message, DataOutput out, int version) throws IOException
+        {
+            UUIDSerializer.serializer.serialize(message.hostId, out, version);
+            Hint.serializer.serialize(message.hint, out, version);
+        }
+
+        public HintMessage deserialize(DataInput in, int version) throws IOException
+        {
+            UUID hostId = UUIDSerializer.serializer.deserialize(in, version);
+            return new HintMessage(hostId, Hint.serializer.deserialize(in, version));
+        }
+
+        public long serializedSize(HintMessage message, int version)
+        {
+            return UUIDSerializer.serializer.serializedSize(message.hostId, version)
+                   + Hint.serializer.serializedSize(message.hint, version);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.util.FileUtils;
+
+/**
+ * The HintsStore of every host we have hints for, all sharing the hints directory.
+ */
+public class HintsCatalog
+{
+    private static final Logger logger = LoggerFactory.getLogger(HintsCatalog.class);
+
+    private final File directory;
+    private final ConcurrentMap<UUID, HintsStore> stores = new ConcurrentHashMap<UUID, HintsStore>();
+
+    private HintsCatalog(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the hints files left in the directory by a previous run, queueing the files of each host
+     * in the order they were created in.
+     */
+    public static HintsCatalog load(File directory)
+    {
+        FileUtils.createDirectory(directory);
+        HintsCatalog catalog = new HintsCatalog(directory);
+
+        Map<UUID, List<HintsDescriptor>> descriptors = new HashMap<UUID, List<HintsDescriptor>>();
+        for (File file : directory.listFiles())
+        {
+            if (!HintsDescriptor.isValid(file.getName()))
+            {
+                logger.warn("Skipping unexpected file {} in the hints directory", file);
+                continue;
+            }
+
+            HintsDescriptor descriptor = HintsDescriptor.fromFileName(file.getName());
+            List<HintsDescriptor> hostDescriptors = descriptors.get(descriptor.hostId);
+            if (hostDescriptors == null)
+            {
+                hostDescriptors = new ArrayList<HintsDescriptor>();
+                descriptors.put(descriptor.hostId, hostDescriptors);
+            }
+            hostDescriptors.add(descriptor);
+        }
+
+        for (Map.Entry<UUID, List<HintsDescriptor>> entry : descriptors.entrySet())
+        {
+            Collections.sort(entry.getValue());
+            catalog.stores.put(entry.getKey(), new HintsStore(entry.getKey(), directory, entry.getValue()));
+        }
+        return catalog;
+    }
+
+    public HintsStore get(UUID hostId)
+    {
+        HintsStore store = stores.get(hostId);
+        if (store == null)
+        {
+            HintsStore created = new HintsStore(hostId, directory, Collections.<HintsDescriptor>emptyList());
+            store = stores.putIfAbsent(hostId, created);
+            if (store == null)
+                store = created;
+        }
+        return store;
+    }
+
+    /**
+     * @return the store of the host, or null if we never had any hints for it
+     */
+    public HintsStore getIfExists(UUID hostId)
+    {
+        return stores.get(hostId);
+    }
+
+    public Collection<HintsStore> stores()
+    {
+        return stores.values();
+    }
+
+    /**
+     * Syncs the files being written to disk.
+     */
+    public void syncAll()
+    {
+        for (HintsStore store : stores.values())
+            store.sync();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.cassandra.net.MessagingService;
+
+/**
+ * Names a hints file: the host the hints are for, the time the file was created at, and the messaging
+ * version its mutations are serialized with. Ex: 5d3c2a1e-...-0e9c-1389960000000-7.hints
+ */
+public class HintsDescriptor implements Comparable<HintsDescriptor>
+{
+    private static final String SEPARATOR = "-";
+    private static final String FILENAME_EXTENSION = ".hints";
+    private static final Pattern HINTS_FILE_PATTERN = Pattern.compile("([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})"
+                                                                      + SEPARATOR + "(\\d+)"
+                                                                      + SEPARATOR + "(\\d+)"
+                                                                      + Pattern.quote(FILENAME_EXTENSION));
+
+    public final UUID hostId;
+    public final long timestamp;
+    public final int version;
+
+    public HintsDescriptor(UUID hostId, long timestamp, int version)
+    {
+        this.hostId = hostId;
+        this.timestamp = timestamp;
+        this.version = version;
+    }
+
+    public HintsDescriptor(UUID hostId, long timestamp)
+    {
+        this(hostId, timestamp, MessagingService.current_version);
+    }
+
+    public static HintsDescriptor fromFileName(String name)
+    {
+        Matcher matcher = HINTS_FILE_PATTERN.matcher(name);
+        if (!matcher.matches())
+            throw new IllegalArgumentException("Cannot parse the name of the hints file: " + name);
+
+        return new HintsDescriptor(UUID.fromString(matcher.group(1)),
+                                   Long.parseLong(matcher.group(2)),
+                                   Integer.parseInt(matcher.group(3)));
+    }
+
+    /**
+     * @param   filename  the filename to check
+     * @return true if filename could be a hints file based on its filename
+     */
+    public static boolean isValid(String filename)
+    {
+        return HINTS_FILE_PATTERN.matcher(filename).matches();
+    }
+
+    public String fileName()
+    {
+        return hostId + SEPARATOR + timestamp + SEPARATOR + version + FILENAME_EXTENSION;
+    }
+
+    public File file(File directory)
+    {
+        return new File(directory, fileName());
+    }
+
+    public int compareTo(HintsDescriptor other)
+    {
+        return Long.compare(timestamp, other.timestamp);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof HintsDescriptor))
+            return false;
+        HintsDescriptor that = (HintsDescriptor) o;
+        return hostId.equals(that.hostId) && timestamp == that.timestamp && version == that.version;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = hostId.hashCode();
+        result = 31 * result + (int) (timestamp ^ (timestamp >>> 32));
+        return 31 * result + version;
+    }
+
+    @Override
+    public String toString()
+    {
+        return fileName();
+    }
+}
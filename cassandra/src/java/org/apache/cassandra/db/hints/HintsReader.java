@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.*;
+import java.util.zip.Checksum;
+
+import com.google.common.collect.AbstractIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.UnknownColumnFamilyException;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.PureJavaCrc32;
+
+/**
+ * Reads back, in order, the hints appended to a hints file by a HintsWriter.
+ *
+ * Hints for column families that have since been dropped are skipped. Reading stops at the first truncated
+ * or corrupt entry, which can only be the tail of a file whose writer did not get to close it.
+ */
+public class HintsReader extends AbstractIterator<Hint> implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(HintsReader.class);
+
+    public final HintsDescriptor descriptor;
+    private final File file;
+    private final DataInputStream in;
+    private final Checksum checksum = new PureJavaCrc32();
+
+    private HintsReader(HintsDescriptor descriptor, File file, DataInputStream in)
+    {
+        this.descriptor = descriptor;
+        this.file = file;
+        this.in = in;
+    }
+
+    public static HintsReader open(File directory, HintsDescriptor descriptor)
+    {
+        File file = descriptor.file(directory);
+        try
+        {
+            return new HintsReader(descriptor, file, new DataInputStream(new BufferedInputStream(new FileInputStream(file))));
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new FSReadError(e, file);
+        }
+    }
+
+    protected Hint computeNext()
+    {
+        while (true)
+        {
+            byte[] buffer = readEntry();
+            if (buffer == null)
+                return endOfData();
+
+            try
+            {
+                return Hint.serializer.deserialize(new DataInputStream(new FastByteArrayInputStream(buffer)), descriptor.version);
+            }
+            catch (UnknownColumnFamilyException e)
+            {
+                logger.debug("Skipping hint for deleted columnfamily", e);
+            }
+            catch (IOException e)
+            {
+                throw new FSReadError(e, file);
+            }
+        }
+    }
+
+    private byte[] readEntry()
+    {
+        try
+        {
+            int length;
+            try
+            {
+                length = in.readInt();
+            }
+            catch (EOFException e)
+            {
+                return null; // clean end of file
+            }
+
+            long claimedLengthChecksum = in.readLong();
+            checksum.reset();
+            FBUtilities.updateChecksumInt(checksum, length);
+            if (length < 0 || claimedLengthChecksum != checksum.getValue())
+            {
+                logger.warn("Corrupt hint entry length in {}; ignoring the rest of the file", file);
+                return null;
+            }
+
+            byte[] buffer = new byte[length];
+            in.readFully(buffer);
+            long claimedChecksum = in.readLong();
+            checksum.reset();
+            checksum.update(buffer, 0, length);
+            if (claimedChecksum != checksum.getValue())
+            {
+                logger.warn("Corrupt hint entry in {}; ignoring the rest of the file", file);
+                return null;
+            }
+            return buffer;
+        }
+        catch (EOFException e)
+        {
+            logger.warn("Truncated hint entry in {}; ignoring the rest of the file", file);
+            return null;
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, file);
+        }
+    }
+
+    public void close()
+    {
+        FileUtils.closeQuietly(in);
+    }
+}
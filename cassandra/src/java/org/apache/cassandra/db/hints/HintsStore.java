@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+
+/**
+ * The hints of a single host: a queue of sealed files waiting to be dispatched, oldest first, plus the file
+ * currently being appended to. The current file is sealed once it reaches max_hints_file_size_in_mb, or when
+ * delivery to the host starts, so that files are never read while they are still being written.
+ */
+public class HintsStore
+{
+    public final UUID hostId;
+    private final File directory;
+    private final Deque<HintsDescriptor> dispatchQueue = new ConcurrentLinkedDeque<HintsDescriptor>();
+
+    // guarded by this
+    private HintsWriter writer;
+    private long lastTimestamp;
+
+    HintsStore(UUID hostId, File directory, Collection<HintsDescriptor> descriptors)
+    {
+        this.hostId = hostId;
+        this.directory = directory;
+        for (HintsDescriptor descriptor : descriptors)
+        {
+            dispatchQueue.add(descriptor);
+            lastTimestamp = Math.max(lastTimestamp, descriptor.timestamp);
+        }
+    }
+
+    public synchronized void write(Hint hint)
+    {
+        if (writer == null)
+            writer = HintsWriter.create(directory, new HintsDescriptor(hostId, nextTimestamp()));
+
+        writer.append(hint);
+        if (writer.position() >= DatabaseDescriptor.getMaxHintsFileSize())
+            seal();
+    }
+
+    // file names must be unique and ordered, even if two files get created within the same millisecond
+    private long nextTimestamp()
+    {
+        lastTimestamp = Math.max(System.currentTimeMillis(), lastTimestamp + 1);
+        return lastTimestamp;
+    }
+
+    /**
+     * Syncs the file currently being written, if any, to disk.
+     */
+    public synchronized void sync()
+    {
+        if (writer != null)
+            writer.sync();
+    }
+
+    /**
+     * Closes the file currently being written, if any, and queues it for dispatch.
+     */
+    public synchronized void seal()
+    {
+        if (writer == null)
+            return;
+
+        writer.close();
+        dispatchQueue.offer(writer.descriptor);
+        writer = null;
+    }
+
+    /**
+     * @return the oldest sealed file, or null if there is none. Callers must either delete the file once
+     * it has been dispatched, or give it back with offerFirst().
+     */
+    public HintsDescriptor poll()
+    {
+        HintsDescriptor descriptor;
+        while ((descriptor = dispatchQueue.poll()) != null)
+        {
+            // skip the files that have been deleted from under us, by deleteAll() or by hand
+            if (descriptor.file(directory).exists())
+                return descriptor;
+        }
+        return null;
+    }
+
+    public void offerFirst(HintsDescriptor descriptor)
+    {
+        dispatchQueue.offerFirst(descriptor);
+    }
+
+    public HintsReader read(HintsDescriptor descriptor)
+    {
+        return HintsReader.open(directory, descriptor);
+    }
+
+    public void delete(HintsDescriptor descriptor)
+    {
+        File file = descriptor.file(directory);
+        if (file.exists() && !file.delete())
+            throw new RuntimeException("Failed to delete " + file.getAbsolutePath());
+    }
+
+    /**
+     * Deletes all the hints of the host, including those that are being written.
+     * A file that is being dispatched at the time is left to its dispatch.
+     */
+    public synchronized void deleteAll()
+    {
+        if (writer != null)
+        {
+            writer.close();
+            delete(writer.descriptor);
+            writer = null;
+        }
+
+        HintsDescriptor descriptor;
+        while ((descriptor = dispatchQueue.poll()) != null)
+            delete(descriptor);
+    }
+
+    public boolean hasHints()
+    {
+        return !dispatchQueue.isEmpty() || hasWriter();
+    }
+
+    private synchronized boolean hasWriter()
+    {
+        return writer != null;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.*;
+import java.util.zip.Checksum;
+
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.PureJavaCrc32;
+
+/**
+ * Appends hints to a new hints file. Like commit log segments, each entry is laid out as
+ * [int: length][long: length checksum][hint][long: hint checksum], the hint being serialized with
+ * the messaging version of the file's descriptor.
+ *
+ * Not thread safe: writes are serialized by the owning HintsStore.
+ */
+public class HintsWriter implements Closeable
+{
+    // The hints entry overhead in bytes (int: length + long: head checksum + long: tail checksum)
+    static final int ENTRY_OVERHEAD_SIZE = 4 + 8 + 8;
+
+    public final HintsDescriptor descriptor;
+    private final File file;
+    private final FileOutputStream fos;
+    private final DataOutputStream out;
+    private final Checksum checksum = new PureJavaCrc32();
+    private long position;
+    private long syncedPosition;
+
+    private HintsWriter(HintsDescriptor descriptor, File file, FileOutputStream fos)
+    {
+        this.descriptor = descriptor;
+        this.file = file;
+        this.fos = fos;
+        this.out = new DataOutputStream(new BufferedOutputStream(fos));
+    }
+
+    public static HintsWriter create(File directory, HintsDescriptor descriptor)
+    {
+        File file = descriptor.file(directory);
+        try
+        {
+            return new HintsWriter(descriptor, file, new FileOutputStream(file));
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    /**
+     * Appends the hint and hands it over to the OS; the file is only synced to disk by sync(), or once closed.
+     */
+    public void append(Hint hint)
+    {
+        DataOutputBuffer buffer = new DataOutputBuffer();
+        try
+        {
+            Hint.serializer.serialize(hint, buffer, descriptor.version);
+            int length = buffer.getLength();
+
+            checksum.reset();
+            FBUtilities.updateChecksumInt(checksum, length);
+            out.writeInt(length);
+            out.writeLong(checksum.getValue());
+
+            checksum.reset();
+            checksum.update(buffer.getData(), 0, length);
+            out.write(buffer.getData(), 0, length);
+            out.writeLong(checksum.getValue());
+            out.flush();
+
+            position += length + ENTRY_OVERHEAD_SIZE;
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public long position()
+    {
+        return position;
+    }
+
+    /**
+     * @return the number of bytes synced to disk so far
+     */
+    public long syncedPosition()
+    {
+        return syncedPosition;
+    }
+
+    /**
+     * Syncs the hints appended so far to disk, if any was appended since the last sync.
+     */
+    public void sync()
+    {
+        if (syncedPosition == position)
+            return;
+
+        try
+        {
+            fos.getFD().sync();
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+        syncedPosition = position;
+    }
+
+    public void close()
+    {
+        try
+        {
+            out.flush();
+            fos.getFD().sync();
+            out.close();
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+}
@@ -23,10 +23,16 @@ import java.util.*;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.filter.ExtendedFilter;
 import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.EstimatedHistogram;
 import org.apache.cassandra.utils.FBUtilities;
 
 public abstract class SecondaryIndexSearcher
 {
+    // below this many matches of the most selective index, intersecting it with other indexes isn't worth it
+    protected static final long MIN_MATCHES_FOR_INTERSECTION = 64;
+    // how many times more rows than the most selective index another index may match and still be intersected
+    protected static final long MAX_INTERSECTION_RATIO = 8;
+
     protected final SecondaryIndexManager indexManager;
     protected final Set<ByteBuffer> columns;
     protected final ColumnFamilyStore baseCfs;
@@ -54,6 +60,57 @@ public abstract class SecondaryIndexSearcher
         return highestSelectivityPredicate(clause) != null;
     }
 
+    /**
+     * Estimates the number of rows an equality predicate on the index matches, as the mean number of entries
+     * per indexed value recorded in the cardinality histogram of the index sstables.
+     *
+     * @return the estimate, or 0 if nothing is known yet (no index sstables)
+     */
+    protected long estimateMatches(SecondaryIndex index)
+    {
+        EstimatedHistogram histogram = index.getIndexCfs().getColumnCountHistogram();
+        if (histogram.count() == 0 || histogram.isOverflowed())
+            return 0;
+        return histogram.mean();
+    }
+
+    /**
+     * Chooses the predicates whose index entries are intersected with those of <code>primary</code> before
+     * any base row is read. Scanning index entries is much cheaper than reading base rows, so an index is
+     * worth intersecting as long as it does not match more than MAX_INTERSECTION_RATIO times the rows the
+     * primary index matches. Intersection is pointless when the primary index only matches a few rows.
+     *
+     * @return the predicates to intersect with primary, empty if primary should be scanned alone
+     */
+    protected List<IndexExpression> intersectedPredicates(IndexExpression primary, List<IndexExpression> clause)
+    {
+        long primaryMatches = estimateMatches(indexManager.getIndexForColumn(primary.column));
+        if (primaryMatches < MIN_MATCHES_FOR_INTERSECTION)
+            return Collections.emptyList();
+
+        List<IndexExpression> intersected = new ArrayList<>();
+        Map<String, Long> estimates = new HashMap<>();
+        for (IndexExpression expression : clause)
+        {
+            if (expression == primary || !columns.contains(expression.column) || expression.operator != IndexExpression.Operator.EQ)
+                continue;
+
+            SecondaryIndex index = indexManager.getIndexForColumn(expression.column);
+            if (index == null)
+                continue;
+
+            long matches = estimateMatches(index);
+            estimates.put(index.getIndexName(), matches);
+            if (matches > 0 && matches <= primaryMatches * MAX_INTERSECTION_RATIO)
+                intersected.add(expression);
+        }
+
+        if (!intersected.isEmpty())
+            Tracing.trace("Estimated index matches are {} against {} for the scanned index. Intersecting {} of them.",
+                          new Object[]{ FBUtilities.toString(estimates), primaryMatches, intersected.size() });
+        return intersected;
+    }
+
     protected IndexExpression highestSelectivityPredicate(List<IndexExpression> clause)
     {
         IndexExpression best = null;
@@ -19,10 +19,7 @@ package org.apache.cassandra.db.index.keys;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +29,7 @@ import org.apache.cassandra.db.filter.ExtendedFilter;
 import org.apache.cassandra.db.filter.IDiskAtomFilter;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.index.*;
+import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -40,6 +38,8 @@ import org.apache.cassandra.utils.HeapAllocator;
 public class KeysSearcher extends SecondaryIndexSearcher
 {
     private static final Logger logger = LoggerFactory.getLogger(KeysSearcher.class);
+    // number of entries read at once from the indexes intersected with the scanned one
+    private static final int INTERSECTION_PAGE_SIZE = 512;
 
     public KeysSearcher(SecondaryIndexManager indexManager, Set<ByteBuffer> columns)
     {
@@ -56,14 +56,20 @@ public class KeysSearcher extends SecondaryIndexSearcher
     private ColumnFamilyStore.AbstractScanIterator getIndexedIterator(final ExtendedFilter filter)
     {
 
-        // Start with the most-restrictive indexed clause, then apply remaining clauses
-        // to each row matching that clause.
-        // TODO: allow merge join instead of just one index + loop
+        // Start with the most-restrictive indexed clause, skip the rows missing from the indexes worth
+        // intersecting with it, then apply remaining clauses to each row left.
         final IndexExpression primary = highestSelectivityPredicate(filter.getClause());
         final SecondaryIndex index = indexManager.getIndexForColumn(primary.column);
         assert index != null;
         final DecoratedKey indexKey = index.getIndexKeyFor(primary.value);
 
+        final List<IndexCursor> intersected = new ArrayList<>();
+        for (IndexExpression expression : intersectedPredicates(primary, filter.getClause()))
+        {
+            SecondaryIndex intersectedIndex = indexManager.getIndexForColumn(expression.column);
+            intersected.add(new IndexCursor(intersectedIndex, intersectedIndex.getIndexKeyFor(expression.value), filter.timestamp));
+        }
+
         if (logger.isDebugEnabled())
             logger.debug("Most-selective indexed predicate is {}",
                          ((AbstractSimplePerColumnSecondaryIndex) index).expressionString(primary));
@@ -160,6 +166,17 @@ public class KeysSearcher extends SecondaryIndexSearcher
                             continue;
                         }
 
+                        if (!isInAll(intersected, lastSeenKey))
+                        {
+                            if (isAnyExhausted(intersected))
+                            {
+                                logger.trace("No more entries in an intersected index, all done");
+                                return endOfData();
+                            }
+                            logger.trace("Skipping entry {} missing from an intersected index", dk);
+                            continue;
+                        }
+
                         logger.trace("Returning index hit for {}", dk);
                         ColumnFamily data = baseCfs.getColumnFamily(new QueryFilter(dk, baseCfs.name, filter.columnFilter(lastSeenKey), filter.timestamp));
                         // While the column family we'll get in the end should contains the primary clause column, the initialFilter may not have found it and can thus be null
@@ -191,4 +208,97 @@ public class KeysSearcher extends SecondaryIndexSearcher
             public void close() throws IOException {}
         };
     }
+
+    private static boolean isInAll(List<IndexCursor> cursors, ByteBuffer key)
+    {
+        for (IndexCursor cursor : cursors)
+        {
+            if (!cursor.contains(key))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isAnyExhausted(List<IndexCursor> cursors)
+    {
+        for (IndexCursor cursor : cursors)
+        {
+            if (cursor.isExhausted())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Walks the entries of an indexed value in key order, the same order the scanned index is read in, so
+     * that intersecting it with the scanned index is a merge join. Keys must be looked up in increasing order.
+     */
+    private static class IndexCursor
+    {
+        private final ColumnFamilyStore indexCfs;
+        private final DecoratedKey indexKey;
+        private final AbstractType<?> comparator;
+        private final long timestamp;
+
+        private final Deque<Column> page = new ArrayDeque<>();
+        // whether the last page read was the last one
+        private boolean lastPage;
+
+        IndexCursor(SecondaryIndex index, DecoratedKey indexKey, long timestamp)
+        {
+            this.indexCfs = index.getIndexCfs();
+            this.indexKey = indexKey;
+            this.comparator = indexCfs.getComparator();
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * @return true if the indexed value has a live entry for key
+         */
+        boolean contains(ByteBuffer key)
+        {
+            while (true)
+            {
+                while (!page.isEmpty())
+                {
+                    int cmp = comparator.compare(page.peek().name(), key);
+                    if (cmp > 0)
+                        return false;
+
+                    Column column = page.poll();
+                    if (cmp == 0)
+                        return !column.isMarkedForDelete(timestamp);
+                }
+
+                if (lastPage)
+                    return false;
+
+                // leap straight to key rather than reading the entries before it
+                QueryFilter filter = QueryFilter.getSliceFilter(indexKey,
+                                                                indexCfs.name,
+                                                                key,
+                                                                ByteBufferUtil.EMPTY_BYTE_BUFFER,
+                                                                false,
+                                                                INTERSECTION_PAGE_SIZE,
+                                                                timestamp);
+                ColumnFamily indexRow = indexCfs.getColumnFamily(filter);
+                if (indexRow == null)
+                {
+                    lastPage = true;
+                    return false;
+                }
+                Collection<Column> columns = indexRow.getSortedColumns();
+                page.addAll(columns);
+                lastPage = columns.size() < INTERSECTION_PAGE_SIZE;
+            }
+        }
+
+        /**
+         * @return true if no key greater than the last one looked up can be found
+         */
+        boolean isExhausted()
+        {
+            return lastPage && page.isEmpty();
+        }
+    }
 }
@@ -23,6 +23,7 @@ import java.util.zip.Adler32;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.CompressedPoolingSegmentedFile;
@@ -36,11 +37,15 @@ import org.apache.cassandra.utils.FBUtilities;
  */
 public class CompressedRandomAccessReader extends RandomAccessReader
 {
+    /**
+     * Opens a reader for point reads through a segmented file; these share uncompressed chunks through the
+     * ChunkCache.  Sequential readers (scans, compaction, streaming) bypass it so as not to evict hot chunks.
+     */
     public static CompressedRandomAccessReader open(String path, CompressionMetadata metadata, CompressedPoolingSegmentedFile owner)
     {
         try
         {
-            return new CompressedRandomAccessReader(path, metadata, owner);
+            return new CompressedRandomAccessReader(path, metadata, owner, ChunkCache.instance);
         }
         catch (FileNotFoundException e)
         {
@@ -52,7 +57,7 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     {
         try
         {
-            return new CompressedRandomAccessReader(dataFilePath, metadata, null);
+            return new CompressedRandomAccessReader(dataFilePath, metadata, null, null);
         }
         catch (FileNotFoundException e)
         {
@@ -71,10 +76,19 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     // raw checksum bytes
     private final ByteBuffer checksumBytes = ByteBuffer.wrap(new byte[4]);
 
+    // shared cache of uncompressed chunks, or null
+    private final ChunkCache chunkCache;
+
     protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner) throws FileNotFoundException
+    {
+        this(dataFilePath, metadata, owner, null);
+    }
+
+    protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner, ChunkCache chunkCache) throws FileNotFoundException
     {
         super(new File(dataFilePath), metadata.chunkLength(), owner);
         this.metadata = metadata;
+        this.chunkCache = chunkCache;
         checksum = metadata.hasPostCompressionAdlerChecksums ? new Adler32() : new CRC32();
         compressed = ByteBuffer.wrap(new byte[metadata.compressor().initialCompressedBufferLength(metadata.chunkLength())]);
     }
@@ -98,6 +112,17 @@ public class CompressedRandomAccessReader extends RandomAccessReader
 
     private void decompressChunk(CompressionMetadata.Chunk chunk) throws IOException
     {
+        if (chunkCache != null)
+        {
+            int length = chunkCache.get(getPath(), chunk.offset, buffer);
+            if (length >= 0)
+            {
+                validBufferBytes = length;
+                bufferOffset = current & ~(buffer.length - 1);
+                return;
+            }
+        }
+
         if (channel.position() != chunk.offset)
             channel.position(chunk.offset);
 
@@ -141,6 +166,9 @@ public class CompressedRandomAccessReader extends RandomAccessReader
             checksum.reset();
         }
 
+        if (chunkCache != null)
+            chunkCache.put(getPath(), chunk.offset, buffer, validBufferBytes);
+
         // buffer offset is always aligned
         bufferOffset = current & ~(buffer.length - 1);
     }
@@ -53,6 +53,8 @@ public class Component
         CRC("CRC.db"),
         // holds SSTable Index Summary and Boundaries
         SUMMARY("Summary.db"),
+        // trie of the row keys with pointers to their positions in the primary index
+        PARTITION_INDEX("PartitionIndex.db"),
         // table of contents, stores the list of all components for the sstable
         TOC("TOC.txt"),
         // custom component, used by e.g. custom compaction strategy
@@ -82,6 +84,7 @@ public class Component
     public final static Component DIGEST = new Component(Type.DIGEST);
     public final static Component CRC = new Component(Type.CRC);
     public final static Component SUMMARY = new Component(Type.SUMMARY);
+    public final static Component PARTITION_INDEX = new Component(Type.PARTITION_INDEX);
     public final static Component TOC = new Component(Type.TOC);
 
     public final Type type;
@@ -118,28 +121,33 @@ public class Component
     public static Pair<Descriptor,Component> fromFilename(File directory, String name)
     {
         Pair<Descriptor,String> path = Descriptor.fromFilename(directory, name);
+        return Pair.create(path.left, parse(path.right));
+    }
 
-        // parse the component suffix
-        Type type = Type.fromRepresentation(path.right);
+    /**
+     * @param name the component suffix of an sstable file name, as returned by name()
+     * @return the singleton for that component, or a custom component
+     */
+    public static Component parse(String name)
+    {
+        Type type = Type.fromRepresentation(name);
         // build (or retrieve singleton for) the component object
-        Component component;
         switch(type)
         {
-            case DATA:              component = Component.DATA;                         break;
-            case PRIMARY_INDEX:     component = Component.PRIMARY_INDEX;                break;
-            case FILTER:            component = Component.FILTER;                       break;
-            case COMPRESSION_INFO:  component = Component.COMPRESSION_INFO;             break;
-            case STATS:             component = Component.STATS;                        break;
-            case DIGEST:            component = Component.DIGEST;                       break;
-            case CRC:               component = Component.CRC;                          break;
-            case SUMMARY:           component = Component.SUMMARY;                      break;
-            case TOC:               component = Component.TOC;                          break;
-            case CUSTOM:            component = new Component(Type.CUSTOM, path.right); break;
+            case DATA:              return Component.DATA;
+            case PRIMARY_INDEX:     return Component.PRIMARY_INDEX;
+            case FILTER:            return Component.FILTER;
+            case COMPRESSION_INFO:  return Component.COMPRESSION_INFO;
+            case STATS:             return Component.STATS;
+            case DIGEST:            return Component.DIGEST;
+            case CRC:               return Component.CRC;
+            case SUMMARY:           return Component.SUMMARY;
+            case PARTITION_INDEX:   return Component.PARTITION_INDEX;
+            case TOC:               return Component.TOC;
+            case CUSTOM:            return new Component(Type.CUSTOM, name);
             default:
                  throw new IllegalStateException();
         }
-
-        return Pair.create(path.left, component);
     }
 
     @Override
@@ -44,7 +44,7 @@ public class Descriptor
     public static class Version
     {
         // This needs to be at the beginning for initialization sake
-        public static final String current_version = "jc";
+        public static final String current_version = "jd";
 
         // ic (1.2.5): omits per-row bloom filter of column names
         // ja (2.0.0): super columns are serialized as composites (note that there is no real format change,
@@ -58,6 +58,7 @@ public class Descriptor
         // jb (2.0.1): switch from crc32 to adler32 for compression checksums
         //             checksum the compressed data
         // jc (2.1.0): index summaries can be downsampled and the sampling level is persisted
+        // jd (2.1.0): records the time at which the sstable was repaired in metadata
 
         public static final Version CURRENT = new Version(current_version);
 
@@ -72,6 +73,7 @@ public class Descriptor
         public final boolean tracksMaxMinColumnNames;
         public final boolean hasPostCompressionAdlerChecksums;
         public final boolean hasSamplingLevel;
+        public final boolean hasRepairedAt;
 
         public Version(String version)
         {
@@ -85,6 +87,7 @@ public class Descriptor
             tracksMaxMinColumnNames = version.compareTo("ja") >= 0;
             hasPostCompressionAdlerChecksums = version.compareTo("jb") >= 0;
             hasSamplingLevel = version.compareTo("jc") >= 0;
+            hasRepairedAt = version.compareTo("jd") >= 0;
         }
 
         /**
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.*;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.apache.cassandra.io.sstable.PartitionIndexBuilder.*;
+
+/**
+ * Memory-mapped trie from partition keys to their position in the primary index, written by PartitionIndexBuilder.
+ *
+ * Keys are made byte-comparable by prefixing them with their token, so the trie follows the sstable order.
+ * Since only a unique prefix of each key is stored, a match is a candidate that the caller must check against
+ * the key found at the returned position; a key that is not in the sstable usually falls off the trie early.
+ * Lookups walk the mapped bytes directly and allocate nothing.
+ */
+public class PartitionIndex implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(PartitionIndex.class);
+
+    private final String path;
+    private final MappedByteBuffer buffer;
+    private final int root;
+
+    private PartitionIndex(String path, MappedByteBuffer buffer, int root)
+    {
+        this.path = path;
+        this.buffer = buffer;
+        this.root = root;
+    }
+
+    /**
+     * @return the index in @param path, or null if it cannot be mapped
+     */
+    public static PartitionIndex open(String path) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(path, "r");
+        try
+        {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE)
+            {
+                logger.warn("Partition index {} is too large to be mapped ({} bytes); falling back to the index summary", path, length);
+                return null;
+            }
+            if (length < 8)
+                throw new CorruptSSTableException(new IOException("Partition index is truncated"), path);
+
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            long root = buffer.getLong((int) length - 8);
+            if (root < 0 || root >= length - 8)
+                throw new CorruptSSTableException(new IOException("Invalid partition index root " + root), path);
+            return new PartitionIndex(path, buffer, (int) root);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * @return true if the keys of @param partitioner have a byte-comparable form, i.e. an index can be built for them
+     */
+    public static boolean isSupported(IPartitioner partitioner)
+    {
+        return partitioner instanceof Murmur3Partitioner
+            || partitioner instanceof RandomPartitioner
+            || partitioner instanceof ByteOrderedPartitioner;
+    }
+
+    /**
+     * @return the token of @param key followed by its bytes, encoded so that unsigned byte order is DecoratedKey order
+     */
+    public static byte[] byteComparable(DecoratedKey key)
+    {
+        byte[] bytes = ByteBufferUtil.getArray(key.key);
+        Token token = key.token;
+        if (token instanceof BytesToken)
+            return bytes;
+
+        ByteBuffer result;
+        if (token instanceof LongToken)
+        {
+            result = ByteBuffer.allocate(8 + bytes.length);
+            // flipping the sign bit makes signed order unsigned
+            result.putLong(((LongToken) token).token ^ Long.MIN_VALUE);
+        }
+        else if (token instanceof BigIntegerToken)
+        {
+            // RandomPartitioner tokens are within [0, 2**127]: their 16 byte magnitude is unsigned ordered
+            byte[] magnitude = ((BigIntegerToken) token).token.toByteArray();
+            int length = Math.min(16, magnitude.length);
+            result = ByteBuffer.allocate(16 + bytes.length);
+            result.position(16 - length);
+            result.put(magnitude, magnitude.length - length, length);
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unsupported token type " + token.getClass());
+        }
+        result.put(bytes);
+        return result.array();
+    }
+
+    /**
+     * @return the primary index position of the only partition that may match @param key, or -1 if there is none
+     */
+    public long getIndexPosition(DecoratedKey key)
+    {
+        byte[] bytes = byteComparable(key);
+        int node = root;
+        for (int depth = 0; ; depth++)
+        {
+            int flags = buffer.get(node) & 0xFF;
+            int offset = node + 1;
+            long payload = -1;
+            if ((flags & HAS_PAYLOAD) != 0)
+            {
+                int width = (flags >> PAYLOAD_WIDTH_SHIFT) & 3;
+                payload = readWithWidth(offset, width);
+                offset += 1 << width;
+            }
+
+            if (depth == bytes.length)
+                return payload;
+
+            if ((flags & HAS_CHILDREN) == 0)
+                // the stored prefix of a key was unique: this is our only candidate
+                return payload;
+
+            int childCount = (buffer.get(offset) & 0xFF) + 1;
+            int transitions = offset + 1;
+            int child = findTransition(transitions, childCount, bytes[depth] & 0xFF);
+            if (child < 0)
+                return -1;
+
+            int width = (flags >> POINTER_WIDTH_SHIFT) & 3;
+            node -= (int) readWithWidth(transitions + childCount + (child << width), width);
+        }
+    }
+
+    private int findTransition(int transitions, int count, int transition)
+    {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int cmp = (buffer.get(transitions + mid) & 0xFF) - transition;
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private long readWithWidth(int offset, int width)
+    {
+        switch (width)
+        {
+            case 0: return buffer.get(offset) & 0xFFL;
+            case 1: return buffer.getShort(offset) & 0xFFFFL;
+            case 2: return buffer.getInt(offset) & 0xFFFFFFFFL;
+            default: return buffer.getLong(offset);
+        }
+    }
+
+    public long sizeInBytes()
+    {
+        return buffer.capacity();
+    }
+
+    public void close()
+    {
+        if (FileUtils.isCleanerAvailable())
+            FileUtils.clean(buffer);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PartitionIndex(" + new File(path).getName() + ")";
+    }
+}
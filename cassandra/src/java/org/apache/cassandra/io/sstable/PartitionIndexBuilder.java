@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.io.util.SequentialWriter;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Writes the trie of a PartitionIndex incrementally, from byte-comparable partition keys added in sorted order.
+ *
+ * Each key is stored under its shortest prefix that is unique among its neighbours, so the trie stays small
+ * regardless of key length. Nodes are written children first as soon as no further key can extend them, which
+ * only requires keeping the path to the last key in memory; the root is written last and referenced from the
+ * trailer. A node never straddles a page boundary, so walking it touches a single page.
+ *
+ * Keys added after a call to mark() can be removed with resetAndTruncate(), mirroring SSTableWriter.
+ */
+public class PartitionIndexBuilder
+{
+    static final int PAGE_SIZE = 4096;
+
+    static final int HAS_PAYLOAD = 0x01;
+    static final int HAS_CHILDREN = 0x02;
+    static final int PAYLOAD_WIDTH_SHIFT = 2;
+    static final int POINTER_WIDTH_SHIFT = 4;
+
+    private static final byte[] PADDING = new byte[PAGE_SIZE];
+
+    private final SequentialWriter out;
+
+    // keys that were added but not written yet, since a key's prefix depends on the key following it
+    private final ArrayDeque<PendingKey> pending = new ArrayDeque<>();
+    // number of pending keys that can no longer be reset, or Integer.MAX_VALUE if mark() was never called
+    private int committed = Integer.MAX_VALUE;
+
+    // the last key and prefix written, and the nodes on the path to that prefix, root first
+    private byte[] lastKey;
+    private byte[] lastPrefix;
+    private final List<Node> path = new ArrayList<>();
+
+    public PartitionIndexBuilder(SequentialWriter out)
+    {
+        this.out = out;
+        path.add(new Node());
+    }
+
+    public void add(byte[] key, long indexPosition) throws IOException
+    {
+        PendingKey last = pending.peekLast();
+        byte[] previous = last == null ? lastKey : last.key;
+        assert previous == null || FBUtilities.compareUnsigned(previous, key, 0, 0, previous.length, key.length) < 0
+             : "Keys must be added in increasing order";
+
+        pending.addLast(new PendingKey(key, indexPosition));
+        writeCommitted();
+    }
+
+    public void mark() throws IOException
+    {
+        committed = pending.size();
+        writeCommitted();
+    }
+
+    public void resetAndTruncate()
+    {
+        assert committed != Integer.MAX_VALUE : "resetAndTruncate() called without mark()";
+        while (pending.size() > committed)
+            pending.removeLast();
+    }
+
+    /**
+     * Writes the remaining keys, the root and the trailer pointing at the root.
+     */
+    public void complete() throws IOException
+    {
+        while (!pending.isEmpty())
+        {
+            PendingKey key = pending.removeFirst();
+            PendingKey next = pending.peekFirst();
+            write(key, next == null ? null : next.key);
+        }
+
+        popTo(0);
+        long rootPosition = writeNode(path.get(0));
+        out.stream.writeLong(rootPosition);
+    }
+
+    private void writeCommitted() throws IOException
+    {
+        // a key can be written once the key after it can no longer be reset
+        while (pending.size() >= 2 && committed >= 2)
+        {
+            PendingKey key = pending.removeFirst();
+            write(key, pending.peekFirst().key);
+            if (committed != Integer.MAX_VALUE)
+                committed--;
+        }
+    }
+
+    private void write(PendingKey key, byte[] nextKey) throws IOException
+    {
+        int common = Math.max(lastKey == null ? 0 : commonPrefix(lastKey, key.key),
+                              nextKey == null ? 0 : commonPrefix(key.key, nextKey));
+        byte[] prefix = Arrays.copyOf(key.key, Math.min(key.key.length, common + 1));
+
+        int depth = lastPrefix == null ? 0 : commonPrefix(lastPrefix, prefix);
+        popTo(depth);
+        for (int i = depth; i < prefix.length; i++)
+            path.add(new Node());
+        path.get(prefix.length).payload = key.indexPosition;
+
+        lastKey = key.key;
+        lastPrefix = prefix;
+    }
+
+    /**
+     * Writes the nodes of the last prefix that are deeper than @param depth, attaching each to its parent.
+     */
+    private void popTo(int depth) throws IOException
+    {
+        while (path.size() > depth + 1)
+        {
+            Node node = path.remove(path.size() - 1);
+            long position = writeNode(node);
+            path.get(path.size() - 1).addChild(lastPrefix[path.size() - 1], position);
+        }
+    }
+
+    private long writeNode(Node node) throws IOException
+    {
+        boolean hasPayload = node.payload >= 0;
+        int payloadWidth = hasPayload ? width(node.payload) : 0;
+        int size = 1 + (hasPayload ? 1 << payloadWidth : 0);
+
+        // the first child is the farthest one, and padding can move this node by at most a page
+        int pointerWidth = 0;
+        if (node.childCount > 0)
+        {
+            pointerWidth = width(out.getFilePointer() + PAGE_SIZE - node.children[0]);
+            size += 1 + node.childCount * (1 + (1 << pointerWidth));
+        }
+
+        long position = alignedPosition(size);
+        long padding = position - out.getFilePointer();
+        if (padding > 0)
+            out.stream.write(PADDING, 0, (int) padding);
+
+        DataOutput stream = out.stream;
+        int flags = (hasPayload ? HAS_PAYLOAD | payloadWidth << PAYLOAD_WIDTH_SHIFT : 0)
+                  | (node.childCount > 0 ? HAS_CHILDREN | pointerWidth << POINTER_WIDTH_SHIFT : 0);
+        stream.writeByte(flags);
+        if (hasPayload)
+            writeWithWidth(stream, node.payload, payloadWidth);
+        if (node.childCount > 0)
+        {
+            stream.writeByte(node.childCount - 1);
+            stream.write(node.transitions, 0, node.childCount);
+            for (int i = 0; i < node.childCount; i++)
+                writeWithWidth(stream, position - node.children[i], pointerWidth);
+        }
+        return position;
+    }
+
+    /**
+     * @return the position at which a node of @param size bytes will be written so that it does not cross a page
+     */
+    private long alignedPosition(int size)
+    {
+        long position = out.getFilePointer();
+        long inPage = position % PAGE_SIZE;
+        if (inPage + size > PAGE_SIZE && size <= PAGE_SIZE)
+            position += PAGE_SIZE - inPage;
+        return position;
+    }
+
+    /**
+     * @return the base 2 logarithm of the number of bytes (1, 2, 4 or 8) needed to write @param value
+     */
+    private static int width(long value)
+    {
+        assert value >= 0;
+        if (value < 1L << 8)
+            return 0;
+        if (value < 1L << 16)
+            return 1;
+        if (value < 1L << 32)
+            return 2;
+        return 3;
+    }
+
+    private static void writeWithWidth(DataOutput out, long value, int width) throws IOException
+    {
+        switch (width)
+        {
+            case 0: out.writeByte((int) value); break;
+            case 1: out.writeShort((int) value); break;
+            case 2: out.writeInt((int) value); break;
+            default: out.writeLong(value);
+        }
+    }
+
+    private static int commonPrefix(byte[] a, byte[] b)
+    {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++)
+            if (a[i] != b[i])
+                return i;
+        return length;
+    }
+
+    private static class PendingKey
+    {
+        final byte[] key;
+        final long indexPosition;
+
+        PendingKey(byte[] key, long indexPosition)
+        {
+            this.key = key;
+            this.indexPosition = indexPosition;
+        }
+    }
+
+    private static class Node
+    {
+        long payload = -1;
+        int childCount;
+        byte[] transitions = new byte[4];
+        long[] children = new long[4];
+
+        void addChild(byte transition, long position)
+        {
+            if (childCount == transitions.length)
+            {
+                transitions = Arrays.copyOf(transitions, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            transitions[childCount] = transition;
+            children[childCount] = position;
+            childCount++;
+        }
+    }
+}
@@ -150,6 +150,11 @@ public abstract class SSTable
         return descriptor.ksname;
     }
 
+    public Set<Component> getComponents()
+    {
+        return Collections.unmodifiableSet(components);
+    }
+
     /**
      * @return A Descriptor,Component pair. If component is of unknown type, returns CUSTOM component.
      */
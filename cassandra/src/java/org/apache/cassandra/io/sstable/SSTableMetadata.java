@@ -23,6 +23,7 @@ import java.util.*;
 
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.StreamingHistogram;
 import org.slf4j.Logger;
@@ -45,14 +46,18 @@ import org.apache.cassandra.utils.EstimatedHistogram;
  *  - partitioner
  *  - generations of sstables from which this sstable was compacted, if any
  *  - tombstone drop time histogram
+ *  - time at which the sstable was repaired, if it was
  *
  * An SSTableMetadata should be instantiated via the Collector, openFromDescriptor()
  * or createDefaultInstance()
  */
 public class SSTableMetadata
 {
+    private static final Logger logger = LoggerFactory.getLogger(SSTableMetadata.class);
+
     public static final double NO_BLOOM_FLITER_FP_CHANCE = -1.0;
     public static final double NO_COMPRESSION_RATIO = -1.0;
+    public static final long UNREPAIRED_SSTABLE = 0;
     public static final SSTableMetadataSerializer serializer = new SSTableMetadataSerializer();
 
     public final EstimatedHistogram estimatedRowSize;
@@ -68,6 +73,7 @@ public class SSTableMetadata
     public final int sstableLevel;
     public final List<ByteBuffer> maxColumnNames;
     public final List<ByteBuffer> minColumnNames;
+    public final long repairedAt;
 
     private SSTableMetadata()
     {
@@ -83,7 +89,8 @@ public class SSTableMetadata
              defaultTombstoneDropTimeHistogram(),
              0,
              Collections.<ByteBuffer>emptyList(),
-             Collections.<ByteBuffer>emptyList());
+             Collections.<ByteBuffer>emptyList(),
+             UNREPAIRED_SSTABLE);
     }
 
     private SSTableMetadata(EstimatedHistogram rowSizes,
@@ -98,7 +105,8 @@ public class SSTableMetadata
                             StreamingHistogram estimatedTombstoneDropTime,
                             int sstableLevel,
                             List<ByteBuffer> minColumnNames,
-                            List<ByteBuffer> maxColumnNames)
+                            List<ByteBuffer> maxColumnNames,
+                            long repairedAt)
     {
         this.estimatedRowSize = rowSizes;
         this.estimatedColumnCount = columnCounts;
@@ -113,6 +121,7 @@ public class SSTableMetadata
         this.sstableLevel = sstableLevel;
         this.minColumnNames = minColumnNames;
         this.maxColumnNames = maxColumnNames;
+        this.repairedAt = repairedAt;
     }
 
     public static Collector createCollector(AbstractType<?> columnNameComparator)
@@ -127,9 +136,11 @@ public class SSTableMetadata
         collector.replayPosition(ReplayPosition.getReplayPosition(sstables));
         collector.sstableLevel(level);
         // Get the max timestamp of the precompacted sstables
-        // and adds generation of live ancestors
+        // and adds generation of live ancestors.  The result is only repaired if all its sources were.
+        long repairedAt = Long.MAX_VALUE;
         for (SSTableReader sstable : sstables)
         {
+            repairedAt = Math.min(repairedAt, sstable.getSSTableMetadata().repairedAt);
             collector.addAncestor(sstable.descriptor.generation);
             for (Integer i : sstable.getAncestors())
             {
@@ -137,6 +148,7 @@ public class SSTableMetadata
                     collector.addAncestor(i);
             }
         }
+        collector.repairedAt(sstables.isEmpty() ? UNREPAIRED_SSTABLE : repairedAt);
 
         return collector;
     }
@@ -162,10 +174,51 @@ public class SSTableMetadata
                                    metadata.estimatedTombstoneDropTime,
                                    sstableLevel,
                                    metadata.minColumnNames,
-                                   metadata.maxColumnNames);
+                                   metadata.maxColumnNames,
+                                   metadata.repairedAt);
 
     }
 
+    public static SSTableMetadata copyWithNewRepairedAt(SSTableMetadata metadata, long repairedAt)
+    {
+        return new SSTableMetadata(metadata.estimatedRowSize,
+                                   metadata.estimatedColumnCount,
+                                   metadata.replayPosition,
+                                   metadata.minTimestamp,
+                                   metadata.maxTimestamp,
+                                   metadata.maxLocalDeletionTime,
+                                   metadata.bloomFilterFPChance,
+                                   metadata.compressionRatio,
+                                   metadata.partitioner,
+                                   metadata.estimatedTombstoneDropTime,
+                                   metadata.sstableLevel,
+                                   metadata.minColumnNames,
+                                   metadata.maxColumnNames,
+                                   repairedAt);
+    }
+
+    /**
+     * Rewrites the metadata component of the given sstable with a new repairedAt, the same way
+     * LeveledManifest.mutateLevel() does for the level.
+     *
+     * Caller needs to reload the sstable metadata (sstableReader.reloadSSTableMetadata())
+     */
+    public static synchronized void mutateRepairedAt(Descriptor descriptor, long repairedAt) throws IOException
+    {
+        String filename = descriptor.filenameFor(Component.STATS);
+        logger.debug("Mutating {} to repairedAt time {}", filename, repairedAt);
+        Pair<SSTableMetadata, Set<Integer>> oldMetadata = serializer.deserialize(descriptor);
+        SSTableMetadata metadata = copyWithNewRepairedAt(oldMetadata.left, repairedAt);
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(filename + "-tmp"));
+        serializer.legacySerialize(metadata, oldMetadata.right, descriptor, out);
+        out.flush();
+        out.close();
+        // we cant move a file on top of another file in windows:
+        if (!FBUtilities.isUnix())
+            FileUtils.delete(filename);
+        FileUtils.renameWithConfirm(filename + "-tmp", filename);
+    }
+
     static EstimatedHistogram defaultColumnCountHistogram()
     {
         // EH of 114 can track a max value of 2395318855, i.e., > 2B columns
@@ -222,6 +275,7 @@ public class SSTableMetadata
         protected int sstableLevel;
         protected List<ByteBuffer> minColumnNames = Collections.emptyList();
         protected List<ByteBuffer> maxColumnNames = Collections.emptyList();
+        protected long repairedAt = UNREPAIRED_SSTABLE;
         private final AbstractType<?> columnNameComparator;
 
         private Collector(AbstractType<?> columnNameComparator)
@@ -281,7 +335,8 @@ public class SSTableMetadata
                                        estimatedTombstoneDropTime,
                                        sstableLevel,
                                        minColumnNames,
-                                       maxColumnNames);
+                                       maxColumnNames,
+                                       repairedAt);
         }
 
         public Collector estimatedRowSize(EstimatedHistogram estimatedRowSize)
@@ -333,6 +388,12 @@ public class SSTableMetadata
             return this;
         }
 
+        public Collector repairedAt(long repairedAt)
+        {
+            this.repairedAt = repairedAt;
+            return this;
+        }
+
         public Collector updateMinColumnNames(List<ByteBuffer> minColumnNames)
         {
             if (minColumnNames.size() > 0)
@@ -371,6 +432,7 @@ public class SSTableMetadata
             StreamingHistogram.serializer.serialize(sstableStats.estimatedTombstoneDropTime, out);
             out.writeInt(sstableStats.sstableLevel);
             serializeMinMaxColumnNames(sstableStats.minColumnNames, sstableStats.maxColumnNames, out);
+            out.writeLong(sstableStats.repairedAt);
         }
 
         private void serializeMinMaxColumnNames(List<ByteBuffer> minColNames, List<ByteBuffer> maxColNames, DataOutput out) throws IOException
@@ -414,6 +476,8 @@ public class SSTableMetadata
             out.writeInt(sstableStats.sstableLevel);
             if (legacyDesc.version.tracksMaxMinColumnNames)
                 serializeMinMaxColumnNames(sstableStats.minColumnNames, sstableStats.maxColumnNames, out);
+            if (legacyDesc.version.hasRepairedAt)
+                out.writeLong(sstableStats.repairedAt);
         }
 
         /**
@@ -500,6 +564,7 @@ public class SSTableMetadata
                 minColumnNames = Collections.emptyList();
                 maxColumnNames = Collections.emptyList();
             }
+            long repairedAt = desc.version.hasRepairedAt ? in.readLong() : UNREPAIRED_SSTABLE;
             return Pair.create(new SSTableMetadata(rowSizes,
                                        columnCounts,
                                        replayPosition,
@@ -512,7 +577,8 @@ public class SSTableMetadata
                                        tombstoneHistogram,
                                        sstableLevel,
                                        minColumnNames,
-                                       maxColumnNames), ancestors);
+                                       maxColumnNames,
+                                       repairedAt), ancestors);
         }
     }
 }
@@ -109,6 +109,8 @@ public class SSTableReader extends SSTable implements Closeable
 
     private IndexSummary indexSummary;
     private IFilter bf;
+    // trie over the primary index, if the sstable has one
+    private PartitionIndex partitionIndex;
 
     private InstrumentingCache<KeyCacheKey, RowIndexEntry> keyCache;
 
@@ -322,6 +324,7 @@ public class SSTableReader extends SSTable implements Closeable
                                       SegmentedFile dfile,
                                       IndexSummary isummary,
                                       IFilter bf,
+                                      PartitionIndex partitionIndex,
                                       long maxDataAge,
                                       SSTableMetadata sstableMetadata)
     {
@@ -333,6 +336,7 @@ public class SSTableReader extends SSTable implements Closeable
                                  ifile, dfile,
                                  isummary,
                                  bf,
+                                 partitionIndex,
                                  maxDataAge,
                                  sstableMetadata);
     }
@@ -383,6 +387,7 @@ public class SSTableReader extends SSTable implements Closeable
                           SegmentedFile dfile,
                           IndexSummary indexSummary,
                           IFilter bloomFilter,
+                          PartitionIndex partitionIndex,
                           long maxDataAge,
                           SSTableMetadata sstableMetadata)
     {
@@ -392,6 +397,7 @@ public class SSTableReader extends SSTable implements Closeable
         this.dfile = dfile;
         this.indexSummary = indexSummary;
         this.bf = bloomFilter;
+        this.partitionIndex = partitionIndex;
     }
 
     public static long getTotalBytes(Iterable<SSTableReader> sstables)
@@ -423,6 +429,8 @@ public class SSTableReader extends SSTable implements Closeable
             dfile.cleanup();
             // close the BF so it can be opened later.
             bf.close();
+            if (partitionIndex != null)
+                partitionIndex.close();
         }
         indexSummary.close();
     }
@@ -496,6 +504,9 @@ public class SSTableReader extends SSTable implements Closeable
         dfile = dbuilder.complete(descriptor.filenameFor(Component.DATA));
         if (saveSummaryIfCreated && (recreateBloomFilter || !summaryLoaded)) // save summary information to disk
             saveSummary(ibuilder, dbuilder);
+
+        if (components.contains(Component.PARTITION_INDEX) && PartitionIndex.isSupported(partitioner))
+            partitionIndex = PartitionIndex.open(descriptor.filenameFor(Component.PARTITION_INDEX));
     }
 
     private void buildSummary(boolean recreateBloomFilter, SegmentedFile.Builder ibuilder, SegmentedFile.Builder dbuilder, boolean summaryLoaded, int samplingLevel) throws IOException
@@ -661,7 +672,7 @@ public class SSTableReader extends SSTable implements Closeable
         if (readMeterSyncFuture != null)
             readMeterSyncFuture.cancel(false);
 
-        SSTableReader replacement = new SSTableReader(descriptor, components, metadata, partitioner, ifile, dfile, newSummary, bf, maxDataAge, sstableMetadata);
+        SSTableReader replacement = new SSTableReader(descriptor, components, metadata, partitioner, ifile, dfile, newSummary, bf, partitionIndex, maxDataAge, sstableMetadata);
         replacement.readMeter = this.readMeter;
         replacement.first = this.first;
         replacement.last = this.last;
@@ -1065,6 +1076,9 @@ public class SSTableReader extends SSTable implements Closeable
             }
         }
 
+        if (op == Operator.EQ && partitionIndex != null)
+            return getPositionFromPartitionIndex((DecoratedKey) key, updateCacheAndStats);
+
         int binarySearchResult = indexSummary.binarySearch(key);
         long sampledPosition = getIndexScanPositionFromBinarySearchResult(binarySearchResult, indexSummary);
         int sampledIndex = getIndexSummaryIndexFromBinarySearchResult(binarySearchResult);
@@ -1163,6 +1177,46 @@ public class SSTableReader extends SSTable implements Closeable
         return null;
     }
 
+    /**
+     * Looks @param key up in the partition index, which points at the only primary index entry that can match it.
+     */
+    private RowIndexEntry getPositionFromPartitionIndex(DecoratedKey key, boolean updateCacheAndStats)
+    {
+        long indexPosition = partitionIndex.getIndexPosition(key);
+        if (indexPosition >= 0)
+        {
+            FileDataInput in = ifile.getSegment(indexPosition);
+            try
+            {
+                if (ByteBufferUtil.readWithShortLength(in).equals(key.key))
+                {
+                    RowIndexEntry indexEntry = RowIndexEntry.serializer.deserialize(in, descriptor.version);
+                    if (updateCacheAndStats)
+                    {
+                        cacheKey(key, indexEntry);
+                        bloomFilterTracker.addTruePositive();
+                    }
+                    Tracing.trace("Partition index with {} entries found for sstable {}", indexEntry.columnsIndex().size(), descriptor.generation);
+                    return indexEntry;
+                }
+            }
+            catch (IOException e)
+            {
+                markSuspect();
+                throw new CorruptSSTableException(e, in.getPath());
+            }
+            finally
+            {
+                FileUtils.closeQuietly(in);
+            }
+        }
+
+        if (updateCacheAndStats)
+            bloomFilterTracker.addFalsePositive();
+        Tracing.trace("Partition index lookup complete (bloom filter false positive) for sstable {}", descriptor.generation);
+        return null;
+    }
+
     /**
      * Finds and returns the first key beyond a given token in this SSTable or null if no such key exists.
      */
@@ -1495,6 +1549,14 @@ public class SSTableReader extends SSTable implements Closeable
         return sstableMetadata.sstableLevel;
     }
 
+    /**
+     * @return true if the data in this sstable was validated by an incremental repair that completed successfully
+     */
+    public boolean isRepaired()
+    {
+        return sstableMetadata.repairedAt != SSTableMetadata.UNREPAIRED_SSTABLE;
+    }
+
     /**
      * Reloads the sstable metadata from disk.
      *
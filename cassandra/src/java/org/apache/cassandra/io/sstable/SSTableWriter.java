@@ -31,6 +31,7 @@ import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.compaction.AbstractCompactedRow;
 import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.FSWriteError;
 import org.apache.cassandra.io.compress.CompressedSequentialWriter;
 import org.apache.cassandra.io.util.*;
@@ -64,7 +65,7 @@ public class SSTableWriter extends SSTable
              SSTableMetadata.createCollector(Schema.instance.getCFMetaData(Descriptor.fromFilename(filename)).comparator));
     }
 
-    private static Set<Component> components(CFMetaData metadata)
+    private static Set<Component> components(CFMetaData metadata, IPartitioner<?> partitioner)
     {
         Set<Component> components = new HashSet<Component>(Arrays.asList(Component.DATA,
                                                                          Component.PRIMARY_INDEX,
@@ -75,6 +76,9 @@ public class SSTableWriter extends SSTable
         if (metadata.getBloomFilterFpChance() < 1.0)
             components.add(Component.FILTER);
 
+        if (PartitionIndex.isSupported(partitioner))
+            components.add(Component.PARTITION_INDEX);
+
         if (metadata.compressionParameters().sstableCompressor != null)
         {
             components.add(Component.COMPRESSION_INFO);
@@ -96,7 +100,7 @@ public class SSTableWriter extends SSTable
                          SSTableMetadata.Collector sstableMetadataCollector)
     {
         super(Descriptor.fromFilename(filename),
-              components(metadata),
+              components(metadata, partitioner),
               metadata,
               partitioner);
         iwriter = new IndexWriter(keyCount);
@@ -315,6 +319,7 @@ public class SSTableWriter extends SSTable
         // finalize in-memory state for the reader
         SegmentedFile ifile = iwriter.builder.complete(newdesc.filenameFor(Component.PRIMARY_INDEX));
         SegmentedFile dfile = dbuilder.complete(newdesc.filenameFor(Component.DATA));
+        PartitionIndex partitionIndex = openPartitionIndex(newdesc);
         SSTableReader sstable = SSTableReader.internalOpen(newdesc,
                                                            components,
                                                            metadata,
@@ -323,6 +328,7 @@ public class SSTableWriter extends SSTable
                                                            dfile,
                                                            iwriter.summary.build(partitioner),
                                                            iwriter.bf,
+                                                           partitionIndex,
                                                            maxDataAge,
                                                            sstableMetadata);
         sstable.first = getMinimalKey(first);
@@ -334,6 +340,22 @@ public class SSTableWriter extends SSTable
         return sstable;
     }
 
+    private PartitionIndex openPartitionIndex(Descriptor desc)
+    {
+        if (!components.contains(Component.PARTITION_INDEX))
+            return null;
+
+        String path = desc.filenameFor(Component.PARTITION_INDEX);
+        try
+        {
+            return PartitionIndex.open(path);
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, path);
+        }
+    }
+
     // Close the writer and return the descriptor to the new sstable and it's metadata
     public Pair<Descriptor, SSTableMetadata> close()
     {
@@ -407,6 +429,8 @@ public class SSTableWriter extends SSTable
         public final SegmentedFile.Builder builder;
         public final IndexSummaryBuilder summary;
         public final IFilter bf;
+        private final SequentialWriter partitionIndexFile;
+        private final PartitionIndexBuilder partitionIndex;
         private FileMark mark;
 
         IndexWriter(long keyCount)
@@ -416,6 +440,17 @@ public class SSTableWriter extends SSTable
             builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
             summary = new IndexSummaryBuilder(keyCount, metadata.getIndexInterval(), Downsampling.BASE_SAMPLING_LEVEL);
             bf = FilterFactory.getFilter(keyCount, metadata.getBloomFilterFpChance(), true);
+            if (components.contains(Component.PARTITION_INDEX))
+            {
+                partitionIndexFile = SequentialWriter.open(new File(descriptor.filenameFor(Component.PARTITION_INDEX)),
+                                                           !metadata.populateIoCacheOnFlush());
+                partitionIndex = new PartitionIndexBuilder(partitionIndexFile);
+            }
+            else
+            {
+                partitionIndexFile = null;
+                partitionIndex = null;
+            }
         }
 
         public void append(DecoratedKey key, RowIndexEntry indexEntry)
@@ -437,6 +472,18 @@ public class SSTableWriter extends SSTable
 
             summary.maybeAddEntry(key, indexPosition);
             builder.addPotentialBoundary(indexPosition);
+
+            if (partitionIndex != null)
+            {
+                try
+                {
+                    partitionIndex.add(PartitionIndex.byteComparable(key), indexPosition);
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, partitionIndexFile.getPath());
+                }
+            }
         }
 
         /**
@@ -463,6 +510,19 @@ public class SSTableWriter extends SSTable
                 }
             }
 
+            if (partitionIndex != null)
+            {
+                try
+                {
+                    partitionIndex.complete();
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, partitionIndexFile.getPath());
+                }
+                partitionIndexFile.close();
+            }
+
             // index
             long position = indexFile.getFilePointer();
             indexFile.close(); // calls force
@@ -472,6 +532,17 @@ public class SSTableWriter extends SSTable
         public void mark()
         {
             mark = indexFile.mark();
+            if (partitionIndex != null)
+            {
+                try
+                {
+                    partitionIndex.mark();
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, partitionIndexFile.getPath());
+                }
+            }
         }
 
         public void resetAndTruncate()
@@ -480,6 +551,8 @@ public class SSTableWriter extends SSTable
             // we can't reset dbuilder either, but that is the last thing called in afterappend so
             // we assume that if that worked then we won't be trying to reset.
             indexFile.resetAndTruncate(mark);
+            if (partitionIndex != null)
+                partitionIndex.resetAndTruncate();
         }
 
         @Override
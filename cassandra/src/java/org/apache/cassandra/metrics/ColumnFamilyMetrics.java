@@ -36,6 +36,8 @@ public class ColumnFamilyMetrics
 {
     /** Total amount of data stored in the memtable, including column related overhead. */
     public final Gauge<Long> memtableDataSize;
+    /** Total amount of memtable data stored outside the java heap, when an off-heap memtable allocator is used. */
+    public final Gauge<Long> memtableOffHeapDataSize;
     /** Total amount of data stored in the memtables (2i and pending flush memtables included). */
     public final Gauge<Long> allMemtablesDataSize;
     /** Total number of columns present in the memtable. */
@@ -121,6 +123,13 @@ public class ColumnFamilyMetrics
                 return cfs.getDataTracker().getMemtable().getLiveSize();
             }
         });
+        memtableOffHeapDataSize = Metrics.newGauge(factory.createMetricName("MemtableOffHeapDataSize"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return cfs.getDataTracker().getMemtable().getOffHeapSize();
+            }
+        });
         allMemtablesDataSize = Metrics.newGauge(factory.createMetricName("AllMemtablesDataSize"), new Gauge<Long>()
         {
             public Long value()
@@ -345,6 +354,7 @@ public class ColumnFamilyMetrics
         writeLatency.release();
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("MemtableColumnsCount"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("MemtableDataSize"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("MemtableOffHeapDataSize"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("MemtableSwitchCount"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("CompressionRatio"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("EstimatedRowSizeHistogram"));
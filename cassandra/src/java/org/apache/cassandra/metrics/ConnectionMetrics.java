@@ -22,7 +22,9 @@ import java.util.concurrent.TimeUnit;
 
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
 import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.Timer;
 
 import org.apache.cassandra.net.OutboundTcpConnectionPool;
 
@@ -48,6 +50,14 @@ public class ConnectionMetrics
     public final Gauge<Integer> responsePendingTasks;
     /** Completed tasks for Response(GOSSIP & RESPONSE) TCP Connections */
     public final Gauge<Long> responseCompletedTasks;
+    /** Number of messages written and flushed together by Command(Mutations, Read etc) TCP Connections */
+    public final Histogram commandBatchSize;
+    /** Time messages spent queued before being written by Command(Mutations, Read etc) TCP Connections */
+    public final Timer commandQueueLatency;
+    /** Number of messages written and flushed together by Response(GOSSIP & RESPONSE) TCP Connections */
+    public final Histogram responseBatchSize;
+    /** Time messages spent queued before being written by Response(GOSSIP & RESPONSE) TCP Connections */
+    public final Timer responseQueueLatency;
     /** Number of timeouts for specific IP */
     public final Meter timeouts;
 
@@ -103,6 +113,10 @@ public class ConnectionMetrics
                 return connectionPool.ackCon.getCompletedMesssages();
             }
         });
+        commandBatchSize = Metrics.newHistogram(factory.createMetricName("CommandBatchSize"), true);
+        commandQueueLatency = Metrics.newTimer(factory.createMetricName("CommandQueueLatency"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+        responseBatchSize = Metrics.newHistogram(factory.createMetricName("ResponseBatchSize"), true);
+        responseQueueLatency = Metrics.newTimer(factory.createMetricName("ResponseQueueLatency"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
         timeouts = Metrics.newMeter(factory.createMetricName("Timeouts"), "timeouts", TimeUnit.SECONDS);
     }
 
@@ -113,6 +127,10 @@ public class ConnectionMetrics
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("CommandDroppedTasks"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("ResponsePendingTasks"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("ResponseCompletedTasks"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("CommandBatchSize"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("CommandQueueLatency"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("ResponseBatchSize"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("ResponseQueueLatency"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("Timeouts"));
     }
 
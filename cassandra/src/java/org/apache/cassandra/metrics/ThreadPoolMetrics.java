@@ -22,8 +22,10 @@ import java.util.concurrent.ThreadPoolExecutor;
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.*;
 
+import org.apache.cassandra.concurrent.SharedPoolExecutor;
+
 /**
- * Metrics for {@link ThreadPoolExecutor}.
+ * Metrics for {@link ThreadPoolExecutor} and {@link SharedPoolExecutor}.
  */
 public class ThreadPoolMetrics
 {
@@ -79,6 +81,42 @@ public class ThreadPoolMetrics
         });
     }
 
+    /**
+     * Create metrics for given SharedPoolExecutor.
+     *
+     * @param executor Executor of a stage on the shared pool
+     * @param path Type of thread pool
+     * @param poolName Name of thread pool to identify metrics
+     */
+    public ThreadPoolMetrics(final SharedPoolExecutor executor, String path, String poolName)
+    {
+        this.factory = new ThreadPoolMetricNameFactory(path, poolName);
+
+        activeTasks = Metrics.newGauge(factory.createMetricName("ActiveTasks"), new Gauge<Integer>()
+        {
+            public Integer value()
+            {
+                return executor.getActiveCount();
+            }
+        });
+        totalBlocked = Metrics.newCounter(factory.createMetricName("TotalBlockedTasks"));
+        currentBlocked = Metrics.newCounter(factory.createMetricName("CurrentlyBlockedTasks"));
+        completedTasks = Metrics.newGauge(factory.createMetricName("CompletedTasks"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return executor.getCompletedTasks();
+            }
+        });
+        pendingTasks = Metrics.newGauge(factory.createMetricName("PendingTasks"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return executor.getPendingTasks();
+            }
+        });
+    }
+
     public void release()
     {
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("ActiveTasks"));
@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.metrics;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+
+/**
+ * Metrics for tracing
+ */
+public class TracingMetrics
+{
+    public static final MetricNameFactory factory = new DefaultNameFactory("Tracing");
+
+    /** Trace events dropped because the buffer of their session was full */
+    public final Counter droppedEvents = Metrics.newCounter(factory.createMetricName("DroppedEvents"));
+    /** Trace events written to system_traces.events */
+    public final Counter flushedEvents = Metrics.newCounter(factory.createMetricName("FlushedEvents"));
+}
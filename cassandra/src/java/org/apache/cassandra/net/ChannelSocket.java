@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+
+/**
+ * A Socket whose streams read from and write to a Netty channel, so that streaming connections accepted
+ * by NettyInternodeTransport can be handled by the blocking streaming code.  As with SSL sockets,
+ * getChannel() returns null, so streaming goes through the streams.
+ *
+ * Reading from the channel is suspended while more than HIGH_WATER_MARK bytes are waiting to be consumed,
+ * and writes block while the channel is not writable.
+ */
+class ChannelSocket extends Socket
+{
+    private static final int HIGH_WATER_MARK = 4 << 20;
+    private static final int LOW_WATER_MARK = 1 << 20;
+
+    private final Channel channel;
+    private final Deque<ChannelBuffer> buffers = new ArrayDeque<>();
+    private int buffered;
+    private boolean eof;
+    private volatile int timeout;
+
+    private final InputStream in = new InputStream()
+    {
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            return ChannelSocket.this.read(b, off, len);
+        }
+
+        @Override
+        public int available()
+        {
+            synchronized (ChannelSocket.this)
+            {
+                return buffered;
+            }
+        }
+    };
+
+    private final OutputStream out = new OutputStream()
+    {
+        public void write(int b) throws IOException
+        {
+            write(new byte[]{ (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            ChannelSocket.this.write(b, off, len);
+        }
+    };
+
+    ChannelSocket(Channel channel)
+    {
+        this.channel = channel;
+    }
+
+    /**
+     * Called by the event loop with the bytes received from the channel.
+     */
+    synchronized void received(ChannelBuffer buffer)
+    {
+        if (!buffer.readable())
+            return;
+
+        buffers.add(buffer);
+        buffered += buffer.readableBytes();
+        if (buffered > HIGH_WATER_MARK)
+            channel.setReadable(false);
+        notifyAll();
+    }
+
+    /**
+     * Called by the event loop when the channel is closed.
+     */
+    synchronized void closed()
+    {
+        eof = true;
+        notifyAll();
+    }
+
+    private synchronized int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+
+        long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        while (buffers.isEmpty())
+        {
+            if (eof)
+                return -1;
+
+            try
+            {
+                if (deadline == 0)
+                {
+                    wait();
+                }
+                else
+                {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0)
+                        throw new SocketTimeoutException("Read timed out");
+                    wait(remaining);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+
+        ChannelBuffer buffer = buffers.peek();
+        int n = Math.min(len, buffer.readableBytes());
+        buffer.readBytes(b, off, n);
+        if (!buffer.readable())
+            buffers.poll();
+        buffered -= n;
+        if (buffered < LOW_WATER_MARK && !channel.isReadable())
+            channel.setReadable(true);
+        return n;
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException
+    {
+        if (!channel.isConnected())
+            throw new IOException("Connection to " + getRemoteSocketAddress() + " is closed");
+
+        ChannelFuture future = channel.write(ChannelBuffers.copiedBuffer(b, off, len));
+        if (!channel.isWritable())
+            future.awaitUninterruptibly();
+        if (future.isDone() && !future.isSuccess())
+            throw new IOException("Error writing to " + getRemoteSocketAddress(), future.getCause());
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream()
+    {
+        return out;
+    }
+
+    @Override
+    public void setSoTimeout(int timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public int getSoTimeout()
+    {
+        return timeout;
+    }
+
+    @Override
+    public InetAddress getInetAddress()
+    {
+        return ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+    }
+
+    @Override
+    public int getPort()
+    {
+        return ((InetSocketAddress) channel.getRemoteAddress()).getPort();
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress()
+    {
+        return channel.getRemoteAddress();
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress()
+    {
+        return channel.getLocalAddress();
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        return channel.isConnected();
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return !channel.isOpen();
+    }
+
+    @Override
+    public void close()
+    {
+        channel.close();
+        closed();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ChannelSocket(" + channel + ")";
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+/**
+ * A connection carrying messages of one kind (commands or responses) to a single peer.
+ * Messages are queued by enqueue() and written asynchronously, in order.
+ */
+public interface IOutboundConnection
+{
+    public void start();
+
+    public void enqueue(MessageOut<?> message, int id);
+
+    /**
+     * Drops the queued messages and closes the current socket.
+     *
+     * @param destroy if true the connection is not reopened; otherwise it is when the next message is queued
+     */
+    public void closeSocket(boolean destroy);
+
+    /**
+     * Closes the current socket once the messages queued so far have been written, so that the following
+     * ones go through a new connection (e.g. to upgrade the messaging version).
+     */
+    public void softCloseSocket();
+
+    public int getTargetVersion();
+
+    public int getPendingMessages();
+
+    public long getCompletedMesssages();
+
+    public long getDroppedMessages();
+}
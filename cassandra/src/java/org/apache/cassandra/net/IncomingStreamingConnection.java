@@ -52,7 +52,7 @@ public class IncomingStreamingConnection extends Thread
         try
         {
             // streaming connections are per-session and have a fixed version.  we can't do anything with a wrong-version stream connection, so drop it.
-            if (version != StreamMessage.CURRENT_VERSION)
+            if (version < StreamMessage.VERSION_20 || version > StreamMessage.CURRENT_VERSION)
                 throw new IOException(String.format("Received stream using protocol version %d (my version %d). Terminating connection", version, MessagingService.current_version));
 
             DataInput input = new DataInputStream(socket.getInputStream());
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.IOException;
+import java.util.zip.Checksum;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import net.jpountz.xxhash.XXHashFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Reads and writes, on Netty buffers, the block format of LZ4BlockOutputStream and LZ4BlockInputStream
+ * that compressed internode connections use since 2.1.  Each block is
+ * [magic][token][compressed length][decompressed length][checksum][data], the lengths and the xxhash
+ * checksum of the decompressed data being little-endian ints.
+ *
+ * An instance is not thread-safe: each connection uses its own.
+ */
+class LZ4BlockCodec
+{
+    private static final byte[] MAGIC = new byte[] { 'L', 'Z', '4', 'B', 'l', 'o', 'c', 'k' };
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + 4 + 4;
+
+    private static final int COMPRESSION_LEVEL_BASE = 10;
+    private static final int COMPRESSION_METHOD_RAW = 0x10;
+    private static final int COMPRESSION_METHOD_LZ4 = 0x20;
+
+    private static final int BLOCK_SIZE = OutboundTcpConnection.LZ4_BLOCK_SIZE;
+    private static final int COMPRESSION_LEVEL = 32 - Integer.numberOfLeadingZeros(BLOCK_SIZE - 1) - COMPRESSION_LEVEL_BASE;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+    private final Checksum checksum = XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum();
+
+    private byte[] buffer = new byte[0];
+
+    /**
+     * Compresses the readable bytes of in into out, in blocks of at most 16k.
+     */
+    public void encode(ChannelBuffer in, ChannelBuffer out)
+    {
+        while (in.readable())
+        {
+            int length = Math.min(in.readableBytes(), BLOCK_SIZE);
+            byte[] src;
+            int offset;
+            if (in.hasArray())
+            {
+                src = in.array();
+                offset = in.arrayOffset() + in.readerIndex();
+            }
+            else
+            {
+                src = new byte[length];
+                in.getBytes(in.readerIndex(), src);
+                offset = 0;
+            }
+
+            checksum.reset();
+            checksum.update(src, offset, length);
+            int check = (int) checksum.getValue();
+
+            byte[] compressed = buffer(compressor.maxCompressedLength(length));
+            int compressedLength = compressor.compress(src, offset, length, compressed, 0);
+            int method = COMPRESSION_METHOD_LZ4;
+            if (compressedLength >= length)
+            {
+                method = COMPRESSION_METHOD_RAW;
+                compressed = src;
+                compressedLength = length;
+            }
+            else
+            {
+                offset = 0;
+            }
+
+            out.writeBytes(MAGIC);
+            out.writeByte(method | COMPRESSION_LEVEL);
+            out.writeInt(ChannelBuffers.swapInt(compressedLength));
+            out.writeInt(ChannelBuffers.swapInt(length));
+            out.writeInt(ChannelBuffers.swapInt(check));
+            out.writeBytes(compressed, offset, compressedLength);
+            in.skipBytes(length);
+        }
+    }
+
+    /**
+     * Decompresses every complete block of in into out, leaving an incomplete one in place.
+     */
+    public void decode(ChannelBuffer in, ChannelBuffer out) throws IOException
+    {
+        while (in.readableBytes() >= HEADER_LENGTH)
+        {
+            int start = in.readerIndex();
+            for (int i = 0; i < MAGIC.length; i++)
+            {
+                if (in.getByte(start + i) != MAGIC[i])
+                    throw new IOException("Stream is corrupted");
+            }
+
+            int token = in.getUnsignedByte(start + MAGIC.length);
+            int method = token & 0xF0;
+            int maxLength = 1 << (COMPRESSION_LEVEL_BASE + (token & 0x0F));
+            int compressedLength = ChannelBuffers.swapInt(in.getInt(start + MAGIC.length + 1));
+            int length = ChannelBuffers.swapInt(in.getInt(start + MAGIC.length + 5));
+            int check = ChannelBuffers.swapInt(in.getInt(start + MAGIC.length + 9));
+            if (length < 0 || length > maxLength || compressedLength < 0
+                || (length == 0) != (compressedLength == 0)
+                || (method == COMPRESSION_METHOD_RAW && length != compressedLength)
+                || (method != COMPRESSION_METHOD_RAW && method != COMPRESSION_METHOD_LZ4))
+                throw new IOException("Stream is corrupted");
+
+            if (in.readableBytes() < HEADER_LENGTH + compressedLength)
+                return;
+            in.skipBytes(HEADER_LENGTH);
+
+            // an empty block marks the end of the stream, which is only written when the connection is closing
+            if (length == 0)
+                continue;
+
+            byte[] compressed = new byte[compressedLength];
+            in.readBytes(compressed);
+            byte[] decompressed;
+            if (method == COMPRESSION_METHOD_RAW)
+            {
+                decompressed = compressed;
+            }
+            else
+            {
+                decompressed = new byte[length];
+                try
+                {
+                    if (decompressor.decompress(compressed, 0, decompressed, 0, length) != compressedLength)
+                        throw new IOException("Stream is corrupted");
+                }
+                catch (LZ4Exception e)
+                {
+                    throw new IOException("Stream is corrupted", e);
+                }
+            }
+
+            checksum.reset();
+            checksum.update(decompressed, 0, length);
+            if ((int) checksum.getValue() != check)
+                throw new IOException("Stream is corrupted");
+            out.writeBytes(decompressed);
+        }
+    }
+
+    private byte[] buffer(int size)
+    {
+        if (buffer.length < size)
+            buffer = new byte[size];
+        return buffer;
+    }
+}
@@ -41,9 +41,11 @@ import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.concurrent.TracingAwareExecutorService;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.EncryptionOptions.ServerEncryptionOptions;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.hints.HintMessage;
 import org.apache.cassandra.dht.BootStrapper;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.gms.EchoMessage;
@@ -56,6 +58,7 @@ import org.apache.cassandra.locator.ILatencySubscriber;
 import org.apache.cassandra.metrics.ConnectionMetrics;
 import org.apache.cassandra.metrics.DroppedMessageMetrics;
 import org.apache.cassandra.sink.SinkManager;
+import org.apache.cassandra.repair.AnticompactionRequest;
 import org.apache.cassandra.repair.messages.RepairMessage;
 import org.apache.cassandra.security.SSLFactory;
 import org.apache.cassandra.service.*;
@@ -122,9 +125,9 @@ public final class MessagingService implements MessagingServiceMBean
         PAXOS_COMMIT,
         PAGED_RANGE,
         // remember to add new verbs at the end, since we serialize by ordinal
-        UNUSED_1,
-        UNUSED_2,
-        UNUSED_3,
+        MUTATION_BATCH,
+        ANTICOMPACTION,
+        HINT,
         ;
     }
 
@@ -134,6 +137,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.READ_REPAIR, Stage.MUTATION);
         put(Verb.TRUNCATE, Stage.MUTATION);
         put(Verb.COUNTER_MUTATION, Stage.MUTATION);
+        put(Verb.MUTATION_BATCH, Stage.MUTATION);
         put(Verb.PAXOS_PREPARE, Stage.MUTATION);
         put(Verb.PAXOS_PROPOSE, Stage.MUTATION);
         put(Verb.PAXOS_COMMIT, Stage.MUTATION);
@@ -156,6 +160,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.STREAMING_REPAIR_REQUEST, Stage.ANTI_ENTROPY);
         put(Verb.STREAMING_REPAIR_RESPONSE, Stage.ANTI_ENTROPY);
         put(Verb.REPAIR_MESSAGE, Stage.ANTI_ENTROPY);
+        put(Verb.ANTICOMPACTION, Stage.ANTI_ENTROPY);
         put(Verb.GOSSIP_DIGEST_ACK, Stage.GOSSIP);
         put(Verb.GOSSIP_DIGEST_ACK2, Stage.GOSSIP);
         put(Verb.GOSSIP_DIGEST_SYN, Stage.GOSSIP);
@@ -171,9 +176,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.SNAPSHOT, Stage.MISC);
         put(Verb.ECHO, Stage.GOSSIP);
 
-        put(Verb.UNUSED_1, Stage.INTERNAL_RESPONSE);
-        put(Verb.UNUSED_2, Stage.INTERNAL_RESPONSE);
-        put(Verb.UNUSED_3, Stage.INTERNAL_RESPONSE);
+        put(Verb.HINT, Stage.MUTATION);
     }};
 
     /**
@@ -192,11 +195,14 @@ public final class MessagingService implements MessagingServiceMBean
 
         put(Verb.MUTATION, RowMutation.serializer);
         put(Verb.READ_REPAIR, RowMutation.serializer);
+        put(Verb.MUTATION_BATCH, MutationBatch.serializer);
         put(Verb.READ, ReadCommand.serializer);
         put(Verb.RANGE_SLICE, RangeSliceCommand.serializer);
         put(Verb.PAGED_RANGE, PagedRangeCommand.serializer);
         put(Verb.BOOTSTRAP_TOKEN, BootStrapper.StringSerializer.instance);
         put(Verb.REPAIR_MESSAGE, RepairMessage.serializer);
+        put(Verb.ANTICOMPACTION, AnticompactionRequest.serializer);
+        put(Verb.HINT, HintMessage.serializer);
         put(Verb.GOSSIP_DIGEST_ACK, GossipDigestAck.serializer);
         put(Verb.GOSSIP_DIGEST_ACK2, GossipDigestAck2.serializer);
         put(Verb.GOSSIP_DIGEST_SYN, GossipDigestSyn.serializer);
@@ -219,6 +225,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.MUTATION, WriteResponse.serializer);
         put(Verb.READ_REPAIR, WriteResponse.serializer);
         put(Verb.COUNTER_MUTATION, WriteResponse.serializer);
+        put(Verb.MUTATION_BATCH, WriteResponse.serializer);
         put(Verb.RANGE_SLICE, RangeSliceReply.serializer);
         put(Verb.PAGED_RANGE, RangeSliceReply.serializer);
         put(Verb.READ, ReadResponse.serializer);
@@ -280,6 +287,7 @@ public final class MessagingService implements MessagingServiceMBean
     public static final EnumSet<Verb> DROPPABLE_VERBS = EnumSet.of(Verb.BINARY,
                                                                    Verb._TRACE,
                                                                    Verb.MUTATION,
+                                                                   Verb.MUTATION_BATCH,
                                                                    Verb.READ_REPAIR,
                                                                    Verb.READ,
                                                                    Verb.RANGE_SLICE,
@@ -335,8 +343,14 @@ public final class MessagingService implements MessagingServiceMBean
 
                 if (expiredCallbackInfo.shouldHint())
                 {
-                    RowMutation rm = (RowMutation) ((WriteCallbackInfo) expiredCallbackInfo).sentMessage.payload;
-                    return StorageProxy.submitHint(rm, expiredCallbackInfo.target, null);
+                    Object payload = ((WriteCallbackInfo) expiredCallbackInfo).sentMessage.payload;
+                    if (payload instanceof MutationBatch)
+                    {
+                        for (RowMutation rm : ((MutationBatch) payload).mutations)
+                            StorageProxy.submitHint(rm, expiredCallbackInfo.target, null);
+                        return null;
+                    }
+                    return StorageProxy.submitHint((RowMutation) payload, expiredCallbackInfo.target, null);
                 }
 
                 return null;
@@ -392,11 +406,18 @@ public final class MessagingService implements MessagingServiceMBean
     public void listen(InetAddress localEp) throws ConfigurationException
     {
         callbacks.reset(); // hack to allow tests to stop/restart MS
-        for (ServerSocket ss : getServerSocket(localEp))
+        if (DatabaseDescriptor.getInternodeTransport() == Config.InternodeTransport.netty)
         {
-            SocketThread th = new SocketThread(ss, "ACCEPT-" + localEp);
-            th.start();
-            socketThreads.add(th);
+            NettyInternodeTransport.instance.listen(localEp);
+        }
+        else
+        {
+            for (ServerSocket ss : getServerSocket(localEp))
+            {
+                SocketThread th = new SocketThread(ss, "ACCEPT-" + localEp);
+                th.start();
+                socketThreads.add(th);
+            }
         }
         listenGate.signalAll();
     }
@@ -501,7 +522,7 @@ public final class MessagingService implements MessagingServiceMBean
     }
     
 
-    public OutboundTcpConnection getConnection(InetAddress to, MessageOut msg)
+    public IOutboundConnection getConnection(InetAddress to, MessageOut msg)
     {
         return getConnectionPool(to).getConnection(msg);
     }
@@ -533,16 +554,16 @@ public final class MessagingService implements MessagingServiceMBean
 
     public int addCallback(IAsyncCallback cb, MessageOut message, InetAddress to, long timeout)
     {
-        assert message.verb != Verb.MUTATION; // mutations need to call the overload with a ConsistencyLevel
+        assert message.verb != Verb.MUTATION && message.verb != Verb.MUTATION_BATCH; // mutations need to call the overload with a ConsistencyLevel
         int messageId = nextId();
         CallbackInfo previous = callbacks.put(messageId, new CallbackInfo(to, cb, callbackDeserializers.get(message.verb)), timeout);
         assert previous == null;
         return messageId;
     }
 
-    public int addCallback(IAsyncCallback cb, MessageOut<? extends IMutation> message, InetAddress to, long timeout, ConsistencyLevel consistencyLevel)
+    public int addCallback(IAsyncCallback cb, MessageOut<?> message, InetAddress to, long timeout, ConsistencyLevel consistencyLevel)
     {
-        assert message.verb == Verb.MUTATION || message.verb == Verb.COUNTER_MUTATION;
+        assert message.verb == Verb.MUTATION || message.verb == Verb.COUNTER_MUTATION || message.verb == Verb.MUTATION_BATCH;
         int messageId = nextId();
         CallbackInfo previous = callbacks.put(messageId, new WriteCallbackInfo(to, cb, message, callbackDeserializers.get(message.verb), consistencyLevel), timeout);
         assert previous == null;
@@ -635,7 +656,7 @@ public final class MessagingService implements MessagingServiceMBean
         }
 
         // get pooled connection (really, connection queue)
-        OutboundTcpConnection connection = getConnection(to, processedMessage);
+        IOutboundConnection connection = getConnection(to, processedMessage);
 
         // write it
         connection.enqueue(processedMessage, id);
@@ -675,6 +696,8 @@ public final class MessagingService implements MessagingServiceMBean
         {
             for (SocketThread th : socketThreads)
                 th.close();
+            if (DatabaseDescriptor.getInternodeTransport() == Config.InternodeTransport.netty)
+                NettyInternodeTransport.instance.close();
         }
         catch (IOException e)
         {
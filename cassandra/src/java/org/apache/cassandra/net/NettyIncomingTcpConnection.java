@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.UnknownColumnFamilyException;
+import org.apache.cassandra.gms.Gossiper;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+/**
+ * Reads an inbound internode connection on the event loops of NettyInternodeTransport, with the same
+ * handshake as IncomingTcpConnection.  Since messages are not length-prefixed, a message is only
+ * deserialized once its headers, which end with the payload size, say it has been entirely received.
+ *
+ * Streaming connections, which need a blocking socket, are handed over to an IncomingStreamingConnection
+ * through a ChannelSocket.
+ */
+class NettyIncomingTcpConnection extends SimpleChannelUpstreamHandler
+{
+    private static final Logger logger = LoggerFactory.getLogger(NettyIncomingTcpConnection.class);
+
+    // compact the receive buffers once that many bytes have been consumed
+    private static final int DISCARD_THRESHOLD = 64 * 1024;
+
+    private enum State
+    {
+        HEADER, HANDSHAKE, MESSAGES, STREAMING
+    }
+
+    private State state = State.HEADER;
+    private final ChannelBuffer received = ChannelBuffers.dynamicBuffer();
+    private int version;
+    private boolean compressed;
+    private LZ4BlockCodec codec;
+    private ChannelBuffer decompressed;
+    private InetAddress from;
+    private ChannelSocket streamSocket;
+
+    @Override
+    public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception
+    {
+        InetSocketAddress remote = (InetSocketAddress) ctx.getChannel().getRemoteAddress();
+        if (!DatabaseDescriptor.getInternodeAuthenticator().authenticate(remote.getAddress(), remote.getPort()))
+        {
+            ctx.getChannel().close();
+            return;
+        }
+        super.channelConnected(ctx, e);
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception
+    {
+        ChannelBuffer in = (ChannelBuffer) e.getMessage();
+        if (state == State.STREAMING)
+        {
+            streamSocket.received(in);
+            return;
+        }
+
+        received.writeBytes(in);
+        try
+        {
+            decode(ctx.getChannel());
+        }
+        catch (UnknownColumnFamilyException ex)
+        {
+            logger.warn("UnknownColumnFamilyException reading from socket; closing", ex);
+            ctx.getChannel().close();
+        }
+        catch (IOException ex)
+        {
+            logger.debug("IOException reading from socket; closing", ex);
+            ctx.getChannel().close();
+        }
+    }
+
+    private void decode(Channel channel) throws IOException
+    {
+        if (state == State.HEADER)
+        {
+            if (received.readableBytes() < 8)
+                return;
+
+            MessagingService.validateMagic(received.readInt());
+            int header = received.readInt();
+            boolean isStream = MessagingService.getBits(header, 3, 1) == 1;
+            version = MessagingService.getBits(header, 15, 8);
+            logger.debug("Connection version {} from {}", version, channel.getRemoteAddress());
+
+            if (isStream)
+            {
+                state = State.STREAMING;
+                streamSocket = new ChannelSocket(channel);
+                if (received.readable())
+                    streamSocket.received(received.readBytes(received.readableBytes()));
+                new IncomingStreamingConnection(version, streamSocket).start();
+                return;
+            }
+
+            if (version < MessagingService.VERSION_20)
+                throw new IOException(String.format("Unable to read obsolete message version %s; "
+                                                    + "The earliest version supported is 2.0.0",
+                                                    version));
+
+            compressed = MessagingService.getBits(header, 2, 1) == 1;
+            if (compressed && version < MessagingService.VERSION_21)
+                throw new IOException(String.format("Unable to read snappy-compressed messages (version %s) with the netty internode transport", version));
+
+            ChannelBuffer reply = ChannelBuffers.buffer(4);
+            reply.writeInt(MessagingService.current_version);
+            channel.write(reply);
+            state = State.HANDSHAKE;
+        }
+
+        if (state == State.HANDSHAKE)
+        {
+            // max version, then the compact endpoint: its size and address
+            int start = received.readerIndex();
+            if (received.readableBytes() < 5 || received.readableBytes() < 5 + received.getUnsignedByte(start + 4))
+                return;
+
+            int maxVersion = received.readInt();
+            from = CompactEndpointSerializationHelper.deserialize(new DataInputStream(new ChannelBufferInputStream(received)));
+
+            logger.debug("Max version for {} is {}", from, maxVersion);
+            if (version > MessagingService.current_version)
+            {
+                // save the endpoint so gossip will reconnect to it
+                Gossiper.instance.addSavedEndpoint(from);
+                logger.info("Received messages from newer protocol version {}. Ignoring", version);
+                channel.close();
+                return;
+            }
+            MessagingService.instance().setVersion(from, Math.min(MessagingService.current_version, maxVersion));
+            logger.debug("set version for {} to {}", from, Math.min(MessagingService.current_version, maxVersion));
+            // outbound side will reconnect if necessary to upgrade version
+
+            if (compressed)
+            {
+                logger.debug("Upgrading incoming connection to be compressed");
+                codec = new LZ4BlockCodec();
+                decompressed = ChannelBuffers.dynamicBuffer();
+            }
+            state = State.MESSAGES;
+        }
+
+        ChannelBuffer messages = received;
+        if (compressed)
+        {
+            codec.decode(received, decompressed);
+            discardReadBytes(received);
+            messages = decompressed;
+        }
+
+        int length;
+        while ((length = frameLength(messages)) >= 0 && messages.readableBytes() >= length)
+            receiveMessage(new DataInputStream(new ChannelBufferInputStream(messages.readSlice(length))));
+        discardReadBytes(messages);
+    }
+
+    /**
+     * @return the length of the message at the start of the buffer, or -1 if its headers are not all there yet
+     */
+    private static int frameLength(ChannelBuffer buffer)
+    {
+        int start = buffer.readerIndex();
+        int available = buffer.readableBytes();
+
+        // magic, id and timestamp, then the size of the compact endpoint
+        int position = 12;
+        if (available < position + 1)
+            return -1;
+        position += 1 + buffer.getUnsignedByte(start + position);
+
+        // verb, then the parameters
+        position += 4;
+        if (available < position + 4)
+            return -1;
+        int parameterCount = buffer.getInt(start + position);
+        position += 4;
+        for (int i = 0; i < parameterCount; i++)
+        {
+            if (available < position + 2)
+                return -1;
+            position += 2 + buffer.getUnsignedShort(start + position);
+            if (available < position + 4)
+                return -1;
+            position += 4 + buffer.getInt(start + position);
+        }
+
+        // and the payload
+        if (available < position + 4)
+            return -1;
+        return position + 4 + buffer.getInt(start + position);
+    }
+
+    private void receiveMessage(DataInputStream input) throws IOException
+    {
+        MessagingService.validateMagic(input.readInt());
+        int id = input.readInt();
+
+        long timestamp = System.currentTimeMillis();
+        // make sure to readInt, even if cross_node_to is not enabled
+        int partial = input.readInt();
+        if (DatabaseDescriptor.hasCrossNodeTimeout())
+            timestamp = (timestamp & 0xFFFFFFFF00000000L) | (((partial & 0xFFFFFFFFL) << 2) >> 2);
+
+        MessageIn message = MessageIn.read(input, version, id);
+        // a null message is a reply to an expired callback: nothing to do
+        if (message != null)
+            MessagingService.instance().receive(message, id, timestamp);
+    }
+
+    private static void discardReadBytes(ChannelBuffer buffer)
+    {
+        if (buffer.readerIndex() >= DISCARD_THRESHOLD)
+            buffer.discardReadBytes();
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception
+    {
+        if (streamSocket != null)
+            streamSocket.closed();
+        // reset version here, since we set when starting an incoming socket
+        if (from != null)
+            MessagingService.instance().resetVersion(from);
+        super.channelClosed(ctx, e);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e)
+    {
+        logger.debug("Error on internode connection from {}; closing", ctx.getChannel().getRemoteAddress(), e.getCause());
+        ctx.getChannel().close();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.EncryptionOptions;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.security.SSLFactory;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.ThreadNameDeterminer;
+import org.jboss.netty.util.Timer;
+
+/**
+ * The internode transport used when internode_transport is netty: instead of a thread per connection,
+ * a few event loops (internode_transport_event_loops) multiplex the connections to and from every peer.
+ * The wire format and version handshake are those of OutboundTcpConnection and IncomingTcpConnection,
+ * so nodes using either transport talk to each other.
+ */
+public class NettyInternodeTransport
+{
+    private static final Logger logger = LoggerFactory.getLogger(NettyInternodeTransport.class);
+
+    public static final NettyInternodeTransport instance = new NettyInternodeTransport();
+
+    private final NioWorkerPool eventLoops;
+    private final ClientSocketChannelFactory clientFactory;
+    private final NioServerSocketChannelFactory serverFactory;
+    private final Timer timer = new HashedWheelTimer(new NamedThreadFactory("InternodeTimer"));
+    private final ChannelGroup serverChannels = new DefaultChannelGroup("internode");
+
+    private NettyInternodeTransport()
+    {
+        int n = DatabaseDescriptor.getInternodeTransportEventLoops();
+        eventLoops = new NioWorkerPool(Executors.newCachedThreadPool(new NamedThreadFactory("InternodeEventLoop")), n, ThreadNameDeterminer.CURRENT);
+        clientFactory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(new NamedThreadFactory("InternodeConnector")), 1, eventLoops, timer);
+        serverFactory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(new NamedThreadFactory("InternodeAcceptor")), 1, eventLoops);
+        logger.info("Using {} event loops for internode messaging", n);
+    }
+
+    ClientSocketChannelFactory clientFactory()
+    {
+        return clientFactory;
+    }
+
+    Timer timer()
+    {
+        return timer;
+    }
+
+    /**
+     * Listens on the storage port and/or the SSL storage port of the given address, depending on
+     * internode_encryption, like MessagingService does with the blocking transport.
+     */
+    public void listen(InetAddress localEp) throws ConfigurationException
+    {
+        EncryptionOptions.ServerEncryptionOptions encryption = DatabaseDescriptor.getServerEncryptionOptions();
+        if (encryption.internode_encryption != EncryptionOptions.ServerEncryptionOptions.InternodeEncryption.none)
+        {
+            bind(new InetSocketAddress(localEp, DatabaseDescriptor.getSSLStoragePort()), newSSLContext(encryption));
+            logger.info("Starting Encrypted Messaging Service on SSL port {}", DatabaseDescriptor.getSSLStoragePort());
+        }
+        if (encryption.internode_encryption != EncryptionOptions.ServerEncryptionOptions.InternodeEncryption.all)
+        {
+            bind(new InetSocketAddress(localEp, DatabaseDescriptor.getStoragePort()), null);
+            logger.info("Starting Messaging Service on port {}", DatabaseDescriptor.getStoragePort());
+        }
+    }
+
+    private void bind(InetSocketAddress address, final SSLContext sslContext) throws ConfigurationException
+    {
+        ServerBootstrap bootstrap = new ServerBootstrap(serverFactory);
+        bootstrap.setOption("reuseAddress", true);
+        bootstrap.setOption("child.keepAlive", true);
+        bootstrap.setOption("child.tcpNoDelay", true);
+        if (DatabaseDescriptor.getInternodeRecvBufferSize() != null)
+            bootstrap.setOption("child.receiveBufferSize", DatabaseDescriptor.getInternodeRecvBufferSize());
+        bootstrap.setPipelineFactory(new ChannelPipelineFactory()
+        {
+            public ChannelPipeline getPipeline()
+            {
+                ChannelPipeline pipeline = Channels.pipeline();
+                if (sslContext != null)
+                    pipeline.addLast("ssl", newSslHandler(sslContext, false));
+                pipeline.addLast("connection", new NettyIncomingTcpConnection());
+                return pipeline;
+            }
+        });
+
+        try
+        {
+            serverChannels.add(bootstrap.bind(address));
+        }
+        catch (ChannelException e)
+        {
+            if (e.getCause() instanceof BindException)
+            {
+                if (e.getCause().getMessage().contains("in use"))
+                    throw new ConfigurationException(address + " is in use by another process.  Change listen_address:storage_port in cassandra.yaml to values that do not conflict with other services");
+                else if (e.getCause().getMessage().contains("Cannot assign requested address"))
+                    throw new ConfigurationException("Unable to bind to address " + address
+                                                     + ". Set listen_address in cassandra.yaml to an interface you can bind to, e.g., your private IP address on EC2");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops listening; established connections are left alone, as with the blocking transport.
+     */
+    public void close()
+    {
+        serverChannels.close().awaitUninterruptibly();
+        serverChannels.clear();
+    }
+
+    static SSLContext newSSLContext(EncryptionOptions options) throws ConfigurationException
+    {
+        try
+        {
+            return SSLFactory.createSSLContext(options, true);
+        }
+        catch (IOException e)
+        {
+            throw new ConfigurationException("Unable to create ssl context", e);
+        }
+    }
+
+    static SslHandler newSslHandler(SSLContext sslContext, boolean clientMode)
+    {
+        EncryptionOptions options = DatabaseDescriptor.getServerEncryptionOptions();
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(clientMode);
+        engine.setEnabledCipherSuites(SSLFactory.filterCipherSuites(engine.getSupportedCipherSuites(), options.cipher_suites));
+        if (!clientMode)
+            engine.setNeedClientAuth(options.require_client_auth);
+        SslHandler handler = new SslHandler(engine);
+        handler.setIssueHandshake(true);
+        return handler;
+    }
+}
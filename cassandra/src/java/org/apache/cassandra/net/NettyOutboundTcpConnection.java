@@ -0,0 +1,506 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.net.OutboundTcpConnection.QueuedMessage;
+import org.apache.cassandra.net.OutboundTcpConnection.RetriedQueuedMessage;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.MpscBlockingQueue;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+
+/**
+ * An outbound connection multiplexed on the event loops of NettyInternodeTransport, rather than owning a
+ * thread like OutboundTcpConnection.  The socket is opened when a message is queued, and the queued
+ * messages are serialized and written by the event loop of the channel, as many at a time as are queued,
+ * so that a burst of messages costs a single write.
+ */
+public class NettyOutboundTcpConnection implements IOutboundConnection
+{
+    private static final Logger logger = LoggerFactory.getLogger(NettyOutboundTcpConnection.class);
+
+    private static final MessageOut CLOSE_SENTINEL = new MessageOut(MessagingService.Verb.INTERNAL_RESPONSE);
+
+    private static final int OPEN_RETRY_DELAY = 100; // ms between retries
+    private static final int WAIT_FOR_VERSION_MAX_TIME = 5000;
+    // hand the serialized messages to the channel every so many bytes, when many are queued
+    private static final int MAX_WRITE_SIZE = 64 * 1024;
+
+    private final OutboundTcpConnectionPool poolReference;
+    private final MpscBlockingQueue<QueuedMessage> backlog = new MpscBlockingQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // true from the moment we start connecting until the handshake is done or we gave up
+    private final AtomicBoolean connecting = new AtomicBoolean();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // the channel messages are written to; only set once the handshake is done
+    private volatile Channel channel;
+    private volatile LZ4BlockCodec codec;
+    private volatile int targetVersion;
+    private volatile boolean isStopped = false;
+    private volatile long connectingSince = -1;
+    // bumped by closeSocket, so that a connection being set up meanwhile is closed rather than handed over
+    private volatile int closeRequests;
+
+    public NettyOutboundTcpConnection(OutboundTcpConnectionPool pool)
+    {
+        this.poolReference = pool;
+    }
+
+    public void start()
+    {
+        // nothing to do until the first message is queued
+    }
+
+    public void enqueue(MessageOut<?> message, int id)
+    {
+        if (backlog.size() > 1024)
+            OutboundTcpConnection.expireMessages(backlog, dropped);
+        backlog.put(new QueuedMessage(message, id));
+        schedule();
+    }
+
+    public void closeSocket(boolean destroy)
+    {
+        backlog.clear();
+        isStopped = destroy;
+        Channel current;
+        synchronized (this)
+        {
+            closeRequests++;
+            current = channel;
+            channel = null;
+        }
+        if (current != null)
+            current.close();
+    }
+
+    public void softCloseSocket()
+    {
+        enqueue(CLOSE_SENTINEL, -1);
+    }
+
+    public int getTargetVersion()
+    {
+        return targetVersion;
+    }
+
+    public int getPendingMessages()
+    {
+        return backlog.size();
+    }
+
+    public long getCompletedMesssages()
+    {
+        return completed.get();
+    }
+
+    public long getDroppedMessages()
+    {
+        return dropped.get();
+    }
+
+    @VisibleForTesting
+    boolean isConnecting()
+    {
+        return connecting.get();
+    }
+
+    @VisibleForTesting
+    boolean isConnected()
+    {
+        return channel != null;
+    }
+
+    /**
+     * Makes sure the queued messages will be written: by the event loop of the channel if we have one,
+     * once connected otherwise.
+     */
+    private void schedule()
+    {
+        final Channel current = channel;
+        if (current == null)
+        {
+            connect();
+            return;
+        }
+
+        if (drainScheduled.compareAndSet(false, true))
+        {
+            current.getPipeline().execute(new Runnable()
+            {
+                public void run()
+                {
+                    drain(current);
+                }
+            });
+        }
+    }
+
+    private void drain(Channel current)
+    {
+        drainScheduled.set(false);
+        if (channel != current)
+        {
+            // closed since; the messages will go through the next connection
+            if (!backlog.isEmpty())
+                schedule();
+            return;
+        }
+
+        InetAddress endpoint = poolReference.endPoint();
+        ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
+        DataOutputStream out = new DataOutputStream(new ChannelBufferOutputStream(buffer));
+        List<QueuedMessage> batch = new ArrayList<>();
+        QueuedMessage qm;
+        // stop once the channel has enough to write: we'll be scheduled again when it's writable
+        while (current.isWritable() && (qm = backlog.poll()) != null)
+        {
+            if (qm.message == CLOSE_SENTINEL)
+            {
+                ChannelFuture last = write(current, buffer, batch);
+                channel = null;
+                if (last == null)
+                    current.close();
+                else
+                    last.addListener(ChannelFutureListener.CLOSE);
+                if (!backlog.isEmpty())
+                    connect();
+                return;
+            }
+
+            if (qm.isTimedOut(System.currentTimeMillis()))
+            {
+                dropped.incrementAndGet();
+                continue;
+            }
+
+            int start = buffer.writerIndex();
+            try
+            {
+                OutboundTcpConnection.traceSending(qm.message, endpoint);
+                OutboundTcpConnection.writeMessage(out, qm.message, qm.id, qm.timestamp, targetVersion);
+                batch.add(qm);
+            }
+            catch (Exception e)
+            {
+                // writing to a buffer won't throw IOException: this is likely a programming error, so let's not silence it
+                logger.error("error writing to {}", endpoint, e);
+                buffer.writerIndex(start);
+            }
+
+            if (buffer.readableBytes() >= MAX_WRITE_SIZE)
+            {
+                write(current, buffer, batch);
+                buffer = ChannelBuffers.dynamicBuffer();
+                out = new DataOutputStream(new ChannelBufferOutputStream(buffer));
+                batch = new ArrayList<>();
+            }
+        }
+        write(current, buffer, batch);
+    }
+
+    private ChannelFuture write(Channel current, ChannelBuffer buffer, final List<QueuedMessage> batch)
+    {
+        if (batch.isEmpty())
+            return null;
+
+        OutboundTcpConnection.updateMetrics(poolReference, this, batch);
+        LZ4BlockCodec compressor = codec;
+        if (compressor != null)
+        {
+            ChannelBuffer compressed = ChannelBuffers.dynamicBuffer(buffer.readableBytes());
+            compressor.encode(buffer, compressed);
+            buffer = compressed;
+        }
+
+        ChannelFuture future = current.write(buffer);
+        future.addListener(new ChannelFutureListener()
+        {
+            public void operationComplete(ChannelFuture future)
+            {
+                if (future.isSuccess())
+                {
+                    completed.addAndGet(batch.size());
+                    return;
+                }
+
+                if (logger.isDebugEnabled())
+                    logger.debug("error writing to {}", poolReference.endPoint(), future.getCause());
+                // if a message was important, such as a repair acknowledgement, put it back on the queue
+                // to retry after re-connecting.  See CASSANDRA-5393
+                for (QueuedMessage qm : batch)
+                {
+                    if (qm.shouldRetry())
+                        backlog.put(new RetriedQueuedMessage(qm));
+                }
+            }
+        });
+        return future;
+    }
+
+    private void connect()
+    {
+        if (isStopped || channel != null || !connecting.compareAndSet(false, true))
+            return;
+
+        if (connectingSince < 0)
+            connectingSince = System.nanoTime();
+
+        InetAddress endpoint = poolReference.endPoint();
+        if (logger.isDebugEnabled())
+            logger.debug("attempting to connect to {}", endpoint);
+
+        targetVersion = MessagingService.instance().getVersion(endpoint);
+        boolean compress = OutboundTcpConnection.shouldCompressConnection(endpoint) && targetVersion >= MessagingService.VERSION_21;
+
+        ChannelPipeline pipeline = Channels.pipeline();
+        boolean encrypted = OutboundTcpConnectionPool.isEncryptedChannel(endpoint);
+        if (encrypted)
+        {
+            try
+            {
+                pipeline.addLast("ssl", NettyInternodeTransport.newSslHandler(NettyInternodeTransport.newSSLContext(DatabaseDescriptor.getServerEncryptionOptions()), true));
+            }
+            catch (ConfigurationException e)
+            {
+                logger.error("Unable to connect to {}", endpoint, e);
+                connectionFailed();
+                return;
+            }
+        }
+        pipeline.addLast("handshake", new Handshake(targetVersion, compress, closeRequests));
+
+        ClientBootstrap bootstrap = new ClientBootstrap(NettyInternodeTransport.instance.clientFactory());
+        bootstrap.setPipeline(pipeline);
+        bootstrap.setOption("keepAlive", true);
+        bootstrap.setOption("tcpNoDelay", OutboundTcpConnection.shouldUseTcpNoDelay(endpoint));
+        bootstrap.setOption("connectTimeoutMillis", (int) DatabaseDescriptor.getRpcTimeout());
+        if (DatabaseDescriptor.getInternodeSendBufferSize() != null)
+            bootstrap.setOption("sendBufferSize", DatabaseDescriptor.getInternodeSendBufferSize());
+
+        InetSocketAddress remote = new InetSocketAddress(endpoint, encrypted ? DatabaseDescriptor.getSSLStoragePort() : DatabaseDescriptor.getStoragePort());
+        InetSocketAddress local = Config.getOutboundBindAny() ? null : new InetSocketAddress(FBUtilities.getLocalAddress(), 0);
+        // a failed attempt closes the channel, which Handshake takes care of
+        bootstrap.connect(remote, local);
+    }
+
+    /**
+     * Retries to connect a little later, unless we have been trying for longer than the rpc timeout.
+     */
+    private void connectionFailed()
+    {
+        if (isStopped || backlog.isEmpty()
+            || System.nanoTime() - connectingSince > TimeUnit.MILLISECONDS.toNanos(DatabaseDescriptor.getRpcTimeout()))
+        {
+            // clear out the queue, else gossip messages back up.
+            backlog.clear();
+            connectingSince = -1;
+            connecting.set(false);
+            // a message enqueued since the check above could not start connecting while we were, so do it for it
+            if (!backlog.isEmpty() && !isStopped)
+                connect();
+            return;
+        }
+
+        NettyInternodeTransport.instance.timer().newTimeout(new TimerTask()
+        {
+            public void run(Timeout timeout)
+            {
+                connecting.set(false);
+                connect();
+            }
+        }, OPEN_RETRY_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Does the version handshake once connected, then hands the channel over.
+     */
+    private class Handshake extends SimpleChannelUpstreamHandler
+    {
+        private final int version;
+        private final boolean compress;
+        private final int closeRequestsAtConnect;
+        private final ChannelBuffer maxVersion = ChannelBuffers.buffer(4);
+        private Timeout timeout;
+        private boolean done;
+
+        Handshake(int version, boolean compress, int closeRequestsAtConnect)
+        {
+            this.version = version;
+            this.compress = compress;
+            this.closeRequestsAtConnect = closeRequestsAtConnect;
+        }
+
+        @Override
+        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception
+        {
+            final Channel current = ctx.getChannel();
+            ChannelBuffer header = ChannelBuffers.buffer(8);
+            DataOutputStream out = new DataOutputStream(new ChannelBufferOutputStream(header));
+            out.writeInt(MessagingService.PROTOCOL_MAGIC);
+            OutboundTcpConnection.writeHeader(out, version, compress);
+            current.write(header);
+
+            timeout = NettyInternodeTransport.instance.timer().newTimeout(new TimerTask()
+            {
+                public void run(Timeout timeout)
+                {
+                    // no version is returned, so disconnect and try again
+                    logger.debug("No version information from {} yet, will retry", poolReference.endPoint());
+                    current.close();
+                }
+            }, WAIT_FOR_VERSION_MAX_TIME, TimeUnit.MILLISECONDS);
+            super.channelConnected(ctx, e);
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws IOException
+        {
+            if (done)
+                return;
+
+            ChannelBuffer in = (ChannelBuffer) e.getMessage();
+            in.readBytes(maxVersion, Math.min(in.readableBytes(), maxVersion.writableBytes()));
+            if (maxVersion.writable())
+                return;
+
+            timeout.cancel();
+            handshake(ctx.getChannel(), maxVersion.readInt());
+        }
+
+        private void handshake(Channel current, int maxTargetVersion) throws IOException
+        {
+            InetAddress endpoint = poolReference.endPoint();
+            if (isStopped)
+            {
+                current.close();
+                return;
+            }
+
+            if (version > maxTargetVersion)
+            {
+                logger.debug("Target max version is {}; will reconnect with that version", maxTargetVersion);
+                MessagingService.instance().setVersion(endpoint, maxTargetVersion);
+                current.close();
+                return;
+            }
+
+            if (version < maxTargetVersion && version < MessagingService.current_version)
+            {
+                logger.trace("Detected higher max version {} (using {}); will reconnect when queued messages are done",
+                             maxTargetVersion, version);
+                MessagingService.instance().setVersion(endpoint, Math.min(MessagingService.current_version, maxTargetVersion));
+                softCloseSocket();
+            }
+
+            ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(32);
+            DataOutputStream out = new DataOutputStream(new ChannelBufferOutputStream(buffer));
+            out.writeInt(MessagingService.current_version);
+            CompactEndpointSerializationHelper.serialize(FBUtilities.getBroadcastAddress(), out);
+            current.write(buffer);
+
+            done = true;
+            codec = compress ? new LZ4BlockCodec() : null;
+            connectingSince = -1;
+            boolean closed;
+            synchronized (NettyOutboundTcpConnection.this)
+            {
+                closed = closeRequests != closeRequestsAtConnect;
+                if (!closed)
+                    channel = current;
+            }
+            connecting.set(false);
+            if (closed)
+            {
+                // closeSocket was called while we were connecting; channelClosed reconnects for any newer message
+                current.close();
+                return;
+            }
+            schedule();
+        }
+
+        @Override
+        public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception
+        {
+            if (done && ctx.getChannel().isWritable() && !backlog.isEmpty())
+                schedule();
+            super.channelInterestChanged(ctx, e);
+        }
+
+        @Override
+        public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception
+        {
+            if (timeout != null)
+                timeout.cancel();
+
+            if (!done)
+            {
+                connectionFailed();
+            }
+            else
+            {
+                if (channel == ctx.getChannel())
+                    channel = null;
+                if (!backlog.isEmpty())
+                    connect();
+            }
+            super.channelClosed(ctx, e);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("error on connection to {}", poolReference.endPoint(), e.getCause());
+            ctx.getChannel().close();
+        }
+    }
+}
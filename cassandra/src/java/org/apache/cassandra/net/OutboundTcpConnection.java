@@ -29,9 +29,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -44,9 +42,15 @@ import net.jpountz.lz4.LZ4BlockOutputStream;
 import net.jpountz.lz4.LZ4Compressor;
 import net.jpountz.lz4.LZ4Factory;
 import net.jpountz.xxhash.XXHashFactory;
+import org.apache.cassandra.metrics.ConnectionMetrics;
+import org.apache.cassandra.tracing.ExpiredTraceState;
 import org.apache.cassandra.tracing.TraceState;
 import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.CoalescingStrategies;
+import org.apache.cassandra.utils.CoalescingStrategies.Coalescable;
+import org.apache.cassandra.utils.CoalescingStrategies.CoalescingStrategy;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.MpscBlockingQueue;
 import org.apache.cassandra.utils.UUIDGen;
 import org.xerial.snappy.SnappyOutputStream;
 
@@ -54,8 +58,9 @@ import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 
 import com.google.common.util.concurrent.Uninterruptibles;
+import com.yammer.metrics.core.Timer;
 
-public class OutboundTcpConnection extends Thread
+public class OutboundTcpConnection extends Thread implements IOutboundConnection
 {
     private static final Logger logger = LoggerFactory.getLogger(OutboundTcpConnection.class);
 
@@ -67,8 +72,14 @@ public class OutboundTcpConnection extends Thread
     private static final int NO_VERSION = Integer.MIN_VALUE;
 
     static final int LZ4_HASH_SEED = 0x9747b28c;
+    static final int LZ4_BLOCK_SIZE = 1 << 14; // 16k
 
-    private final BlockingQueue<QueuedMessage> backlog = new LinkedBlockingQueue<>();
+    // keeping list (batch) size small for now; that way we don't have an unbounded array (that we never resize)
+    private static final int MAX_COALESCED_MESSAGES = 128;
+
+    private final MpscBlockingQueue<QueuedMessage> backlog = new MpscBlockingQueue<>();
+    private final CoalescingStrategy coalescingStrategy = CoalescingStrategies.newCoalescingStrategy(DatabaseDescriptor.getInternodeCoalescingStrategy(),
+                                                                                                     DatabaseDescriptor.getInternodeCoalescingWindow());
 
     private final OutboundTcpConnectionPool poolReference;
 
@@ -95,25 +106,18 @@ public class OutboundTcpConnection extends Thread
     public void enqueue(MessageOut<?> message, int id)
     {
         if (backlog.size() > 1024)
-            expireMessages();
-        try
-        {
-            backlog.put(new QueuedMessage(message, id));
-        }
-        catch (InterruptedException e)
-        {
-            throw new AssertionError(e);
-        }
+            expireMessages(backlog, dropped);
+        backlog.put(new QueuedMessage(message, id));
     }
 
-    void closeSocket(boolean destroyThread)
+    public void closeSocket(boolean destroyThread)
     {
         backlog.clear();
         isStopped = destroyThread; // Exit loop to stop the thread
         enqueue(CLOSE_SENTINEL, -1);
     }
 
-    void softCloseSocket()
+    public void softCloseSocket()
     {
         enqueue(CLOSE_SENTINEL, -1);
     }
@@ -125,24 +129,20 @@ public class OutboundTcpConnection extends Thread
 
     public void run()
     {
-        // keeping list (batch) size small for now; that way we don't have an unbounded array (that we never resize)
-        final List<QueuedMessage> drainedMessages = new ArrayList<>(128);
+        final List<QueuedMessage> drainedMessages = new ArrayList<>(MAX_COALESCED_MESSAGES);
         outer:
         while (true)
         {
-            if (backlog.drainTo(drainedMessages, drainedMessages.size()) == 0)
+            try
             {
-                try
-                {
-                    drainedMessages.add(backlog.take());
-                }
-                catch (InterruptedException e)
-                {
-                    throw new AssertionError(e);
-                }
-
+                coalescingStrategy.coalesce(backlog, drainedMessages, MAX_COALESCED_MESSAGES);
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
             }
             currentMsgBufferCount = drainedMessages.size();
+            updateMetrics(poolReference, this, drainedMessages);
 
             int count = drainedMessages.size();
             for (QueuedMessage qm : drainedMessages)
@@ -157,10 +157,11 @@ public class OutboundTcpConnection extends Thread
                             break outer;
                         continue;
                     }
-                    if (qm.timestamp < System.currentTimeMillis() - m.getTimeout())
+                    if (qm.isTimedOut(System.currentTimeMillis()))
                         dropped.incrementAndGet();
                     else if (socket != null || connect())
-                        writeConnected(qm, count == 1 && backlog.size() == 0);
+                        // flush once per batch: the strategy already decided how long the batch could wait
+                        writeConnected(qm, count == 1);
                     else
                         // clear out the queue, else gossip messages back up.
                         backlog.clear();
@@ -177,6 +178,23 @@ public class OutboundTcpConnection extends Thread
         }
     }
 
+    /**
+     * Records the size of a batch of messages about to be written, and how long they were queued.
+     */
+    static void updateMetrics(OutboundTcpConnectionPool pool, IOutboundConnection connection, List<QueuedMessage> messages)
+    {
+        ConnectionMetrics metrics = pool.getMetrics();
+        if (metrics == null)
+            return;
+
+        boolean isCommand = connection == pool.cmdCon;
+        (isCommand ? metrics.commandBatchSize : metrics.responseBatchSize).update(messages.size());
+        Timer queueLatency = isCommand ? metrics.commandQueueLatency : metrics.responseQueueLatency;
+        long now = System.nanoTime();
+        for (QueuedMessage qm : messages)
+            queueLatency.update(now - qm.timestampNanos, TimeUnit.NANOSECONDS);
+    }
+
     public int getPendingMessages()
     {
         return backlog.size() + currentMsgBufferCount;
@@ -192,37 +210,51 @@ public class OutboundTcpConnection extends Thread
         return dropped.get();
     }
 
-    private boolean shouldCompressConnection()
+    static boolean shouldCompressConnection(InetAddress endpoint)
     {
         // assumes version >= 1.2
         return DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.all
-               || (DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.dc && !isLocalDC(poolReference.endPoint()));
+               || (DatabaseDescriptor.internodeCompression() == Config.InternodeCompression.dc && !isLocalDC(endpoint));
     }
 
-    private void writeConnected(QueuedMessage qm, boolean flush)
+    private boolean shouldCompressConnection()
     {
-        try
+        return shouldCompressConnection(poolReference.endPoint());
+    }
+
+    static boolean shouldUseTcpNoDelay(InetAddress endpoint)
+    {
+        return isLocalDC(endpoint) || DatabaseDescriptor.getInterDCTcpNoDelay();
+    }
+
+    static void traceSending(MessageOut<?> message, InetAddress endpoint)
+    {
+        byte[] sessionBytes = message.parameters.get(Tracing.TRACE_HEADER);
+        if (sessionBytes != null)
         {
-            byte[] sessionBytes = qm.message.parameters.get(Tracing.TRACE_HEADER);
-            if (sessionBytes != null)
+            UUID sessionId = UUIDGen.getUUID(ByteBuffer.wrap(sessionBytes));
+            TraceState state = Tracing.instance.get(sessionId);
+            String msg = String.format("Sending message to %s", endpoint);
+            // session may have already finished; see CASSANDRA-5668
+            if (state == null)
             {
-                UUID sessionId = UUIDGen.getUUID(ByteBuffer.wrap(sessionBytes));
-                TraceState state = Tracing.instance.get(sessionId);
-                String message = String.format("Sending message to %s", poolReference.endPoint());
-                // session may have already finished; see CASSANDRA-5668
-                if (state == null)
-                {
-                    TraceState.trace(ByteBuffer.wrap(sessionBytes), message, -1);
-                }
-                else
-                {
-                    state.trace(message);
-                    if (qm.message.verb == MessagingService.Verb.REQUEST_RESPONSE)
-                        Tracing.instance.stopNonLocal(state);
-                }
+                new ExpiredTraceState(sessionId).trace(msg);
+            }
+            else
+            {
+                state.trace(msg);
+                if (message.verb == MessagingService.Verb.REQUEST_RESPONSE)
+                    Tracing.instance.stopNonLocal(state);
             }
+        }
+    }
 
-            writeInternal(qm.message, qm.id, qm.timestamp);
+    private void writeConnected(QueuedMessage qm, boolean flush)
+    {
+        try
+        {
+            traceSending(qm.message, poolReference.endPoint());
+            writeMessage(out, qm.message, qm.id, qm.timestamp, targetVersion);
 
             completed++;
             if (flush)
@@ -239,16 +271,7 @@ public class OutboundTcpConnection extends Thread
                 // if the message was important, such as a repair acknowledgement, put it back on the queue
                 // to retry after re-connecting.  See CASSANDRA-5393
                 if (qm.shouldRetry())
-                {
-                    try
-                    {
-                        backlog.put(new RetriedQueuedMessage(qm));
-                    }
-                    catch (InterruptedException e1)
-                    {
-                        throw new AssertionError(e1);
-                    }
-                }
+                    backlog.put(new RetriedQueuedMessage(qm));
             }
             else
             {
@@ -258,7 +281,7 @@ public class OutboundTcpConnection extends Thread
         }
     }
 
-    private void writeInternal(MessageOut message, int id, long timestamp) throws IOException
+    static void writeMessage(DataOutputStream out, MessageOut message, int id, long timestamp, int targetVersion) throws IOException
     {
         out.writeInt(MessagingService.PROTOCOL_MAGIC);
 
@@ -273,7 +296,7 @@ public class OutboundTcpConnection extends Thread
         message.serialize(out, targetVersion);
     }
 
-    private static void writeHeader(DataOutputStream out, int version, boolean compressionEnabled) throws IOException
+    static void writeHeader(DataOutputStream out, int version, boolean compressionEnabled) throws IOException
     {
         // 2 bits: unused.  used to be "serializer type," which was always Binary
         // 1 bit: compression
@@ -320,14 +343,7 @@ public class OutboundTcpConnection extends Thread
             {
                 socket = poolReference.newSocket();
                 socket.setKeepAlive(true);
-                if (isLocalDC(poolReference.endPoint()))
-                {
-                    socket.setTcpNoDelay(true);
-                }
-                else
-                {
-                    socket.setTcpNoDelay(DatabaseDescriptor.getInterDCTcpNoDelay());
-                }
+                socket.setTcpNoDelay(shouldUseTcpNoDelay(poolReference.endPoint()));
                 if (DatabaseDescriptor.getInternodeSendBufferSize() != null)
                 {
                     try
@@ -387,7 +403,7 @@ public class OutboundTcpConnection extends Thread
                         LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
                         Checksum checksum = XXHashFactory.fastestInstance().newStreamingHash32(LZ4_HASH_SEED).asChecksum();
                         out = new DataOutputStream(new LZ4BlockOutputStream(new BufferedOutputStream(socket.getOutputStream()),
-                                                                            1 << 14,  // 16k block size
+                                                                            LZ4_BLOCK_SIZE,
                                                                             compressor,
                                                                             checksum,
                                                                             true)); // no async flushing
@@ -448,13 +464,13 @@ public class OutboundTcpConnection extends Thread
         return version.get();
     }
 
-    private void expireMessages()
+    static void expireMessages(Iterable<QueuedMessage> backlog, AtomicLong dropped)
     {
         Iterator<QueuedMessage> iter = backlog.iterator();
         while (iter.hasNext())
         {
             QueuedMessage qm = iter.next();
-            if (qm.timestamp >= System.currentTimeMillis() - qm.message.getTimeout())
+            if (!qm.isTimedOut(System.currentTimeMillis()))
                 return;
             iter.remove();
             dropped.incrementAndGet();
@@ -462,17 +478,29 @@ public class OutboundTcpConnection extends Thread
     }
 
     /** messages that have not been retried yet */
-    private static class QueuedMessage
+    static class QueuedMessage implements Coalescable
     {
         final MessageOut<?> message;
         final int id;
         final long timestamp;
+        final long timestampNanos;
 
         QueuedMessage(MessageOut<?> message, int id)
         {
             this.message = message;
             this.id = id;
             this.timestamp = System.currentTimeMillis();
+            this.timestampNanos = System.nanoTime();
+        }
+
+        public long timestampNanos()
+        {
+            return timestampNanos;
+        }
+
+        boolean isTimedOut(long nowMillis)
+        {
+            return timestamp < nowMillis - message.getTimeout();
         }
 
         boolean shouldRetry()
@@ -481,7 +509,7 @@ public class OutboundTcpConnection extends Thread
         }
     }
 
-    private static class RetriedQueuedMessage extends QueuedMessage
+    static class RetriedQueuedMessage extends QueuedMessage
     {
         RetriedQueuedMessage(QueuedMessage msg)
         {
@@ -36,30 +36,37 @@ public class OutboundTcpConnectionPool
 {
     // pointer for the real Address.
     private final InetAddress id;
-    public final OutboundTcpConnection cmdCon;
-    public final OutboundTcpConnection ackCon;
+    public final IOutboundConnection cmdCon;
+    public final IOutboundConnection ackCon;
     // pointer to the reseted Address.
     private InetAddress resetedEndpoint;
-    private ConnectionMetrics metrics;
+    private volatile ConnectionMetrics metrics;
 
     OutboundTcpConnectionPool(InetAddress remoteEp)
     {
         id = remoteEp;
         resetedEndpoint = SystemKeyspace.getPreferredIP(remoteEp);
 
-        cmdCon = new OutboundTcpConnection(this);
+        cmdCon = newConnection();
         cmdCon.start();
-        ackCon = new OutboundTcpConnection(this);
+        ackCon = newConnection();
         ackCon.start();
 
         metrics = new ConnectionMetrics(id, this);
     }
 
+    private IOutboundConnection newConnection()
+    {
+        return DatabaseDescriptor.getInternodeTransport() == Config.InternodeTransport.netty
+             ? new NettyOutboundTcpConnection(this)
+             : new OutboundTcpConnection(this);
+    }
+
     /**
      * returns the appropriate connection based on message type.
      * returns null if a connection could not be established.
      */
-    OutboundTcpConnection getConnection(MessageOut msg)
+    IOutboundConnection getConnection(MessageOut msg)
     {
         Stage stage = msg.getStage();
         return stage == Stage.REQUEST_RESPONSE || stage == Stage.INTERNAL_RESPONSE || stage == Stage.GOSSIP
@@ -69,13 +76,13 @@ public class OutboundTcpConnectionPool
 
     void reset()
     {
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { cmdCon, ackCon })
+        for (IOutboundConnection conn : new IOutboundConnection[] { cmdCon, ackCon })
             conn.closeSocket(false);
     }
 
     public void resetToNewerVersion(int version)
     {
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { cmdCon, ackCon })
+        for (IOutboundConnection conn : new IOutboundConnection[] { cmdCon, ackCon })
         {
             if (version > conn.getTargetVersion())
                 conn.softCloseSocket();
@@ -91,7 +98,7 @@ public class OutboundTcpConnectionPool
     {
         SystemKeyspace.updatePreferredIP(id, remoteEP);
         resetedEndpoint = remoteEP;
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { cmdCon, ackCon })
+        for (IOutboundConnection conn : new IOutboundConnection[] { cmdCon, ackCon })
             conn.softCloseSocket();
 
         // release previous metrics and create new one with reset address
@@ -99,6 +106,14 @@ public class OutboundTcpConnectionPool
         metrics = new ConnectionMetrics(resetedEndpoint, this);
     }
 
+    /**
+     * @return the metrics of this pool; null while it is being constructed
+     */
+    ConnectionMetrics getMetrics()
+    {
+        return metrics;
+    }
+
     public long getTimeouts()
     {
        return metrics.timeouts.count();
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.repair;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.UUIDSerializer;
+
+/**
+ * Sent by the coordinator of an incremental repair to every participant once all of its sessions are done.
+ * The sstables validated by the successful sessions are marked repaired (splitting them first when they are only
+ * partly covered by the repaired ranges), while those of the failed sessions are left alone.
+ *
+ * @since 2.1
+ */
+public class AnticompactionRequest
+{
+    public static final IVersionedSerializer<AnticompactionRequest> serializer = new AnticompactionRequestSerializer();
+
+    public final Collection<UUID> successfulSessions;
+    public final Collection<UUID> failedSessions;
+    /** the time at which the repair started, recorded in the metadata of the sstables marked repaired */
+    public final long repairedAt;
+
+    public AnticompactionRequest(Collection<UUID> successfulSessions, Collection<UUID> failedSessions, long repairedAt)
+    {
+        this.successfulSessions = successfulSessions;
+        this.failedSessions = failedSessions;
+        this.repairedAt = repairedAt;
+    }
+
+    public MessageOut<AnticompactionRequest> createMessage()
+    {
+        return new MessageOut<>(MessagingService.Verb.ANTICOMPACTION, this, serializer);
+    }
+
+    private static class AnticompactionRequestSerializer implements IVersionedSerializer<AnticompactionRequest>
+    {
+        public void serialize(AnticompactionRequest request, DataOutput out, int version) throws IOException
+        {
+            serializeSessions(request.successfulSessions, out, version);
+            serializeSessions(request.failedSessions, out, version);
+            out.writeLong(request.repairedAt);
+        }
+
+        public AnticompactionRequest deserialize(DataInput in, int version) throws IOException
+        {
+            List<UUID> successfulSessions = deserializeSessions(in, version);
+            List<UUID> failedSessions = deserializeSessions(in, version);
+            return new AnticompactionRequest(successfulSessions, failedSessions, in.readLong());
+        }
+
+        public long serializedSize(AnticompactionRequest request, int version)
+        {
+            long size = sessionsSerializedSize(request.successfulSessions, version);
+            size += sessionsSerializedSize(request.failedSessions, version);
+            size += TypeSizes.NATIVE.sizeof(request.repairedAt);
+            return size;
+        }
+
+        private static void serializeSessions(Collection<UUID> sessions, DataOutput out, int version) throws IOException
+        {
+            out.writeInt(sessions.size());
+            for (UUID session : sessions)
+                UUIDSerializer.serializer.serialize(session, out, version);
+        }
+
+        private static List<UUID> deserializeSessions(DataInput in, int version) throws IOException
+        {
+            int count = in.readInt();
+            List<UUID> sessions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                sessions.add(UUIDSerializer.serializer.deserialize(in, version));
+            return sessions;
+        }
+
+        private static long sessionsSerializedSize(Collection<UUID> sessions, int version)
+        {
+            long size = TypeSizes.NATIVE.sizeof(sessions.size());
+            for (UUID session : sessions)
+                size += UUIDSerializer.serializer.serializedSize(session, version);
+            return size;
+        }
+    }
+}
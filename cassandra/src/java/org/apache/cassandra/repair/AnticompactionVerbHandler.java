@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.repair;
+
+import org.apache.cassandra.net.IVerbHandler;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.service.ActiveRepairService;
+
+/**
+ * Marks the sstables validated by the sessions of an incremental repair as repaired.
+ *
+ * @since 2.1
+ */
+public class AnticompactionVerbHandler implements IVerbHandler<AnticompactionRequest>
+{
+    public void doVerb(MessageIn<AnticompactionRequest> message, int id)
+    {
+        AnticompactionRequest request = message.payload;
+        ActiveRepairService.instance.anticompact(request.successfulSessions, request.failedSessions, request.repairedAt);
+    }
+}
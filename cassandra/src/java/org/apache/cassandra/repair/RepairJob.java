@@ -51,6 +51,7 @@ public class RepairJob
 
     public final RepairJobDesc desc;
     private final boolean isSequential;
+    private final boolean isIncremental;
     // first we send tree requests. this tracks the endpoints remaining to hear from
     private final RequestCoordinator<InetAddress> treeRequests;
     // tree responses are then tracked here
@@ -67,15 +68,16 @@ public class RepairJob
     /**
      * Create repair job to run on specific columnfamily
      */
-    public RepairJob(UUID sessionId, String keyspace, String columnFamily, Range<Token> range, boolean isSequential)
+    public RepairJob(UUID sessionId, String keyspace, String columnFamily, Range<Token> range, boolean isSequential, boolean isIncremental)
     {
         this.desc = new RepairJobDesc(sessionId, keyspace, columnFamily, range);
         this.isSequential = isSequential;
+        this.isIncremental = isIncremental;
         this.treeRequests = new RequestCoordinator<InetAddress>(isSequential)
         {
             public void send(InetAddress endpoint)
             {
-                ValidationRequest request = new ValidationRequest(desc, gcBefore);
+                ValidationRequest request = new ValidationRequest(desc, gcBefore, isIncremental);
                 MessagingService.instance().sendOneWay(request.createMessage(), endpoint);
             }
         };
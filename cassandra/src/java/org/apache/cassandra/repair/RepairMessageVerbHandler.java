@@ -44,7 +44,7 @@ public class RepairMessageVerbHandler implements IVerbHandler<RepairMessage>
                 ValidationRequest validationRequest = (ValidationRequest) message.payload;
                 // trigger read-only compaction
                 ColumnFamilyStore store = Keyspace.open(desc.keyspace).getColumnFamilyStore(desc.columnFamily);
-                Validator validator = new Validator(desc, message.from, validationRequest.gcBefore);
+                Validator validator = new Validator(desc, message.from, validationRequest.gcBefore, validationRequest.isIncremental);
                 CompactionManager.instance.submitValidation(store, validator);
                 break;
 
@@ -33,6 +33,7 @@ import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.RepairException;
 import org.apache.cassandra.gms.*;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.utils.*;
 
@@ -78,6 +79,8 @@ public class RepairSession extends WrappedRunnable implements IEndpointStateChan
     public final String keyspace;
     private final String[] cfnames;
     public final boolean isSequential;
+    /** Only validate and sync the sstables not yet repaired, and mark them repaired once done */
+    public final boolean isIncremental;
     /** Range to repair */
     public final Range<Token> range;
     public final Set<InetAddress> endpoints;
@@ -102,15 +105,16 @@ public class RepairSession extends WrappedRunnable implements IEndpointStateChan
      * @param range range to repair
      * @param keyspace name of keyspace
      * @param isSequential true if performing repair on snapshots sequentially
+     * @param isIncremental true if only the sstables not yet repaired should be repaired
      * @param dataCenters the data centers that should be part of the repair; null for all DCs
      * @param cfnames names of columnfamilies
      */
-    public RepairSession(Range<Token> range, String keyspace, boolean isSequential, Collection<String> dataCenters, String... cfnames)
+    public RepairSession(Range<Token> range, String keyspace, boolean isSequential, boolean isIncremental, Collection<String> dataCenters, String... cfnames)
     {
-        this(UUIDGen.getTimeUUID(), range, keyspace, isSequential, dataCenters, cfnames);
+        this(UUIDGen.getTimeUUID(), range, keyspace, isSequential, isIncremental, dataCenters, cfnames);
     }
 
-    public RepairSession(UUID id, Range<Token> range, String keyspace, boolean isSequential, Collection<String> dataCenters, String[] cfnames)
+    public RepairSession(UUID id, Range<Token> range, String keyspace, boolean isSequential, boolean isIncremental, Collection<String> dataCenters, String[] cfnames)
     {
         this.id = id;
         this.isSequential = isSequential;
@@ -119,6 +123,20 @@ public class RepairSession extends WrappedRunnable implements IEndpointStateChan
         assert cfnames.length > 0 : "Repairing no column families seems pointless, doesn't it";
         this.range = range;
         this.endpoints = ActiveRepairService.getNeighbors(keyspace, range, dataCenters);
+        this.isIncremental = isIncremental && supportsIncrementalRepair(endpoints);
+    }
+
+    private boolean supportsIncrementalRepair(Collection<InetAddress> endpoints)
+    {
+        for (InetAddress endpoint : endpoints)
+        {
+            if (MessagingService.instance().getVersion(endpoint) < MessagingService.VERSION_21)
+            {
+                logger.warn("[repair #{}] {} does not support incremental repair, falling back to a full repair", id, endpoint);
+                return false;
+            }
+        }
+        return true;
     }
 
     public UUID getId()
@@ -260,7 +278,7 @@ public class RepairSession extends WrappedRunnable implements IEndpointStateChan
             // Create and queue a RepairJob for each column family
             for (String cfname : cfnames)
             {
-                RepairJob job = new RepairJob(id, keyspace, cfname, range, isSequential);
+                RepairJob job = new RepairJob(id, keyspace, cfname, range, isSequential, isIncremental);
                 jobs.offer(job);
             }
 
@@ -33,6 +33,7 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.compaction.AbstractCompactedRow;
+import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.messages.ValidationComplete;
 import org.apache.cassandra.utils.FBUtilities;
@@ -45,6 +46,9 @@ import org.apache.cassandra.utils.MerkleTree;
  * 1. prepare() - Initialize tree with samples.
  * 2. add() - 0 or more times, to add hashes to the tree.
  * 3. complete() - Enqueues any operations that were blocked waiting for a valid tree.
+ *
+ * Alternatively, the tree can be split() into sub-trees, each built by its own Validator through
+ * prepare() and add(), and then merge()d back before complete() is called.
  */
 public class Validator implements Runnable
 {
@@ -54,6 +58,8 @@ public class Validator implements Runnable
     public final InetAddress initiator;
     public final MerkleTree tree;
     public final int gcBefore;
+    // if true, only the sstables not yet repaired are validated
+    public final boolean isIncremental;
 
     // null when all rows with the min token have been consumed
     private transient long validated;
@@ -65,21 +71,33 @@ public class Validator implements Runnable
      * Create Validator with default size of initial Merkle Tree.
      */
     public Validator(RepairJobDesc desc, InetAddress initiator, int gcBefore)
+    {
+        this(desc, initiator, gcBefore, false);
+    }
+
+    public Validator(RepairJobDesc desc, InetAddress initiator, int gcBefore, boolean isIncremental)
     {
         this(desc,
              initiator,
              // TODO: memory usage (maxsize) should either be tunable per
              // CF, globally, or as shared for all CFs in a cluster
              new MerkleTree(DatabaseDescriptor.getPartitioner(), desc.range, MerkleTree.RECOMMENDED_DEPTH, (int)Math.pow(2, 15)),
-             gcBefore);
+             gcBefore,
+             isIncremental);
     }
 
     public Validator(RepairJobDesc desc, InetAddress initiator, MerkleTree tree, int gcBefore)
+    {
+        this(desc, initiator, tree, gcBefore, false);
+    }
+
+    public Validator(RepairJobDesc desc, InetAddress initiator, MerkleTree tree, int gcBefore, boolean isIncremental)
     {
         this.desc = desc;
         this.initiator = initiator;
         this.tree = tree;
         this.gcBefore = gcBefore;
+        this.isIncremental = isIncremental;
         validated = 0;
         range = null;
         ranges = null;
@@ -95,9 +113,9 @@ public class Validator implements Runnable
         else
         {
             List<DecoratedKey> keys = new ArrayList<>();
-            for (DecoratedKey sample : cfs.keySamples(desc.range))
+            for (DecoratedKey sample : cfs.keySamples(tree.fullRange))
             {
-                assert desc.range.contains(sample.token): "Token " + sample.token + " is not within range " + desc.range;
+                assert tree.fullRange.contains(sample.token): "Token " + sample.token + " is not within range " + tree.fullRange;
                 keys.add(sample);
             }
 
@@ -131,7 +149,7 @@ public class Validator implements Runnable
      */
     public void add(AbstractCompactedRow row)
     {
-        assert desc.range.contains(row.key.token) : row.key.token + " is not contained in " + desc.range;
+        assert tree.fullRange.contains(row.key.token) : row.key.token + " is not contained in " + tree.fullRange;
         assert lastKey == null || lastKey.compareTo(row.key) < 0
                : "row " + row.key + " received out of order wrt " + lastKey;
         lastKey = row.key;
@@ -194,11 +212,58 @@ public class Validator implements Runnable
     {
         validated++;
         // MerkleTree uses XOR internally, so we want lots of output bits here
-        CountingDigest digest = new CountingDigest(FBUtilities.newMessageDigest("SHA-256"));
+        CountingDigest digest = new CountingDigest(MerkleTree.RowHash.newDigest());
         row.update(digest);
         return new MerkleTree.RowHash(row.key.token, digest.digest(), digest.count);
     }
 
+    /**
+     * Splits the tree evenly into (at most) the given number of sub-ranges, and returns one Validator per sub-range,
+     * building the sub-tree of that range, so that the sub-ranges can be validated concurrently.  Once all of them
+     * are complete, merge() grafts their trees into this one in place of the prepare()/add() steps.
+     */
+    public List<Validator> split(int count)
+    {
+        byte sizedepth = (byte)(Math.log10(tree.maxsize()) / Math.log10(2));
+        byte depth = (byte)Math.min(31 - Integer.numberOfLeadingZeros(count), Math.min(sizedepth, tree.hashdepth));
+        tree.init(depth);
+
+        List<MerkleTree.TreeRange> leaves = new ArrayList<>();
+        for (MerkleTree.TreeRange leaf : tree.invalids())
+        {
+            // a wrapping leaf is returned both first and last
+            if (!leaves.isEmpty() && leaf.equals(leaves.get(0)))
+                continue;
+            leaves.add(leaf);
+        }
+
+        List<Validator> parts = new ArrayList<>(leaves.size());
+        for (MerkleTree.TreeRange leaf : leaves)
+        {
+            MerkleTree subtree = new MerkleTree(tree.partitioner(),
+                                                new Range<>(leaf.left, leaf.right),
+                                                (byte)(tree.hashdepth - leaf.depth),
+                                                Math.max(1, tree.maxsize() / leaves.size()));
+            parts.add(new Validator(desc, initiator, subtree, gcBefore, isIncremental));
+        }
+        return parts;
+    }
+
+    /**
+     * Grafts the trees built by the Validators returned by split() into this tree.
+     */
+    public void merge(List<Validator> parts)
+    {
+        for (Validator part : parts)
+        {
+            part.completeTree();
+            tree.graft(part.tree);
+            validated += part.validated;
+        }
+        range = null;
+        ranges = tree.invalids();
+    }
+
     /**
      * Registers the newly created tree for rendezvous in Stage.ANTIENTROPY.
      */
@@ -22,6 +22,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.RepairJobDesc;
 
 /**
@@ -34,11 +35,19 @@ public class ValidationRequest extends RepairMessage
     public static MessageSerializer serializer = new ValidationRequestSerializer();
 
     public final int gcBefore;
+    // if true, only the sstables not yet repaired are validated
+    public final boolean isIncremental;
 
     public ValidationRequest(RepairJobDesc desc, int gcBefore)
+    {
+        this(desc, gcBefore, false);
+    }
+
+    public ValidationRequest(RepairJobDesc desc, int gcBefore, boolean isIncremental)
     {
         super(Type.VALIDATION_REQUEST, desc);
         this.gcBefore = gcBefore;
+        this.isIncremental = isIncremental;
     }
 
     @Override
@@ -48,13 +57,13 @@ public class ValidationRequest extends RepairMessage
         if (o == null || getClass() != o.getClass()) return false;
 
         ValidationRequest that = (ValidationRequest) o;
-        return gcBefore == that.gcBefore;
+        return gcBefore == that.gcBefore && isIncremental == that.isIncremental;
     }
 
     @Override
     public int hashCode()
     {
-        return gcBefore;
+        return 31 * gcBefore + (isIncremental ? 1 : 0);
     }
 
     public static class ValidationRequestSerializer implements MessageSerializer<ValidationRequest>
@@ -63,18 +72,24 @@ public class ValidationRequest extends RepairMessage
         {
             RepairJobDesc.serializer.serialize(message.desc, out, version);
             out.writeInt(message.gcBefore);
+            if (version >= MessagingService.VERSION_21)
+                out.writeBoolean(message.isIncremental);
         }
 
         public ValidationRequest deserialize(DataInput dis, int version) throws IOException
         {
             RepairJobDesc desc = RepairJobDesc.serializer.deserialize(dis, version);
-            return new ValidationRequest(desc, dis.readInt());
+            int gcBefore = dis.readInt();
+            boolean isIncremental = version >= MessagingService.VERSION_21 && dis.readBoolean();
+            return new ValidationRequest(desc, gcBefore, isIncremental);
         }
 
         public long serializedSize(ValidationRequest message, int version)
         {
             long size = RepairJobDesc.serializer.serializedSize(message.desc, version);
             size += TypeSizes.NATIVE.sizeof(message.gcBefore);
+            if (version >= MessagingService.VERSION_21)
+                size += TypeSizes.NATIVE.sizeof(message.isIncremental);
             return size;
         }
     }
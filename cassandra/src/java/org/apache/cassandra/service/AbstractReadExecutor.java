@@ -77,12 +77,12 @@ public abstract class AbstractReadExecutor
 
     protected void makeDataRequests(Iterable<InetAddress> endpoints)
     {
+        boolean readLocal = false;
         for (InetAddress endpoint : endpoints)
         {
             if (isLocalRequest(endpoint))
             {
-                logger.trace("reading data locally");
-                StageManager.getStage(Stage.READ).execute(new LocalReadRunnable(command, handler));
+                readLocal = true;
             }
             else
             {
@@ -90,6 +90,13 @@ public abstract class AbstractReadExecutor
                 MessagingService.instance().sendRR(command.createMessage(), endpoint, handler);
             }
         }
+
+        // the local read may run inline, so it goes last to not hold up the remote ones
+        if (readLocal)
+        {
+            logger.trace("reading data locally");
+            StageManager.getStage(Stage.READ).maybeExecuteImmediately(new LocalReadRunnable(command, handler));
+        }
     }
 
     protected void makeDigestRequests(Iterable<InetAddress> endpoints)
@@ -97,12 +104,12 @@ public abstract class AbstractReadExecutor
         ReadCommand digestCommand = command.copy();
         digestCommand.setDigestQuery(true);
         MessageOut<?> message = digestCommand.createMessage();
+        boolean readLocal = false;
         for (InetAddress endpoint : endpoints)
         {
             if (isLocalRequest(endpoint))
             {
-                logger.trace("reading digest locally");
-                StageManager.getStage(Stage.READ).execute(new LocalReadRunnable(digestCommand, handler));
+                readLocal = true;
             }
             else
             {
@@ -110,6 +117,12 @@ public abstract class AbstractReadExecutor
                 MessagingService.instance().sendRR(message, endpoint, handler);
             }
         }
+
+        if (readLocal)
+        {
+            logger.trace("reading digest locally");
+            StageManager.getStage(Stage.READ).maybeExecuteImmediately(new LocalReadRunnable(digestCommand, handler));
+        }
     }
 
     /**
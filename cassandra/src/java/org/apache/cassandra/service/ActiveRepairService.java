@@ -23,20 +23,29 @@ import java.util.concurrent.*;
 
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.concurrent.JMXConfigurableThreadPoolExecutor;
 import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.gms.FailureDetector;
+import org.apache.cassandra.gms.IFailureDetectionEventListener;
 import org.apache.cassandra.gms.Gossiper;
+import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.locator.TokenMetadata;
 import org.apache.cassandra.repair.*;
 import org.apache.cassandra.repair.messages.RepairMessage;
 import org.apache.cassandra.repair.messages.SyncComplete;
 import org.apache.cassandra.repair.messages.ValidationComplete;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Pair;
 
 /**
  * ActiveRepairService is the starting point for manual "active" repairs.
@@ -52,8 +61,10 @@ import org.apache.cassandra.utils.FBUtilities;
  * The creation of a repair session is done through the submitRepairSession that
  * returns a future on the completion of that session.
  */
-public class ActiveRepairService
+public class ActiveRepairService implements IFailureDetectionEventListener
 {
+    private static final Logger logger = LoggerFactory.getLogger(ActiveRepairService.class);
+
     // singleton enforcement
     public static final ActiveRepairService instance = new ActiveRepairService();
 
@@ -78,12 +89,20 @@ public class ActiveRepairService
      */
     private final ConcurrentMap<UUID, RepairSession> sessions;
 
+    /**
+     * The sstables validated by the incremental repair sessions this node took part in, by session id, until
+     * the coordinator tells us whether those sessions succeeded, or is convicted.
+     */
+    private final ConcurrentMap<UUID, ValidatedSSTables> validatedSSTables;
+
     /**
      * Protected constructor. Use ActiveRepairService.instance.
      */
     protected ActiveRepairService()
     {
         sessions = new ConcurrentHashMap<>();
+        validatedSSTables = new ConcurrentHashMap<>();
+        FailureDetector.instance.registerFailureDetectionEventListener(this);
     }
 
     /**
@@ -91,9 +110,9 @@ public class ActiveRepairService
      *
      * @return Future for asynchronous call or null if there is no need to repair
      */
-    public RepairFuture submitRepairSession(Range<Token> range, String keyspace, boolean isSequential, Collection<String> dataCenters, String... cfnames)
+    public RepairFuture submitRepairSession(Range<Token> range, String keyspace, boolean isSequential, boolean isIncremental, Collection<String> dataCenters, String... cfnames)
     {
-        RepairSession session = new RepairSession(range, keyspace, isSequential, dataCenters, cfnames);
+        RepairSession session = new RepairSession(range, keyspace, isSequential, isIncremental, dataCenters, cfnames);
         if (session.endpoints.isEmpty())
             return null;
         RepairFuture futureTask = new RepairFuture(session);
@@ -127,7 +146,7 @@ public class ActiveRepairService
     // add it to the sessions (avoid NPE in tests)
     RepairFuture submitArtificialRepairSession(RepairJobDesc desc)
     {
-        RepairSession session = new RepairSession(desc.sessionId, desc.range, desc.keyspace, false, null, new String[]{desc.columnFamily});
+        RepairSession session = new RepairSession(desc.sessionId, desc.range, desc.keyspace, false, false, null, new String[]{desc.columnFamily});
         sessions.put(session.getId(), session);
         RepairFuture futureTask = new RepairFuture(session);
         executor.execute(futureTask);
@@ -186,6 +205,100 @@ public class ActiveRepairService
         return neighbors;
     }
 
+    /**
+     * Remembers the sstables an incremental repair job validated, so they can be marked repaired once the
+     * repair succeeded.
+     */
+    public void recordValidatedSSTables(RepairJobDesc desc, InetAddress initiator, Collection<SSTableReader> sstables)
+    {
+        Set<Integer> generations = new HashSet<>(sstables.size());
+        for (SSTableReader sstable : sstables)
+            generations.add(sstable.descriptor.generation);
+
+        ValidatedSSTables validated = new ValidatedSSTables(initiator);
+        ValidatedSSTables previous = validatedSSTables.putIfAbsent(desc.sessionId, validated);
+        (previous == null ? validated : previous).jobs.add(Pair.create(desc, generations));
+    }
+
+    /**
+     * Marks the sstables validated by the given successful sessions as repaired at repairedAt, and forgets
+     * about the ones validated by the failed sessions.
+     *
+     * @return the futures of the anticompactions started, one per column family
+     */
+    public List<Future<?>> anticompact(Collection<UUID> successfulSessions, Collection<UUID> failedSessions, long repairedAt)
+    {
+        for (UUID session : failedSessions)
+            validatedSSTables.remove(session);
+
+        // a given sstable may have been validated by several sessions, one for each of the ranges it covers
+        Map<Pair<String, String>, Map<Integer, Collection<Range<Token>>>> rangesByColumnFamily = new HashMap<>();
+        for (UUID session : successfulSessions)
+        {
+            ValidatedSSTables validated = validatedSSTables.remove(session);
+            if (validated == null)
+                continue;
+
+            for (Pair<RepairJobDesc, Set<Integer>> job : validated.jobs)
+            {
+                Pair<String, String> cf = Pair.create(job.left.keyspace, job.left.columnFamily);
+                Map<Integer, Collection<Range<Token>>> rangesByGeneration = rangesByColumnFamily.get(cf);
+                if (rangesByGeneration == null)
+                {
+                    rangesByGeneration = new HashMap<>();
+                    rangesByColumnFamily.put(cf, rangesByGeneration);
+                }
+                for (Integer generation : job.right)
+                {
+                    Collection<Range<Token>> ranges = rangesByGeneration.get(generation);
+                    if (ranges == null)
+                    {
+                        ranges = new ArrayList<>();
+                        rangesByGeneration.put(generation, ranges);
+                    }
+                    ranges.add(job.left.range);
+                }
+            }
+        }
+
+        List<Future<?>> futures = new ArrayList<>(rangesByColumnFamily.size());
+        for (Map.Entry<Pair<String, String>, Map<Integer, Collection<Range<Token>>>> entry : rangesByColumnFamily.entrySet())
+        {
+            String keyspace = entry.getKey().left;
+            String columnFamily = entry.getKey().right;
+            if (Schema.instance.getId(keyspace, columnFamily) == null)
+            {
+                logger.debug("Skipping anticompaction of dropped column family {}.{}", keyspace, columnFamily);
+                continue;
+            }
+            ColumnFamilyStore cfs = Keyspace.open(keyspace).getColumnFamilyStore(columnFamily);
+            futures.add(CompactionManager.instance.submitAnticompaction(cfs, entry.getValue(), repairedAt));
+        }
+        return futures;
+    }
+
+    /**
+     * Forgets about the sstables validated for the sessions of a convicted coordinator: it won't tell us
+     * what became of them, and it would otherwise leak them.
+     */
+    public void convict(InetAddress endpoint, double phi)
+    {
+        // Like RepairSession, we want a higher confidence in the failure detection than usual
+        if (phi < 2 * DatabaseDescriptor.getPhiConvictThreshold())
+            return;
+
+        Iterator<Map.Entry<UUID, ValidatedSSTables>> iter = validatedSSTables.entrySet().iterator();
+        while (iter.hasNext())
+        {
+            Map.Entry<UUID, ValidatedSSTables> entry = iter.next();
+            if (entry.getValue().initiator.equals(endpoint))
+            {
+                logger.info("[repair #{}] Coordinator {} is down, its validated sstables won't be marked repaired", entry.getKey(), endpoint);
+                iter.remove();
+            }
+        }
+    }
+
     public void handleMessage(InetAddress endpoint, RepairMessage message)
     {
         RepairJobDesc desc = message.desc;
@@ -207,4 +320,15 @@ public class ActiveRepairService
                 break;
         }
     }
+
+    private static class ValidatedSSTables
+    {
+        public final InetAddress initiator;
+        public final Queue<Pair<RepairJobDesc, Set<Integer>>> jobs = new ConcurrentLinkedQueue<>();
+
+        ValidatedSSTables(InetAddress initiator)
+        {
+            this.initiator = initiator;
+        }
+    }
 }
@@ -27,6 +27,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.cache.CacheLoader;
 import com.google.common.collect.*;
@@ -44,6 +45,7 @@ import org.apache.cassandra.cql3.ColumnNameBuilder;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.Keyspace;
 import org.apache.cassandra.db.filter.NamesQueryFilter;
+import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.filter.SliceQueryFilter;
 import org.apache.cassandra.db.index.SecondaryIndex;
 import org.apache.cassandra.db.index.SecondaryIndexSearcher;
@@ -497,6 +499,8 @@ public class StorageProxy implements StorageProxyMBean
 
         long startTime = System.nanoTime();
         List<AbstractWriteResponseHandler> responseHandlers = new ArrayList<AbstractWriteResponseHandler>(mutations.size());
+        // the writes of a batch to each replica of our datacenter are grouped in a single message
+        ReplicaBatches batches = mutations.size() > 1 ? new ReplicaBatches() : null;
 
         try
         {
@@ -509,10 +513,14 @@ public class StorageProxy implements StorageProxyMBean
                 else
                 {
                     WriteType wt = mutations.size() <= 1 ? WriteType.SIMPLE : WriteType.UNLOGGED_BATCH;
-                    responseHandlers.add(performWrite(mutation, consistency_level, localDataCenter, standardWritePerformer, null, wt));
+                    WritePerformer performer = batches == null ? standardWritePerformer : batches;
+                    responseHandlers.add(performWrite(mutation, consistency_level, localDataCenter, performer, null, wt));
                 }
             }
 
+            if (batches != null)
+                batches.send();
+
             // wait for writes.  throws TimeoutException if necessary
             for (AbstractWriteResponseHandler responseHandler : responseHandlers)
             {
@@ -831,12 +839,28 @@ public class StorageProxy implements StorageProxyMBean
                                              AbstractWriteResponseHandler responseHandler,
                                              String localDataCenter)
     throws OverloadedException
+    {
+        sendToHintedEndpoints(rm, targets, responseHandler, localDataCenter, null);
+    }
+
+    /**
+     * Same as above, except that if batches isn't null, the writes to the live replicas of the local datacenter,
+     * including ourselves, are added to it rather than performed right away.
+     */
+    private static void sendToHintedEndpoints(final RowMutation rm,
+                                              Iterable<InetAddress> targets,
+                                              AbstractWriteResponseHandler responseHandler,
+                                              String localDataCenter,
+                                              ReplicaBatches batches)
+    throws OverloadedException
     {
         // extra-datacenter replicas, grouped by dc
         Map<String, Collection<InetAddress>> dcGroups = null;
         // only need to create a Message for non-local writes
         MessageOut<RowMutation> message = null;
 
+        boolean insertLocal = false;
+
         for (InetAddress destination : targets)
         {
             // avoid OOMing due to excess hints.  we need to do this check even for "live" nodes, since we can
@@ -854,19 +878,26 @@ public class StorageProxy implements StorageProxyMBean
             {
                 if (destination.equals(FBUtilities.getBroadcastAddress()) && OPTIMIZE_LOCAL_REQUESTS)
                 {
-                    insertLocal(rm, responseHandler);
+                    insertLocal = true;
                 }
                 else
                 {
                     // belongs on a different server
-                    if (message == null)
-                        message = rm.createMessage();
                     String dc = DatabaseDescriptor.getEndpointSnitch().getDatacenter(destination);
                     // direct writes to local DC or old Cassandra versions
                     // (1.1 knows how to forward old-style String message IDs; updated to int in 2.0)
                     if (localDataCenter.equals(dc))
                     {
-                        MessagingService.instance().sendRR(message, destination, responseHandler);
+                        if (batches != null && MessagingService.instance().getVersion(destination) >= MessagingService.VERSION_21)
+                        {
+                            batches.add(destination, rm, responseHandler);
+                        }
+                        else
+                        {
+                            if (message == null)
+                                message = rm.createMessage();
+                            MessagingService.instance().sendRR(message, destination, responseHandler);
+                        }
                     }
                     else
                     {
@@ -901,6 +932,98 @@ public class StorageProxy implements StorageProxyMBean
             for (Collection<InetAddress> dcTargets : dcGroups.values())
                 sendMessagesToNonlocalDC(message, dcTargets, responseHandler);
         }
+
+        // the local write may run inline, so it goes last to not hold up the remote ones
+        if (insertLocal)
+        {
+            if (batches == null)
+                insertLocal(rm, responseHandler);
+            else
+                batches.addLocal(rm, responseHandler);
+        }
+    }
+
+    /**
+     * Collects the writes of an unlogged batch to the live replicas of the local datacenter, so that each of
+     * them gets all of its mutations in a single MUTATION_BATCH message, acknowledged once for all of them.
+     * The consistency level is still tracked per partition, by the response handler of each mutation.
+     */
+    @VisibleForTesting
+    static class ReplicaBatches implements WritePerformer
+    {
+        private final Map<InetAddress, BatchCallback> remote = new HashMap<InetAddress, BatchCallback>();
+        private final List<Pair<RowMutation, AbstractWriteResponseHandler>> local = new ArrayList<Pair<RowMutation, AbstractWriteResponseHandler>>();
+
+        public void apply(IMutation mutation,
+                          Iterable<InetAddress> targets,
+                          AbstractWriteResponseHandler responseHandler,
+                          String localDataCenter,
+                          ConsistencyLevel consistency_level)
+        throws OverloadedException
+        {
+            assert mutation instanceof RowMutation;
+            sendToHintedEndpoints((RowMutation) mutation, targets, responseHandler, localDataCenter, this);
+        }
+
+        void add(InetAddress destination, RowMutation rm, AbstractWriteResponseHandler responseHandler)
+        {
+            BatchCallback callback = remote.get(destination);
+            if (callback == null)
+            {
+                callback = new BatchCallback(responseHandler.consistencyLevel);
+                remote.put(destination, callback);
+            }
+            callback.mutations.add(rm);
+            callback.handlers.add(responseHandler);
+        }
+
+        void addLocal(RowMutation rm, AbstractWriteResponseHandler responseHandler)
+        {
+            local.add(Pair.create(rm, responseHandler));
+        }
+
+        void send()
+        {
+            for (Map.Entry<InetAddress, BatchCallback> entry : remote.entrySet())
+            {
+                InetAddress destination = entry.getKey();
+                BatchCallback callback = entry.getValue();
+                MessageOut<MutationBatch> message = new MutationBatch(callback.mutations).createMessage();
+                int id = MessagingService.instance().addCallback(callback, message, destination, message.getTimeout(), callback.consistencyLevel);
+                Tracing.trace("Enqueuing batch of {} mutations to {}", callback.mutations.size(), destination);
+                MessagingService.instance().sendOneWay(message, id, destination);
+            }
+
+            // the local writes may run inline, so they go last to not hold up the remote ones
+            for (Pair<RowMutation, AbstractWriteResponseHandler> write : local)
+                insertLocal(write.left, write.right);
+        }
+    }
+
+    /**
+     * Hands the acknowledgement of a MutationBatch to the response handler of each of its mutations.
+     */
+    private static class BatchCallback implements IAsyncCallback<WriteResponse>
+    {
+        final ConsistencyLevel consistencyLevel;
+        final List<RowMutation> mutations = new ArrayList<RowMutation>();
+        final List<AbstractWriteResponseHandler> handlers = new ArrayList<AbstractWriteResponseHandler>();
+
+        BatchCallback(ConsistencyLevel consistencyLevel)
+        {
+            this.consistencyLevel = consistencyLevel;
+        }
+
+        public void response(MessageIn<WriteResponse> msg)
+        {
+            for (AbstractWriteResponseHandler handler : handlers)
+                handler.response(msg);
+        }
+
+        public boolean isLatencyForSnitch()
+        {
+            return false;
+        }
     }
 
     private static AtomicInteger getHintsInProgressFor(InetAddress destination)
@@ -957,7 +1080,7 @@ public class StorageProxy implements StorageProxyMBean
         assert ttl > 0;
         UUID hostId = StorageService.instance.getTokenMetadata().getHostId(target);
         assert hostId != null : "Missing host ID for " + target.getHostAddress();
-        HintedHandOffManager.instance.hintFor(mutation, ttl, hostId).apply();
+        HintedHandOffManager.instance.storeHint(mutation, ttl, hostId);
         StorageMetrics.totalHints.inc();
     }
 
@@ -1005,7 +1128,7 @@ public class StorageProxy implements StorageProxyMBean
                 }
             }
         };
-        StageManager.getStage(Stage.MUTATION).execute(runnable);
+        StageManager.getStage(Stage.MUTATION).maybeExecuteImmediately(runnable);
     }
 
     /**
@@ -1221,6 +1344,45 @@ public class StorageProxy implements StorageProxyMBean
         return rows;
     }
 
+    /**
+     * Answers command out of this node's row cache, without blocking, when that is what read() would end up
+     * doing anyway: the consistency level is ONE or LOCAL_ONE, this node is a replica for the key and is not
+     * bootstrapping, and the table never read repairs (there is nothing to speculate on, either, as the
+     * local read completes right away).
+     *
+     * @return the row, or null if the command must go through read()
+     */
+    public static Row readFromRowCache(ReadCommand command, ConsistencyLevel consistency_level)
+    {
+        if (consistency_level != ConsistencyLevel.ONE && consistency_level != ConsistencyLevel.LOCAL_ONE)
+            return null;
+
+        if (StorageService.instance.isBootstrapMode())
+            return null;
+
+        CFMetaData metadata = Schema.instance.getCFMetaData(command.ksName, command.cfName);
+        if (metadata == null || metadata.getReadRepairChance() > 0 || metadata.getDcLocalReadRepair() > 0)
+            return null;
+
+        // any replica can answer ONE, and LOCAL_ONE as long as it is in the local DC, which we are
+        if (!StorageService.instance.getNaturalEndpoints(command.ksName, command.key).contains(FBUtilities.getBroadcastAddress()))
+            return null;
+
+        long start = System.nanoTime();
+        ColumnFamilyStore cfs = Keyspace.open(command.ksName).getColumnFamilyStore(command.cfName);
+        DecoratedKey dk = StorageService.getPartitioner().decorateKey(command.key);
+        Row row = cfs.getRowFromCache(new QueryFilter(dk, command.cfName, command.filter(), command.timestamp));
+        if (row == null)
+            return null;
+
+        command.maybeTrim(row);
+
+        long latency = System.nanoTime() - start;
+        readMetrics.addNano(latency);
+        cfs.metric.coordinatorReadLatency.update(latency, TimeUnit.NANOSECONDS);
+        return row;
+    }
+
     /**
      * This function executes local and remote reads, and blocks for the results:
      *
@@ -1589,7 +1751,7 @@ public class StorageProxy implements StorageProxyMBean
                         && filteredEndpoints.get(0).equals(FBUtilities.getBroadcastAddress())
                         && OPTIMIZE_LOCAL_REQUESTS)
                     {
-                        StageManager.getStage(Stage.READ).execute(new LocalRangeSliceRunnable(nodeCmd, handler));
+                        StageManager.getStage(Stage.READ).maybeExecuteImmediately(new LocalRangeSliceRunnable(nodeCmd, handler));
                     }
                     else
                     {
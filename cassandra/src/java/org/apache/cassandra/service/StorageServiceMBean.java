@@ -264,6 +264,17 @@ public interface StorageServiceMBean extends NotificationEmitter
      */
     public int forceRepairRangeAsync(String beginToken, String endToken, final String keyspaceName, boolean isSequential, Collection<String> dataCenters, final String... columnFamilies);
 
+    /**
+     * Same as forceRepairAsync, but only repairs the data not repaired yet if isIncremental is true.
+     * Repaired sstables are marked as such once the repair succeeded, so the next incremental repair can skip them.
+     */
+    public int forceRepairAsync(String keyspace, boolean isSequential, Collection<String> dataCenters, boolean primaryRange, boolean isIncremental, String... columnFamilies);
+
+    /**
+     * Same as forceRepairRangeAsync, but only repairs the data not repaired yet if isIncremental is true.
+     */
+    public int forceRepairRangeAsync(String beginToken, String endToken, final String keyspaceName, boolean isSequential, Collection<String> dataCenters, boolean isIncremental, final String... columnFamilies);
+
 
     /**
      * Invoke repair asynchronously.
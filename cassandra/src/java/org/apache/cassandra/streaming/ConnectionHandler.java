@@ -30,6 +30,7 @@ import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
@@ -37,6 +38,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.net.OutboundTcpConnectionPool;
 import org.apache.cassandra.streaming.messages.StreamInitMessage;
 import org.apache.cassandra.streaming.messages.StreamMessage;
@@ -75,19 +77,36 @@ public class ConnectionHandler
      */
     public void initiate() throws IOException
     {
+        int version = versionFor(session.peer);
+
         logger.debug("[Stream #{}] Sending stream init for incoming stream", session.planId());
         Socket incomingSocket = connect(session.peer);
-        incoming = new IncomingMessageHandler(session, incomingSocket, StreamMessage.CURRENT_VERSION);
+        incoming = new IncomingMessageHandler(session, incomingSocket, version);
         incoming.sendInitMessage(true);
         incoming.start();
 
         logger.debug("[Stream #{}] Sending stream init for outgoing stream", session.planId());
         Socket outgoingSocket = connect(session.peer);
-        outgoing = new OutgoingMessageHandler(session, outgoingSocket, StreamMessage.CURRENT_VERSION);
+        outgoing = new OutgoingMessageHandler(session, outgoingSocket, version);
         outgoing.sendInitMessage(false);
         outgoing.start();
     }
 
+    /**
+     * Streaming has no version handshake, and a peer drops a connection using a version it doesn't know.
+     * So the initiator goes by the messaging version of the peer: nodes older than 2.1 only know VERSION_20,
+     * with which entire sstables are sent as sections of their data file.
+     *
+     * @return the streaming protocol version to use with @param peer
+     */
+    @VisibleForTesting
+    static int versionFor(InetAddress peer)
+    {
+        return MessagingService.instance().getVersion(peer) < MessagingService.VERSION_21
+               ? StreamMessage.VERSION_20
+               : StreamMessage.CURRENT_VERSION;
+    }
+
     /**
      * Set up outgoing message handler on receiving side.
      *
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Throwables;
+
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RowPosition;
+import org.apache.cassandra.db.compaction.LeveledManifest;
+import org.apache.cassandra.dht.Bounds;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.SSTableMetadata;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.sstable.SSTableWriter;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.streaming.messages.FileMessageHeader;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * EntireSSTableStreamReader writes the files of a streamed SSTable straight to disk, then opens them as they are
+ * instead of rebuilding the SSTable through an SSTableWriter.
+ */
+public class EntireSSTableStreamReader extends StreamReader
+{
+    private static final int CHUNK_SIZE = 10 * 1024 * 1024;
+
+    private final Map<Component, Long> components;
+    private long bytesRead;
+
+    public EntireSSTableStreamReader(FileMessageHeader header, StreamSession session)
+    {
+        super(header, session);
+        this.components = header.components;
+    }
+
+    /**
+     * @param channel where this reads data from
+     * @return SSTable transferred
+     * @throws IOException if reading the remote sstable fails. Will throw an RTE if local write fails.
+     */
+    @Override
+    public SSTableReader read(ReadableByteChannel channel) throws IOException
+    {
+        long totalSize = totalSize();
+
+        Pair<String, String> kscf = Schema.instance.getCF(cfId);
+        ColumnFamilyStore cfs = Keyspace.open(kscf.left).getColumnFamilyStore(kscf.right);
+
+        Descriptor tmpdesc = createDescriptor(cfs, totalSize);
+        try
+        {
+            for (Map.Entry<Component, Long> component : components.entrySet())
+                receive(channel, tmpdesc.filenameFor(component.getKey()), component.getValue(), totalSize);
+
+            // the sender's levels, repair status and ancestors mean nothing here: the generations of the
+            // ancestors are local to the sender, and could make us delete our own sstables as compaction leftovers
+            Pair<SSTableMetadata, Set<Integer>> metadata = SSTableMetadata.serializer.deserialize(tmpdesc);
+            LeveledManifest.mutateLevel(Pair.create(metadata.left, Collections.<Integer>emptySet()), tmpdesc, tmpdesc.filenameFor(Component.STATS), 0);
+            if (metadata.left.repairedAt != SSTableMetadata.UNREPAIRED_SSTABLE)
+                SSTableMetadata.mutateRepairedAt(tmpdesc, SSTableMetadata.UNREPAIRED_SSTABLE);
+
+            Descriptor newdesc = tmpdesc.asTemporary(false);
+            SSTableWriter.rename(tmpdesc, newdesc, components.keySet());
+
+            // the summary is rebuilt and saved when the SSTable is opened
+            Set<Component> sstableComponents = new HashSet<>(components.keySet());
+            sstableComponents.add(Component.SUMMARY);
+            SSTableReader sstable = SSTableReader.open(newdesc, sstableComponents, cfs.metadata, cfs.partitioner);
+            cfs.invalidateCachedRows(new Bounds<RowPosition>(sstable.first, sstable.last));
+            return sstable;
+        }
+        catch (Throwable e)
+        {
+            for (Component component : components.keySet())
+            {
+                FileUtils.delete(tmpdesc.filenameFor(component));
+                FileUtils.delete(tmpdesc.asTemporary(false).filenameFor(component));
+            }
+            drain(Channels.newInputStream(channel), bytesRead);
+            if (e instanceof IOException)
+                throw (IOException) e;
+            else
+                throw Throwables.propagate(e);
+        }
+    }
+
+    private void receive(ReadableByteChannel channel, String filename, long length, long totalSize) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(filename, "rw");
+        try
+        {
+            FileChannel fc = file.getChannel();
+            long bytesReceived = 0;
+            while (bytesReceived < length)
+            {
+                long lastRead = fc.transferFrom(channel, bytesReceived, Math.min(CHUNK_SIZE, length - bytesReceived));
+                if (lastRead == 0)
+                    throw new EOFException(String.format("Stream ended after %d of %d bytes of %s", bytesReceived, length, filename));
+                bytesReceived += lastRead;
+                bytesRead += lastRead;
+                session.progress(desc, ProgressInfo.Direction.IN, bytesRead, totalSize);
+            }
+            fc.force(true);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(file);
+        }
+    }
+
+    @Override
+    protected long totalSize()
+    {
+        long size = 0;
+        for (long componentSize : components.values())
+            size += componentSize;
+        return size;
+    }
+}
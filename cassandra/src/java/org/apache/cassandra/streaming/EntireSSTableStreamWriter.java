@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * EntireSSTableStreamWriter streams the files of an SSTable as they are, transferring them from the page cache
+ * to the channel without copying through the heap.
+ */
+public class EntireSSTableStreamWriter extends StreamWriter
+{
+    private static final int CHUNK_SIZE = 10 * 1024 * 1024;
+
+    private final Map<Component, Long> components;
+
+    public EntireSSTableStreamWriter(SSTableReader sstable, Map<Component, Long> components, StreamSession session)
+    {
+        super(sstable, Collections.<Pair<Long, Long>>emptyList(), session);
+        this.components = components;
+    }
+
+    /**
+     * @return the components to stream for the given SSTable, with their sizes. The summary is left out: it may be
+     * rewritten while we stream, and the receiver rebuilds it from the primary index anyway.
+     */
+    public static Map<Component, Long> components(SSTableReader sstable)
+    {
+        Map<Component, Long> components = new LinkedHashMap<>();
+        for (Component component : sstable.getComponents())
+        {
+            if (component.equals(Component.SUMMARY))
+                continue;
+            File file = new File(sstable.descriptor.filenameFor(component));
+            if (file.exists())
+                components.put(component, file.length());
+        }
+        return components;
+    }
+
+    @Override
+    public void write(WritableByteChannel channel) throws IOException
+    {
+        long totalSize = totalSize();
+        long progress = 0L;
+        for (Map.Entry<Component, Long> component : components.entrySet())
+        {
+            RandomAccessFile file = new RandomAccessFile(sstable.descriptor.filenameFor(component.getKey()), "r");
+            try
+            {
+                FileChannel fc = file.getChannel();
+                long length = component.getValue();
+                if (fc.size() != length)
+                    throw new IOException(String.format("%s changed size from %d to %d since the transfer was planned",
+                                                        sstable.descriptor.filenameFor(component.getKey()), length, fc.size()));
+
+                long bytesTransferred = 0;
+                while (bytesTransferred < length)
+                {
+                    int toTransfer = (int) Math.min(CHUNK_SIZE, length - bytesTransferred);
+                    limiter.acquire(toTransfer);
+                    long lastWrite = fc.transferTo(bytesTransferred, toTransfer, channel);
+                    bytesTransferred += lastWrite;
+                    progress += lastWrite;
+                    session.progress(sstable.descriptor, ProgressInfo.Direction.OUT, progress, totalSize);
+                }
+            }
+            finally
+            {
+                // no matter what happens close file
+                FileUtils.closeQuietly(file);
+            }
+        }
+
+        sstable.releaseReference();
+    }
+
+    @Override
+    protected long totalSize()
+    {
+        long size = 0;
+        for (long componentSize : components.values())
+            size += componentSize;
+        return size;
+    }
+}
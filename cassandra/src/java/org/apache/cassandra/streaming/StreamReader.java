@@ -103,13 +103,21 @@ public class StreamReader
     }
 
     protected SSTableWriter createWriter(ColumnFamilyStore cfs, long totalSize) throws IOException
+    {
+        createDescriptor(cfs, totalSize);
+        return new SSTableWriter(desc.filenameFor(Component.DATA), estimatedKeys);
+    }
+
+    /**
+     * Picks the directory and the temporary descriptor the received SSTable is written to.
+     */
+    protected Descriptor createDescriptor(ColumnFamilyStore cfs, long totalSize) throws IOException
     {
         Directories.DataDirectory localDir = cfs.directories.getWriteableLocation();
         if (localDir == null)
             throw new IOException("Insufficient disk space to store " + totalSize + " bytes");
         desc = Descriptor.fromFilename(cfs.getTempSSTablePath(cfs.directories.getLocationForDisk(localDir)));
-
-        return new SSTableWriter(desc.filenameFor(Component.DATA), estimatedKeys);
+        return desc;
     }
 
     protected void drain(InputStream dis, long bytesRead) throws IOException
@@ -24,10 +24,17 @@ import java.io.IOException;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.streaming.EntireSSTableStreamReader;
+import org.apache.cassandra.streaming.EntireSSTableStreamWriter;
 import org.apache.cassandra.streaming.StreamReader;
 import org.apache.cassandra.streaming.StreamSession;
 import org.apache.cassandra.streaming.StreamWriter;
@@ -47,8 +54,13 @@ public class FileMessage extends StreamMessage
         {
             DataInputStream input = new DataInputStream(Channels.newInputStream(in));
             FileMessageHeader header = FileMessageHeader.serializer.deserialize(input, version);
-            StreamReader reader = header.compressionInfo == null ? new StreamReader(header, session)
-                                          : new CompressedStreamReader(header, session);
+            StreamReader reader;
+            if (header.isEntireSSTable())
+                reader = new EntireSSTableStreamReader(header, session);
+            else if (header.compressionInfo != null)
+                reader = new CompressedStreamReader(header, session);
+            else
+                reader = new StreamReader(header, session);
 
             try
             {
@@ -64,12 +76,20 @@ public class FileMessage extends StreamMessage
         public void serialize(FileMessage message, WritableByteChannel out, int version, StreamSession session) throws IOException
         {
             DataOutput output = new DataOutputStream(Channels.newOutputStream(out));
-            FileMessageHeader.serializer.serialize(message.header, output, version);
-            StreamWriter writer = message.header.compressionInfo == null ?
-                                          new StreamWriter(message.sstable, message.header.sections, session) :
-                                          new CompressedStreamWriter(message.sstable,
-                                                                     message.header.sections,
-                                                                     message.header.compressionInfo, session);
+            FileMessageHeader header = message.header;
+            // peers on an older protocol can't receive entire sstables, so they get the sections of the data file
+            if (header.isEntireSSTable() && version < VERSION_21)
+                header = createHeader(message.sstable, header.sequenceNumber, header.estimatedKeys, header.sections, false);
+            FileMessageHeader.serializer.serialize(header, output, version);
+            StreamWriter writer;
+            if (header.isEntireSSTable())
+                writer = new EntireSSTableStreamWriter(message.sstable, header.components, session);
+            else if (header.compressionInfo != null)
+                writer = new CompressedStreamWriter(message.sstable,
+                                                    header.sections,
+                                                    header.compressionInfo, session);
+            else
+                writer = new StreamWriter(message.sstable, header.sections, session);
             writer.write(out);
             session.fileSent(message.header);
         }
@@ -89,19 +109,43 @@ public class FileMessage extends StreamMessage
     {
         super(Type.FILE);
         this.sstable = sstable;
+        this.header = createHeader(sstable, sequenceNumber, estimatedKeys, sections, coversEntireSSTable(sstable, sections));
+    }
+
+    private static FileMessageHeader createHeader(SSTableReader sstable, int sequenceNumber, long estimatedKeys, List<Pair<Long, Long>> sections, boolean entireSSTable)
+    {
+        Map<Component, Long> components = Collections.emptyMap();
+        if (entireSSTable)
+            components = EntireSSTableStreamWriter.components(sstable);
 
         CompressionInfo compressionInfo = null;
-        if (sstable.compression)
+        if (sstable.compression && components.isEmpty())
         {
             CompressionMetadata meta = sstable.getCompressionMetadata();
             compressionInfo = new CompressionInfo(meta.getChunksForSections(sections), meta.parameters);
         }
-        this.header = new FileMessageHeader(sstable.metadata.cfId,
-                                            sequenceNumber,
-                                            sstable.descriptor.version.toString(),
-                                            estimatedKeys,
-                                            sections,
-                                            compressionInfo);
+        return new FileMessageHeader(sstable.metadata.cfId,
+                                     sequenceNumber,
+                                     sstable.descriptor.version.toString(),
+                                     estimatedKeys,
+                                     sections,
+                                     compressionInfo,
+                                     components);
+    }
+
+    /**
+     * @return true if the sections cover the entire data file of an SSTable the receiver can use as it is, in
+     * which case we can send its files rather than re-serialize its rows.
+     */
+    private static boolean coversEntireSSTable(SSTableReader sstable, List<Pair<Long, Long>> sections)
+    {
+        if (!DatabaseDescriptor.streamEntireSSTables() || !sstable.descriptor.version.equals(Descriptor.Version.CURRENT))
+            return false;
+
+        long length = 0;
+        for (Pair<Long, Long> section : sections)
+            length += section.right - section.left;
+        return length == sstable.uncompressedLength();
     }
 
     @Override
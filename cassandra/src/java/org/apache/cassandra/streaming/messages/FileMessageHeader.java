@@ -21,12 +21,16 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.io.IVersionedSerializer;
 import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.streaming.compress.CompressionInfo;
 import org.apache.cassandra.utils.Pair;
@@ -46,6 +50,8 @@ public class FileMessageHeader
     public final long estimatedKeys;
     public final List<Pair<Long, Long>> sections;
     public final CompressionInfo compressionInfo;
+    /** Components and their sizes when the entire SSTable is transferred as is, empty otherwise */
+    public final Map<Component, Long> components;
 
     public FileMessageHeader(UUID cfId,
                              int sequenceNumber,
@@ -53,6 +59,17 @@ public class FileMessageHeader
                              long estimatedKeys,
                              List<Pair<Long, Long>> sections,
                              CompressionInfo compressionInfo)
+    {
+        this(cfId, sequenceNumber, version, estimatedKeys, sections, compressionInfo, Collections.<Component, Long>emptyMap());
+    }
+
+    public FileMessageHeader(UUID cfId,
+                             int sequenceNumber,
+                             String version,
+                             long estimatedKeys,
+                             List<Pair<Long, Long>> sections,
+                             CompressionInfo compressionInfo,
+                             Map<Component, Long> components)
     {
         this.cfId = cfId;
         this.sequenceNumber = sequenceNumber;
@@ -60,6 +77,15 @@ public class FileMessageHeader
         this.estimatedKeys = estimatedKeys;
         this.sections = sections;
         this.compressionInfo = compressionInfo;
+        this.components = components;
+    }
+
+    /**
+     * @return true if the SSTable files are transferred as is, rather than the sections of its data file
+     */
+    public boolean isEntireSSTable()
+    {
+        return !components.isEmpty();
     }
 
     /**
@@ -68,7 +94,12 @@ public class FileMessageHeader
     public long size()
     {
         long size = 0;
-        if (compressionInfo != null)
+        if (isEntireSSTable())
+        {
+            for (long componentSize : components.values())
+                size += componentSize;
+        }
+        else if (compressionInfo != null)
         {
             // calculate total length of transferring chunks
             for (CompressionMetadata.Chunk chunk : compressionInfo.chunks)
@@ -92,6 +123,7 @@ public class FileMessageHeader
         sb.append(", estimated keys: ").append(estimatedKeys);
         sb.append(", transfer size: ").append(size());
         sb.append(", compressed?: ").append(compressionInfo != null);
+        sb.append(", entire sstable?: ").append(isEntireSSTable());
         sb.append(')');
         return sb.toString();
     }
@@ -129,6 +161,18 @@ public class FileMessageHeader
                 out.writeLong(section.right);
             }
             CompressionInfo.serializer.serialize(header.compressionInfo, out, version);
+
+            if (version < StreamMessage.VERSION_21)
+            {
+                assert !header.isEntireSSTable() : "Entire sstables can't be streamed with protocol version " + version;
+                return;
+            }
+            out.writeInt(header.components.size());
+            for (Map.Entry<Component, Long> component : header.components.entrySet())
+            {
+                out.writeUTF(component.getKey().name());
+                out.writeLong(component.getValue());
+            }
         }
 
         public FileMessageHeader deserialize(DataInput in, int version) throws IOException
@@ -142,7 +186,14 @@ public class FileMessageHeader
             for (int k = 0; k < count; k++)
                 sections.add(Pair.create(in.readLong(), in.readLong()));
             CompressionInfo compressionInfo = CompressionInfo.serializer.deserialize(in, MessagingService.current_version);
-            return new FileMessageHeader(cfId, sequenceNumber, sstableVersion, estimatedKeys, sections, compressionInfo);
+            if (version < StreamMessage.VERSION_21)
+                return new FileMessageHeader(cfId, sequenceNumber, sstableVersion, estimatedKeys, sections, compressionInfo);
+
+            int componentCount = in.readInt();
+            Map<Component, Long> components = new LinkedHashMap<>(componentCount);
+            for (int k = 0; k < componentCount; k++)
+                components.put(Component.parse(in.readUTF()), in.readLong());
+            return new FileMessageHeader(cfId, sequenceNumber, sstableVersion, estimatedKeys, sections, compressionInfo, components);
         }
 
         public long serializedSize(FileMessageHeader header, int version)
@@ -159,6 +210,15 @@ public class FileMessageHeader
                 size += TypeSizes.NATIVE.sizeof(section.right);
             }
             size += CompressionInfo.serializer.serializedSize(header.compressionInfo, version);
+
+            if (version < StreamMessage.VERSION_21)
+                return size;
+            size += TypeSizes.NATIVE.sizeof(header.components.size());
+            for (Map.Entry<Component, Long> component : header.components.entrySet())
+            {
+                size += TypeSizes.NATIVE.sizeof(component.getKey().name());
+                size += TypeSizes.NATIVE.sizeof(component.getValue());
+            }
             return size;
         }
     }
@@ -32,7 +32,9 @@ import org.apache.cassandra.streaming.StreamSession;
 public abstract class StreamMessage
 {
     /** Streaming protocol version */
-    public static final int CURRENT_VERSION = 1;
+    public static final int VERSION_20 = 1;
+    public static final int VERSION_21 = 2; // file message headers list the components of entire sstables
+    public static final int CURRENT_VERSION = VERSION_21;
 
     public static void serialize(StreamMessage message, WritableByteChannel out, int version, StreamSession session) throws IOException
     {
@@ -21,10 +21,17 @@
 
 package org.apache.cassandra.tracing;
 
+import java.util.Collections;
 import java.util.UUID;
 
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.utils.FBUtilities;
 
+/**
+ * The state of a session that is already closed out here, see CASSANDRA-5668. It is used for an event or
+ * two, so these are written straight through rather than buffered for the tracing flusher.
+ */
 public class ExpiredTraceState extends TraceState
 {
     public ExpiredTraceState(UUID sessionId)
@@ -36,4 +43,17 @@ public class ExpiredTraceState extends TraceState
     {
         return -1;
     }
+
+    @Override
+    public void trace(String message)
+    {
+        final Event event = newEvent(message);
+        StageManager.getStage(Stage.TRACING).execute(new Runnable()
+        {
+            public void run()
+            {
+                Tracing.mutateWithCatch(eventsMutation(Collections.singletonList(event)));
+            }
+        });
+    }
 }
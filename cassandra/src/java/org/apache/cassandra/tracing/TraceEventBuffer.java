@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.tracing;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free ring buffer of the trace events of a session. Any number of threads may add
+ * events, but a single thread (the tracing flusher) drains them. Events added while the buffer is full
+ * are rejected rather than waiting for room, so tracing never blocks the request path.
+ */
+class TraceEventBuffer
+{
+    private final AtomicReferenceArray<TraceState.Event> slots;
+    private final int mask;
+
+    // next slot to write to; slots are reserved by incrementing it, then published by setting them
+    private final AtomicLong tail = new AtomicLong();
+    // next slot to read; only ever written by the draining thread
+    private volatile long head;
+
+    TraceEventBuffer(int capacity)
+    {
+        assert capacity > 0 && Integer.bitCount(capacity) == 1 : "capacity must be a power of two: " + capacity;
+        slots = new AtomicReferenceArray<TraceState.Event>(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return false if the buffer is full and the event was dropped
+     */
+    boolean offer(TraceState.Event event)
+    {
+        while (true)
+        {
+            long current = tail.get();
+            if (current - head >= slots.length())
+                return false;
+
+            if (tail.compareAndSet(current, current + 1))
+            {
+                slots.set((int) (current & mask), event);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves the published events to <code>sink</code>, in the order their slots were reserved in.
+     * Stops at the first slot that is reserved but not published yet; its event is drained next time.
+     *
+     * @return the number of events drained
+     */
+    int drainTo(Collection<TraceState.Event> sink)
+    {
+        long current = head;
+        int drained = 0;
+        while (true)
+        {
+            int index = (int) (current & mask);
+            TraceState.Event event = slots.get(index);
+            if (event == null)
+                break;
+
+            slots.lazySet(index, null);
+            sink.add(event);
+            current++;
+            drained++;
+        }
+        // frees the drained slots for the writers
+        head = current;
+        return drained;
+    }
+}
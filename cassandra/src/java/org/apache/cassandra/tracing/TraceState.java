@@ -19,14 +19,15 @@ package org.apache.cassandra.tracing;
 
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.base.Stopwatch;
 import org.slf4j.helpers.MessageFormatter;
 
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.RowMutation;
@@ -34,19 +35,28 @@ import org.apache.cassandra.db.TreeMapBackedSortedColumns;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.UUIDGen;
-import org.apache.cassandra.utils.WrappedRunnable;
 
 /**
  * ThreadLocal state for a tracing session. The presence of an instance of this class as a ThreadLocal denotes that an
  * operation is being traced.
+ *
+ * Trace events are buffered in memory and written to system_traces.events in batches by the tracing flusher
+ * (see Tracing.flushEvents). Once MAX_BUFFERED_EVENTS are waiting, further events of the session are dropped.
+ * The buffer is only allocated on the first event, as many sessions trace few events or none on a given node.
  */
 public class TraceState
 {
+    static final int MAX_BUFFERED_EVENTS = 1024;
+
     public final UUID sessionId;
     public final InetAddress coordinator;
     public final Stopwatch watch;
     public final ByteBuffer sessionIdBytes;
 
+    private volatile TraceEventBuffer events;
+    // true while the session is queued for the flusher
+    private final AtomicBoolean pendingFlush = new AtomicBoolean();
+
     public TraceState(InetAddress coordinator, UUID sessionId)
     {
         assert coordinator != null;
@@ -82,27 +92,90 @@ public class TraceState
 
     public void trace(String message)
     {
-        TraceState.trace(sessionIdBytes, message, elapsed());
+        if (!events().offer(newEvent(message)))
+        {
+            Tracing.instance.metrics.droppedEvents.inc();
+            return;
+        }
+
+        // the event must be published before we check the flag, see drainEvents()
+        if (pendingFlush.compareAndSet(false, true))
+            Tracing.instance.scheduleFlush(this);
     }
 
-    public static void trace(final ByteBuffer sessionIdBytes, final String message, final int elapsed)
+    Event newEvent(String message)
     {
-        final ByteBuffer eventId = ByteBuffer.wrap(UUIDGen.getTimeUUIDBytes());
-        final String threadName = Thread.currentThread().getName();
+        return new Event(ByteBuffer.wrap(UUIDGen.getTimeUUIDBytes()), message, elapsed(), Thread.currentThread().getName());
+    }
 
-        StageManager.getStage(Stage.TRACING).execute(new WrappedRunnable()
+    private TraceEventBuffer events()
+    {
+        TraceEventBuffer buffer = events;
+        if (buffer == null)
         {
-            public void runMayThrow()
+            synchronized (this)
             {
-                CFMetaData cfMeta = CFMetaData.TraceEventsCf;
-                ColumnFamily cf = TreeMapBackedSortedColumns.factory.create(cfMeta);
-                Tracing.addColumn(cf, Tracing.buildName(cfMeta, eventId, ByteBufferUtil.bytes("activity")), message);
-                Tracing.addColumn(cf, Tracing.buildName(cfMeta, eventId, ByteBufferUtil.bytes("source")), FBUtilities.getBroadcastAddress());
-                if (elapsed >= 0)
-                    Tracing.addColumn(cf, Tracing.buildName(cfMeta, eventId, ByteBufferUtil.bytes("source_elapsed")), elapsed);
-                Tracing.addColumn(cf, Tracing.buildName(cfMeta, eventId, ByteBufferUtil.bytes("thread")), threadName);
-                Tracing.mutateWithCatch(new RowMutation(Tracing.TRACE_KS, sessionIdBytes, cf));
+                buffer = events;
+                if (buffer == null)
+                {
+                    buffer = new TraceEventBuffer(MAX_BUFFERED_EVENTS);
+                    events = buffer;
+                }
             }
-        });
+        }
+        return buffer;
+    }
+
+    /**
+     * Called by the tracing flusher only.
+     *
+     * @return a mutation adding the buffered events to system_traces.events, or null if there are none
+     */
+    RowMutation drainEvents()
+    {
+        // clear the flag first: an event published after this re-queues the session, and one published
+        // before it is drained below
+        pendingFlush.set(false);
+
+        TraceEventBuffer buffer = events;
+        List<Event> drained = new ArrayList<Event>();
+        if (buffer == null || buffer.drainTo(drained) == 0)
+            return null;
+        Tracing.instance.metrics.flushedEvents.inc(drained.size());
+        return eventsMutation(drained);
+    }
+
+    /**
+     * @return a mutation adding <code>batch</code> to system_traces.events
+     */
+    RowMutation eventsMutation(List<Event> batch)
+    {
+        CFMetaData cfMeta = CFMetaData.TraceEventsCf;
+        ColumnFamily cf = TreeMapBackedSortedColumns.factory.create(cfMeta);
+        for (Event event : batch)
+        {
+            Tracing.addColumn(cf, Tracing.buildName(cfMeta, event.eventId, ByteBufferUtil.bytes("activity")), event.message);
+            Tracing.addColumn(cf, Tracing.buildName(cfMeta, event.eventId, ByteBufferUtil.bytes("source")), FBUtilities.getBroadcastAddress());
+            if (event.elapsed >= 0)
+                Tracing.addColumn(cf, Tracing.buildName(cfMeta, event.eventId, ByteBufferUtil.bytes("source_elapsed")), event.elapsed);
+            Tracing.addColumn(cf, Tracing.buildName(cfMeta, event.eventId, ByteBufferUtil.bytes("thread")), event.threadName);
+        }
+        return new RowMutation(Tracing.TRACE_KS, sessionIdBytes, cf);
+    }
+
+    static final class Event
+    {
+        final ByteBuffer eventId;
+        final String message;
+        final int elapsed;
+        final String threadName;
+
+        Event(ByteBuffer eventId, String message, int elapsed, String threadName)
+        {
+            this.eventId = eventId;
+            this.message = message;
+            this.elapsed = elapsed;
+            this.threadName = threadName;
+        }
     }
 }
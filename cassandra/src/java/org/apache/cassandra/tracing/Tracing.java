@@ -21,15 +21,21 @@ package org.apache.cassandra.tracing;
 
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.concurrent.DebuggableScheduledThreadPoolExecutor;
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.CFMetaData;
@@ -39,6 +45,7 @@ import org.apache.cassandra.db.marshal.TimeUUIDType;
 import org.apache.cassandra.exceptions.OverloadedException;
 import org.apache.cassandra.exceptions.UnavailableException;
 import org.apache.cassandra.exceptions.WriteTimeoutException;
+import org.apache.cassandra.metrics.TracingMetrics;
 import org.apache.cassandra.net.MessageIn;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageProxy;
@@ -60,6 +67,10 @@ public class Tracing
     public static final String TRACE_HEADER = "TraceSession";
 
     private static final int TTL = 24 * 3600;
+    // how often buffered trace events are written out
+    private static final int FLUSH_INTERVAL_IN_MS = 100;
+    // maximum number of sessions whose events are written with a single StorageProxy.mutate call
+    private static final int MAX_SESSIONS_PER_FLUSH = 64;
 
     private static final Logger logger = LoggerFactory.getLogger(Tracing.class);
 
@@ -69,8 +80,25 @@ public class Tracing
 
     private final ConcurrentMap<UUID, TraceState> sessions = new ConcurrentHashMap<UUID, TraceState>();
 
+    // sessions with buffered events; they are only ever drained by the flusher thread
+    private final Queue<TraceState> pendingFlush = new ConcurrentLinkedQueue<TraceState>();
+    private final DebuggableScheduledThreadPoolExecutor flusher = new DebuggableScheduledThreadPoolExecutor("TracingFlusher");
+
+    public final TracingMetrics metrics = new TracingMetrics();
+
     public static final Tracing instance = new Tracing();
 
+    private Tracing()
+    {
+        flusher.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                flushEvents();
+            }
+        }, FLUSH_INTERVAL_IN_MS, FLUSH_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+    }
+
     public static void addColumn(ColumnFamily cf, ByteBuffer name, InetAddress address)
     {
         addColumn(cf, name, ByteBufferUtil.bytes(address));
@@ -163,10 +191,12 @@ public class Tracing
             final int elapsed = state.elapsed();
             final ByteBuffer sessionIdBytes = state.sessionIdBytes;
 
-            StageManager.getStage(Stage.TRACING).execute(new Runnable()
+            // the session is only recorded as complete once the events traced so far have been written
+            flusher.execute(new Runnable()
             {
                 public void run()
                 {
+                    flushEvents();
                     CFMetaData cfMeta = CFMetaData.TraceSessionsCf;
                     ColumnFamily cf = ArrayBackedSortedColumns.factory.create(cfMeta);
                     addColumn(cf, buildName(cfMeta, bytes("duration")), elapsed);
@@ -283,11 +313,47 @@ public class Tracing
         state.trace(format, args);
     }
 
+    void scheduleFlush(TraceState state)
+    {
+        pendingFlush.offer(state);
+    }
+
+    /**
+     * Writes out the buffered events of all sessions, batching the mutations of several sessions together.
+     * Must only be called by the flusher thread.
+     */
+    private void flushEvents()
+    {
+        List<RowMutation> mutations = new ArrayList<RowMutation>();
+        TraceState state;
+        while ((state = pendingFlush.poll()) != null)
+        {
+            RowMutation mutation = state.drainEvents();
+            if (mutation == null)
+                continue;
+
+            mutations.add(mutation);
+            if (mutations.size() == MAX_SESSIONS_PER_FLUSH)
+            {
+                mutateWithCatch(mutations);
+                mutations = new ArrayList<RowMutation>();
+            }
+        }
+
+        if (!mutations.isEmpty())
+            mutateWithCatch(mutations);
+    }
+
     static void mutateWithCatch(RowMutation mutation)
+    {
+        mutateWithCatch(Arrays.asList(mutation));
+    }
+
+    static void mutateWithCatch(List<RowMutation> mutations)
     {
         try
         {
-            StorageProxy.mutate(Arrays.asList(mutation), ConsistencyLevel.ANY);
+            StorageProxy.mutate(mutations, ConsistencyLevel.ANY);
         }
         catch (UnavailableException | WriteTimeoutException e)
         {
@@ -405,4 +405,19 @@ public abstract class CBUtil
         cb.readBytes(bytes);
         return bytes;
     }
+
+    /*
+     * Reads *all* readable bytes from {@code cb} and return them as a heap buffer.
+     * Unlike readRawBytes, this doesn't copy them if {@code cb} is backed by only part of an array, as
+     * are the slices frame bodies are read into.
+     */
+    public static ByteBuffer readRawByteBuffer(ChannelBuffer cb)
+    {
+        if (!cb.hasArray())
+            return ByteBuffer.wrap(readRawBytes(cb));
+
+        ByteBuffer bytes = cb.toByteBuffer();
+        cb.readerIndex(cb.writerIndex());
+        return bytes;
+    }
 }
@@ -20,13 +20,16 @@ package org.apache.cassandra.transport;
 
 import java.io.IOException;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.socket.nio.NioSocketChannel;
 import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 import org.jboss.netty.handler.codec.frame.*;
+import org.jboss.netty.handler.queue.BufferedWriteHandler;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.exceptions.InvalidRequestException;
@@ -252,6 +255,47 @@ public class Frame
         }
     }
 
+    /**
+     * Holds the encoded frames written to a channel until the end of the current iteration of its event loop,
+     * so that the responses that became ready meanwhile, be they executed on the I/O thread or by the request
+     * executor, go out in a single write (and SSL record) rather than one each.
+     */
+    public static class WriteCoalescer extends BufferedWriteHandler
+    {
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final Runnable flushTask = new Runnable()
+        {
+            public void run()
+            {
+                flushScheduled.set(false);
+                flush();
+            }
+        };
+
+        public WriteCoalescer()
+        {
+            super(true);
+        }
+
+        @Override
+        public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception
+        {
+            super.writeRequested(ctx, e);
+            if (flushScheduled.compareAndSet(false, true))
+                scheduleFlush(ctx.getChannel());
+        }
+
+        private void scheduleFlush(Channel channel)
+        {
+            // Unlike ChannelPipeline.execute(), this doesn't run the task right away when called from the event
+            // loop itself, which is what lets the requests executed on the I/O thread share a flush.
+            if (channel instanceof NioSocketChannel)
+                ((NioSocketChannel) channel).getWorker().executeInIoThread(flushTask, true);
+            else
+                channel.getPipeline().execute(flushTask);
+        }
+    }
+
     public static class Decompressor extends OneToOneDecoder
     {
         public Object decode(ChannelHandlerContext ctx, Channel channel, Object msg)
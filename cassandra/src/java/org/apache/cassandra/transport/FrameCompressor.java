@@ -18,6 +18,7 @@
 package org.apache.cassandra.transport;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.xerial.snappy.Snappy;
@@ -32,8 +33,7 @@ public interface FrameCompressor
     public Frame decompress(Frame frame) throws IOException;
 
     /*
-     * TODO: We can probably do more efficient, like by avoiding copy.
-     * Also, we don't reuse ICompressor because the API doesn't expose enough.
+     * Note that we don't reuse ICompressor because the API doesn't expose enough.
      */
     public static class SnappyCompressor implements FrameCompressor
     {
@@ -73,22 +73,24 @@ public interface FrameCompressor
 
         public Frame compress(Frame frame) throws IOException
         {
-            byte[] input = CBUtil.readRawBytes(frame.body);
-            byte[] output = new byte[Snappy.maxCompressedLength(input.length)];
+            ByteBuffer input = CBUtil.readRawByteBuffer(frame.body);
+            int offset = input.arrayOffset() + input.position();
+            byte[] output = new byte[Snappy.maxCompressedLength(input.remaining())];
 
-            int written = Snappy.compress(input, 0, input.length, output, 0);
+            int written = Snappy.compress(input.array(), offset, input.remaining(), output, 0);
             return frame.with(ChannelBuffers.wrappedBuffer(output, 0, written));
         }
 
         public Frame decompress(Frame frame) throws IOException
         {
-            byte[] input = CBUtil.readRawBytes(frame.body);
+            ByteBuffer input = CBUtil.readRawByteBuffer(frame.body);
+            int offset = input.arrayOffset() + input.position();
 
-            if (!Snappy.isValidCompressedBuffer(input, 0, input.length))
+            if (!Snappy.isValidCompressedBuffer(input.array(), offset, input.remaining()))
                 throw new ProtocolException("Provided frame does not appear to be Snappy compressed");
 
-            byte[] output = new byte[Snappy.uncompressedLength(input)];
-            int size = Snappy.uncompress(input, 0, input.length, output, 0);
+            byte[] output = new byte[Snappy.uncompressedLength(input.array(), offset, input.remaining())];
+            int size = Snappy.uncompress(input.array(), offset, input.remaining(), output, 0);
             return frame.with(ChannelBuffers.wrappedBuffer(output, 0, size));
         }
     }
@@ -118,19 +120,20 @@ public interface FrameCompressor
 
         public Frame compress(Frame frame) throws IOException
         {
-            byte[] input = CBUtil.readRawBytes(frame.body);
+            ByteBuffer input = CBUtil.readRawByteBuffer(frame.body);
+            int length = input.remaining();
 
-            int maxCompressedLength = compressor.maxCompressedLength(input.length);
+            int maxCompressedLength = compressor.maxCompressedLength(length);
             byte[] output = new byte[INTEGER_BYTES + maxCompressedLength];
 
-            output[0] = (byte) (input.length >>> 24);
-            output[1] = (byte) (input.length >>> 16);
-            output[2] = (byte) (input.length >>>  8);
-            output[3] = (byte) (input.length);
+            output[0] = (byte) (length >>> 24);
+            output[1] = (byte) (length >>> 16);
+            output[2] = (byte) (length >>>  8);
+            output[3] = (byte) (length);
 
             try
             {
-                int written = compressor.compress(input, 0, input.length, output, INTEGER_BYTES, maxCompressedLength);
+                int written = compressor.compress(input.array(), input.arrayOffset() + input.position(), length, output, INTEGER_BYTES, maxCompressedLength);
                 return frame.with(ChannelBuffers.wrappedBuffer(output, 0, INTEGER_BYTES + written));
             }
             catch (LZ4Exception e)
@@ -141,19 +144,15 @@ public interface FrameCompressor
 
         public Frame decompress(Frame frame) throws IOException
         {
-            byte[] input = CBUtil.readRawBytes(frame.body);
-
-            int uncompressedLength = ((input[0] & 0xFF) << 24)
-                                   | ((input[1] & 0xFF) << 16)
-                                   | ((input[2] & 0xFF) <<  8)
-                                   | ((input[3] & 0xFF));
+            ByteBuffer input = CBUtil.readRawByteBuffer(frame.body);
+            int uncompressedLength = input.getInt();
 
             byte[] output = new byte[uncompressedLength];
 
             try
             {
-                int read = decompressor.decompress(input, INTEGER_BYTES, output, 0, uncompressedLength);
-                if (read != input.length - INTEGER_BYTES)
+                int read = decompressor.decompress(input.array(), input.arrayOffset() + input.position(), output, 0, uncompressedLength);
+                if (read != input.remaining())
                     throw new IOException("Compressed lengths mismatch");
 
                 return frame.with(ChannelBuffers.wrappedBuffer(output));
@@ -19,6 +19,7 @@ package org.apache.cassandra.transport;
 
 import java.util.EnumSet;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -160,6 +161,24 @@ public abstract class Message
 
         public abstract Response execute(QueryState queryState);
 
+        /**
+         * Whether this request may be cheap enough not to block, in which case executeOnIOThread() is tried
+         * directly on the I/O thread it was read on, saving the hand-off to (and back from) the request executor.
+         */
+        public boolean canExecuteOnIOThread()
+        {
+            return false;
+        }
+
+        /**
+         * Executes this request on the I/O thread, if it can be without blocking.
+         * @return the response, or null if this request must be handed to the request executor after all
+         */
+        public Response executeOnIOThread(QueryState queryState)
+        {
+            return execute(queryState);
+        }
+
         public void setTracingRequested()
         {
             this.tracingRequested = true;
@@ -283,16 +302,39 @@ public abstract class Message
 
     public static class Dispatcher extends SimpleChannelUpstreamHandler
     {
+        private final Executor requestExecutor;
+
+        public Dispatcher(Executor requestExecutor)
+        {
+            this.requestExecutor = requestExecutor;
+        }
+
         @Override
-        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+        public void messageReceived(final ChannelHandlerContext ctx, MessageEvent e)
         {
             assert e.getMessage() instanceof Message : "Expecting message, got " + e.getMessage();
 
             if (e.getMessage() instanceof Response)
                 throw new ProtocolException("Invalid response message received, expecting requests");
 
-            Request request = (Request)e.getMessage();
+            final Request request = (Request)e.getMessage();
+            if (request.canExecuteOnIOThread() && process(ctx, request, true))
+                return;
+
+            requestExecutor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    process(ctx, request, false);
+                }
+            });
+        }
 
+        /**
+         * @return false if the request was to be executed on the I/O thread but couldn't, and wasn't answered
+         */
+        private boolean process(ChannelHandlerContext ctx, Request request, boolean onIOThread)
+        {
             try
             {
                 assert request.connection() instanceof ServerConnection;
@@ -301,7 +343,10 @@ public abstract class Message
 
                 logger.debug("Received: {}, v={}", request, connection.getVersion());
 
-                Response response = request.execute(qstate);
+                Response response = onIOThread ? request.executeOnIOThread(qstate) : request.execute(qstate);
+                if (response == null)
+                    return false;
+
                 response.setStreamId(request.getStreamId());
                 response.attach(connection);
                 connection.applyStateTransition(request.type, response.type);
@@ -315,6 +360,7 @@ public abstract class Message
                 // Don't let the exception propagate to exceptionCaught() if we can help it so that we can assign the right streamID.
                 ctx.getChannel().write(ErrorMessage.fromException(ex).setStreamId(request.getStreamId()));
             }
+            return true;
         }
 
         @Override
@@ -33,6 +33,8 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.auth.IAuthenticator;
 import org.apache.cassandra.auth.ISaslAwareAuthenticator;
+import org.apache.cassandra.concurrent.SharedExecutorPool;
+import org.apache.cassandra.concurrent.SharedPoolExecutor;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.EncryptionOptions;
 import org.apache.cassandra.metrics.ClientMetrics;
@@ -44,7 +46,6 @@ import org.jboss.netty.channel.*;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
-import org.jboss.netty.handler.execution.ExecutionHandler;
 import org.jboss.netty.handler.ssl.SslHandler;
 import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.logging.Slf4JLoggerFactory;
@@ -61,6 +62,9 @@ public class Server implements CassandraDaemon.Server
     /** current version of the native protocol we support */
     public static final int CURRENT_VERSION = 2;
 
+    // Number of request we accept to queue before blocking. We could allow this to be configured...
+    private static final int MAX_QUEUED_REQUESTS = 128;
+
     private final ConnectionTracker connectionTracker = new ConnectionTracker();
 
     private final Connection.Factory connectionFactory = new Connection.Factory()
@@ -75,7 +79,7 @@ public class Server implements CassandraDaemon.Server
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
 
     private ChannelFactory factory;
-    private ExecutionHandler executionHandler;
+    private SharedPoolExecutor requestExecutor;
 
     public Server(InetSocketAddress socket)
     {
@@ -134,7 +138,11 @@ public class Server implements CassandraDaemon.Server
         }
 
         // Configure the server.
-        executionHandler = new ExecutionHandler(new RequestThreadPoolExecutor());
+        // requests run on the shared pool, so their local reads and writes can run inline on the same worker
+        requestExecutor = SharedExecutorPool.SHARED.newExecutor(DatabaseDescriptor.getNativeTransportMaxThreads(),
+                                                                MAX_QUEUED_REQUESTS,
+                                                                "transport",
+                                                                "Native-Transport-Requests");
         factory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
         ServerBootstrap bootstrap = new ServerBootstrap(factory);
 
@@ -176,8 +184,8 @@ public class Server implements CassandraDaemon.Server
         connectionTracker.closeAll();
         factory.releaseExternalResources();
         factory = null;
-        executionHandler.releaseExternalResources();
-        executionHandler = null;
+        requestExecutor.shutdown();
+        requestExecutor = null;
         logger.info("Stop listening for CQL clients");
     }
 
@@ -238,13 +246,14 @@ public class Server implements CassandraDaemon.Server
         private static final Frame.Decompressor frameDecompressor = new Frame.Decompressor();
         private static final Frame.Compressor frameCompressor = new Frame.Compressor();
         private static final Frame.Encoder frameEncoder = new Frame.Encoder();
-        private static final Message.Dispatcher dispatcher = new Message.Dispatcher();
 
         private final Server server;
+        private final Message.Dispatcher dispatcher;
 
         public PipelineFactory(Server server)
         {
             this.server = server;
+            this.dispatcher = new Message.Dispatcher(server.requestExecutor);
         }
 
         public ChannelPipeline getPipeline() throws Exception
@@ -253,6 +262,8 @@ public class Server implements CassandraDaemon.Server
 
             //pipeline.addLast("debug", new LoggingHandler());
 
+            pipeline.addLast("writeCoalescer", new Frame.WriteCoalescer());
+
             pipeline.addLast("frameDecoder", new Frame.Decoder(server.connectionFactory));
             pipeline.addLast("frameEncoder", frameEncoder);
 
@@ -262,8 +273,6 @@ public class Server implements CassandraDaemon.Server
             pipeline.addLast("messageDecoder", messageDecoder);
             pipeline.addLast("messageEncoder", messageEncoder);
 
-            pipeline.addLast("executor", server.executionHandler);
-
             pipeline.addLast("dispatcher", dispatcher);
 
             return pipeline;
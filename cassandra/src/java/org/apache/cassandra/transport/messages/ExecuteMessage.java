@@ -26,12 +26,17 @@ import com.google.common.collect.ImmutableMap;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 
+import org.apache.cassandra.auth.AllowAllAuthorizer;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.cql3.CQLStatement;
 import org.apache.cassandra.cql3.QueryProcessor;
 import org.apache.cassandra.cql3.QueryOptions;
+import org.apache.cassandra.cql3.statements.SelectStatement;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.exceptions.PreparedQueryNotFoundException;
+import org.apache.cassandra.exceptions.RequestValidationException;
 import org.apache.cassandra.service.QueryState;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.transport.*;
 import org.apache.cassandra.utils.MD5Digest;
@@ -97,6 +102,39 @@ public class ExecuteMessage extends Message.Request
         this.options = options;
     }
 
+    @Override
+    public boolean canExecuteOnIOThread()
+    {
+        // Checking permissions may have to read them, and tracing (requested, or sampled by the tracing
+        // probability) is not worth optimizing for
+        return !isTracingRequested()
+            && StorageService.instance.getTracingProbability() == 0
+            && options.getPageSize() != 0
+            && DatabaseDescriptor.getAuthorizer() instanceof AllowAllAuthorizer
+            && QueryProcessor.getPrepared(statementId) instanceof SelectStatement;
+    }
+
+    @Override
+    public Message.Response executeOnIOThread(QueryState state)
+    {
+        try
+        {
+            CQLStatement statement = QueryProcessor.getPrepared(statementId);
+            if (statement == null)
+                return null;
+
+            Message.Response response = QueryProcessor.processPreparedFromRowCache(statement, state, options);
+            if (options.skipMetadata() && response instanceof ResultMessage.Rows)
+                ((ResultMessage.Rows)response).result.metadata.setSkipMetadata();
+
+            return response;
+        }
+        catch (RequestValidationException e)
+        {
+            return ErrorMessage.fromException(e);
+        }
+    }
+
     public Message.Response execute(QueryState state)
     {
         try
@@ -57,6 +57,12 @@ public class OptionsMessage extends Message.Request
         super(Message.Type.OPTIONS);
     }
 
+    @Override
+    public boolean canExecuteOnIOThread()
+    {
+        return true;
+    }
+
     public Message.Response execute(QueryState state)
     {
         List<String> cqlVersions = new ArrayList<String>();
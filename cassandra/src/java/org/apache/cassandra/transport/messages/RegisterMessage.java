@@ -63,6 +63,12 @@ public class RegisterMessage extends Message.Request
         this.eventTypes = eventTypes;
     }
 
+    @Override
+    public boolean canExecuteOnIOThread()
+    {
+        return true;
+    }
+
     public Response execute(QueryState state)
     {
         assert connection instanceof ServerConnection;
@@ -65,6 +65,12 @@ public class StartupMessage extends Message.Request
         this.options = options;
     }
 
+    @Override
+    public boolean canExecuteOnIOThread()
+    {
+        return true;
+    }
+
     public Message.Response execute(QueryState state)
     {
         ClientState cState = state.getClientState();
@@ -38,4 +38,12 @@ public abstract class Allocator
     public abstract ByteBuffer allocate(int size);
 
     public abstract long getMinimumSize();
+
+    /**
+     * @return how much of the allocated space lives outside the java heap
+     */
+    public long getOffHeapSize()
+    {
+        return 0;
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.utils.obs.IBitSet;
+
+/**
+ * A bloom filter whose k bits for a key all fall in a single 512 bit (64 byte) block, picked by the key's hash.
+ * A membership test thus touches one cache line instead of k, at the cost of a slightly higher false positive
+ * rate for the same size, since blocks fill unevenly.
+ *
+ * The block and the probes are derived from a single murmur3 hash; the probe loop is a multiply and a shift per
+ * bit, with no division or per-key allocation, so it stays tight enough for the JIT to unroll.
+ */
+public class BlockedBloomFilter extends BloomFilter
+{
+    public static final int BLOCK_BITS = 512;
+    // the top 9 bits of a probe address a bit within a block
+    private static final int PROBE_SHIFT = 64 - 9;
+
+    private final long blockCount;
+
+    public BlockedBloomFilter(int hashes, IBitSet bitset)
+    {
+        super(hashes, bitset);
+        assert bitset.capacity() >= BLOCK_BITS && bitset.capacity() % BLOCK_BITS == 0 : "Invalid blocked bloom filter capacity " + bitset.capacity();
+        blockCount = bitset.capacity() / BLOCK_BITS;
+    }
+
+    /**
+     * @return the number of bits a blocked filter with @param hashCount hashes needs to match the false positive
+     * rate of a classic filter of @param numBits bits: uneven block loads matter more as the number of hashes grows,
+     * and 2% more bits per hash keeps up with it for the specifications of BloomCalculations
+     */
+    public static long compensatedBits(long numBits, int hashCount)
+    {
+        return numBits + numBits / 50 * hashCount;
+    }
+
+    /**
+     * @return the number of bits to allocate for a filter of at least @param numBits bits
+     */
+    public static long roundToBlocks(long numBits)
+    {
+        long rounded = (numBits + BLOCK_BITS - 1) / BLOCK_BITS * BLOCK_BITS;
+        // leave sizes that overflowed for the bitset to reject
+        return rounded > 0 ? rounded : numBits;
+    }
+
+    public long serializedSize()
+    {
+        return Murmur3BloomFilter.serializer.serializedSize(this, TypeSizes.NATIVE);
+    }
+
+    protected long[] hash(ByteBuffer b, int position, int remaining, long seed)
+    {
+        return MurmurHash.hash3_x64_128(b, position, remaining, seed);
+    }
+
+    @Override
+    public void add(ByteBuffer key)
+    {
+        long[] hash = hash(key, key.position(), key.remaining(), 0L);
+        long block = blockStart(hash[0]);
+        long probe = hash[1];
+        for (int i = 0; i < hashCount; i++)
+        {
+            probe = nextProbe(probe);
+            bitset.set(block + (probe >>> PROBE_SHIFT));
+        }
+    }
+
+    @Override
+    public boolean isPresent(ByteBuffer key)
+    {
+        long[] hash = hash(key, key.position(), key.remaining(), 0L);
+        long block = blockStart(hash[0]);
+        long probe = hash[1];
+        for (int i = 0; i < hashCount; i++)
+        {
+            probe = nextProbe(probe);
+            if (!bitset.get(block + (probe >>> PROBE_SHIFT)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Steps a 64 bit linear congruential generator seeded with the key's hash; the top bits of each step are
+     * independent enough to pick a bit within the block. (Plain double hashing modulo the block size correlates
+     * the probes of different keys and noticeably raises the false positive rate.)
+     */
+    private static long nextProbe(long probe)
+    {
+        return probe * 6364136223846793005L + 1442695040888963407L;
+    }
+
+    private long blockStart(long hash)
+    {
+        return ((hash >>> 1) % blockCount) * BLOCK_BITS;
+    }
+}
@@ -29,8 +29,14 @@ import org.apache.cassandra.utils.obs.OpenBitSet;
 
 abstract class BloomFilterSerializer implements ISerializer<BloomFilter>
 {
+    // filters serialized before BlockedBloomFilter start directly with their (positive) hash count;
+    // later formats start with a negative version marker
+    static final int BLOCKED_VERSION = -1;
+
     public void serialize(BloomFilter bf, DataOutput out) throws IOException
     {
+        if (bf instanceof BlockedBloomFilter)
+            out.writeInt(BLOCKED_VERSION);
         out.writeInt(bf.hashCount);
         bf.bitset.serialize(out);
     }
@@ -42,9 +48,13 @@ abstract class BloomFilterSerializer implements ISerializer<BloomFilter>
 
     public BloomFilter deserialize(DataInput in, boolean offheap) throws IOException
     {
-        int hashes = in.readInt();
+        int version = in.readInt();
+        if (version < 0 && version != BLOCKED_VERSION)
+            throw new IOException("Unknown bloom filter serialization version " + version);
+
+        int hashes = version == BLOCKED_VERSION ? in.readInt() : version;
         IBitSet bs = offheap ? OffHeapBitSet.deserialize(in) : OpenBitSet.deserialize(in);
-        return createFilter(hashes, bs);
+        return version == BLOCKED_VERSION ? new BlockedBloomFilter(hashes, bs) : createFilter(hashes, bs);
     }
 
     protected abstract BloomFilter createFilter(int hashes, IBitSet bs);
@@ -60,6 +70,8 @@ abstract class BloomFilterSerializer implements ISerializer<BloomFilter>
     public long serializedSize(BloomFilter bf, TypeSizes typeSizes)
     {
         int size = typeSizes.sizeof(bf.hashCount); // hash count
+        if (bf instanceof BlockedBloomFilter)
+            size += typeSizes.sizeof(BLOCKED_VERSION);
         size += bf.bitset.serializedSize(typeSizes);
         return size;
     }
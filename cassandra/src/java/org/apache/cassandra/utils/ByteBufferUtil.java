@@ -77,6 +77,16 @@ public class ByteBufferUtil
 {
     public static final ByteBuffer EMPTY_BYTE_BUFFER = ByteBuffer.wrap(new byte[0]);
 
+    // scratch space used to copy out of direct buffers (such as off-heap memtable cells) without a write per byte
+    private static final int DIRECT_COPY_SIZE = 4096;
+    private static final ThreadLocal<byte[]> directCopyBuffer = new ThreadLocal<byte[]>()
+    {
+        protected byte[] initialValue()
+        {
+            return new byte[DIRECT_COPY_SIZE];
+        }
+    };
+
     public static int compareUnsigned(ByteBuffer o1, ByteBuffer o2)
     {
         assert o1 != null;
@@ -329,9 +339,13 @@ public class ByteBufferUtil
         }
         else
         {
-            for (int i = buffer.position(); i < buffer.limit(); i++)
+            byte[] chunk = directCopyBuffer.get();
+            ByteBuffer src = buffer.duplicate();
+            while (src.hasRemaining())
             {
-                out.writeByte(buffer.get(i));
+                int length = Math.min(src.remaining(), chunk.length);
+                src.get(chunk, 0, length);
+                out.write(chunk, 0, length);
             }
         }
     }
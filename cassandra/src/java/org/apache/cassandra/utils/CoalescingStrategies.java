@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.cassandra.config.Config;
+
+/**
+ * Strategies deciding how long a writer may hold on to the messages it has dequeued, waiting for more
+ * to arrive, so that they can be written and flushed together rather than paying a syscall apiece.
+ */
+public class CoalescingStrategies
+{
+    /** Something that can be coalesced: it knows when it was enqueued, as per System.nanoTime() */
+    public interface Coalescable
+    {
+        long timestampNanos();
+    }
+
+    public static abstract class CoalescingStrategy
+    {
+        /**
+         * Blocks until at least one item is available, then moves up to maxItems items from input to out,
+         * waiting for more according to the strategy.
+         */
+        public <C extends Coalescable> void coalesce(BlockingQueue<C> input, List<C> out, int maxItems) throws InterruptedException
+        {
+            assert out.isEmpty();
+            if (input.drainTo(out, maxItems) == 0)
+            {
+                out.add(input.take());
+                input.drainTo(out, maxItems - 1);
+            }
+
+            for (C item : out)
+                arrived(item.timestampNanos());
+
+            int before = out.size();
+            if (before < maxItems)
+                waitForMore(input, out, maxItems);
+
+            for (int i = before; i < out.size(); i++)
+                arrived(out.get(i).timestampNanos());
+        }
+
+        /** Records the arrival of an item, for strategies that adapt to the arrival rate */
+        protected void arrived(long timestampNanos)
+        {
+        }
+
+        protected abstract <C extends Coalescable> void waitForMore(BlockingQueue<C> input, List<C> out, int maxItems);
+    }
+
+    /**
+     * Writes whatever is available right away.
+     */
+    public static class DisabledCoalescingStrategy extends CoalescingStrategy
+    {
+        protected <C extends Coalescable> void waitForMore(BlockingQueue<C> input, List<C> out, int maxItems)
+        {
+        }
+
+        public String toString()
+        {
+            return "Disabled";
+        }
+    }
+
+    /**
+     * Holds on to the items until the oldest of them has waited for the whole window.
+     */
+    public static class FixedCoalescingStrategy extends CoalescingStrategy
+    {
+        private final long windowNanos;
+
+        public FixedCoalescingStrategy(long windowNanos)
+        {
+            this.windowNanos = windowNanos;
+        }
+
+        protected <C extends Coalescable> void waitForMore(BlockingQueue<C> input, List<C> out, int maxItems)
+        {
+            long remaining = out.get(0).timestampNanos() + windowNanos - System.nanoTime();
+            if (remaining <= 0)
+                return;
+
+            LockSupport.parkNanos(remaining);
+            input.drainTo(out, maxItems - out.size());
+        }
+
+        public String toString()
+        {
+            return "Fixed(" + TimeUnit.NANOSECONDS.toMicros(windowNanos) + "us)";
+        }
+    }
+
+    /**
+     * Tracks the average gap between the last arrivals, and only waits when more items are expected
+     * within the window.  It then waits one average gap at a time, and stops as soon as nothing arrived
+     * during one of them, or when the window is over.
+     */
+    public static class MovingAverageCoalescingStrategy extends CoalescingStrategy
+    {
+        private static final int SAMPLES = 16;
+
+        private final long windowNanos;
+        private final long[] gaps = new long[SAMPLES];
+        private int index;
+        private long sum;
+        private long lastArrival = Long.MIN_VALUE;
+
+        public MovingAverageCoalescingStrategy(long windowNanos)
+        {
+            this.windowNanos = windowNanos;
+            // start out assuming items are too far apart to be worth waiting for
+            for (int i = 0; i < SAMPLES; i++)
+                gaps[i] = windowNanos;
+            sum = SAMPLES * windowNanos;
+        }
+
+        protected void arrived(long timestampNanos)
+        {
+            if (lastArrival != Long.MIN_VALUE)
+            {
+                // items re-enqueued after a failure may arrive out of order
+                long gap = Math.max(0, Math.min(timestampNanos - lastArrival, windowNanos));
+                sum += gap - gaps[index];
+                gaps[index] = gap;
+                index = (index + 1) % SAMPLES;
+            }
+            lastArrival = Math.max(lastArrival, timestampNanos);
+        }
+
+        public long averageGapNanos()
+        {
+            return sum / SAMPLES;
+        }
+
+        protected <C extends Coalescable> void waitForMore(BlockingQueue<C> input, List<C> out, int maxItems)
+        {
+            long averageGap = averageGapNanos();
+            if (averageGap >= windowNanos)
+                return;
+
+            long deadline = out.get(0).timestampNanos() + windowNanos;
+            while (out.size() < maxItems)
+            {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return;
+
+                LockSupport.parkNanos(Math.min(averageGap, remaining));
+                if (input.drainTo(out, maxItems - out.size()) == 0)
+                    return;
+            }
+        }
+
+        public String toString()
+        {
+            return "MovingAverage(" + TimeUnit.NANOSECONDS.toMicros(averageGapNanos()) + "us average gap)";
+        }
+    }
+
+    public static CoalescingStrategy newCoalescingStrategy(Config.CoalescingStrategy strategy, long windowMicros)
+    {
+        long windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        if (windowNanos <= 0)
+            return new DisabledCoalescingStrategy();
+
+        switch (strategy)
+        {
+            case disabled:
+                return new DisabledCoalescingStrategy();
+            case fixed:
+                return new FixedCoalescingStrategy(windowNanos);
+            case movingaverage:
+                return new MovingAverageCoalescingStrategy(windowNanos);
+            default:
+                throw new AssertionError("Unknown coalescing strategy " + strategy);
+        }
+    }
+}
@@ -43,6 +43,17 @@ public abstract class MergeIterator<In,Out> extends AbstractIterator<Out> implem
             return reducer.trivialReduceIsTrivial()
                    ? new TrivialOneToOne<In, Out>(sources, reducer)
                    : new OneToOne<In, Out>(sources, reducer);
+        return new TournamentTree<In, Out>(sources, comparator, reducer);
+    }
+
+    /**
+     * Returns the PriorityQueue based merge regardless of the number of sources; kept as a reference
+     * implementation for tests and benchmarks.
+     */
+    static <In, Out> IMergeIterator<In, Out> getWithPriorityQueue(List<? extends Iterator<In>> sources,
+                                                                  Comparator<In> comparator,
+                                                                  Reducer<In, Out> reducer)
+    {
         return new ManyToOne<In, Out>(sources, comparator, reducer);
     }
 
@@ -125,6 +136,154 @@ public abstract class MergeIterator<In,Out> extends AbstractIterator<Out> implem
         }
     }
 
+    /**
+     * A MergeIterator that consumes multiple input values per output value, using a loser tree (tournament
+     * tree) over the sources: producing an item costs about log2(n) comparisons and allocates nothing.
+     *
+     * Sources are the leaves of an implicit binary tree; leaf i is node n + i, and the parent of node k is k / 2.
+     * Each internal node k (1 <= k < n) records the source that lost the match played there, and node 0 the
+     * overall winner. A node also records whether its match was a tie, which lets us collect every source
+     * whose head equals the winner without further comparisons. As with ManyToOne, consumed sources are only
+     * advanced on the next call to computeNext, since the reduced value may still depend on their state.
+     */
+    private static final class TournamentTree<In,Out> extends MergeIterator<In,Out>
+    {
+        private final Comparator<In> comparator;
+        private final int size;
+        private final Object[] heads;
+        private final boolean[] exhausted;
+        // tree[0] is the winning source, tree[k] the source that lost at internal node k
+        private final int[] tree;
+        // equal[k] is true when the loser at node k is equal to the source that won there
+        private final boolean[] equal;
+        // sources consumed by the last call to consume(), pending advance
+        private int consumed;
+        private final int[] stack;
+
+        public TournamentTree(List<? extends Iterator<In>> iters, Comparator<In> comparator, Reducer<In, Out> reducer)
+        {
+            super(iters, reducer);
+            this.comparator = comparator;
+            this.size = iters.size();
+            this.heads = new Object[size];
+            this.exhausted = new boolean[size];
+            this.tree = new int[Math.max(1, size)];
+            this.equal = new boolean[Math.max(1, size)];
+            this.stack = new int[size];
+
+            for (int i = 0; i < size; i++)
+                fetch(i);
+
+            if (size == 0)
+                return;
+
+            // play the initial tournament bottom-up, remembering the winner of each node until its parent is played
+            int[] winners = new int[2 * size];
+            for (int i = 0; i < size; i++)
+                winners[size + i] = i;
+            for (int node = size - 1; node > 0; node--)
+            {
+                int left = winners[2 * node];
+                int right = winners[2 * node + 1];
+                int cmp = compare(left, right);
+                winners[node] = cmp <= 0 ? left : right;
+                tree[node] = cmp <= 0 ? right : left;
+                equal[node] = cmp == 0 && !exhausted[left];
+            }
+            tree[0] = winners[1];
+        }
+
+        protected final Out computeNext()
+        {
+            advance();
+            return consume();
+        }
+
+        /** Send the winner, and every source equal to it, to the reducer. */
+        protected final Out consume()
+        {
+            reducer.onKeyChange();
+            if (size == 0 || exhausted[tree[0]])
+                return endOfData();
+
+            int depth = 0;
+            stack[depth++] = tree[0];
+            while (depth > 0)
+            {
+                int source = stack[--depth];
+                reducer.reduce(head(source));
+                consumed++;
+                // the sources tied with this one are the losers of tied matches below the node it lost at
+                for (int node = (size + source) >> 1; node > 0 && tree[node] != source; node >>= 1)
+                {
+                    if (equal[node])
+                        stack[depth++] = tree[node];
+                }
+            }
+            return reducer.getReduced();
+        }
+
+        /**
+         * Advance all sources consumed in the last iteration. Their heads still compare lowest, so each of them
+         * becomes the winner in turn, and can be replayed up its path to the root.
+         */
+        protected final void advance()
+        {
+            for (; consumed > 0; consumed--)
+            {
+                int source = tree[0];
+                fetch(source);
+                replay(source);
+            }
+        }
+
+        private void replay(int winner)
+        {
+            for (int node = (size + winner) >> 1; node > 0; node >>= 1)
+            {
+                int loser = tree[node];
+                int cmp = compare(loser, winner);
+                equal[node] = cmp == 0 && !exhausted[loser];
+                if (cmp < 0)
+                {
+                    tree[node] = winner;
+                    winner = loser;
+                }
+            }
+            tree[0] = winner;
+        }
+
+        private void fetch(int source)
+        {
+            Iterator<In> iter = iterators.get(source);
+            if (iter.hasNext())
+            {
+                heads[source] = iter.next();
+            }
+            else
+            {
+                heads[source] = null;
+                exhausted[source] = true;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private In head(int source)
+        {
+            return (In) heads[source];
+        }
+
+        // exhausted sources sort after everything else
+        private int compare(int a, int b)
+        {
+            if (exhausted[a])
+                return exhausted[b] ? 0 : 1;
+            if (exhausted[b])
+                return -1;
+            return comparator.compare(head(a), head(b));
+        }
+    }
+
     // Holds and is comparable by the head item of an iterator it owns
     protected static final class Candidate<In> implements Comparable<Candidate<In>>
     {
@@ -21,12 +21,14 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
+import java.security.MessageDigest;
 import java.util.*;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.PeekingIterator;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
@@ -168,8 +170,17 @@ public class MerkleTree implements Serializable
     {
         // determine the depth to which we can safely split the tree
         byte sizedepth = (byte)(Math.log10(maxsize) / Math.log10(2));
-        byte depth = (byte)Math.min(sizedepth, hashdepth);
+        init((byte)Math.min(sizedepth, hashdepth));
+    }
 
+    /**
+     * Initializes this tree by splitting it evenly until the given depth is reached.
+     *
+     * NB: Replaces all nodes in the tree.
+     */
+    public void init(byte depth)
+    {
+        assert depth <= hashdepth;
         root = initHelper(fullRange.left, fullRange.right, (byte)0, depth);
         size = (long)Math.pow(2, depth);
     }
@@ -339,6 +350,37 @@ public class MerkleTree implements Serializable
         return getHelper(node.rchild, node.token, pright, inc(depth), t);
     }
 
+    /**
+     * Replaces the leaf of this tree covering exactly the full range of the given tree with the root of that tree,
+     * so that the leaves of a tree can be built independently from each other, as sub-trees, and then put together.
+     * The sub-tree should have been created with a hashdepth reduced by the depth of the leaf it replaces.
+     */
+    public void graft(MerkleTree subtree)
+    {
+        assert subtree.partitioner == partitioner;
+        root = graftHelper(root, fullRange.left, fullRange.right, subtree);
+        size += subtree.size - 1;
+    }
+
+    private Hashable graftHelper(Hashable current, Token pleft, Token pright, MerkleTree subtree)
+    {
+        if (current instanceof Leaf)
+        {
+            assert pleft.equals(subtree.fullRange.left) && pright.equals(subtree.fullRange.right)
+                   : "No leaf of " + fullRange + " matches " + subtree.fullRange;
+            return subtree.root;
+        }
+        // else: node.
+
+        Inner node = (Inner)current;
+        node.hash(null);
+        if (new Range<Token>(pleft, node.token).contains(subtree.fullRange))
+            node.lchild(graftHelper(node.lchild, pleft, node.token, subtree));
+        else
+            node.rchild(graftHelper(node.rchild, node.token, pright, subtree));
+        return node;
+    }
+
     /**
      * Invalidates the ranges containing the given token.
      * Useful for testing.
@@ -928,7 +970,7 @@ public class MerkleTree implements Serializable
     /**
      * Hash value representing a row, to be used to pass hashes to the MerkleTree.
      * The byte[] hash value should contain a digest of the key and value of the row
-     * created using a very strong hash function.
+     * with lots of output bits, as created by newDigest().
      */
     public static class RowHash
     {
@@ -942,6 +984,21 @@ public class MerkleTree implements Serializable
             this.size = size;
         }
 
+        /**
+         * @return A new digest to hash a row with, using the configured repair_row_hash function: either SHA-256,
+         * or the 128-bit MurmurHash 3, which is much cheaper to compute and wide enough to be XORed together.
+         */
+        public static MessageDigest newDigest()
+        {
+            switch (DatabaseDescriptor.getRepairRowHash())
+            {
+                case murmur3:
+                    return new Murmur3Digest();
+                default:
+                    return FBUtilities.newMessageDigest("SHA-256");
+            }
+        }
+
         @Override
         public String toString()
         {
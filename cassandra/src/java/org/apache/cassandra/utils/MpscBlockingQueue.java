@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An unbounded, lock-free queue for many producers and a single consumer.
+ *
+ * Producers never block nor take a lock: an offer is a CAS on the underlying ConcurrentLinkedQueue, plus
+ * an unpark when the consumer is waiting.  Only one thread at a time may wait in take() or the timed poll(),
+ * but any thread may poll, clear or remove elements.  size() is maintained separately and may be briefly
+ * off while an offer or poll is in progress.
+ */
+public class MpscBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>
+{
+    private final ConcurrentLinkedQueue<E> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile Thread waiting;
+
+    public boolean offer(E e)
+    {
+        size.incrementAndGet();
+        queue.offer(e);
+        Thread consumer = waiting;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+        return true;
+    }
+
+    public void put(E e)
+    {
+        offer(e);
+    }
+
+    public boolean offer(E e, long timeout, TimeUnit unit)
+    {
+        return offer(e);
+    }
+
+    public E poll()
+    {
+        E e = queue.poll();
+        if (e != null)
+            size.decrementAndGet();
+        return e;
+    }
+
+    public E peek()
+    {
+        return queue.peek();
+    }
+
+    public E take() throws InterruptedException
+    {
+        E e;
+        while ((e = pollOrPark(-1)) == null)
+        {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+        return e;
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E e;
+        while ((e = pollOrPark(deadline)) == null)
+        {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (System.nanoTime() - deadline >= 0)
+                return null;
+        }
+        return e;
+    }
+
+    /**
+     * Polls, or parks until signalled (or until the deadline, if it is not negative) when the queue is empty.
+     * The consumer publishes itself before polling a second time, so a concurrent offer either sees it
+     * and unparks it, or is seen by that second poll.
+     */
+    private E pollOrPark(long deadline)
+    {
+        E e = poll();
+        if (e != null)
+            return e;
+
+        waiting = Thread.currentThread();
+        try
+        {
+            e = poll();
+            if (e != null)
+                return e;
+
+            if (deadline < 0)
+                LockSupport.park(this);
+            else
+                LockSupport.parkNanos(this, deadline - System.nanoTime());
+            return poll();
+        }
+        finally
+        {
+            waiting = null;
+        }
+    }
+
+    public int remainingCapacity()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    public int drainTo(Collection<? super E> c)
+    {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super E> c, int maxElements)
+    {
+        int drained = 0;
+        E e;
+        while (drained < maxElements && (e = poll()) != null)
+        {
+            c.add(e);
+            drained++;
+        }
+        return drained;
+    }
+
+    public int size()
+    {
+        return Math.max(0, size.get());
+    }
+
+    public boolean isEmpty()
+    {
+        return queue.isEmpty();
+    }
+
+    public boolean remove(Object o)
+    {
+        if (!queue.remove(o))
+            return false;
+        size.decrementAndGet();
+        return true;
+    }
+
+    public Iterator<E> iterator()
+    {
+        final Iterator<E> iter = queue.iterator();
+        return new Iterator<E>()
+        {
+            private E last;
+
+            public boolean hasNext()
+            {
+                return iter.hasNext();
+            }
+
+            public E next()
+            {
+                return last = iter.next();
+            }
+
+            public void remove()
+            {
+                if (last == null)
+                    throw new IllegalStateException();
+                // go through the queue so that an element polled concurrently is not counted twice
+                MpscBlockingQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * A MessageDigest computing the 128-bit x64 variant of MurmurHash 3.0 over everything it is updated with, so that it
+ * can be used wherever a (non-cryptographic) digest is fed incrementally.  The result is the same as
+ * MurmurHash.hash3_x64_128 over the concatenated input, with h1 followed by h2 in big-endian order.
+ */
+public class Murmur3Digest extends MessageDigest
+{
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final long seed;
+    // the input not yet mixed in, as it does not fill a 128-bit block yet
+    private final byte[] block = new byte[16];
+    private int buffered;
+    private long length;
+    private long h1;
+    private long h2;
+
+    public Murmur3Digest()
+    {
+        this(0);
+    }
+
+    public Murmur3Digest(long seed)
+    {
+        super("Murmur3_x64_128");
+        this.seed = seed;
+        engineReset();
+    }
+
+    @Override
+    protected int engineGetDigestLength()
+    {
+        return 16;
+    }
+
+    @Override
+    protected void engineUpdate(byte input)
+    {
+        block[buffered++] = input;
+        length++;
+        if (buffered == 16)
+        {
+            mix(getblock(block, 0), getblock(block, 8));
+            buffered = 0;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len)
+    {
+        length += len;
+        if (buffered > 0)
+        {
+            int n = Math.min(16 - buffered, len);
+            System.arraycopy(input, offset, block, buffered, n);
+            buffered += n;
+            offset += n;
+            len -= n;
+            if (buffered < 16)
+                return;
+            mix(getblock(block, 0), getblock(block, 8));
+            buffered = 0;
+        }
+
+        while (len >= 16)
+        {
+            mix(getblock(input, offset), getblock(input, offset + 8));
+            offset += 16;
+            len -= 16;
+        }
+
+        System.arraycopy(input, offset, block, 0, len);
+        buffered = len;
+    }
+
+    @Override
+    protected byte[] engineDigest()
+    {
+        long k1 = 0;
+        long k2 = 0;
+
+        // the tail is sign extended, as it is by MurmurHash.hash3_x64_128
+        switch (buffered)
+        {
+            case 15: k2 ^= ((long) block[14]) << 48;
+            case 14: k2 ^= ((long) block[13]) << 40;
+            case 13: k2 ^= ((long) block[12]) << 32;
+            case 12: k2 ^= ((long) block[11]) << 24;
+            case 11: k2 ^= ((long) block[10]) << 16;
+            case 10: k2 ^= ((long) block[9]) << 8;
+            case  9: k2 ^= ((long) block[8]);
+                k2 *= C2; k2 = MurmurHash.rotl64(k2, 33); k2 *= C1; h2 ^= k2;
+
+            case  8: k1 ^= ((long) block[7]) << 56;
+            case  7: k1 ^= ((long) block[6]) << 48;
+            case  6: k1 ^= ((long) block[5]) << 40;
+            case  5: k1 ^= ((long) block[4]) << 32;
+            case  4: k1 ^= ((long) block[3]) << 24;
+            case  3: k1 ^= ((long) block[2]) << 16;
+            case  2: k1 ^= ((long) block[1]) << 8;
+            case  1: k1 ^= ((long) block[0]);
+                k1 *= C1; k1 = MurmurHash.rotl64(k1, 31); k1 *= C2; h1 ^= k1;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = MurmurHash.fmix(h1);
+        h2 = MurmurHash.fmix(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        byte[] digest = ByteBuffer.allocate(16).putLong(h1).putLong(h2).array();
+        engineReset();
+        return digest;
+    }
+
+    @Override
+    protected void engineReset()
+    {
+        h1 = seed;
+        h2 = seed;
+        buffered = 0;
+        length = 0;
+    }
+
+    private void mix(long k1, long k2)
+    {
+        k1 *= C1; k1 = MurmurHash.rotl64(k1, 31); k1 *= C2; h1 ^= k1;
+
+        h1 = MurmurHash.rotl64(h1, 27); h1 += h2; h1 = h1 * 5 + 0x52dce729;
+
+        k2 *= C2; k2 = MurmurHash.rotl64(k2, 33); k2 *= C1; h2 ^= k2;
+
+        h2 = MurmurHash.rotl64(h2, 31); h2 += h1; h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long getblock(byte[] bytes, int offset)
+    {
+        return ((long) bytes[offset] & 0xff) + (((long) bytes[offset + 1] & 0xff) << 8) +
+               (((long) bytes[offset + 2] & 0xff) << 16) + (((long) bytes[offset + 3] & 0xff) << 24) +
+               (((long) bytes[offset + 4] & 0xff) << 32) + (((long) bytes[offset + 5] & 0xff) << 40) +
+               (((long) bytes[offset + 6] & 0xff) << 48) + (((long) bytes[offset + 7] & 0xff) << 56);
+    }
+}
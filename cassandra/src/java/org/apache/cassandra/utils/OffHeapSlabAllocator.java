@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+/**
+ * A SlabAllocator whose regions are allocated outside the java heap, so that memtable
+ * cell names and values do not have to be promoted and copied around by the garbage collector.
+ * <p/>
+ * Regions are direct buffers, so the native memory is only released once the last
+ * reference to any slice of it (for instance from a read that is still in flight) goes away.
+ */
+public class OffHeapSlabAllocator extends SlabAllocator
+{
+    public OffHeapSlabAllocator()
+    {
+        super(true);
+    }
+}
@@ -39,6 +39,8 @@ import org.slf4j.LoggerFactory;
  * Otherwise, variable length byte arrays allocated end up
  * interleaved throughout the heap, and the old generation gets progressively
  * more fragmented until a stop-the-world compacting collection occurs.
+ * <p/>
+ * Subclasses may ask for the regions to be allocated off-heap instead (see {@link OffHeapSlabAllocator}).
  */
 public class SlabAllocator extends Allocator
 {
@@ -51,6 +53,18 @@ public class SlabAllocator extends Allocator
     private final AtomicInteger regionCount = new AtomicInteger(0);
     private AtomicLong unslabbed = new AtomicLong(0);
 
+    private final boolean offHeap;
+
+    public SlabAllocator()
+    {
+        this(false);
+    }
+
+    protected SlabAllocator(boolean offHeap)
+    {
+        this.offHeap = offHeap;
+    }
+
     public ByteBuffer allocate(int size)
     {
         assert size >= 0;
@@ -62,7 +76,7 @@ public class SlabAllocator extends Allocator
         if (size > MAX_CLONED_SIZE)
         {
             unslabbed.addAndGet(size);
-            return ByteBuffer.allocate(size);
+            return allocateBuffer(size);
         }
 
         while (true)
@@ -94,7 +108,7 @@ public class SlabAllocator extends Allocator
             // No current region, so we want to allocate one. We race
             // against other allocators to CAS in an uninitialized region
             // (which is cheap to allocate)
-            region = new Region(REGION_SIZE);
+            region = new Region(REGION_SIZE, offHeap);
             if (currentRegion.compareAndSet(null, region))
             {
                 // we won race - now we need to actually do the expensive allocation step
@@ -108,12 +122,27 @@ public class SlabAllocator extends Allocator
         }
     }
 
+    private ByteBuffer allocateBuffer(int size)
+    {
+        return offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
     /**
      * @return a lower bound on how much space has been allocated
      */
     public long getMinimumSize()
     {
-        return unslabbed.get() + (regionCount.get() - 1) * (long)REGION_SIZE;
+        return offHeap ? 0 : allocatedSize();
+    }
+
+    public long getOffHeapSize()
+    {
+        return offHeap ? allocatedSize() : 0;
+    }
+
+    private long allocatedSize()
+    {
+        return unslabbed.get() + Math.max(regionCount.get() - 1, 0) * (long)REGION_SIZE;
     }
 
     /**
@@ -148,15 +177,22 @@ public class SlabAllocator extends Allocator
          */
         private final int size;
 
+        /**
+         * Whether the region lives outside the java heap
+         */
+        private final boolean offHeap;
+
         /**
          * Create an uninitialized region. Note that memory is not allocated yet, so
          * this is cheap.
          *
          * @param size in bytes
+         * @param offHeap whether to claim the memory outside the java heap
          */
-        private Region(int size)
+        private Region(int size, boolean offHeap)
         {
             this.size = size;
+            this.offHeap = offHeap;
         }
 
         /**
@@ -167,7 +203,7 @@ public class SlabAllocator extends Allocator
         public void init()
         {
             assert nextFreeOffset.get() == UNINITIALIZED;
-            data = ByteBuffer.allocate(size);
+            data = offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
             assert data.remaining() == data.capacity();
             // Mark that it's ready for use
             boolean initted = nextFreeOffset.compareAndSet(UNINITIALIZED, 0);
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Functions;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.index.SecondaryIndexManager;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.HeapAllocator;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares contended write throughput and allocation per update into a single wide partition,
+ * with and without serializing the updates that lost a race.
+ */
+public class LongAtomicSortedColumnsTest extends SchemaLoader
+{
+    private static final Logger logger = LoggerFactory.getLogger(LongAtomicSortedColumnsTest.class);
+
+    private static final int PARTITION_SIZE = 10000;
+    private static final int UPDATES_PER_THREAD = 20000;
+    private static final int COLUMNS_PER_UPDATE = 4;
+
+    @Test
+    public void testContendedUpdates() throws InterruptedException
+    {
+        for (int threads : new int[]{ 1, 4, 16, 32 })
+        {
+            run(threads, false);
+            run(threads, true);
+        }
+    }
+
+    private void run(int threadCount, boolean lockContendedUpdates) throws InterruptedException
+    {
+        boolean previous = AtomicSortedColumns.lockContendedUpdates;
+        AtomicSortedColumns.lockContendedUpdates = lockContendedUpdates;
+        try
+        {
+            final CFMetaData metadata = Schema.instance.getCFMetaData("Keyspace1", "Standard1");
+            final AtomicSortedColumns partition = AtomicSortedColumns.factory.create(metadata, false);
+            final AtomicLong allocated = new AtomicLong();
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(threadCount);
+            final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+            for (int t = 0; t < threadCount; t++)
+            {
+                final int seed = t;
+                new Thread()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            // build the updates beforehand so that only the merge itself is measured
+                            ColumnFamily[] updates = new ColumnFamily[UPDATES_PER_THREAD];
+                            for (int i = 0; i < updates.length; i++)
+                            {
+                                updates[i] = TreeMapBackedSortedColumns.factory.create(metadata);
+                                for (int c = 0; c < COLUMNS_PER_UPDATE; c++)
+                                {
+                                    int name = (seed * 7919 + i * COLUMNS_PER_UPDATE + c) % PARTITION_SIZE;
+                                    updates[i].addColumn(new Column(ByteBufferUtil.bytes(name), ByteBufferUtil.bytes(i), i));
+                                }
+                            }
+
+                            start.await();
+                            long before = threadBean.getThreadAllocatedBytes(getId());
+                            for (ColumnFamily update : updates)
+                                partition.addAllWithSizeDelta(update, HeapAllocator.instance, Functions.<Column>identity(), SecondaryIndexManager.nullUpdater);
+                            allocated.addAndGet(threadBean.getThreadAllocatedBytes(getId()) - before);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            throw new AssertionError(e);
+                        }
+                        finally
+                        {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+
+            long startNanos = System.nanoTime();
+            start.countDown();
+            done.await();
+            long elapsed = System.nanoTime() - startNanos;
+
+            long updates = (long) threadCount * UPDATES_PER_THREAD;
+            logger.info("{} threads, {}: {} updates/s, {} bytes allocated per update",
+                        threadCount,
+                        lockContendedUpdates ? "locking contended updates" : "lock-free only",
+                        updates * TimeUnit.SECONDS.toNanos(1) / elapsed,
+                        allocated.get() / updates);
+
+            assertEquals(Math.min(PARTITION_SIZE, updates * COLUMNS_PER_UPDATE), partition.getColumnCount());
+        }
+        finally
+        {
+            AtomicSortedColumns.lockContendedUpdates = previous;
+        }
+    }
+}
@@ -18,12 +18,16 @@
  */
 package org.apache.cassandra.utils;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.obs.OffHeapBitSet;
+
 public class LongBloomFilterTest
 {
     private static final Logger logger = LoggerFactory.getLogger(LongBloomFilterTest.class);
@@ -53,6 +57,54 @@ public class LongBloomFilterTest
         logger.info("Bloom filter false positive: {}", fp);
     }
 
+    /**
+     * Compares the false positive rate and the probe latency of the classic and blocked filters with the same
+     * specification, for filters much larger than the CPU caches.
+     */
+    @Test
+    public void compareBlockedAndClassic()
+    {
+        int size = 10 * 1000 * 1000;
+        for (double fpChance : new double[]{ 0.1, 0.01, 0.001 })
+        {
+            int bucketsPerElement = BloomCalculations.maxBucketsPerElement(size);
+            BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement, fpChance);
+            long numBits = (long) size * spec.bucketsPerElement + 20;
+
+            BloomFilter classic = new Murmur3BloomFilter(spec.K, new OffHeapBitSet(numBits));
+            long blockedBits = BlockedBloomFilter.roundToBlocks(BlockedBloomFilter.compensatedBits(numBits, spec.K));
+            BloomFilter blocked = new BlockedBloomFilter(spec.K, new OffHeapBitSet(blockedBits));
+            for (BloomFilter bf : new BloomFilter[]{ classic, blocked })
+            {
+                ResetableIterator<ByteBuffer> keys = new KeyGenerator.RandomStringGenerator(1, size);
+                while (keys.hasNext())
+                    bf.add(keys.next());
+
+                // pre-generate the probed keys so the timing only covers the filter
+                int probeCount = size / 10;
+                ResetableIterator<ByteBuffer> otherKeys = new KeyGenerator.RandomStringGenerator(2, probeCount);
+                ByteBuffer[] probes = new ByteBuffer[probeCount];
+                for (int i = 0; i < probeCount; i++)
+                    probes[i] = otherKeys.next();
+
+                int falsePositives = 0;
+                long start = System.nanoTime();
+                for (ByteBuffer probe : probes)
+                {
+                    if (bf.isPresent(probe))
+                        falsePositives++;
+                }
+                long elapsed = System.nanoTime() - start;
+
+                logger.info(String.format("%s fp chance %s, %d hashes, %d MB: false positive rate %.5f, %d ns per probe",
+                                          bf.getClass().getSimpleName(), fpChance, spec.K, bf.bitset.capacity() / 8 / 1024 / 1024,
+                                          (double) falsePositives / probeCount, elapsed / probeCount));
+                assert (double) falsePositives / probeCount < fpChance * 1.1;
+                FileUtils.closeQuietly(bf);
+            }
+        }
+    }
+
     @Test
     public void timeit()
     {
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.AbstractIterator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.Column;
+import org.apache.cassandra.db.OnDiskAtom;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.UTF8Type;
+
+public class LongMergeIteratorTest
+{
+    private static final Logger logger = LoggerFactory.getLogger(LongMergeIteratorTest.class);
+
+    private static final CompositeType type = CompositeType.getInstance(Int32Type.instance, UTF8Type.instance);
+    private static final Comparator<OnDiskAtom> comparator = type.onDiskAtomComparator;
+    private static final String[] fields = { "email", "first_name", "last_name", "updated" };
+
+    /**
+     * Merges a wide row spread over 2 to 64 sources, the way compaction and reads merge the columns of a
+     * partition from several sstables, with both the tournament tree and the priority queue.
+     */
+    @Test
+    public void compareTournamentTreeAndPriorityQueue() throws IOException
+    {
+        Random random = new Random(0);
+        int columns = 1000 * 1000;
+        for (int sources = 2; sources <= 64; sources *= 2)
+        {
+            // every cell is written to one source, and overwritten in a second one a quarter of the time
+            List<List<Column>> data = new ArrayList<>();
+            for (int i = 0; i < sources; i++)
+                data.add(new ArrayList<Column>());
+            for (int i = 0; i < columns / fields.length; i++)
+            {
+                for (String field : fields)
+                {
+                    ByteBuffer name = type.builder().add(Int32Type.instance.decompose(i)).add(UTF8Type.instance.decompose(field)).build();
+                    int first = random.nextInt(sources);
+                    data.get(first).add(new Column(name, ByteBufferUtil.bytes(random.nextLong()), first));
+                    if (random.nextInt(4) == 0)
+                    {
+                        int second = (first + 1 + random.nextInt(sources - 1)) % sources;
+                        data.get(second).add(new Column(name, ByteBufferUtil.bytes(random.nextLong()), second));
+                    }
+                }
+            }
+
+            long[] best = new long[]{ Long.MAX_VALUE, Long.MAX_VALUE };
+            for (int round = 0; round < 10; round++)
+            {
+                for (int impl = 0; impl < 2; impl++)
+                {
+                    long start = System.nanoTime();
+                    int merged = merge(data, impl == 0);
+                    best[impl] = Math.min(best[impl], System.nanoTime() - start);
+                    assert merged == columns : merged;
+                }
+            }
+            logger.info(String.format("%d sources: tournament tree %d ns per column, priority queue %d ns per column",
+                                      sources, best[0] / columns, best[1] / columns));
+        }
+    }
+
+    private static int merge(List<List<Column>> data, boolean tournament) throws IOException
+    {
+        List<Iterator<OnDiskAtom>> iterators = new ArrayList<>(data.size());
+        for (List<Column> source : data)
+            iterators.add(new CloseableListIterator(source));
+
+        MergeIterator.Reducer<OnDiskAtom, Column> reducer = new MergeIterator.Reducer<OnDiskAtom, Column>()
+        {
+            Column current;
+
+            protected void onKeyChange()
+            {
+                current = null;
+            }
+
+            public void reduce(OnDiskAtom atom)
+            {
+                current = current == null ? (Column) atom : current.reconcile((Column) atom);
+            }
+
+            protected Column getReduced()
+            {
+                return current;
+            }
+        };
+
+        IMergeIterator<OnDiskAtom, Column> merger = tournament
+                                                  ? MergeIterator.get(iterators, comparator, reducer)
+                                                  : MergeIterator.getWithPriorityQueue(iterators, comparator, reducer);
+        int count = 0;
+        while (merger.hasNext())
+        {
+            merger.next();
+            count++;
+        }
+        merger.close();
+        return count;
+    }
+
+    private static class CloseableListIterator extends AbstractIterator<OnDiskAtom> implements CloseableIterator<OnDiskAtom>
+    {
+        private final Iterator<Column> iter;
+
+        CloseableListIterator(List<Column> columns)
+        {
+            this.iter = columns.iterator();
+        }
+
+        protected OnDiskAtom computeNext()
+        {
+            return iter.hasNext() ? iter.next() : endOfData();
+        }
+
+        public void close()
+        {
+        }
+    }
+}
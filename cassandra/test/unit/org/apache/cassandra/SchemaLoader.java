@@ -271,7 +271,17 @@ public class SchemaLoader
                                            simple,
                                            opts_rf1,
                                            standardCFMD(ks_rcs, "CFWithoutCache").caching(CFMetaData.Caching.NONE),
-                                           standardCFMD(ks_rcs, "CachedCF").caching(CFMetaData.Caching.ALL)));
+                                           standardCFMD(ks_rcs, "CachedCF").caching(CFMetaData.Caching.ALL),
+                                           standardCFMD(ks_rcs, "CachedHeadCF").caching(CFMetaData.Caching.ALL)
+                                                                               .rowsPerPartitionToCache(10),
+                                           CFMetaData.compile("CREATE TABLE cached_head_cql ("
+                                                              + "k text,"
+                                                              + "c int,"
+                                                              + "v1 int,"
+                                                              + "v2 int,"
+                                                              + "PRIMARY KEY (k, c)"
+                                                              + ")", ks_rcs).caching(CFMetaData.Caching.ALL)
+                                                                            .rowsPerPartitionToCache(2)));
 
         schema.add(KSMetaData.testMetadataNotDurable(ks_nocommit,
                                                      simple,
@@ -400,8 +410,8 @@ public class SchemaLoader
 
     public static void cleanup()
     {
-        // clean up commitlog
-        String[] directoryNames = { DatabaseDescriptor.getCommitLogLocation(), };
+        // clean up commitlog and hints
+        String[] directoryNames = { DatabaseDescriptor.getCommitLogLocation(), DatabaseDescriptor.getHintsLocation(), };
         for (String dirName : directoryNames)
         {
             File dir = new File(dirName);
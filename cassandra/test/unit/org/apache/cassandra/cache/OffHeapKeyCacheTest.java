@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.File;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.*;
+
+public class OffHeapKeyCacheTest
+{
+    private static final File DIR = new File("/tmp");
+
+    private static KeyCacheKey key(int generation, String key)
+    {
+        return new KeyCacheKey(new Descriptor(DIR, "Keyspace1", "Standard1", generation, false), ByteBufferUtil.bytes(key));
+    }
+
+    @Test
+    public void testPutGetRemove()
+    {
+        OffHeapKeyCache cache = OffHeapKeyCache.create(1024 * 1024);
+
+        cache.put(key(1, "a"), new RowIndexEntry(10));
+        cache.put(key(2, "a"), new RowIndexEntry(20));
+        assertEquals(10, cache.get(key(1, "a")).position);
+        assertEquals(20, cache.get(key(2, "a")).position);
+        assertNull(cache.get(key(1, "b")));
+        assertNull(cache.get(key(3, "a")));
+        assertEquals(2, cache.size());
+
+        cache.put(key(1, "a"), new RowIndexEntry(11));
+        assertEquals(11, cache.get(key(1, "a")).position);
+        assertFalse(cache.putIfAbsent(key(1, "a"), new RowIndexEntry(12)));
+        assertEquals(11, cache.get(key(1, "a")).position);
+        assertFalse(cache.replace(key(1, "a"), new RowIndexEntry(10), new RowIndexEntry(13)));
+        assertTrue(cache.replace(key(1, "a"), new RowIndexEntry(11), new RowIndexEntry(13)));
+        assertEquals(13, cache.get(key(1, "a")).position);
+        assertEquals(2, cache.size());
+
+        cache.remove(key(1, "a"));
+        assertFalse(cache.containsKey(key(1, "a")));
+        assertTrue(cache.containsKey(key(2, "a")));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+        assertNull(cache.get(key(2, "a")));
+    }
+
+    @Test
+    public void testKeySet()
+    {
+        OffHeapKeyCache cache = OffHeapKeyCache.create(1024 * 1024);
+        for (int i = 0; i < 1000; i++)
+            cache.put(key(i % 7, "key" + i), new RowIndexEntry(i));
+
+        Set<KeyCacheKey> keys = cache.keySet();
+        assertEquals(1000, keys.size());
+        for (int i = 0; i < 1000; i++)
+            assertTrue(keys.contains(key(i % 7, "key" + i)));
+        // keys rebuilt from the compact sstable ids can be looked up again, as AutoSavingCache does
+        for (KeyCacheKey key : keys)
+            assertNotNull(cache.get(key));
+
+        assertEquals(10, cache.hotKeySet(10).size());
+    }
+
+    @Test
+    public void testEviction()
+    {
+        long capacity = 64 * 1024;
+        OffHeapKeyCache cache = OffHeapKeyCache.create(capacity);
+        KeyCacheKey hot = key(1, "hot");
+        cache.put(hot, new RowIndexEntry(42));
+        for (int i = 0; i < 10000; i++)
+        {
+            cache.put(key(i % 3, "key" + i), new RowIndexEntry(i));
+            // read after every write, so CLOCK always gives it a second chance
+            assertNotNull(cache.get(hot));
+        }
+
+        assertTrue(cache.weightedSize() <= capacity);
+        assertTrue(cache.size() < 10000);
+        assertEquals(42, cache.get(hot).position);
+
+        cache.setCapacity(0);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    public void testNewEntrySurvivesOneSweep()
+    {
+        // a single segment, so that the entries all compete for the same capacity
+        OffHeapKeyCache cache = OffHeapKeyCache.create(1024 * 1024, 1);
+        cache.put(key(1, "key0000"), new RowIndexEntry(0));
+        long weight = cache.weightedSize();
+        cache.setCapacity(4 * weight);
+
+        for (int trial = 0; trial < 100; trial++)
+        {
+            cache.clear();
+            // the fifth entry makes the hand go around, so the ones left are all unreferenced
+            for (int i = 0; i < 5; i++)
+                cache.put(key(1, String.format("key%02d%02d", trial, i)), new RowIndexEntry(i));
+            assertEquals(4, cache.size());
+
+            // the sweep triggered by a new entry evicts one of those rather than the new entry
+            KeyCacheKey fresh = key(1, String.format("key%02d%02d", trial, 5));
+            cache.put(fresh, new RowIndexEntry(5));
+            assertEquals(4, cache.size());
+            assertTrue(cache.containsKey(fresh));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SharedExecutorPoolTest
+{
+    private final SharedExecutorPool pool = new SharedExecutorPool("TEST-Worker");
+
+    @Test
+    public void testConcurrencyLimit() throws Exception
+    {
+        SharedPoolExecutor executor = pool.newExecutor(2, Integer.MAX_VALUE, "internal", "TEST-Limit");
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < 20; i++)
+        {
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    int n = running.incrementAndGet();
+                    while (true)
+                    {
+                        int max = maxRunning.get();
+                        if (n <= max || maxRunning.compareAndSet(max, n))
+                            break;
+                    }
+                    try
+                    {
+                        Thread.sleep(5);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new AssertionError(e);
+                    }
+                    running.decrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, maxRunning.get());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(20, executor.getCompletedTasks());
+        assertEquals(0, executor.getPendingTasks());
+    }
+
+    @Test
+    public void testSharedWorkers() throws Exception
+    {
+        final SharedPoolExecutor first = pool.newExecutor(4, Integer.MAX_VALUE, "internal", "TEST-First");
+        final SharedPoolExecutor second = pool.newExecutor(4, Integer.MAX_VALUE, "internal", "TEST-Second");
+        final CountDownLatch done = new CountDownLatch(10000);
+        // every task of the first stage hands over to the second one, like a request and its response
+        for (int i = 0; i < 10000; i++)
+        {
+            first.execute(new Runnable()
+            {
+                public void run()
+                {
+                    second.execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            done.countDown();
+                        }
+                    });
+                }
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(pool.getWorkerCount() <= 8);
+        first.shutdown();
+        second.shutdown();
+        assertTrue(first.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(second.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testExecuteImmediately() throws Exception
+    {
+        SharedPoolExecutor executor = pool.newExecutor(1, Integer.MAX_VALUE, "internal", "TEST-Inline");
+        final AtomicReference<Thread> ranOn = new AtomicReference<Thread>();
+        Runnable recordThread = new Runnable()
+        {
+            public void run()
+            {
+                ranOn.set(Thread.currentThread());
+            }
+        };
+
+        executor.maybeExecuteImmediately(recordThread);
+        assertSame(Thread.currentThread(), ranOn.get());
+
+        // with its only permit taken, the task is handed to a worker
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        while (executor.getActiveCount() == 0)
+            Thread.sleep(1);
+        ranOn.set(null);
+        executor.maybeExecuteImmediately(recordThread);
+        assertNull(ranOn.get());
+        release.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertNotNull(ranOn.get());
+        assertNotSame(Thread.currentThread(), ranOn.get());
+        assertEquals(3, executor.getCompletedTasks());
+    }
+
+    @Test
+    public void testBlockWhenQueueIsFull() throws Exception
+    {
+        final SharedPoolExecutor executor = pool.newExecutor(1, 1, "internal", "TEST-Bounded");
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        executor.execute(blocked);
+        while (executor.getActiveCount() == 0)
+            Thread.sleep(1);
+        // fills the queue
+        executor.execute(blocked);
+
+        Thread submitter = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                executor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                    }
+                });
+            }
+        });
+        submitter.start();
+        while (executor.getCurrentlyBlockedTasks() == 0)
+            Thread.sleep(1);
+        assertEquals(1, executor.getTotalBlockedTasks());
+
+        release.countDown();
+        submitter.join(10000);
+        assertFalse(submitter.isAlive());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(3, executor.getCompletedTasks());
+    }
+}
@@ -128,6 +128,8 @@ public class CFMetaDataTest extends SchemaLoader
             if (!def.isThriftCompatible())
                 iter.remove();
         }
+        // rows_per_partition_to_cache is not part of CfDef either
+        result.rowsPerPartitionToCache(CFMetaData.DEFAULT_ROWS_PER_PARTITION_TO_CACHE);
         return result;
     }
 
@@ -281,6 +281,49 @@ public class ColumnFamilyStoreTest extends SchemaLoader
         assert rows.size() == keys.size();
     }
 
+    @Test
+    public void testIndexIntersection() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open("Keyspace6").getColumnFamilyStore("Indexed1");
+        ColumnDefinition cd = ColumnDefinition.regularDef(cfs.metadata, ByteBufferUtil.bytes("notbirthdate"), LongType.instance, null)
+                                              .setIndex("notbirthdate_index", IndexType.KEYS, null);
+        cfs.metadata.addOrReplaceColumnDefinition(cd);
+        cfs.indexManager.addIndexedColumn(cd).get();
+
+        RowMutation rm;
+        for (int i = 0; i < 300; i++)
+        {
+            rm = new RowMutation("Keyspace6", ByteBufferUtil.bytes("key" + i));
+            rm.add("Indexed1", ByteBufferUtil.bytes("birthdate"), ByteBufferUtil.bytes((long) (i % 2)), 0);
+            rm.add("Indexed1", ByteBufferUtil.bytes("notbirthdate"), ByteBufferUtil.bytes((long) (i % 3)), 0);
+            rm.applyUnsafe();
+        }
+        // the index cardinality histograms come from the index sstables
+        cfs.forceBlockingFlush();
+
+        IndexExpression expr = new IndexExpression(ByteBufferUtil.bytes("birthdate"), IndexExpression.Operator.EQ, ByteBufferUtil.bytes(1L));
+        IndexExpression expr2 = new IndexExpression(ByteBufferUtil.bytes("notbirthdate"), IndexExpression.Operator.EQ, ByteBufferUtil.bytes(0L));
+        List<IndexExpression> clause = Arrays.asList(expr, expr2);
+        IDiskAtomFilter filter = new IdentityQueryFilter();
+        Range<RowPosition> range = Util.range("", "");
+
+        long reads = cfs.metric.readLatency.latency.count();
+        List<Row> rows = cfs.search(range, clause, filter, 1000);
+        Set<DecoratedKey> keys = new HashSet<DecoratedKey>();
+        for (Row row : rows)
+            keys.add(row.key);
+        // odd multiples of 3
+        assertEquals(50, rows.size());
+        assertEquals(rows.size(), keys.size());
+        // only the base rows in both indexes were read
+        assertEquals(rows.size(), cfs.metric.readLatency.latency.count() - reads);
+
+        // nothing matches a value missing from the intersected index
+        expr2 = new IndexExpression(ByteBufferUtil.bytes("notbirthdate"), IndexExpression.Operator.EQ, ByteBufferUtil.bytes(-1L));
+        rows = cfs.search(range, Arrays.asList(expr, expr2), filter, 1000);
+        assertEquals(0, rows.size());
+    }
+
     @Test
     public void testIndexDeletions() throws IOException
     {
@@ -21,7 +21,7 @@ package org.apache.cassandra.db;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.util.UUID;
+import java.util.*;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -32,7 +32,11 @@ import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.CommitLogDescriptor;
+import org.apache.cassandra.db.commitlog.CommitLogSegment;
+import org.apache.cassandra.io.compress.ICompressor;
+import org.apache.cassandra.io.compress.LZ4Compressor;
 import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.FBUtilities;
 
 import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
 
@@ -191,6 +195,113 @@ public class CommitLogTest extends SchemaLoader
         testRecovery(out.toByteArray());
     }
 
+    @Test
+    public void testHeader() throws Exception
+    {
+        CommitLogDescriptor desc = new CommitLogDescriptor(CommitLogSegment.getNextId(), LZ4Compressor.class.getName());
+        ByteBuffer header = ByteBuffer.allocate(desc.headerSize());
+        desc.writeHeader(header);
+        Assert.assertFalse(header.hasRemaining());
+
+        CommitLogDescriptor read = CommitLogDescriptor.readHeader(new DataInputStream(new ByteArrayInputStream(header.array())));
+        Assert.assertEquals(desc.getVersion(), read.getVersion());
+        Assert.assertEquals(desc.id, read.id);
+        Assert.assertEquals(LZ4Compressor.class.getName(), read.compressorClass);
+
+        // a torn or corrupted header is ignored
+        Assert.assertNull(CommitLogDescriptor.readHeader(new DataInputStream(new ByteArrayInputStream(header.array(), 0, header.limit() - 1))));
+        header.put(12, (byte) (header.get(12) + 1));
+        Assert.assertNull(CommitLogDescriptor.readHeader(new DataInputStream(new ByteArrayInputStream(header.array()))));
+    }
+
+    @Test
+    public void testCompressedSegmentBufferPooledOnce() throws Exception
+    {
+        ICompressor compressor = DatabaseDescriptor.getCommitLogCompressor();
+        DatabaseDescriptor.setCommitLogCompressor(LZ4Compressor.create(Collections.<String, String>emptyMap()));
+        try
+        {
+            // the sync of a full segment and its discard both close it
+            CommitLogSegment segment = CommitLogSegment.freshSegment();
+            segment.close();
+            segment.sync();
+            segment.discard(true);
+
+            Collection<ByteBuffer> pooled = CommitLogSegment.getPooledBuffers();
+            Assert.assertFalse(pooled.isEmpty());
+            Set<ByteBuffer> distinct = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+            distinct.addAll(pooled);
+            Assert.assertEquals(pooled.size(), distinct.size());
+        }
+        finally
+        {
+            DatabaseDescriptor.setCommitLogCompressor(compressor);
+        }
+    }
+
+    @Test
+    public void testRecoveryWithCompressedLog() throws Exception
+    {
+        CommitLogDescriptor desc = new CommitLogDescriptor(CommitLogSegment.getNextId(), LZ4Compressor.class.getName());
+        ByteBuffer header = ByteBuffer.allocate(desc.headerSize());
+        desc.writeHeader(header);
+
+        RowMutation rm = new RowMutation("Keyspace1", bytes("k"));
+        rm.add("Standard1", bytes("c1"), ByteBuffer.allocate(100), 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header.array());
+        out.write(compressedBlock(entry(rm)));
+        // the last block wasn't fully synced
+        byte[] torn = compressedBlock(entry(rm));
+        out.write(torn, 0, torn.length - 1);
+
+        File logFile = new File(System.getProperty("java.io.tmpdir"), desc.fileName());
+        logFile.deleteOnExit();
+        try (OutputStream lout = new FileOutputStream(logFile))
+        {
+            lout.write(out.toByteArray());
+        }
+        Assert.assertEquals(1, CommitLog.instance.recover(new File[]{ logFile }));
+    }
+
+    private static byte[] entry(RowMutation rm) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RowMutation.serializer.serialize(rm, new DataOutputStream(bytes), MessagingService.current_version);
+        byte[] serialized = bytes.toByteArray();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(out);
+        Checksum checksum = new CRC32();
+        dout.writeInt(serialized.length);
+        FBUtilities.updateChecksumInt(checksum, serialized.length);
+        dout.writeLong(checksum.getValue());
+        dout.write(serialized);
+        checksum.update(serialized, 0, serialized.length);
+        dout.writeLong(checksum.getValue());
+        return out.toByteArray();
+    }
+
+    private static byte[] compressedBlock(byte[] data) throws IOException
+    {
+        ICompressor compressor = LZ4Compressor.create(null);
+        ICompressor.WrappedArray compressed = new ICompressor.WrappedArray(new byte[compressor.initialCompressedBufferLength(data.length)]);
+        int compressedLength = compressor.compress(data, 0, data.length, compressed, 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(out);
+        Checksum checksum = new CRC32();
+        dout.writeInt(data.length);
+        FBUtilities.updateChecksumInt(checksum, data.length);
+        dout.writeInt(compressedLength);
+        FBUtilities.updateChecksumInt(checksum, compressedLength);
+        dout.write(compressed.buffer, 0, compressedLength);
+        checksum.update(compressed.buffer, 0, compressedLength);
+        dout.writeLong(checksum.getValue());
+        return out.toByteArray();
+    }
+
     protected File tmpFile() throws IOException
     {
         File logFile = File.createTempFile("CommitLog-" + CommitLogDescriptor.current_version + "-", ".log");
@@ -204,6 +315,10 @@ public class CommitLogTest extends SchemaLoader
         File logFile = tmpFile();
         try (OutputStream lout = new FileOutputStream(logFile))
         {
+            // segments of the current version start with a header
+            ByteBuffer header = ByteBuffer.allocate(new CommitLogDescriptor(0).headerSize());
+            new CommitLogDescriptor(0).writeHeader(header);
+            lout.write(header.array());
             lout.write(logData);
             //statics make it annoying to test things correctly
             CommitLog.instance.recover(new File[]{ logFile }); //CASSANDRA-1119 / CASSANDRA-1179 throw on failure*/
@@ -22,24 +22,29 @@ package org.apache.cassandra.db;
 
 
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.cql3.UntypedResultSet;
-import org.apache.cassandra.db.compaction.CompactionManager;
-import org.apache.cassandra.db.compaction.SizeTieredCompactionStrategy;
+import org.apache.cassandra.db.hints.Hint;
+import org.apache.cassandra.db.hints.HintsDescriptor;
+import org.apache.cassandra.db.hints.HintsReader;
+import org.apache.cassandra.db.hints.HintsStore;
 import org.apache.cassandra.db.marshal.Int32Type;
 import org.apache.cassandra.db.marshal.UUIDType;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.UUIDGen;
 
 import com.google.common.collect.Iterators;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 import static org.apache.cassandra.cql3.QueryProcessor.processInternal;
 
 public class HintedHandOffTest extends SchemaLoader
@@ -49,36 +54,77 @@ public class HintedHandOffTest extends SchemaLoader
     public static final String STANDARD1_CF = "Standard1";
     public static final String COLUMN1 = "column1";
 
-    // Test compaction of hints column family. It shouldn't remove all columns on compaction.
     @Test
-    public void testCompactionOfHintsCF() throws Exception
+    public void testStoreHint() throws Exception
     {
-        // prepare hints column family
-        Keyspace systemKeyspace = Keyspace.open("system");
-        ColumnFamilyStore hintStore = systemKeyspace.getColumnFamilyStore(SystemKeyspace.HINTS_CF);
-        hintStore.clearUnsafe();
-        hintStore.metadata.gcGraceSeconds(36000); // 10 hours
-        hintStore.setCompactionStrategyClass(SizeTieredCompactionStrategy.class.getCanonicalName());
-        hintStore.disableAutoCompaction();
-
-        // insert 1 hint
+        UUID hostId = UUID.randomUUID();
         RowMutation rm = new RowMutation(KEYSPACE4, ByteBufferUtil.bytes(1));
         rm.add(STANDARD1_CF, ByteBufferUtil.bytes(String.valueOf(COLUMN1)), ByteBufferUtil.EMPTY_BYTE_BUFFER, System.currentTimeMillis());
 
-        HintedHandOffManager.instance.hintFor(rm, HintedHandOffManager.calculateHintTTL(rm), UUID.randomUUID()).apply();
-
-        // flush data to disk
-        hintStore.forceBlockingFlush();
-        assertEquals(1, hintStore.getSSTables().size());
+        HintedHandOffManager.instance.storeHint(rm, HintedHandOffManager.calculateHintTTL(rm), hostId);
+
+        assertTrue(HintedHandOffManager.instance.listEndpointsPendingHints().contains(hostId.toString()));
+        HintsStore store = HintedHandOffManager.instance.getHintsStore(hostId);
+        store.seal();
+        HintsDescriptor descriptor = store.poll();
+        HintsReader reader = store.read(descriptor);
+        try
+        {
+            Hint hint = reader.next();
+            assertEquals(rm.key(), hint.mutation.key());
+            assertEquals(HintedHandOffManager.calculateHintTTL(rm), hint.ttl);
+            assertFalse(reader.hasNext());
+        }
+        finally
+        {
+            reader.close();
+        }
+        store.delete(descriptor);
+        assertFalse(store.hasHints());
+    }
 
-        // submit compaction
-        FBUtilities.waitOnFuture(HintedHandOffManager.instance.compact());
-        while (CompactionManager.instance.getPendingTasks() > 0 || CompactionManager.instance.getActiveCompactions() > 0)
-            TimeUnit.SECONDS.sleep(1);
+    // Hints left in system.hints by a previous version are moved to hints files
+    @Test
+    public void testLegacyHintsMigration() throws Exception
+    {
+        ColumnFamilyStore legacyHintStore = Keyspace.open(Keyspace.SYSTEM_KS).getColumnFamilyStore(SystemKeyspace.HINTS_CF);
+        legacyHintStore.clearUnsafe();
+
+        UUID hostId = UUID.randomUUID();
+        for (int i = 0; i < 3; i++)
+        {
+            RowMutation rm = new RowMutation(KEYSPACE4, ByteBufferUtil.bytes(i));
+            rm.add(STANDARD1_CF, ByteBufferUtil.bytes(String.valueOf(COLUMN1)), ByteBufferUtil.EMPTY_BYTE_BUFFER, System.currentTimeMillis());
+            legacyHintFor(rm, HintedHandOffManager.calculateHintTTL(rm), hostId).apply();
+        }
+        legacyHintStore.forceBlockingFlush();
+
+        HintedHandOffManager.instance.migrateLegacyHints();
+
+        assertTrue(legacyHintStore.isEmpty());
+        HintsStore store = HintedHandOffManager.instance.getHintsStore(hostId);
+        HintsDescriptor descriptor = store.poll();
+        assertNull(store.poll());
+        HintsReader reader = store.read(descriptor);
+        try
+        {
+            assertEquals(3, Iterators.size(reader));
+        }
+        finally
+        {
+            reader.close();
+        }
+        store.delete(descriptor);
+    }
 
-        // single row should not be removed because of gc_grace_seconds
-        // is 10 hours and there are no any tombstones in sstable
-        assertEquals(1, hintStore.getSSTables().size());
+    // the way hints used to be written to system.hints
+    private static RowMutation legacyHintFor(RowMutation mutation, int ttl, UUID targetId)
+    {
+        ByteBuffer name = HintedHandOffManager.comparator.decompose(UUIDGen.getTimeUUID(), MessagingService.current_version);
+        ByteBuffer value = ByteBuffer.wrap(FBUtilities.serialize(mutation, RowMutation.serializer, MessagingService.current_version));
+        ColumnFamily cf = ArrayBackedSortedColumns.factory.create(Schema.instance.getCFMetaData(Keyspace.SYSTEM_KS, SystemKeyspace.HINTS_CF));
+        cf.addColumn(name, value, System.currentTimeMillis(), ttl);
+        return new RowMutation(Keyspace.SYSTEM_KS, UUIDType.instance.decompose(targetId), cf);
     }
 
     @Test
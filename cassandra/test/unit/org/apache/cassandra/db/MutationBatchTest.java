@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.sink.IMessageSink;
+import org.apache.cassandra.sink.SinkManager;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.*;
+
+public class MutationBatchTest extends SchemaLoader
+{
+    @After
+    public void tearDown()
+    {
+        SinkManager.clear();
+    }
+
+    private static RowMutation mutation(String key, String column)
+    {
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes(key));
+        rm.add("Standard1", ByteBufferUtil.bytes(column), ByteBufferUtil.bytes("value"), 0);
+        return rm;
+    }
+
+    @Test
+    public void testSerialization() throws Exception
+    {
+        MutationBatch batch = new MutationBatch(Arrays.asList(mutation("k1", "c1"), mutation("k2", "c2")));
+        DataOutputBuffer out = new DataOutputBuffer();
+        MutationBatch.serializer.serialize(batch, out, MessagingService.current_version);
+        assertEquals(out.getLength(), MutationBatch.serializer.serializedSize(batch, MessagingService.current_version));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.getData(), 0, out.getLength()));
+        MutationBatch deserialized = MutationBatch.serializer.deserialize(in, MessagingService.current_version);
+        assertEquals(2, deserialized.mutations.size());
+        for (int i = 0; i < 2; i++)
+            assertEquals(batch.mutations.get(i).toString(true), deserialized.mutations.get(i).toString(true));
+    }
+
+    @Test
+    public void testVerbHandlerAppliesAllThenAcknowledgesOnce() throws Exception
+    {
+        final AtomicInteger responses = new AtomicInteger();
+        SinkManager.add(new IMessageSink()
+        {
+            public MessageOut handleMessage(MessageOut message, int id, InetAddress to)
+            {
+                if (message.verb == MessagingService.Verb.REQUEST_RESPONSE && id == 42)
+                    responses.incrementAndGet();
+                return null;
+            }
+
+            public MessageIn handleMessage(MessageIn message, int id, InetAddress to)
+            {
+                return message;
+            }
+        });
+
+        MutationBatch batch = new MutationBatch(Arrays.asList(mutation("batched1", "c1"), mutation("batched2", "c2")));
+        MessageIn<MutationBatch> message = MessageIn.create(FBUtilities.getBroadcastAddress(),
+                                                            batch,
+                                                            Collections.<String, byte[]>emptyMap(),
+                                                            MessagingService.Verb.MUTATION_BATCH,
+                                                            MessagingService.current_version);
+        new MutationBatchVerbHandler().doVerb(message, 42);
+
+        Keyspace keyspace = Keyspace.open("Keyspace1");
+        assertNotNull(Util.getColumnFamily(keyspace, Util.dk("batched1"), "Standard1").getColumn(ByteBufferUtil.bytes("c1")));
+        assertNotNull(Util.getColumnFamily(keyspace, Util.dk("batched2"), "Standard1").getColumn(ByteBufferUtil.bytes("c2")));
+        assertEquals(1, responses.get());
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.cassandra.db;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -28,6 +29,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.CommitLogArchiver;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -72,6 +74,29 @@ public class RecoveryManagerTest extends SchemaLoader
         assertColumns(Util.getColumnFamily(keyspace2, dk, "Standard3"), "col2");
     }
 
+    @Test
+    public void testRecoverSegmentsInParallel() throws IOException
+    {
+        Keyspace keyspace1 = Keyspace.open("Keyspace1");
+        CommitLog.instance.resetUnsafe();
+
+        // each mutation takes a fifth of a segment, so they span several segments read concurrently
+        for (int i = 0; i < 20; i++)
+        {
+            ColumnFamily cf = TreeMapBackedSortedColumns.factory.create("Keyspace1", "Standard1");
+            cf.addColumn(new Column(ByteBufferUtil.bytes("col"), ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize() / 5), 1L));
+            new RowMutation("Keyspace1", Util.dk("segkey" + i).key, cf).apply();
+        }
+        Assert.assertTrue(CommitLog.instance.activeSegments() > 1);
+
+        keyspace1.getColumnFamilyStore("Standard1").clearUnsafe();
+        CommitLog.instance.resetUnsafe(); // disassociate segments from live CL
+        CommitLog.instance.recover();
+
+        for (int i = 0; i < 20; i++)
+            assertColumns(Util.getColumnFamily(keyspace1, Util.dk("segkey" + i), "Standard1"), "col");
+    }
+
     @Test
     public void testRecoverCounter() throws IOException, ExecutionException, InterruptedException
     {
@@ -19,20 +19,27 @@
 package org.apache.cassandra.db;
 
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.Iterator;
 
 import org.junit.AfterClass;
 import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
+import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.dht.BytesToken;
 import org.apache.cassandra.locator.TokenMetadata;
 import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import static org.apache.cassandra.cql3.QueryProcessor.processInternal;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class RowCacheTest extends SchemaLoader
 {
@@ -135,6 +142,121 @@ public class RowCacheTest extends SchemaLoader
         CacheService.instance.setRowCacheCapacityInMB(0);
     }
 
+    @Test
+    public void testRowCacheHead() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        Keyspace keyspace = Keyspace.open(KEYSPACE);
+        String cfName = "CachedHeadCF";
+        ColumnFamilyStore cachedStore  = keyspace.getColumnFamilyStore(cfName);
+        CacheService.instance.invalidateRowCache();
+        CacheService.instance.setRowCacheCapacityInMB(1);
+
+        // a partition wider than the 10 rows we cache, and one that fits
+        DecoratedKey wide = Util.dk("wide");
+        RowMutation rm = new RowMutation(KEYSPACE, wide.key);
+        for (int i = 0; i < 100; i++)
+            rm.add(cfName, ByteBufferUtil.bytes(String.format("col%03d", i)), ByteBufferUtil.bytes("val" + i), 0);
+        rm.apply();
+        DecoratedKey narrow = Util.dk("narrow");
+        rm = new RowMutation(KEYSPACE, narrow.key);
+        for (int i = 0; i < 3; i++)
+            rm.add(cfName, ByteBufferUtil.bytes(String.format("col%03d", i)), ByteBufferUtil.bytes("val" + i), 0);
+        rm.apply();
+        cachedStore.forceBlockingFlush();
+
+        // reading the first columns caches the head of the partition
+        assertEquals(5, readSlice(cachedStore, wide, ByteBufferUtil.EMPTY_BYTE_BUFFER, 5).getColumnCount());
+        assertEquals(10, cachedStore.getRawCachedRow(wide).getColumnCount());
+
+        // slices within the head are served from the cache
+        long hits = CacheService.instance.rowCache.getMetrics().hits.count();
+        ColumnFamily cf = readSlice(cachedStore, wide, ByteBufferUtil.bytes("col009"), 100);
+        assertEquals(10, cf.getColumnCount());
+        assertEquals(hits + 1, CacheService.instance.rowCache.getMetrics().hits.count());
+
+        // others are not, but still return everything
+        cf = readSlice(cachedStore, wide, ByteBufferUtil.EMPTY_BYTE_BUFFER, 100);
+        assertEquals(100, cf.getColumnCount());
+        assertEquals(10, cachedStore.getRawCachedRow(wide).getColumnCount());
+
+        // small partitions are cached whole
+        readSlice(cachedStore, narrow, ByteBufferUtil.EMPTY_BYTE_BUFFER, 1);
+        assertEquals(3, readSlice(cachedStore, narrow, ByteBufferUtil.EMPTY_BYTE_BUFFER, 100).getColumnCount());
+        assertEquals(3, cachedStore.getRawCachedRow(narrow).getColumnCount());
+
+        // writes within the head update it in place, pushing the last column out
+        rm = new RowMutation(KEYSPACE, wide.key);
+        rm.add(cfName, ByteBufferUtil.bytes("col0005"), ByteBufferUtil.bytes("new"), 1);
+        rm.apply();
+        ColumnFamily head = cachedStore.getRawCachedRow(wide);
+        assertEquals(10, head.getColumnCount());
+        assertEquals(ByteBufferUtil.bytes("new"), head.getColumn(ByteBufferUtil.bytes("col0005")).value());
+        assertNull(head.getColumn(ByteBufferUtil.bytes("col009")));
+        assertEquals(ByteBufferUtil.bytes("new"), readSlice(cachedStore, wide, ByteBufferUtil.EMPTY_BYTE_BUFFER, 2).getColumn(ByteBufferUtil.bytes("col0005")).value());
+
+        // writes past the head don't change it
+        rm = new RowMutation(KEYSPACE, wide.key);
+        rm.add(cfName, ByteBufferUtil.bytes("col500"), ByteBufferUtil.bytes("new"), 1);
+        rm.apply();
+        assertEquals(head, cachedStore.getRawCachedRow(wide));
+        assertEquals(102, readSlice(cachedStore, wide, ByteBufferUtil.EMPTY_BYTE_BUFFER, 1000).getColumnCount());
+
+        // but all writes go in a whole cached partition
+        rm = new RowMutation(KEYSPACE, narrow.key);
+        rm.add(cfName, ByteBufferUtil.bytes("col500"), ByteBufferUtil.bytes("new"), 1);
+        rm.apply();
+        assertEquals(4, cachedStore.getRawCachedRow(narrow).getColumnCount());
+
+        // deletions invalidate a partial head
+        rm = new RowMutation(KEYSPACE, wide.key);
+        rm.delete(cfName, ByteBufferUtil.bytes("col001"), 2);
+        rm.apply();
+        assertFalse(cachedStore.containsCachedRow(wide));
+        cf = readSlice(cachedStore, wide, ByteBufferUtil.EMPTY_BYTE_BUFFER, 10);
+        assertTrue(cf.getColumn(ByteBufferUtil.bytes("col001")).isMarkedForDelete(System.currentTimeMillis()));
+        assertEquals(11, cf.getColumnCount());
+
+        CacheService.instance.setRowCacheCapacityInMB(0);
+    }
+
+    @Test
+    public void testRowCacheHeadOfCompoundTable() throws Exception
+    {
+        ColumnFamilyStore cachedStore = Keyspace.open(KEYSPACE).getColumnFamilyStore("cached_head_cql");
+        CacheService.instance.invalidateRowCache();
+        CacheService.instance.setRowCacheCapacityInMB(1);
+
+        for (int c = 0; c < 5; c++)
+            processInternal(String.format("INSERT INTO \"%s\".cached_head_cql (k, c, v1) VALUES ('k', %d, %d)", KEYSPACE, c, c));
+        cachedStore.forceBlockingFlush();
+
+        // the head holds the first 2 CQL rows, the last of which only has v1 so far
+        String selectHead = String.format("SELECT * FROM \"%s\".cached_head_cql WHERE k = 'k' LIMIT 2", KEYSPACE);
+        assertEquals(2, processInternal(selectHead).size());
+        assertTrue(cachedStore.containsCachedRow(Util.dk("k")));
+
+        // a cell of the last cached row sorting after its last cached cell goes in the head too
+        processInternal(String.format("UPDATE \"%s\".cached_head_cql SET v2 = 100 WHERE k = 'k' AND c = 1", KEYSPACE));
+        // and a new row past the head doesn't
+        processInternal(String.format("UPDATE \"%s\".cached_head_cql SET v2 = 200 WHERE k = 'k' AND c = 3", KEYSPACE));
+
+        long hits = CacheService.instance.rowCache.getMetrics().hits.count();
+        UntypedResultSet rows = processInternal(selectHead);
+        assertEquals(hits + 1, CacheService.instance.rowCache.getMetrics().hits.count());
+        Iterator<UntypedResultSet.Row> iter = rows.iterator();
+        assertFalse(iter.next().has("v2"));
+        assertEquals(100, iter.next().getInt("v2"));
+
+        CacheService.instance.setRowCacheCapacityInMB(0);
+    }
+
+    private static ColumnFamily readSlice(ColumnFamilyStore store, DecoratedKey key, ByteBuffer finish, int count)
+    {
+        return store.getColumnFamily(key, ByteBufferUtil.EMPTY_BYTE_BUFFER, finish, false, count, System.currentTimeMillis());
+    }
+
     @Test
     public void testRowCacheLoad() throws Exception
     {
@@ -165,6 +287,29 @@ public class RowCacheTest extends SchemaLoader
         CacheService.instance.setRowCacheCapacityInMB(0);
     }
 
+    @Test
+    public void testRowCacheLoadAsync() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+        CacheService.instance.setRowCacheCapacityInMB(1);
+
+        ColumnFamilyStore store = Keyspace.open(KEYSPACE).getColumnFamilyStore(COLUMN_FAMILY);
+        CacheService.instance.invalidateRowCache();
+        insertData(KEYSPACE, COLUMN_FAMILY, 2000, 100);
+        readData(KEYSPACE, COLUMN_FAMILY, 2000, 100);
+        CacheService.instance.rowCache.submitWrite(Integer.MAX_VALUE).get();
+        CacheService.instance.invalidateRowCache();
+
+        // requests are served while the cache loads; a row they cache is kept
+        DecoratedKey key = Util.dk("key2000");
+        store.getColumnFamily(key, ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, 1, System.currentTimeMillis());
+
+        assertEquals(100, CacheService.instance.rowCache.loadSavedAsync(store).get().intValue());
+        assertEquals(100, CacheService.instance.rowCache.size());
+        assertTrue(store.containsCachedRow(key));
+        CacheService.instance.setRowCacheCapacityInMB(0);
+    }
+
     @Test
     public void testRowCachePartialLoad() throws Exception
     {
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GroupCommitLogExecutorServiceTest
+{
+    @Test
+    public void testConcurrentWritersShareSyncs() throws Exception
+    {
+        final AtomicInteger appended = new AtomicInteger();
+        final AtomicInteger synced = new AtomicInteger();
+        final AtomicInteger syncs = new AtomicInteger();
+        Runnable sync = new Runnable()
+        {
+            public void run()
+            {
+                // a sync covers the appends that completed before it started
+                int covered = appended.get();
+                Uninterruptibles.sleepUninterruptibly(5, TimeUnit.MILLISECONDS);
+                synced.set(covered);
+                syncs.incrementAndGet();
+            }
+        };
+        final GroupCommitLogExecutorService executor = new GroupCommitLogExecutorService(sync, 10);
+
+        int writers = 50;
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> acknowledged = new ArrayList<>();
+        for (int i = 0; i < writers; i++)
+        {
+            acknowledged.add(pool.submit(new Callable<Boolean>()
+            {
+                public Boolean call() throws Exception
+                {
+                    start.await();
+                    final int[] mine = new int[1];
+                    executor.add(new Runnable()
+                    {
+                        public void run()
+                        {
+                            mine[0] = appended.incrementAndGet();
+                        }
+                    });
+                    return synced.get() >= mine[0];
+                }
+            }));
+        }
+        int syncsBefore = syncs.get();
+        start.countDown();
+        for (Future<Boolean> future : acknowledged)
+            assertTrue(future.get(10, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        // the writers were acknowledged by a handful of syncs, not one each
+        assertTrue(syncs.get() - syncsBefore < writers);
+
+        executor.shutdown();
+        executor.awaitTermination();
+    }
+
+    @Test
+    public void testShutdown() throws Exception
+    {
+        GroupCommitLogExecutorService executor = new GroupCommitLogExecutorService(new Runnable()
+        {
+            public void run()
+            {
+            }
+        }, 10);
+        Future<Integer> task = executor.submit(new Callable<Integer>()
+        {
+            public Integer call()
+            {
+                return 42;
+            }
+        });
+        executor.shutdown();
+        executor.awaitTermination();
+        assertEquals(42, task.get().intValue());
+
+        final AtomicInteger appended = new AtomicInteger();
+        try
+        {
+            executor.add(new Runnable()
+            {
+                public void run()
+                {
+                    appended.incrementAndGet();
+                }
+            });
+            fail("writes should be rejected after shutdown");
+        }
+        catch (RejectedExecutionException e)
+        {
+            assertEquals(0, appended.get());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFailedSyncReleasesWriters() throws Exception
+    {
+        final CountDownLatch failSync = new CountDownLatch(1);
+        final CountDownLatch syncFailing = new CountDownLatch(1);
+        GroupCommitLogExecutorService executor = new GroupCommitLogExecutorService(new Runnable()
+        {
+            public void run()
+            {
+                if (failSync.getCount() > 0)
+                    return;
+                syncFailing.countDown();
+                throw new RuntimeException("sync failed");
+            }
+        }, 10);
+
+        // the task and the write are both queued behind the failing sync
+        failSync.countDown();
+        syncFailing.await();
+        Future<Integer> task = executor.submit(new Callable<Integer>()
+        {
+            public Integer call()
+            {
+                return 42;
+            }
+        });
+        try
+        {
+            executor.add(new Runnable()
+            {
+                public void run()
+                {
+                }
+            });
+            fail("the write should not be acknowledged");
+        }
+        catch (RuntimeException e)
+        {
+            assertFalse(e instanceof RejectedExecutionException);
+        }
+        executor.awaitTermination();
+        assertTrue(task.isCancelled());
+    }
+}
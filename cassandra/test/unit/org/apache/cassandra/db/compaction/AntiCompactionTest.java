@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.SSTableMetadata;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.sstable.SSTableScanner;
+import org.apache.cassandra.repair.RepairJobDesc;
+import org.apache.cassandra.repair.Validator;
+import org.apache.cassandra.service.ActiveRepairService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.*;
+
+public class AntiCompactionTest extends SchemaLoader
+{
+    private static final String KEYSPACE = "Keyspace1";
+    private static final String CF = "Standard1";
+
+    private ColumnFamilyStore cfs;
+
+    @Before
+    public void setUp()
+    {
+        cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(CF);
+        cfs.disableAutoCompaction();
+        cfs.truncateBlocking();
+    }
+
+    @Test
+    public void testMarkFullyRepairedSSTable() throws Exception
+    {
+        SSTableReader sstable = writeSSTable(0, 10);
+        Map<Integer, Collection<Range<Token>>> ranges = new HashMap<>();
+        ranges.put(sstable.descriptor.generation, Collections.singletonList(new Range<>(Util.token(""), Util.token(""))));
+
+        CompactionManager.instance.submitAnticompaction(cfs, ranges, 1000L).get();
+
+        // marked in place
+        assertEquals(Collections.singleton(sstable), new HashSet<>(cfs.getSSTables()));
+        assertTrue(sstable.isRepaired());
+        assertEquals(1000L, sstable.getSSTableMetadata().repairedAt);
+        assertEquals(1000L, SSTableMetadata.serializer.deserialize(sstable.descriptor).left.repairedAt);
+    }
+
+    @Test
+    public void testSplitPartlyRepairedSSTable() throws Exception
+    {
+        SSTableReader sstable = writeSSTable(0, 10);
+        // keys 1 to 4
+        Map<Integer, Collection<Range<Token>>> ranges = new HashMap<>();
+        ranges.put(sstable.descriptor.generation, Collections.singletonList(new Range<>(Util.token("0"), Util.token("4"))));
+
+        CompactionManager.instance.submitAnticompaction(cfs, ranges, 1000L).get();
+
+        Collection<SSTableReader> sstables = cfs.getSSTables();
+        assertEquals(2, sstables.size());
+        assertFalse(sstables.contains(sstable));
+        for (SSTableReader result : sstables)
+        {
+            Set<String> keys = keys(result);
+            if (result.isRepaired())
+            {
+                assertEquals(1000L, result.getSSTableMetadata().repairedAt);
+                assertEquals(new HashSet<>(Arrays.asList("1", "2", "3", "4")), keys);
+            }
+            else
+            {
+                assertEquals(new HashSet<>(Arrays.asList("0", "5", "6", "7", "8", "9")), keys);
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalValidation() throws Exception
+    {
+        SSTableReader first = writeSSTable(0, 5);
+        Range<Token> range = new Range<>(Util.token(""), Util.token(""));
+
+        UUID success = UUID.randomUUID();
+        validate(new RepairJobDesc(success, KEYSPACE, CF, range));
+        for (Future<?> future : ActiveRepairService.instance.anticompact(Collections.singletonList(success), Collections.<UUID>emptyList(), 1000L))
+            future.get();
+        assertTrue(first.isRepaired());
+
+        // the next incremental repair only validates the new sstable, and fails: nothing is marked repaired
+        SSTableReader second = writeSSTable(5, 10);
+        UUID failure = UUID.randomUUID();
+        validate(new RepairJobDesc(failure, KEYSPACE, CF, range));
+        assertTrue(ActiveRepairService.instance.anticompact(Collections.<UUID>emptyList(), Collections.singletonList(failure), 2000L).isEmpty());
+        assertEquals(1000L, first.getSSTableMetadata().repairedAt);
+        assertFalse(second.isRepaired());
+
+        // repaired and unrepaired sstables are never compacted together
+        List<List<SSTableReader>> groups = AbstractCompactionStrategy.splitByRepairStatus(cfs.getSSTables());
+        assertEquals(Arrays.asList(Collections.singletonList(second), Collections.singletonList(first)), groups);
+    }
+
+    @Test
+    public void testConvictedCoordinatorForgetsValidation() throws Exception
+    {
+        SSTableReader first = writeSSTable(0, 5);
+        SSTableReader second = writeSSTable(5, 10);
+        Range<Token> range = new Range<>(Util.token(""), Util.token(""));
+        InetAddress coordinator = InetAddress.getByName("127.0.0.2");
+
+        UUID convicted = UUID.randomUUID();
+        ActiveRepairService.instance.recordValidatedSSTables(new RepairJobDesc(convicted, KEYSPACE, CF, range), coordinator, Collections.singletonList(first));
+        UUID suspected = UUID.randomUUID();
+        ActiveRepairService.instance.recordValidatedSSTables(new RepairJobDesc(suspected, KEYSPACE, CF, range), FBUtilities.getBroadcastAddress(), Collections.singletonList(second));
+
+        // a mere suspicion is not enough to give up on the sessions of a coordinator
+        ActiveRepairService.instance.convict(coordinator, Double.MAX_VALUE);
+        ActiveRepairService.instance.convict(FBUtilities.getBroadcastAddress(), DatabaseDescriptor.getPhiConvictThreshold());
+
+        for (Future<?> future : ActiveRepairService.instance.anticompact(Arrays.asList(convicted, suspected), Collections.<UUID>emptyList(), 1000L))
+            future.get();
+        assertFalse(first.isRepaired());
+        assertTrue(second.isRepaired());
+    }
+
+    private void validate(RepairJobDesc desc) throws Exception
+    {
+        Validator validator = new Validator(desc, FBUtilities.getBroadcastAddress(), cfs.gcBefore(System.currentTimeMillis()), true);
+        CompactionManager.instance.submitValidation(cfs, validator).get();
+    }
+
+    private SSTableReader writeSSTable(int start, int end)
+    {
+        Set<SSTableReader> before = new HashSet<>(cfs.getSSTables());
+        for (int i = start; i < end; i++)
+        {
+            DecoratedKey key = Util.dk(Integer.toString(i));
+            RowMutation rm = new RowMutation(KEYSPACE, key.key);
+            rm.add(CF, ByteBufferUtil.bytes("c"), ByteBufferUtil.bytes(i), 0);
+            rm.apply();
+        }
+        cfs.forceBlockingFlush();
+        Set<SSTableReader> after = new HashSet<>(cfs.getSSTables());
+        after.removeAll(before);
+        assertEquals(1, after.size());
+        return after.iterator().next();
+    }
+
+    private static Set<String> keys(SSTableReader sstable) throws Exception
+    {
+        Set<String> keys = new HashSet<>();
+        SSTableScanner scanner = sstable.getScanner();
+        try
+        {
+            while (scanner.hasNext())
+                keys.add(ByteBufferUtil.string(scanner.next().getKey().key));
+        }
+        finally
+        {
+            scanner.close();
+        }
+        return keys;
+    }
+}
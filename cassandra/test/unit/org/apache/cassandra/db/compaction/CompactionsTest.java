@@ -34,6 +34,7 @@ import org.junit.runner.RunWith;
 import org.apache.cassandra.OrderedJUnit4ClassRunner;
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
@@ -269,6 +270,82 @@ public class CompactionsTest extends SchemaLoader
         assert sstables.iterator().next().descriptor.generation == prevGeneration + 1;
     }
 
+    @Test
+    public void testSubrangeCompaction() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open(KEYSPACE1);
+        String cfname = "StandardLong1";
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(cfname);
+        cfs.disableAutoCompaction();
+
+        // three overlapping sstables, each overwriting the same rows
+        final int ROWS = 1000;
+        for (int sstable = 0; sstable < 3; sstable++)
+        {
+            for (int i = 0; i < ROWS; i++)
+            {
+                RowMutation rm = new RowMutation(KEYSPACE1, Util.dk(String.format("%04d", i)).key);
+                rm.add(cfname, ByteBufferUtil.bytes("col"), ByteBufferUtil.bytes(sstable), sstable);
+                rm.apply();
+            }
+            cfs.forceBlockingFlush();
+        }
+        assertEquals(3, cfs.getSSTables().size());
+
+        int subranges = DatabaseDescriptor.getCompactionSubranges();
+        long minSize = DatabaseDescriptor.getCompactionSubrangeMinSize();
+        DatabaseDescriptor.setCompactionSubranges(4);
+        DatabaseDescriptor.setCompactionSubrangeMinSizeInMB(0);
+        try
+        {
+            CompactionManager.instance.performMaximal(cfs);
+        }
+        finally
+        {
+            DatabaseDescriptor.setCompactionSubranges(subranges);
+            DatabaseDescriptor.setCompactionSubrangeMinSizeInMB((int) (minSize / (1024 * 1024)));
+        }
+
+        // one sstable per sub-range, covering disjoint ranges
+        List<SSTableReader> sstables = new ArrayList<SSTableReader>(cfs.getSSTables());
+        assertEquals(4, sstables.size());
+        Collections.sort(sstables, SSTableReader.sstableComparator);
+        for (int i = 1; i < sstables.size(); i++)
+            assertTrue(sstables.get(i - 1).last.compareTo(sstables.get(i).first) < 0);
+
+        // and every row keeps its latest value
+        List<Row> rows = Util.getRangeSlice(cfs);
+        assertEquals(ROWS, rows.size());
+        for (Row row : rows)
+            assertEquals(ByteBufferUtil.bytes(2), row.cf.getColumn(ByteBufferUtil.bytes("col")).value());
+    }
+
+    @Test
+    public void testSplitRanges()
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore("StandardLong2");
+        cfs.disableAutoCompaction();
+        for (int i = 0; i < 1000; i++)
+        {
+            RowMutation rm = new RowMutation(KEYSPACE1, Util.dk(String.format("%04d", i)).key);
+            rm.add("StandardLong2", ByteBufferUtil.bytes("col"), ByteBufferUtil.EMPTY_BYTE_BUFFER, 0);
+            rm.apply();
+        }
+        cfs.forceBlockingFlush();
+
+        Token minimum = cfs.partitioner.getMinimumToken();
+        List<Range<Token>> ranges = CompactionTask.splitRanges(cfs.getSSTables(), 4, cfs.partitioner);
+        assertEquals(4, ranges.size());
+        assertEquals(minimum, ranges.get(0).left);
+        assertEquals(minimum, ranges.get(3).right);
+        for (int i = 1; i < ranges.size(); i++)
+            assertEquals(ranges.get(i - 1).right, ranges.get(i).left);
+
+        // without samples, the ring is not split
+        assertEquals(Collections.singletonList(new Range<Token>(minimum, minimum)),
+                     CompactionTask.splitRanges(Collections.<SSTableReader>emptyList(), 4, cfs.partitioner));
+    }
+
     @Test
     public void testCompactionLog() throws Exception
     {
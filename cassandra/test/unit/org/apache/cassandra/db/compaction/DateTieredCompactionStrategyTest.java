@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.Pair;
+
+import static org.apache.cassandra.db.compaction.DateTieredCompactionStrategy.getBuckets;
+import static org.apache.cassandra.db.compaction.DateTieredCompactionStrategy.newestBucket;
+import static org.apache.cassandra.db.compaction.DateTieredCompactionStrategy.filterOldSSTables;
+import static org.apache.cassandra.db.compaction.DateTieredCompactionStrategy.validateOptions;
+
+import static org.junit.Assert.*;
+
+public class DateTieredCompactionStrategyTest extends SchemaLoader
+{
+    @Test
+    public void testOptionsValidation() throws ConfigurationException
+    {
+        Map<String, String> options = new HashMap<>();
+        options.put(DateTieredCompactionStrategyOptions.BASE_TIME_KEY, "30");
+        options.put(DateTieredCompactionStrategyOptions.MAX_SSTABLE_AGE_KEY, "1825");
+        options.put(DateTieredCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY, "MILLISECONDS");
+        Map<String, String> unvalidated = validateOptions(options);
+        assertTrue(unvalidated.isEmpty());
+
+        DateTieredCompactionStrategyOptions parsed = new DateTieredCompactionStrategyOptions(options);
+        assertEquals(30000, parsed.baseTime);
+        assertEquals(1825L * 24 * 3600 * 1000, parsed.maxSSTableAge);
+
+        try
+        {
+            options.put(DateTieredCompactionStrategyOptions.BASE_TIME_KEY, "0");
+            validateOptions(options);
+            fail(String.format("%s == 0 should be rejected", DateTieredCompactionStrategyOptions.BASE_TIME_KEY));
+        }
+        catch (ConfigurationException e)
+        {
+            options.put(DateTieredCompactionStrategyOptions.BASE_TIME_KEY, "30");
+        }
+
+        try
+        {
+            options.put(DateTieredCompactionStrategyOptions.MAX_SSTABLE_AGE_KEY, "-1");
+            validateOptions(options);
+            fail(String.format("Negative %s should be rejected", DateTieredCompactionStrategyOptions.MAX_SSTABLE_AGE_KEY));
+        }
+        catch (ConfigurationException e)
+        {
+            options.put(DateTieredCompactionStrategyOptions.MAX_SSTABLE_AGE_KEY, "0");
+        }
+
+        try
+        {
+            options.put(DateTieredCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY, "HOURLY");
+            validateOptions(options);
+            fail(String.format("Unknown %s should be rejected", DateTieredCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY));
+        }
+        catch (ConfigurationException e)
+        {
+            options.put(DateTieredCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY, "SECONDS");
+        }
+
+        options.put("bad_option", "1.0");
+        unvalidated = validateOptions(options);
+        assertTrue(unvalidated.containsKey("bad_option"));
+    }
+
+    @Test
+    public void testGetBuckets()
+    {
+        List<Pair<String, Long>> pairs = Lists.newArrayList(
+                Pair.create("a", 199L),
+                Pair.create("b", 299L),
+                Pair.create("a", 1L),
+                Pair.create("b", 201L)
+        );
+        List<List<String>> buckets = getBuckets(pairs, 100L, 2, 200L);
+        assertEquals(2, buckets.size());
+
+        for (List<String> bucket : buckets)
+        {
+            assertEquals(2, bucket.size());
+            assertEquals(bucket.get(0), bucket.get(1));
+        }
+
+        pairs = Lists.newArrayList(
+                Pair.create("a", 2000L),
+                Pair.create("b", 3600L),
+                Pair.create("a", 200L),
+                Pair.create("c", 3950L),
+                Pair.create("too new", 4125L),
+                Pair.create("b", 3899L),
+                Pair.create("c", 3900L)
+        );
+        buckets = getBuckets(pairs, 100L, 3, 4050L);
+        // targets (divPosition, size): (40, 100), (39, 100), (12, 300), (3, 900), (0, 2700)
+        // in other words: 0 - 2699, 2700 - 3599, 3600 - 3899, 3900 - 3999, 4000 - 4099
+        assertEquals(3, buckets.size());
+
+        for (List<String> bucket : buckets)
+        {
+            assertEquals(2, bucket.size());
+            assertEquals(bucket.get(0), bucket.get(1));
+        }
+
+        // newest first
+        assertEquals("c", buckets.get(0).get(0));
+        assertEquals("b", buckets.get(1).get(0));
+        assertEquals("a", buckets.get(2).get(0));
+
+        // windows are exponentially larger as they get older
+        pairs = Lists.newArrayList();
+        for (int i = 0; i < 100; i++)
+            pairs.add(Pair.create(String.valueOf(i), 100L * i));
+        buckets = getBuckets(pairs, 100L, 2, 10000L);
+        int previousSize = 0;
+        for (List<String> bucket : buckets)
+        {
+            assertTrue(bucket.size() >= previousSize);
+            previousSize = bucket.size();
+        }
+        assertTrue(buckets.size() < 100 / 2);
+    }
+
+    @Test
+    public void testPrepBucket() throws Exception
+    {
+        String ksname = "Keyspace1";
+        String cfname = "Standard1";
+        Keyspace keyspace = Keyspace.open(ksname);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(cfname);
+        cfs.truncateBlocking();
+        cfs.disableAutoCompaction();
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+
+        // create 3 sstables
+        int numSSTables = 3;
+        for (int r = 0; r < numSSTables; r++)
+        {
+            DecoratedKey key = Util.dk(String.valueOf(r));
+            RowMutation rm = new RowMutation(ksname, key.key);
+            rm.add(cfname, ByteBufferUtil.bytes("column"), value, r);
+            rm.apply();
+            cfs.forceBlockingFlush();
+        }
+        cfs.forceBlockingFlush();
+
+        List<SSTableReader> sstrs = new ArrayList<>(cfs.getSSTables());
+
+        List<SSTableReader> newBucket = newestBucket(Collections.singletonList(sstrs.subList(0, 2)), 4, 32);
+        assertTrue("nothing should be returned when all buckets are below the min threshold", newBucket.isEmpty());
+
+        newBucket = newestBucket(Arrays.asList(sstrs.subList(0, 2), sstrs), 2, 32);
+        assertEquals("the newest bucket should be returned first", 2, newBucket.size());
+
+        newBucket = newestBucket(Collections.singletonList(sstrs), 2, 2);
+        assertEquals("the bucket should be trimmed to the max threshold", 2, newBucket.size());
+
+        assertEquals(1, filterOldSSTables(sstrs, 1, 3).size());
+        assertEquals(2, filterOldSSTables(sstrs, 1, 2).size());
+        assertEquals("a max age of 0 should keep everything", 3, filterOldSSTables(sstrs, 0, 2).size());
+    }
+
+    @Test
+    public void testCompactsWithinWindows() throws Exception
+    {
+        String ksname = "Keyspace1";
+        String cfname = "Standard1";
+        Keyspace keyspace = Keyspace.open(ksname);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(cfname);
+        cfs.truncateBlocking();
+        cfs.disableAutoCompaction();
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+
+        // 2 sstables in an old window, 4 in a new one
+        long[] timestamps = { 0, 1, 1000000, 1000001, 1000002, 1000003 };
+        for (int r = 0; r < timestamps.length; r++)
+        {
+            DecoratedKey key = Util.dk(String.valueOf(r));
+            RowMutation rm = new RowMutation(ksname, key.key);
+            rm.add(cfname, ByteBufferUtil.bytes("column"), value, timestamps[r]);
+            rm.apply();
+            cfs.forceBlockingFlush();
+        }
+        assertEquals(timestamps.length, cfs.getSSTables().size());
+
+        Map<String, String> options = new HashMap<>();
+        options.put(DateTieredCompactionStrategyOptions.BASE_TIME_KEY, "1");
+        options.put(DateTieredCompactionStrategyOptions.MAX_SSTABLE_AGE_KEY, "0");
+        options.put(DateTieredCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY, "MICROSECONDS");
+        DateTieredCompactionStrategy dtcs = new DateTieredCompactionStrategy(cfs, options);
+
+        AbstractCompactionTask task = dtcs.getNextBackgroundTask((int) (System.currentTimeMillis() / 1000));
+        assertNotNull(task);
+        task.execute(null);
+
+        // the newest window was compacted, the old one was left alone
+        assertEquals(3, cfs.getSSTables().size());
+        int newSSTables = 0;
+        for (SSTableReader sstable : cfs.getSSTables())
+        {
+            if (sstable.getMinTimestamp() >= 1000000)
+            {
+                newSSTables++;
+                assertEquals(1000003, sstable.getMaxTimestamp());
+            }
+            else
+            {
+                assertEquals(sstable.getMinTimestamp(), sstable.getMaxTimestamp());
+            }
+        }
+        assertEquals(1, newSSTables);
+        assertNull(dtcs.getNextBackgroundTask((int) (System.currentTimeMillis() / 1000)));
+    }
+
+    @Test
+    public void testDropExpiredSSTables() throws Exception
+    {
+        String ksname = "Keyspace1";
+        String cfname = "Standard1";
+        Keyspace keyspace = Keyspace.open(ksname);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(cfname);
+        cfs.truncateBlocking();
+        cfs.disableAutoCompaction();
+
+        ByteBuffer value = ByteBuffer.wrap(new byte[100]);
+
+        // create 2 sstables, one of which will expire
+        DecoratedKey key = Util.dk("expired");
+        RowMutation rm = new RowMutation(ksname, key.key);
+        rm.add(cfname, ByteBufferUtil.bytes("column"), value, System.currentTimeMillis(), 1);
+        rm.apply();
+        cfs.forceBlockingFlush();
+        SSTableReader expiredSSTable = cfs.getSSTables().iterator().next();
+        Thread.sleep(10);
+
+        key = Util.dk("nonexpired");
+        rm = new RowMutation(ksname, key.key);
+        rm.add(cfname, ByteBufferUtil.bytes("column"), value, System.currentTimeMillis());
+        rm.apply();
+        cfs.forceBlockingFlush();
+        assertEquals(2, cfs.getSSTables().size());
+
+        Map<String, String> options = new HashMap<>();
+        options.put(DateTieredCompactionStrategyOptions.BASE_TIME_KEY, "30");
+        options.put(DateTieredCompactionStrategyOptions.TIMESTAMP_RESOLUTION_KEY, "MILLISECONDS");
+        DateTieredCompactionStrategy dtcs = new DateTieredCompactionStrategy(cfs, options);
+
+        // nothing is expired yet, and a single sstable per window is not worth compacting
+        assertNull(dtcs.getNextBackgroundTask((int) (System.currentTimeMillis() / 1000)));
+
+        Thread.sleep(2000);
+        AbstractCompactionTask task = dtcs.getNextBackgroundTask((int) (System.currentTimeMillis() / 1000));
+        assertNotNull(task);
+        assertEquals(Collections.singletonList(expiredSSTable), Lists.newArrayList(((CompactionTask) task).sstables));
+        task.execute(null);
+
+        // the expired sstable was dropped without rewriting anything
+        assertEquals(1, cfs.getSSTables().size());
+        assertFalse(cfs.getSSTables().contains(expiredSSTable));
+    }
+}
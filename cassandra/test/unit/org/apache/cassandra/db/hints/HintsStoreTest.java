@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.hints;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.common.collect.Iterators;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.*;
+
+public class HintsStoreTest extends SchemaLoader
+{
+    private File directory;
+
+    @Before
+    public void createDirectory()
+    {
+        directory = Files.createTempDir();
+    }
+
+    @After
+    public void deleteDirectory()
+    {
+        FileUtils.deleteRecursive(directory);
+    }
+
+    private static Hint hint(int key)
+    {
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes(key));
+        rm.add("Standard1", ByteBufferUtil.bytes("c"), ByteBufferUtil.bytes(key), 0);
+        return Hint.create(rm, 3600);
+    }
+
+    private static List<Integer> readKeys(HintsStore store, HintsDescriptor descriptor)
+    {
+        List<Integer> keys = new ArrayList<Integer>();
+        HintsReader reader = store.read(descriptor);
+        try
+        {
+            while (reader.hasNext())
+                keys.add(ByteBufferUtil.toInt(reader.next().mutation.key()));
+        }
+        finally
+        {
+            reader.close();
+        }
+        return keys;
+    }
+
+    @Test
+    public void testWriteAndRead()
+    {
+        HintsStore store = HintsCatalog.load(directory).get(UUID.randomUUID());
+        assertFalse(store.hasHints());
+        for (int i = 0; i < 10; i++)
+            store.write(hint(i));
+        assertTrue(store.hasHints());
+        // nothing can be dispatched until the file is sealed
+        assertNull(store.poll());
+
+        store.seal();
+        HintsDescriptor descriptor = store.poll();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 10; i++)
+            expected.add(i);
+        assertEquals(expected, readKeys(store, descriptor));
+
+        store.delete(descriptor);
+        assertFalse(store.hasHints());
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void testTruncatedFile() throws Exception
+    {
+        HintsStore store = HintsCatalog.load(directory).get(UUID.randomUUID());
+        for (int i = 0; i < 3; i++)
+            store.write(hint(i));
+        store.seal();
+        HintsDescriptor descriptor = store.poll();
+
+        // lose the end of the last hint, as if we had crashed while writing it
+        RandomAccessFile file = new RandomAccessFile(descriptor.file(directory), "rw");
+        try
+        {
+            file.setLength(file.length() - 5);
+        }
+        finally
+        {
+            file.close();
+        }
+        assertEquals(2, readKeys(store, descriptor).size());
+
+        // and a hint whose checksum does not match is not read either
+        file = new RandomAccessFile(descriptor.file(directory), "rw");
+        try
+        {
+            file.seek(HintsWriter.ENTRY_OVERHEAD_SIZE);
+            int b = file.read();
+            file.seek(HintsWriter.ENTRY_OVERHEAD_SIZE);
+            file.write(~b);
+        }
+        finally
+        {
+            file.close();
+        }
+        HintsReader reader = store.read(descriptor);
+        try
+        {
+            assertEquals(0, Iterators.size(reader));
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testLoad()
+    {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        HintsCatalog catalog = HintsCatalog.load(directory);
+        catalog.get(first).write(hint(1));
+        catalog.get(first).seal();
+        catalog.get(first).write(hint(2));
+        catalog.get(first).seal();
+        catalog.get(second).write(hint(3));
+        catalog.get(second).seal();
+
+        catalog = HintsCatalog.load(directory);
+        assertEquals(2, catalog.stores().size());
+        HintsStore store = catalog.getIfExists(first);
+        assertEquals(1, (int) readKeys(store, store.poll()).get(0));
+        assertEquals(2, (int) readKeys(store, store.poll()).get(0));
+        assertNull(store.poll());
+
+        catalog.getIfExists(second).deleteAll();
+        assertFalse(catalog.getIfExists(second).hasHints());
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    @Test
+    public void testSync()
+    {
+        HintsWriter writer = HintsWriter.create(directory, new HintsDescriptor(UUID.randomUUID(), System.currentTimeMillis()));
+        try
+        {
+            writer.append(hint(0));
+            assertEquals(0, writer.syncedPosition());
+            writer.sync();
+            assertEquals(writer.position(), writer.syncedPosition());
+            assertEquals(writer.position(), writer.descriptor.file(directory).length());
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        // syncAll() syncs the files being written, and skips the stores that have none
+        HintsCatalog catalog = HintsCatalog.load(directory);
+        catalog.get(UUID.randomUUID()).write(hint(1));
+        HintsStore sealed = catalog.get(UUID.randomUUID());
+        sealed.write(hint(2));
+        sealed.seal();
+        catalog.syncAll();
+        assertEquals(1, readKeys(sealed, sealed.poll()).size());
+    }
+}
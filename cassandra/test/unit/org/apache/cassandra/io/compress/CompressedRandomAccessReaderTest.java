@@ -23,6 +23,8 @@ import java.util.Random;
 
 import org.junit.Test;
 
+import org.apache.cassandra.cache.ChunkCache;
+
 import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.SSTableMetadata;
@@ -30,6 +32,7 @@ import org.apache.cassandra.io.util.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class CompressedRandomAccessReaderTest
 {
@@ -177,6 +180,77 @@ public class CompressedRandomAccessReaderTest
         }
     }
 
+    @Test
+    public void testChunkCache() throws IOException
+    {
+        File file = File.createTempFile("chunkcache", "1");
+        file.deleteOnExit();
+        File metadata = new File(file.getPath() + ".meta");
+        metadata.deleteOnExit();
+
+        SSTableMetadata.Collector sstableMetadataCollector = SSTableMetadata.createCollector(BytesType.instance).replayPosition(null);
+        SequentialWriter writer = new CompressedSequentialWriter(file, metadata.getPath(), false, new CompressionParameters(SnappyCompressor.instance), sstableMetadataCollector);
+        // three chunks worth of data
+        int length = 3 * CompressionParameters.DEFAULT_CHUNK_LENGTH;
+        for (int i = 0; i < length; i++)
+            writer.write((byte) i);
+        writer.close();
+
+        CompressionMetadata meta = new CompressionMetadata(metadata.getPath(), file.length(), true);
+        ChunkCache cache = new ChunkCache(1024 * 1024);
+        for (int pass = 0; pass < 2; pass++)
+        {
+            RandomAccessReader reader = new CompressedRandomAccessReader(file.getPath(), meta, null, cache);
+            for (int i = 0; i < length; i++)
+                assertEquals((byte) i, reader.readByte());
+            reader.close();
+            // the first pass populates the cache, the second one is served from it
+            assertEquals(3, cache.size());
+        }
+
+        // a reader positioned on a cached chunk returns the cached data
+        RandomAccessReader reader = new CompressedRandomAccessReader(file.getPath(), meta, null, cache);
+        reader.seek(CompressionParameters.DEFAULT_CHUNK_LENGTH + 7);
+        assertEquals((byte) (CompressionParameters.DEFAULT_CHUNK_LENGTH + 7), reader.readByte());
+        reader.close();
+
+        cache.invalidate(file.getPath());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    public void testChunkCacheEviction()
+    {
+        ChunkCache cache = new ChunkCache(1024);
+        byte[] chunk = new byte[256];
+        for (int i = 0; i < 8; i++)
+            cache.put("evict", i * 256, chunk, chunk.length);
+        assertTrue(cache.weightedSize() <= 1024);
+        // the most recent chunk survives, the oldest ones are gone
+        assertEquals(256, cache.get("evict", 7 * 256, new byte[256]));
+        assertEquals(-1, cache.get("evict", 0, new byte[256]));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testChunkCacheInvalidation()
+    {
+        ChunkCache cache = new ChunkCache(1024);
+        byte[] chunk = new byte[256];
+        for (int i = 0; i < 6; i++)
+            cache.put(i % 2 == 0 ? "even" : "odd", i * 256, chunk, chunk.length);
+
+        // only the chunks of the invalidated file go, evicted ones included
+        cache.invalidate("even");
+        assertEquals(-1, cache.get("even", 4 * 256, new byte[256]));
+        assertEquals(256, cache.get("odd", 5 * 256, new byte[256]));
+        cache.invalidate("odd");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+    }
+
     private void updateChecksum(RandomAccessFile file, long checksumOffset, byte[] checksum) throws IOException
     {
         file.seek(checksumOffset);
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.io.util.SequentialWriter;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.*;
+
+public class PartitionIndexTest
+{
+    @Test
+    public void testByteComparableOrder()
+    {
+        for (IPartitioner<?> partitioner : Arrays.<IPartitioner<?>>asList(new Murmur3Partitioner(), new RandomPartitioner(), new ByteOrderedPartitioner()))
+        {
+            List<DecoratedKey> keys = randomKeys(partitioner, 1000, new Random(0));
+            for (int i = 1; i < keys.size(); i++)
+            {
+                byte[] previous = PartitionIndex.byteComparable(keys.get(i - 1));
+                byte[] current = PartitionIndex.byteComparable(keys.get(i));
+                assertTrue(partitioner.toString(), ByteBufferUtil.compareUnsigned(ByteBuffer.wrap(previous), ByteBuffer.wrap(current)) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void testLookup() throws IOException
+    {
+        for (IPartitioner<?> partitioner : Arrays.<IPartitioner<?>>asList(new Murmur3Partitioner(), new ByteOrderedPartitioner()))
+        {
+            Random random = new Random(1);
+            List<DecoratedKey> keys = randomKeys(partitioner, 10000, random);
+            File file = File.createTempFile("PartitionIndex", ".db");
+            file.deleteOnExit();
+
+            SequentialWriter writer = SequentialWriter.open(file, true);
+            PartitionIndexBuilder builder = new PartitionIndexBuilder(writer);
+            for (int i = 0; i < keys.size(); i++)
+                builder.add(PartitionIndex.byteComparable(keys.get(i)), i * 100L);
+            builder.complete();
+            writer.close();
+
+            PartitionIndex index = PartitionIndex.open(file.getPath());
+            for (int i = 0; i < keys.size(); i++)
+                assertEquals(i * 100L, index.getIndexPosition(keys.get(i)));
+
+            // absent keys either fall off the trie or point at a key that must then be compared
+            Set<DecoratedKey> present = new HashSet<>(keys);
+            for (DecoratedKey absent : randomKeys(partitioner, 1000, random))
+            {
+                if (present.contains(absent))
+                    continue;
+                long position = index.getIndexPosition(absent);
+                assertTrue(position == -1 || position % 100 == 0);
+            }
+            index.close();
+        }
+    }
+
+    @Test
+    public void testResetAndTruncate() throws IOException
+    {
+        IPartitioner<?> partitioner = new Murmur3Partitioner();
+        List<DecoratedKey> keys = randomKeys(partitioner, 100, new Random(2));
+        File file = File.createTempFile("PartitionIndex", ".db");
+        file.deleteOnExit();
+
+        SequentialWriter writer = SequentialWriter.open(file, true);
+        PartitionIndexBuilder builder = new PartitionIndexBuilder(writer);
+        // every other key is reset, as Scrubber does with rows it fails to write
+        List<DecoratedKey> written = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++)
+        {
+            builder.mark();
+            builder.add(PartitionIndex.byteComparable(keys.get(i)), i);
+            if (i % 2 == 0)
+                written.add(keys.get(i));
+            else
+                builder.resetAndTruncate();
+        }
+        builder.complete();
+        writer.close();
+
+        PartitionIndex index = PartitionIndex.open(file.getPath());
+        for (DecoratedKey key : written)
+            assertEquals(keys.indexOf(key), index.getIndexPosition(key));
+        for (int i = 1; i < keys.size(); i += 2)
+        {
+            long position = index.getIndexPosition(keys.get(i));
+            assertTrue(position == -1 || position % 2 == 0);
+        }
+        index.close();
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        File file = File.createTempFile("PartitionIndex", ".db");
+        file.deleteOnExit();
+        SequentialWriter writer = SequentialWriter.open(file, true);
+        new PartitionIndexBuilder(writer).complete();
+        writer.close();
+
+        PartitionIndex index = PartitionIndex.open(file.getPath());
+        assertEquals(-1, index.getIndexPosition(new Murmur3Partitioner().decorateKey(ByteBufferUtil.bytes("a"))));
+        index.close();
+    }
+
+    private static List<DecoratedKey> randomKeys(IPartitioner<?> partitioner, int count, Random random)
+    {
+        SortedSet<DecoratedKey> keys = new TreeSet<>();
+        while (keys.size() < count)
+        {
+            byte[] key = new byte[1 + random.nextInt(12)];
+            random.nextBytes(key);
+            keys.add(partitioner.decorateKey(ByteBuffer.wrap(key)));
+        }
+        return new ArrayList<>(keys);
+    }
+}
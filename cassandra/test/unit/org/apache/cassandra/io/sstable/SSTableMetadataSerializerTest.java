@@ -54,7 +54,8 @@ public class SSTableMetadataSerializerTest
         SSTableMetadata.Collector collector = SSTableMetadata.createCollector(BytesType.instance)
                                                              .estimatedRowSize(rowSizes)
                                                              .estimatedColumnCount(columnCounts)
-                                                             .replayPosition(rp);
+                                                             .replayPosition(rp)
+                                                             .repairedAt(1388534400000L);
         collector.updateMinTimestamp(minTimestamp);
         collector.updateMaxTimestamp(maxTimestamp);
         SSTableMetadata originalMetadata = collector.finalizeMetadata(RandomPartitioner.class.getCanonicalName(), 0.1);
@@ -85,6 +86,7 @@ public class SSTableMetadataSerializerTest
         assert stats.maxTimestamp == originalMetadata.maxTimestamp;
         assert stats.bloomFilterFPChance == originalMetadata.bloomFilterFPChance;
         assert RandomPartitioner.class.getCanonicalName().equals(stats.partitioner);
+        assert stats.repairedAt == 1388534400000L;
         assert ancestors.equals(statsPair.right);
     }
 }
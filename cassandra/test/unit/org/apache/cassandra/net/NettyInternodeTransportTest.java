@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHashFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.After;
+import org.junit.Test;
+
+import org.apache.cassandra.sink.IMessageSink;
+import org.apache.cassandra.sink.SinkManager;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.*;
+
+public class NettyInternodeTransportTest
+{
+    @After
+    public void tearDown()
+    {
+        SinkManager.clear();
+        NettyInternodeTransport.instance.close();
+    }
+
+    @Test
+    public void testCodecIsCompatibleWithStreams() throws Exception
+    {
+        byte[] data = new byte[100000];
+        Random random = new Random(42);
+        // half random, half compressible
+        for (int i = 0; i < data.length; i++)
+            data[i] = i < data.length / 2 ? (byte) random.nextInt() : (byte) (i % 7);
+
+        LZ4BlockCodec codec = new LZ4BlockCodec();
+        ChannelBuffer encoded = ChannelBuffers.dynamicBuffer();
+        codec.encode(ChannelBuffers.wrappedBuffer(data), encoded);
+        byte[] compressed = new byte[encoded.readableBytes()];
+        encoded.getBytes(encoded.readerIndex(), compressed);
+
+        LZ4BlockInputStream in = new LZ4BlockInputStream(new ByteArrayInputStream(compressed),
+                                                         LZ4Factory.fastestInstance().fastDecompressor(),
+                                                         XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum());
+        byte[] read = new byte[data.length];
+        new DataInputStream(in).readFully(read);
+        assertArrayEquals(data, read);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LZ4BlockOutputStream out = new LZ4BlockOutputStream(bytes,
+                                                            OutboundTcpConnection.LZ4_BLOCK_SIZE,
+                                                            LZ4Factory.fastestInstance().fastCompressor(),
+                                                            XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum(),
+                                                            true);
+        out.write(data);
+        out.flush();
+        ChannelBuffer decoded = ChannelBuffers.dynamicBuffer();
+        // feed it in two parts, the first one ending mid-block
+        byte[] streamed = bytes.toByteArray();
+        ChannelBuffer input = ChannelBuffers.dynamicBuffer();
+        input.writeBytes(streamed, 0, 1000);
+        codec.decode(input, decoded);
+        input.writeBytes(streamed, 1000, streamed.length - 1000);
+        codec.decode(input, decoded);
+        assertFalse(input.readable());
+        assertEquals(ChannelBuffers.wrappedBuffer(data), decoded);
+    }
+
+    @Test
+    public void testBothTransportsReachNettyListener() throws Exception
+    {
+        InetAddress local = FBUtilities.getLocalAddress();
+        final CountDownLatch received = new CountDownLatch(200);
+        SinkManager.add(new IMessageSink()
+        {
+            public MessageOut handleMessage(MessageOut message, int id, InetAddress to)
+            {
+                return message;
+            }
+
+            public MessageIn handleMessage(MessageIn message, int id, InetAddress to)
+            {
+                if (message.verb == MessagingService.Verb.GOSSIP_SHUTDOWN)
+                    received.countDown();
+                return null;
+            }
+        });
+        NettyInternodeTransport.instance.listen(local);
+
+        OutboundTcpConnectionPool pool = new OutboundTcpConnectionPool(local);
+        NettyOutboundTcpConnection netty = new NettyOutboundTcpConnection(pool);
+        OutboundTcpConnection blocking = new OutboundTcpConnection(pool);
+        netty.start();
+        blocking.start();
+        MessageOut<?> message = new MessageOut(MessagingService.Verb.GOSSIP_SHUTDOWN);
+        for (int i = 0; i < 100; i++)
+        {
+            netty.enqueue(message, i);
+            blocking.enqueue(message, i);
+        }
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        // completion is only counted once the write is acknowledged by the event loop
+        while (netty.getCompletedMesssages() < 100)
+            Thread.sleep(10);
+        assertEquals(0, netty.getPendingMessages());
+        assertEquals(0, netty.getDroppedMessages());
+        netty.closeSocket(true);
+        blocking.closeSocket(true);
+    }
+
+    @Test
+    public void testCloseWhileConnecting() throws Exception
+    {
+        InetAddress local = FBUtilities.getLocalAddress();
+        final CountDownLatch received = new CountDownLatch(1);
+        SinkManager.add(new IMessageSink()
+        {
+            public MessageOut handleMessage(MessageOut message, int id, InetAddress to)
+            {
+                return message;
+            }
+
+            public MessageIn handleMessage(MessageIn message, int id, InetAddress to)
+            {
+                if (message.verb == MessagingService.Verb.GOSSIP_SHUTDOWN)
+                    received.countDown();
+                return null;
+            }
+        });
+        NettyInternodeTransport.instance.listen(local);
+
+        NettyOutboundTcpConnection netty = new NettyOutboundTcpConnection(new OutboundTcpConnectionPool(local));
+        MessageOut<?> message = new MessageOut(MessagingService.Verb.GOSSIP_SHUTDOWN);
+        // the first message starts connecting, and the close is issued before the handshake is done
+        netty.enqueue(message, 0);
+        netty.closeSocket(false);
+        while (netty.isConnecting())
+            Thread.sleep(10);
+        assertFalse(netty.isConnected());
+
+        // a later message still gets through, on a new connection
+        netty.enqueue(message, 1);
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        netty.closeSocket(true);
+    }
+}
@@ -21,6 +21,8 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import org.junit.After;
@@ -132,7 +134,10 @@ public class ValidatorTest extends SchemaLoader
             throw new UnsupportedOperationException();
         }
 
-        public void update(MessageDigest digest) { }
+        public void update(MessageDigest digest)
+        {
+            digest.update(key.key.duplicate());
+        }
 
         public ColumnStats columnStats()
         {
@@ -142,6 +147,43 @@ public class ValidatorTest extends SchemaLoader
         public void close() throws IOException { }
     }
 
+    @Test
+    public void testSplitAndMerge() throws Throwable
+    {
+        Range<Token> range = new Range<>(partitioner.getMinimumToken(), partitioner.getMinimumToken());
+        RepairJobDesc desc = new RepairJobDesc(UUID.randomUUID(), keyspace, columnFamily, range);
+        InetAddress remote = InetAddress.getByName("127.0.0.2");
+        ColumnFamilyStore cfs = Keyspace.open(keyspace).getColumnFamilyStore(columnFamily);
+
+        List<DecoratedKey> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            keys.add(partitioner.decorateKey(ByteBufferUtil.bytes(String.format("key%03d", i))));
+
+        Validator whole = new Validator(desc, remote, 0);
+        whole.prepare(cfs);
+        for (DecoratedKey key : keys)
+            whole.add(new CompactedRowStub(key));
+        whole.completeTree();
+
+        Validator merged = new Validator(desc, remote, 0);
+        List<Validator> parts = merged.split(4);
+        assertEquals(4, parts.size());
+        for (Validator part : parts)
+        {
+            part.prepare(cfs);
+            for (DecoratedKey key : keys)
+            {
+                if (part.tree.fullRange.contains(key.token))
+                    part.add(new CompactedRowStub(key));
+            }
+        }
+        merged.merge(parts);
+        merged.completeTree();
+
+        assertEquals(whole.tree.size(), merged.tree.size());
+        assertArrayEquals(whole.tree.hash(range), merged.tree.hash(range));
+    }
+
     @Test
     public void testValidatorFailed() throws Throwable
     {
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.net.InetAddress;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.metrics.StorageMetrics;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.net.ResponseVerbHandler;
+import org.apache.cassandra.sink.IMessageSink;
+import org.apache.cassandra.sink.SinkManager;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.*;
+
+public class ReplicaBatchesTest extends SchemaLoader
+{
+    private static final InetAddress REPLICA1;
+    private static final InetAddress REPLICA2;
+    static
+    {
+        try
+        {
+            REPLICA1 = InetAddress.getByName("127.0.0.2");
+            REPLICA2 = InetAddress.getByName("127.0.0.3");
+        }
+        catch (Exception e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    private final Map<Integer, InetAddress> sentTo = new HashMap<Integer, InetAddress>();
+    private final Map<Integer, MutationBatch> sent = new HashMap<Integer, MutationBatch>();
+
+    @After
+    public void tearDown()
+    {
+        SinkManager.clear();
+    }
+
+    // captures the outgoing batches instead of sending them
+    private void captureBatches()
+    {
+        SinkManager.add(new IMessageSink()
+        {
+            public MessageOut handleMessage(MessageOut message, int id, InetAddress to)
+            {
+                if (message.verb == MessagingService.Verb.MUTATION_BATCH)
+                {
+                    sentTo.put(id, to);
+                    sent.put(id, (MutationBatch) message.payload);
+                }
+                return null;
+            }
+
+            public MessageIn handleMessage(MessageIn message, int id, InetAddress to)
+            {
+                return message;
+            }
+        });
+    }
+
+    private static RowMutation mutation(String key)
+    {
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes(key));
+        rm.add("Standard1", ByteBufferUtil.bytes("c"), ByteBufferUtil.bytes("value"), 0);
+        return rm;
+    }
+
+    private static WriteResponseHandler handler(ConsistencyLevel consistencyLevel)
+    {
+        return new WriteResponseHandler(Arrays.asList(REPLICA1, REPLICA2),
+                                        Collections.<InetAddress>emptyList(),
+                                        consistencyLevel,
+                                        Keyspace.open("Keyspace1"),
+                                        null,
+                                        WriteType.UNLOGGED_BATCH);
+    }
+
+    private int idFor(InetAddress replica)
+    {
+        for (Map.Entry<Integer, InetAddress> entry : sentTo.entrySet())
+        {
+            if (entry.getValue().equals(replica))
+                return entry.getKey();
+        }
+        throw new AssertionError("No batch sent to " + replica);
+    }
+
+    private static void respond(InetAddress from, int id)
+    {
+        MessageIn<WriteResponse> response = MessageIn.create(from,
+                                                             new WriteResponse(),
+                                                             Collections.<String, byte[]>emptyMap(),
+                                                             MessagingService.Verb.REQUEST_RESPONSE,
+                                                             MessagingService.current_version);
+        new ResponseVerbHandler().doVerb(response, id);
+    }
+
+    @Test
+    public void testMutationsAreGroupedPerReplica()
+    {
+        captureBatches();
+        List<RowMutation> mutations = Arrays.asList(mutation("k1"), mutation("k2"), mutation("k3"));
+        StorageProxy.ReplicaBatches batches = new StorageProxy.ReplicaBatches();
+        for (RowMutation rm : mutations)
+        {
+            WriteResponseHandler handler = handler(ConsistencyLevel.ONE);
+            batches.add(REPLICA1, rm, handler);
+            batches.add(REPLICA2, rm, handler);
+        }
+        batches.send();
+
+        assertEquals(2, sent.size());
+        for (InetAddress replica : Arrays.asList(REPLICA1, REPLICA2))
+        {
+            int id = idFor(replica);
+            assertEquals(mutations, sent.get(id).mutations);
+            MessagingService.instance().removeRegisteredCallback(id);
+        }
+    }
+
+    @Test
+    public void testConsistencyLevelIsTrackedPerPartition() throws Exception
+    {
+        captureBatches();
+        // the second partition isn't written to REPLICA2, as if it had been hinted
+        RowMutation rm1 = mutation("k1");
+        RowMutation rm2 = mutation("k2");
+        WriteResponseHandler handler1 = handler(ConsistencyLevel.TWO);
+        WriteResponseHandler handler2 = handler(ConsistencyLevel.TWO);
+        StorageProxy.ReplicaBatches batches = new StorageProxy.ReplicaBatches();
+        batches.add(REPLICA1, rm1, handler1);
+        batches.add(REPLICA2, rm1, handler1);
+        batches.add(REPLICA1, rm2, handler2);
+        batches.send();
+
+        assertEquals(Arrays.asList(rm1, rm2), sent.get(idFor(REPLICA1)).mutations);
+        assertEquals(Arrays.asList(rm1), sent.get(idFor(REPLICA2)).mutations);
+
+        // a single acknowledgement of a batch counts for each of its partitions
+        respond(REPLICA1, idFor(REPLICA1));
+        assertEquals(1, handler1.ackCount());
+        assertEquals(1, handler2.ackCount());
+
+        respond(REPLICA2, idFor(REPLICA2));
+        assertEquals(2, handler1.ackCount());
+        assertEquals(1, handler2.ackCount());
+        handler1.get();
+    }
+
+    @Test
+    public void testTimedOutBatchIsHinted() throws Exception
+    {
+        captureBatches();
+        UUID hostId = UUID.randomUUID();
+        StorageService.instance.getTokenMetadata().updateHostId(hostId, REPLICA1);
+
+        RowMutation rm1 = mutation("hinted1");
+        RowMutation rm2 = mutation("hinted2");
+        StorageProxy.ReplicaBatches batches = new StorageProxy.ReplicaBatches();
+        batches.add(REPLICA1, rm1, handler(ConsistencyLevel.ONE));
+        batches.add(REPLICA1, rm2, handler(ConsistencyLevel.ONE));
+        long hints = StorageMetrics.totalHints.count();
+        batches.send();
+
+        // the callback expires without a response, and each mutation of the batch gets a hint
+        long deadline = System.currentTimeMillis() + 10 * DatabaseDescriptor.getWriteRpcTimeout();
+        while (StorageMetrics.totalHints.count() < hints + 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(100);
+        assertEquals(hints + 2, StorageMetrics.totalHints.count());
+        assertNull(MessagingService.instance().getRegisteredCallback(idFor(REPLICA1)));
+        assertTrue(HintedHandOffManager.instance.listEndpointsPendingHints().contains(hostId.toString()));
+    }
+}
@@ -17,6 +17,10 @@
  */
 package org.apache.cassandra.streaming;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.sql.Date;
@@ -38,20 +42,29 @@ import org.apache.cassandra.Util;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
+import org.apache.cassandra.db.compaction.LeveledManifest;
 import org.apache.cassandra.db.context.CounterContext;
 import org.apache.cassandra.db.filter.IDiskAtomFilter;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.sstable.SSTableUtils;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.streaming.messages.FileMessageHeader;
+import org.apache.cassandra.streaming.messages.StreamMessage;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.CounterId;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Pair;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.apache.cassandra.Util.column;
 
@@ -480,6 +493,124 @@ public class StreamingTransferTest extends SchemaLoader
         assertEquals(7, Util.getRangeSlice(cfs).size());
     }
 
+    @Test
+    public void testTransferEntireSSTable() throws Exception
+    {
+        final Keyspace keyspace = Keyspace.open("Keyspace1");
+        final ColumnFamilyStore cfs = keyspace.getColumnFamilyStore("Standard1");
+        cfs.clearUnsafe();
+        for (int i = 1; i <= 1000; i++)
+        {
+            RowMutation rm = new RowMutation(keyspace.getName(), ByteBufferUtil.bytes("key" + i));
+            rm.add(cfs.name, ByteBufferUtil.bytes("col"), ByteBufferUtil.bytes(i), 1234);
+            rm.apply();
+        }
+        cfs.forceBlockingFlush();
+        Util.compactAll(cfs).get();
+        SSTableReader sstable = cfs.getSSTables().iterator().next();
+        // levels are local to the sender
+        LeveledManifest.mutateLevel(Pair.create(sstable.getSSTableMetadata(), sstable.getAncestors()),
+                                    sstable.descriptor,
+                                    sstable.descriptor.filenameFor(Component.STATS),
+                                    2);
+        Map<Component, Long> components = EntireSSTableStreamWriter.components(sstable);
+        cfs.clearUnsafe();
+
+        IPartitioner p = StorageService.getPartitioner();
+        List<Range<Token>> ranges = Arrays.asList(new Range<>(p.getMinimumToken(), p.getMinimumToken()));
+        DatabaseDescriptor.setStreamEntireSSTables(true);
+        try
+        {
+            transfer(sstable, ranges);
+        }
+        finally
+        {
+            DatabaseDescriptor.setStreamEntireSSTables(false);
+        }
+
+        // the files were received as they were sent, rather than rewritten row by row
+        assertEquals(1, cfs.getSSTables().size());
+        SSTableReader received = cfs.getSSTables().iterator().next();
+        assertEquals(0, received.getSSTableLevel());
+        // the ancestors' generations are the sender's, not ours
+        assertFalse(sstable.getAncestors().isEmpty());
+        assertTrue(received.getAncestors().isEmpty());
+        for (Map.Entry<Component, Long> entry : components.entrySet())
+        {
+            if (!entry.getKey().equals(Component.STATS))
+                assertEquals(entry.getValue().longValue(), new File(received.descriptor.filenameFor(entry.getKey())).length());
+        }
+        List<Row> rows = Util.getRangeSlice(cfs);
+        assertEquals(1000, rows.size());
+        for (Row row : rows)
+            assertEquals(ByteBufferUtil.bytes(1234L), ByteBufferUtil.bytes(row.cf.getColumn(ByteBufferUtil.bytes("col")).timestamp()));
+    }
+
+    @Test
+    public void testTransferEntireSSTableToOlderPeer() throws Exception
+    {
+        final Keyspace keyspace = Keyspace.open("Keyspace1");
+        final ColumnFamilyStore cfs = keyspace.getColumnFamilyStore("Standard1");
+        cfs.clearUnsafe();
+        for (int i = 1; i <= 100; i++)
+        {
+            RowMutation rm = new RowMutation(keyspace.getName(), ByteBufferUtil.bytes("key" + i));
+            rm.add(cfs.name, ByteBufferUtil.bytes("col"), ByteBufferUtil.bytes(i), 1234);
+            rm.apply();
+        }
+        cfs.forceBlockingFlush();
+        SSTableReader sstable = cfs.getSSTables().iterator().next();
+        cfs.clearUnsafe();
+
+        IPartitioner p = StorageService.getPartitioner();
+        List<Range<Token>> ranges = Arrays.asList(new Range<>(p.getMinimumToken(), p.getMinimumToken()));
+        // a pre-2.1 peer only knows the first streaming version, so its sstables are sent as sections
+        boolean knewVersion = MessagingService.instance().knowsVersion(LOCAL);
+        int previous = MessagingService.instance().setVersion(LOCAL, MessagingService.VERSION_20);
+        DatabaseDescriptor.setStreamEntireSSTables(true);
+        try
+        {
+            assertEquals(StreamMessage.VERSION_20, ConnectionHandler.versionFor(LOCAL));
+            transfer(sstable, ranges);
+        }
+        finally
+        {
+            DatabaseDescriptor.setStreamEntireSSTables(false);
+            if (knewVersion)
+                MessagingService.instance().setVersion(LOCAL, previous);
+            else
+                MessagingService.instance().resetVersion(LOCAL);
+        }
+        assertEquals(StreamMessage.CURRENT_VERSION, ConnectionHandler.versionFor(LOCAL));
+
+        assertEquals(1, cfs.getSSTables().size());
+        assertEquals(100, Util.getRangeSlice(cfs).size());
+    }
+
+    @Test
+    public void testFileMessageHeaderVersions() throws Exception
+    {
+        List<Pair<Long, Long>> sections = Arrays.asList(Pair.create(0L, 100L));
+        Map<Component, Long> components = Collections.singletonMap(Component.DATA, 100L);
+        FileMessageHeader entire = new FileMessageHeader(UUID.randomUUID(), 1, "jb", 10, sections, null, components);
+        assertEquals(components, roundTrip(entire, StreamMessage.CURRENT_VERSION).components);
+
+        // older peers neither send nor expect the components
+        FileMessageHeader header = new FileMessageHeader(UUID.randomUUID(), 2, "jb", 10, sections, null);
+        FileMessageHeader read = roundTrip(header, StreamMessage.VERSION_20);
+        assertEquals(header, read);
+        assertFalse(read.isEntireSSTable());
+    }
+
+    private static FileMessageHeader roundTrip(FileMessageHeader header, int version) throws IOException
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        FileMessageHeader.serializer.serialize(header, out, version);
+        assertEquals(FileMessageHeader.serializer.serializedSize(header, version), out.getLength());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.getData(), 0, out.getLength()));
+        return FileMessageHeader.serializer.deserialize(in, version);
+    }
+
     public interface Mutator
     {
         public void mutate(String key, String col, long timestamp) throws Exception;
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.tracing;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TraceEventBufferTest
+{
+    private static TraceState.Event event(int i)
+    {
+        return new TraceState.Event(ByteBuffer.allocate(0), String.valueOf(i), i, "test");
+    }
+
+    @Test
+    public void testDropWhenFull()
+    {
+        TraceEventBuffer buffer = new TraceEventBuffer(4);
+        for (int i = 0; i < 4; i++)
+            assertTrue(buffer.offer(event(i)));
+        assertFalse(buffer.offer(event(4)));
+
+        List<TraceState.Event> drained = new ArrayList<TraceState.Event>();
+        assertEquals(4, buffer.drainTo(drained));
+        for (int i = 0; i < 4; i++)
+            assertEquals(String.valueOf(i), drained.get(i).message);
+
+        // the slots are reused once drained
+        assertTrue(buffer.offer(event(5)));
+        drained.clear();
+        assertEquals(1, buffer.drainTo(drained));
+        assertEquals("5", drained.get(0).message);
+        assertEquals(0, buffer.drainTo(drained));
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception
+    {
+        final TraceEventBuffer buffer = new TraceEventBuffer(64);
+        final int writers = 4;
+        final int eventsPerWriter = 10000;
+        final AtomicInteger dropped = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++)
+        {
+            final int writer = w;
+            new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for (int i = 0; i < eventsPerWriter; i++)
+                    {
+                        if (!buffer.offer(event(writer * eventsPerWriter + i)))
+                            dropped.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        List<TraceState.Event> drained = new ArrayList<TraceState.Event>();
+        while (done.getCount() > 0)
+            buffer.drainTo(drained);
+        buffer.drainTo(drained);
+
+        // every event is either drained exactly once or counted as dropped
+        Set<String> messages = new HashSet<String>();
+        for (TraceState.Event event : drained)
+            assertTrue(messages.add(event.message));
+        assertEquals(writers * eventsPerWriter, drained.size() + dropped.get());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.transport;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.QueryOptions;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.service.QueryState;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.transport.messages.ExecuteMessage;
+import org.apache.cassandra.transport.messages.ResultMessage;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.*;
+
+public class ServerTest extends SchemaLoader
+{
+    private static Server server;
+
+    @BeforeClass
+    public static void startServer()
+    {
+        // so that we are a replica of every key
+        StorageService.instance.getTokenMetadata().updateNormalToken(StorageService.getPartitioner().getRandomToken(), FBUtilities.getBroadcastAddress());
+        server = new Server(FBUtilities.getLocalAddress(), DatabaseDescriptor.getNativeTransportPort());
+        server.start();
+    }
+
+    @AfterClass
+    public static void stopServer()
+    {
+        server.stop();
+        StorageService.instance.getTokenMetadata().clearUnsafe();
+    }
+
+    @Test
+    public void testManyRequests() throws Exception
+    {
+        SimpleClient client = new SimpleClient(FBUtilities.getLocalAddress().getHostAddress(), DatabaseDescriptor.getNativeTransportPort());
+        client.connect(FrameCompressor.SnappyCompressor.instance != null);
+        try
+        {
+            for (int i = 0; i < 100; i++)
+                client.execute("INSERT INTO cql_keyspace.table1 (k, v1, v2) VALUES (" + i + ", 'value', " + i + ")", ConsistencyLevel.ONE);
+
+            ResultMessage.Prepared prepared = client.prepare("SELECT v2 FROM cql_keyspace.table1 WHERE k = ?");
+            for (int i = 0; i < 100; i++)
+            {
+                ResultMessage result = client.executePrepared(prepared.statementId.bytes, Collections.singletonList(ByteBufferUtil.bytes(i)), ConsistencyLevel.ONE);
+                List<List<ByteBuffer>> rows = ((ResultMessage.Rows) result).result.rows;
+                assertEquals(1, rows.size());
+                assertEquals(i, ByteBufferUtil.toInt(rows.get(0).get(0)));
+            }
+        }
+        finally
+        {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testCachedReadsExecuteOnIOThread() throws Exception
+    {
+        CacheService.instance.setRowCacheCapacityInMB(1);
+        CFMetaData metadata = Keyspace.open("RowCacheSpace").getColumnFamilyStore("CachedCF").metadata;
+        double readRepairChance = metadata.getReadRepairChance();
+        metadata.readRepairChance(0);
+        SimpleClient client = new SimpleClient(FBUtilities.getLocalAddress().getHostAddress(), DatabaseDescriptor.getNativeTransportPort());
+        client.connect(false);
+        try
+        {
+            ByteBuffer key = ByteBufferUtil.bytes("cached");
+            RowMutation rm = new RowMutation("RowCacheSpace", key);
+            rm.add("CachedCF", ByteBufferUtil.bytes("c"), ByteBufferUtil.bytes("v"), 0);
+            rm.apply();
+
+            ResultMessage.Prepared prepared = client.prepare("SELECT * FROM \"RowCacheSpace\".\"CachedCF\" WHERE key = ?");
+            List<ByteBuffer> values = Collections.singletonList(key);
+            ExecuteMessage one = new ExecuteMessage(prepared.statementId, new QueryOptions(ConsistencyLevel.ONE, values));
+            ExecuteMessage quorum = new ExecuteMessage(prepared.statementId, new QueryOptions(ConsistencyLevel.QUORUM, values));
+            QueryState state = QueryState.forInternalCalls();
+            assertTrue(one.canExecuteOnIOThread());
+            assertNull(one.executeOnIOThread(state));
+
+            // traced queries, whether requested or sampled, go through the full path
+            ExecuteMessage traced = new ExecuteMessage(prepared.statementId, new QueryOptions(ConsistencyLevel.ONE, values));
+            traced.setTracingRequested();
+            assertFalse(traced.canExecuteOnIOThread());
+            StorageService.instance.setTraceProbability(0.5);
+            try
+            {
+                assertFalse(one.canExecuteOnIOThread());
+            }
+            finally
+            {
+                StorageService.instance.setTraceProbability(0);
+            }
+
+            // the first read caches the partition, the second one is served by the I/O thread
+            for (int i = 0; i < 2; i++)
+            {
+                ResultMessage result = client.executePrepared(prepared.statementId.bytes, values, ConsistencyLevel.ONE);
+                assertEquals(1, ((ResultMessage.Rows) result).result.size());
+            }
+            assertTrue(Keyspace.open("RowCacheSpace").getColumnFamilyStore("CachedCF").containsCachedRow(Util.dk("cached")));
+            assertEquals(1, ((ResultMessage.Rows) one.executeOnIOThread(state)).result.size());
+            assertNull(quorum.executeOnIOThread(state));
+
+            // reads that may have to repair go through StorageProxy
+            metadata.readRepairChance(0.5);
+            assertNull(one.executeOnIOThread(state));
+        }
+        finally
+        {
+            client.close();
+            metadata.readRepairChance(readRepairChance);
+            CacheService.instance.setRowCacheCapacityInMB(0);
+        }
+    }
+}
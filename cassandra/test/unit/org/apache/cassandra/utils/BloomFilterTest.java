@@ -37,6 +37,7 @@ import org.junit.Test;
 
 import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.obs.OpenBitSet;
 
 public class BloomFilterTest
 {
@@ -121,6 +122,52 @@ public class BloomFilterTest
         BloomFilterTest.testSerialize(bf);
     }
 
+    @Test
+    public void testSerializeVersions() throws IOException
+    {
+        // filters written before blocked filters still deserialize as classic filters
+        BloomFilter classic = new Murmur3BloomFilter(5, new OpenBitSet(1024));
+        Assert.assertTrue(testSerialize(classic) instanceof Murmur3BloomFilter);
+        BloomFilter blocked = new BlockedBloomFilter(5, new OpenBitSet(2 * BlockedBloomFilter.BLOCK_BITS));
+        Assert.assertTrue(testSerialize(blocked) instanceof BlockedBloomFilter);
+    }
+
+    @Test
+    public void testBlockedFiltersAreOptIn()
+    {
+        Assert.assertTrue(bf instanceof Murmur3BloomFilter);
+    }
+
+    @Test
+    public void testBlockedHashOfRange()
+    {
+        BlockedBloomFilter blocked = new BlockedBloomFilter(5, new OpenBitSet(BlockedBloomFilter.BLOCK_BITS));
+        ByteBuffer key = ByteBufferUtil.bytes("abc");
+        ByteBuffer enclosing = ByteBufferUtil.bytes("xabcx");
+        Assert.assertArrayEquals(blocked.hash(key, 0, 3, 0L), blocked.hash(enclosing, 1, 3, 0L));
+    }
+
+    @Test
+    public void testBlockedProbesStayInBlock()
+    {
+        BlockedBloomFilter blocked = new BlockedBloomFilter(10, new OpenBitSet(64 * BlockedBloomFilter.BLOCK_BITS));
+        ByteBuffer key = ByteBufferUtil.bytes("a");
+        blocked.add(key);
+
+        long first = -1;
+        long last = -1;
+        for (long i = 0; i < blocked.bitset.capacity(); i++)
+        {
+            if (!blocked.bitset.get(i))
+                continue;
+            if (first == -1)
+                first = i;
+            last = i;
+        }
+        Assert.assertEquals(first / BlockedBloomFilter.BLOCK_BITS, last / BlockedBloomFilter.BLOCK_BITS);
+        Assert.assertTrue(blocked.isPresent(key));
+    }
+
     public void testManyHashes(Iterator<ByteBuffer> keys)
     {
         int MAX_HASH_COUNT = 128;
@@ -29,6 +29,7 @@ import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -167,6 +168,15 @@ public class ByteBufferUtilTest
 
         bb = fromStringWithPosition(s, 10, true);
         checkReadWrite(bb);
+
+        // direct buffers larger than the copy chunk size
+        byte[] large = new byte[10000];
+        new Random(0).nextBytes(large);
+        bb = ByteBuffer.allocateDirect(large.length + 10);
+        bb.position(10);
+        bb.put(large);
+        bb.position(10);
+        checkReadWrite(bb);
     }
 
     private void checkReadWrite(ByteBuffer bb) throws IOException
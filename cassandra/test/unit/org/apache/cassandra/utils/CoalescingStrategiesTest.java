@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.utils.CoalescingStrategies.Coalescable;
+import org.apache.cassandra.utils.CoalescingStrategies.CoalescingStrategy;
+
+import static org.junit.Assert.*;
+
+public class CoalescingStrategiesTest
+{
+    private static final long WINDOW_MICROS = TimeUnit.MILLISECONDS.toMicros(200);
+
+    private static class Item implements Coalescable
+    {
+        final long timestampNanos;
+
+        Item(long timestampNanos)
+        {
+            this.timestampNanos = timestampNanos;
+        }
+
+        public long timestampNanos()
+        {
+            return timestampNanos;
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception
+    {
+        CoalescingStrategy strategy = CoalescingStrategies.newCoalescingStrategy(Config.CoalescingStrategy.disabled, WINDOW_MICROS);
+        BlockingQueue<Item> queue = new MpscBlockingQueue<>();
+        List<Item> out = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            queue.add(new Item(System.nanoTime()));
+
+        long start = System.nanoTime();
+        strategy.coalesce(queue, out, 2);
+        assertTrue(System.nanoTime() - start < TimeUnit.MICROSECONDS.toNanos(WINDOW_MICROS));
+        assertEquals(2, out.size());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testFixedWaitsForTheWindow() throws Exception
+    {
+        CoalescingStrategy strategy = CoalescingStrategies.newCoalescingStrategy(Config.CoalescingStrategy.fixed, WINDOW_MICROS);
+        final BlockingQueue<Item> queue = new MpscBlockingQueue<>();
+        queue.add(new Item(System.nanoTime()));
+
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        producer.submit(new Runnable()
+        {
+            public void run()
+            {
+                queue.add(new Item(System.nanoTime()));
+            }
+        }).get();
+
+        List<Item> out = new ArrayList<>();
+        strategy.coalesce(queue, out, 128);
+        assertEquals(2, out.size());
+
+        // the oldest item already waited for the whole window: nothing more to wait for
+        out.clear();
+        queue.add(new Item(System.nanoTime() - TimeUnit.MICROSECONDS.toNanos(WINDOW_MICROS)));
+        long start = System.nanoTime();
+        strategy.coalesce(queue, out, 128);
+        assertTrue(System.nanoTime() - start < TimeUnit.MICROSECONDS.toNanos(WINDOW_MICROS));
+        assertEquals(1, out.size());
+        producer.shutdown();
+    }
+
+    @Test
+    public void testMovingAverage() throws Exception
+    {
+        CoalescingStrategies.MovingAverageCoalescingStrategy strategy = new CoalescingStrategies.MovingAverageCoalescingStrategy(TimeUnit.MICROSECONDS.toNanos(WINDOW_MICROS));
+        BlockingQueue<Item> queue = new MpscBlockingQueue<>();
+        List<Item> out = new ArrayList<>();
+
+        // sparse arrivals: no waiting
+        queue.add(new Item(System.nanoTime()));
+        long start = System.nanoTime();
+        strategy.coalesce(queue, out, 128);
+        assertTrue(System.nanoTime() - start < TimeUnit.MICROSECONDS.toNanos(WINDOW_MICROS));
+        assertEquals(1, out.size());
+
+        // a burst of closely spaced arrivals brings the average gap down
+        out.clear();
+        long now = System.nanoTime();
+        for (int i = 0; i < 32; i++)
+            queue.add(new Item(now + i * 1000));
+        strategy.coalesce(queue, out, 128);
+        assertEquals(32, out.size());
+        assertTrue(strategy.averageGapNanos() < TimeUnit.MICROSECONDS.toNanos(WINDOW_MICROS));
+    }
+
+    @Test
+    public void testTakeBlocksUntilOffer() throws Exception
+    {
+        final MpscBlockingQueue<Integer> queue = new MpscBlockingQueue<>();
+        ExecutorService consumer = Executors.newSingleThreadExecutor();
+        Future<Integer> taken = consumer.submit(new Callable<Integer>()
+        {
+            public Integer call() throws Exception
+            {
+                return queue.take();
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(taken.isDone());
+        queue.put(42);
+        assertEquals(42, (int) taken.get(10, TimeUnit.SECONDS));
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.size());
+        consumer.shutdown();
+    }
+}
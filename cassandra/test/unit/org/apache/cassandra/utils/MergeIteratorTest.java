@@ -18,8 +18,12 @@
 */
 package org.apache.cassandra.utils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
 
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterators;
@@ -71,11 +75,109 @@ public class MergeIteratorTest
         assert a.closed && b.closed && c.closed && d.closed;
     }
 
+    /** Test that the tournament tree merges like the priority queue, for assorted numbers of sources. */
+    @Test
+    public void testTournamentTreeMatchesPriorityQueue() throws Exception
+    {
+        Random random = new Random(42);
+        for (int sources = 0; sources <= 33; sources++)
+        {
+            for (int round = 0; round < 10; round++)
+            {
+                List<Integer[]> data = new ArrayList<>();
+                for (int i = 0; i < sources; i++)
+                {
+                    TreeSet<Integer> values = new TreeSet<>();
+                    int count = random.nextInt(4) == 0 ? 0 : random.nextInt(50);
+                    for (int j = 0; j < count; j++)
+                        values.add(random.nextInt(100));
+                    data.add(values.toArray(new Integer[values.size()]));
+                }
+
+                IMergeIterator<Integer,String> expected = MergeIterator.getWithPriorityQueue(iterators(data), Ordering.<Integer>natural(), new Counter());
+                IMergeIterator<Integer,String> actual = MergeIterator.get(iterators(data), Ordering.<Integer>natural(), new Counter());
+                assert Iterators.elementsEqual(expected, actual) : sources + " sources";
+            }
+        }
+    }
+
+    /** Test that consumed sources are not advanced until the next item is requested. */
+    @Test
+    public void testLazyAdvance() throws Exception
+    {
+        final List<CLI<String>> sources = Arrays.asList(a, b, c, d);
+        MergeIterator.Reducer<String,String> reducer = new MergeIterator.Reducer<String,String>()
+        {
+            String last;
+            int reduced;
+
+            protected void onKeyChange()
+            {
+                reduced = 0;
+            }
+
+            public void reduce(String value)
+            {
+                last = value;
+                reduced++;
+            }
+
+            public String getReduced()
+            {
+                // every source that contributed must still be positioned on the value it contributed
+                int positioned = 0;
+                for (CLI<String> source : sources)
+                    if (last.equals(source.last))
+                        positioned++;
+                assert positioned == reduced : "a source was advanced before " + last + " was returned";
+                return last;
+            }
+        };
+        IMergeIterator<String,String> smi = MergeIterator.get(sources, Ordering.<String>natural(), reducer);
+        assert Iterators.size(smi) == 9;
+        smi.close();
+    }
+
+    private static List<CLI<Integer>> iterators(List<Integer[]> data)
+    {
+        List<CLI<Integer>> iterators = new ArrayList<>();
+        for (Integer[] values : data)
+            iterators.add(new CLI<>(values));
+        return iterators;
+    }
+
+    // reduces equal values to "value x count"
+    private static class Counter extends MergeIterator.Reducer<Integer,String>
+    {
+        Integer value;
+        int count;
+
+        protected void onKeyChange()
+        {
+            value = null;
+            count = 0;
+        }
+
+        public void reduce(Integer current)
+        {
+            assert value == null || value.equals(current);
+            value = current;
+            count++;
+        }
+
+        protected String getReduced()
+        {
+            return value + "x" + count;
+        }
+    }
+
     // closeable list iterator
     public static class CLI<E> extends AbstractIterator<E> implements CloseableIterator<E>
     {
         Iterator<E> iter;
         boolean closed = false;
+        int consumed = 0;
+        E last;
         public CLI(E... items)
         {
             this.iter = Arrays.asList(items).iterator();
@@ -84,7 +186,8 @@ public class MergeIteratorTest
         protected E computeNext()
         {
             if (!iter.hasNext()) return endOfData();
-            return iter.next();
+            consumed++;
+            return last = iter.next();
         }
 
         public void close()
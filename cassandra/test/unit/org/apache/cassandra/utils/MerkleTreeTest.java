@@ -403,6 +403,27 @@ public class MerkleTreeTest
         assertHashEquals(initialhash, restored.hash(full));
     }
 
+    @Test
+    public void testGraft()
+    {
+        // (zero,four] (four,zero]
+        mt.init((byte)1);
+
+        // (zero,two] (two,four], built on its own
+        MerkleTree left = new MerkleTree(partitioner, new Range<>(tok(-1), tok(4)), (byte)(RECOMMENDED_DEPTH - 1), Integer.MAX_VALUE);
+        left.split(tok(2));
+        left.get(tok(2)).hash(DUMMY);
+        left.get(tok(4)).hash(DUMMY);
+
+        mt.graft(left);
+        mt.get(tok(-1)).hash(DUMMY);
+
+        assertEquals(3, mt.size());
+        assertEquals(new Range<>(tok(2), tok(4)), mt.get(tok(3)));
+        assertEquals((byte)2, mt.get(tok(3)).depth);
+        assertHashEquals(hashed(DUMMY, 2, 2, 1), mt.hash(fullRange()));
+    }
+
     @Test
     public void testDifference()
     {
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class Murmur3DigestTest
+{
+    @Test
+    public void testMatchesMurmurHash()
+    {
+        Random random = new Random(42);
+        Murmur3Digest digest = new Murmur3Digest();
+        for (int length = 0; length < 100; length++)
+        {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            // feed the input in chunks of random sizes, straddling the 16 bytes blocks
+            int offset = 0;
+            while (offset < length)
+            {
+                int chunk = Math.min(length - offset, random.nextInt(20));
+                if (chunk == 1)
+                    digest.update(data[offset]);
+                else
+                    digest.update(data, offset, chunk);
+                offset += chunk;
+            }
+
+            long[] expected = MurmurHash.hash3_x64_128(ByteBuffer.wrap(data), 0, length, 0);
+            byte[] expectedBytes = ByteBuffer.allocate(16).putLong(expected[0]).putLong(expected[1]).array();
+            // digest() resets the digest for the next round
+            assertArrayEquals(expectedBytes, digest.digest());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlabAllocatorTest
+{
+    @Test
+    public void testOnHeapAllocation() throws Exception
+    {
+        SlabAllocator allocator = new SlabAllocator();
+        ByteBuffer cloned = allocator.clone(ByteBufferUtil.bytes("cassandra"));
+        assertTrue(cloned.hasArray());
+        assertEquals("cassandra", ByteBufferUtil.string(cloned));
+        assertEquals(0, allocator.getOffHeapSize());
+    }
+
+    @Test
+    public void testOffHeapAllocation() throws Exception
+    {
+        SlabAllocator allocator = new OffHeapSlabAllocator();
+        ByteBuffer small = allocator.clone(ByteBufferUtil.bytes("cassandra"));
+        assertTrue(small.isDirect());
+        assertFalse(small.hasArray());
+        assertEquals("cassandra", ByteBufferUtil.string(small));
+
+        // large values bypass the regions but must still live off-heap
+        ByteBuffer large = allocator.allocate(256 * 1024);
+        assertTrue(large.isDirect());
+        assertEquals(256 * 1024, allocator.getOffHeapSize());
+        assertEquals(0, allocator.getMinimumSize());
+
+        // fill up the first region so a second one gets allocated
+        for (int i = 0; i < 16; i++)
+            allocator.allocate(100 * 1024);
+        assertEquals(256 * 1024 + 1024 * 1024, allocator.getOffHeapSize());
+    }
+}